@@ -0,0 +1,54 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+
+/**
+ * <p>
+ * Run the benchmarks, always with the {@linkplain GCProfiler GC profiler} enabled, so that the allocation rate per
+ * operation (<code>gc.alloc.rate.norm</code>) is reported alongside the time for each benchmark.
+ * </p>
+ * 
+ * <p>
+ * Any of the standard JMH command line options may be supplied, ie, to run only the role filter benchmarks:
+ * </p>
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar 'com\.hubick\.utility_servlets\.role\..*'
+ * </pre>
+ */
+@NonNullByDefault
+public abstract class BenchmarkRunner {
+
+  /**
+   * Run the benchmarks.
+   * 
+   * @param args The JMH command line options.
+   * @throws CommandLineOptionException If the options are invalid.
+   * @throws IOException If there was a problem writing the help text.
+   * @throws RunnerException If the benchmarks fail to run.
+   */
+  public static void main(final String[] args) throws CommandLineOptionException, IOException, RunnerException {
+    final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    if (commandLineOptions.shouldHelp()) {
+      commandLineOptions.showHelp();
+      return;
+    }
+    final Options options = new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build();
+    new Runner(options).run();
+    return;
+  }
+
+}
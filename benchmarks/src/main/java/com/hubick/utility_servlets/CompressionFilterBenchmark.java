@@ -0,0 +1,120 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.annotations.*;
+
+import com.hubick.utility_servlets.mock.*;
+
+import javax.servlet.*;
+
+
+/**
+ * Benchmarks for {@link CompressionFilter}: <code>Accept-Encoding</code> negotiation, and filtering responses of
+ * varying sizes, both below the threshold (buffered and sent uncompressed) and above it (compressed as they stream).
+ */
+@NonNullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionFilterBenchmark {
+  /**
+   * The <code>Accept-Encoding</code> header values, from a modern browser, a client preferring <code>deflate</code>,
+   * and a client refusing compression.
+   */
+  @Param({ "gzip, deflate, br, zstd", "deflate;q=1.0, gzip;q=0.5", "identity" })
+  public String acceptEncoding = "gzip, deflate, br, zstd";
+  /**
+   * The size of the response content, in bytes.
+   */
+  @Param({ "512", "16384" })
+  public int contentSize = 512;
+  /**
+   * The filter.
+   */
+  protected CompressionFilter filter = new CompressionFilter();
+  /**
+   * A request carrying the {@link #acceptEncoding} header.
+   */
+  protected MockHttpServletRequest request = new MockHttpServletRequest();
+  /**
+   * The response.
+   */
+  protected MockHttpServletResponse response = new MockHttpServletResponse();
+  /**
+   * The (moderately compressible) response content.
+   */
+  protected byte[] content = new byte[0];
+  /**
+   * The chain, writing the {@link #content} in a single write.
+   */
+  protected FilterChain chain = (servletRequest, servletResponse) -> {};
+
+  /**
+   * Configure the filter, and create the content.
+   */
+  @Setup
+  public void setup() {
+    filter = new CompressionFilter();
+    filter.init(new MockFilterConfig("compression", Collections.emptyMap()));
+    request = new MockHttpServletRequest().addHeader("Accept-Encoding", acceptEncoding);
+    final StringBuilder text = new StringBuilder(contentSize + 64);
+    for (int i = 0; text.length() < contentSize; i++) {
+      text.append("<li class=\"item\">Item ").append(i).append("</li>\n");
+    }
+    content = Arrays.copyOf(text.toString().getBytes(StandardCharsets.US_ASCII), contentSize);
+    chain = (servletRequest, servletResponse) -> {
+      servletResponse.setContentType("text/html; charset=UTF-8");
+      servletResponse.getOutputStream().write(content);
+    };
+    return;
+  }
+
+  /**
+   * Destroy the filter.
+   */
+  @TearDown
+  public void tearDown() {
+    filter.destroy();
+    return;
+  }
+
+  /**
+   * Negotiate the content coding from the <code>Accept-Encoding</code> header.
+   * 
+   * @return The content coding.
+   */
+  @Benchmark
+  public @Nullable String negotiate() {
+    return CompressionFilter.negotiate(acceptEncoding);
+  }
+
+  /**
+   * Filter a request, writing the content.
+   * 
+   * @return The number of bytes sent.
+   * @throws ServletException If thrown by the filter.
+   * @throws IOException If thrown by the filter.
+   */
+  @Benchmark
+  public long doFilter() throws ServletException, IOException {
+    response.reset();
+    filter.doFilter(request, response, chain);
+    return response.getContentCount();
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.annotations.*;
+
+import com.hubick.utility_servlets.mock.*;
+
+
+/**
+ * Benchmarks for {@link XHTMLAcceptFilter}: <code>Accept</code> header evaluation (both cached and uncached), and the
+ * {@linkplain XHTMLAcceptFilter.HTMLResponseWrapper#fixType(String) content type rewriting} performed for clients not
+ * accepting XHTML.
+ */
+@NonNullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XHTMLAcceptFilterBenchmark {
+  /**
+   * The <code>Accept</code> header values, from a modern browser, a legacy browser, and a non-browser client.
+   */
+  @Param({ "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8", "image/gif, image/jpeg, image/pjpeg, application/x-ms-application, application/xaml+xml, application/x-ms-xbap, */*", "*/*" })
+  public String accept = "*/*";
+  /**
+   * The content types set by the servlet.
+   */
+  @Param({ "application/xhtml+xml", "application/xhtml+xml; charset=UTF-8", "text/css" })
+  public String contentType = "text/css";
+  /**
+   * A request carrying the {@link #accept} header.
+   */
+  protected MockHttpServletRequest request = new MockHttpServletRequest();
+
+  /**
+   * Create the request.
+   */
+  @Setup
+  public void setup() {
+    request = new MockHttpServletRequest().addHeader("Accept", accept);
+    return;
+  }
+
+  /**
+   * Evaluate the <code>Accept</code> header of a request, which will be cached after the first invocation.
+   * 
+   * @return The decision.
+   */
+  @Benchmark
+  public boolean acceptsXHTMLRequest() {
+    return XHTMLAcceptFilter.acceptsXHTML(request);
+  }
+
+  /**
+   * Parse the <code>Accept</code> header, bypassing the cache.
+   * 
+   * @return The decision.
+   */
+  @Benchmark
+  public boolean evaluateAccept() {
+    return XHTMLAcceptFilter.evaluateAccept(accept);
+  }
+
+  /**
+   * Rewrite the content type for a client not accepting XHTML.
+   * 
+   * @return The rewritten type.
+   */
+  @Benchmark
+  public @Nullable String fixType() {
+    return XHTMLAcceptFilter.HTMLResponseWrapper.fixType(contentType);
+  }
+
+}
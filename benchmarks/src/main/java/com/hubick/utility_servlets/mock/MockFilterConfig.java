@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.mock;
+
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+
+
+/**
+ * A mock {@link FilterConfig}.
+ */
+@NonNullByDefault
+public class MockFilterConfig implements FilterConfig {
+  /**
+   * The name of the filter.
+   */
+  protected final String filterName;
+  /**
+   * The context the filter belongs to.
+   */
+  protected final ServletContext servletContext;
+  /**
+   * The filter init parameters.
+   */
+  protected final Map<String,String> initParameters;
+
+  /**
+   * Construct a <code>MockFilterConfig</code>.
+   * 
+   * @param filterName The name of the filter.
+   * @param servletContext The context the filter belongs to.
+   * @param initParameters The filter init parameters.
+   */
+  public MockFilterConfig(final String filterName, final ServletContext servletContext, final Map<String,String> initParameters) {
+    this.filterName = filterName;
+    this.servletContext = servletContext;
+    this.initParameters = new LinkedHashMap<String,String>(initParameters);
+    return;
+  }
+
+  /**
+   * Construct a <code>MockFilterConfig</code> within a {@linkplain MockServletContext#create() default context}.
+   * 
+   * @param filterName The name of the filter.
+   * @param initParameters The filter init parameters.
+   */
+  public MockFilterConfig(final String filterName, final Map<String,String> initParameters) {
+    this(filterName, MockServletContext.create(), initParameters);
+    return;
+  }
+
+  @Override
+  public String getFilterName() {
+    return filterName;
+  }
+
+  @Override
+  public ServletContext getServletContext() {
+    return servletContext;
+  }
+
+  @Override
+  public @Nullable String getInitParameter(final String name) {
+    return initParameters.get(name);
+  }
+
+  @Override
+  public Enumeration<String> getInitParameterNames() {
+    return Collections.enumeration(initParameters.keySet());
+  }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.mock;
+
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * A mock {@link HttpServletRequest}, implementing the methods the filters consult on their hot path (headers, remote
+ * user/address, roles, and attributes) with plain fields, so benchmarks measure the filter rather than the mock.
+ * </p>
+ * 
+ * <p>
+ * Any other method throws an {@link UnsupportedOperationException}.
+ * </p>
+ */
+@NonNullByDefault
+public class MockHttpServletRequest extends HttpServletRequestWrapper {
+  /**
+   * The header values, by (case-insensitive) name.
+   */
+  protected final Map<String,List<String>> headers = new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+  /**
+   * The request attributes.
+   */
+  protected final Map<String,Object> attributes = new HashMap<String,Object>();
+  /**
+   * The (container) roles the user is in.
+   */
+  protected final Set<String> roles = new HashSet<String>();
+  /**
+   * The request method.
+   */
+  protected String method = "GET";
+  /**
+   * The request URI.
+   */
+  protected String requestURI = "/";
+  /**
+   * The remote user, if authenticated.
+   */
+  protected @Nullable String remoteUser = null;
+  /**
+   * The remote address.
+   */
+  protected String remoteAddr = "127.0.0.1";
+
+  /**
+   * Construct a <code>MockHttpServletRequest</code>.
+   */
+  public MockHttpServletRequest() {
+    super(UnsupportedProxy.create(HttpServletRequest.class));
+    return;
+  }
+
+  /**
+   * Add a header value.
+   * 
+   * @param name The name of the header.
+   * @param value The value to add.
+   * @return This request.
+   */
+  public MockHttpServletRequest addHeader(final String name, final String value) {
+    headers.computeIfAbsent(name, (key) -> new ArrayList<String>(1)).add(value);
+    return this;
+  }
+
+  /**
+   * Add a (container) role.
+   * 
+   * @param role The role the user is in.
+   * @return This request.
+   */
+  public MockHttpServletRequest addRole(final String role) {
+    roles.add(role);
+    return this;
+  }
+
+  /**
+   * Set the request method.
+   * 
+   * @param method The request method.
+   * @return This request.
+   */
+  public MockHttpServletRequest setMethod(final String method) {
+    this.method = method;
+    return this;
+  }
+
+  /**
+   * Set the request URI.
+   * 
+   * @param requestURI The request URI.
+   * @return This request.
+   */
+  public MockHttpServletRequest setRequestURI(final String requestURI) {
+    this.requestURI = requestURI;
+    return this;
+  }
+
+  /**
+   * Set the remote user.
+   * 
+   * @param remoteUser The remote user, or <code>null</code> if unauthenticated.
+   * @return This request.
+   */
+  public MockHttpServletRequest setRemoteUser(final @Nullable String remoteUser) {
+    this.remoteUser = remoteUser;
+    return this;
+  }
+
+  /**
+   * Set the remote address.
+   * 
+   * @param remoteAddr The remote address.
+   * @return This request.
+   */
+  public MockHttpServletRequest setRemoteAddr(final String remoteAddr) {
+    this.remoteAddr = remoteAddr;
+    return this;
+  }
+
+  @Override
+  public @Nullable String getHeader(final String name) {
+    final List<String> values = headers.get(name);
+    return (values != null) ? values.get(0) : null;
+  }
+
+  @Override
+  public Enumeration<String> getHeaders(final String name) {
+    final List<String> values = headers.get(name);
+    return (values != null) ? Collections.enumeration(values) : Collections.emptyEnumeration();
+  }
+
+  @Override
+  public Enumeration<String> getHeaderNames() {
+    return Collections.enumeration(headers.keySet());
+  }
+
+  @Override
+  public @Nullable Object getAttribute(final String name) {
+    return attributes.get(name);
+  }
+
+  @Override
+  public Enumeration<String> getAttributeNames() {
+    return Collections.enumeration(attributes.keySet());
+  }
+
+  @Override
+  public void setAttribute(final String name, final Object value) {
+    attributes.put(name, value);
+    return;
+  }
+
+  @Override
+  public void removeAttribute(final String name) {
+    attributes.remove(name);
+    return;
+  }
+
+  @Override
+  public boolean isUserInRole(final String role) {
+    return roles.contains(role);
+  }
+
+  @Override
+  public String getMethod() {
+    return method;
+  }
+
+  @Override
+  public String getRequestURI() {
+    return requestURI;
+  }
+
+  @Override
+  public @Nullable String getQueryString() {
+    return null;
+  }
+
+  @Override
+  public String getContextPath() {
+    return "";
+  }
+
+  @Override
+  public @Nullable String getRemoteUser() {
+    return remoteUser;
+  }
+
+  @Override
+  public String getRemoteAddr() {
+    return remoteAddr;
+  }
+
+  @Override
+  public String getRemoteHost() {
+    return remoteAddr;
+  }
+
+  @Override
+  public boolean isAsyncStarted() {
+    return false;
+  }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.mock;
+
+import java.io.*;
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * A mock {@link HttpServletResponse}, recording the status, headers, and any redirect location, but discarding
+ * content (other than {@linkplain #getContentCount() counting} it). It can be {@linkplain #reset() reset} between
+ * benchmark invocations.
+ * </p>
+ * 
+ * <p>
+ * Any other method throws an {@link UnsupportedOperationException}.
+ * </p>
+ */
+@NonNullByDefault
+public class MockHttpServletResponse extends HttpServletResponseWrapper {
+  /**
+   * The header values, by (case-insensitive) name.
+   */
+  protected final Map<String,List<String>> headers = new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+  /**
+   * The response status.
+   */
+  protected int status = SC_OK;
+  /**
+   * The content type.
+   */
+  protected @Nullable String contentType = null;
+  /**
+   * The location {@linkplain #sendRedirect(String) redirected} to, if any.
+   */
+  protected @Nullable String redirectLocation = null;
+  /**
+   * Has the response been committed?
+   */
+  protected boolean committed = false;
+  /**
+   * The number of bytes of content written.
+   */
+  protected long contentCount = 0;
+  /**
+   * The {@linkplain #getOutputStream() output stream}, discarding the content written to it.
+   */
+  protected final ServletOutputStream outputStream = new ServletOutputStream() {
+
+    @Override
+    public void write(final int b) {
+      contentCount++;
+      committed = true;
+      return;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      contentCount += len;
+      committed = true;
+      return;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      throw new UnsupportedOperationException();
+    }
+
+  };
+
+  /**
+   * Construct a <code>MockHttpServletResponse</code>.
+   */
+  public MockHttpServletResponse() {
+    super(UnsupportedProxy.create(HttpServletResponse.class));
+    return;
+  }
+
+  /**
+   * Get the location {@linkplain #sendRedirect(String) redirected} to.
+   * 
+   * @return The location, or <code>null</code> if there was no redirect.
+   */
+  public @Nullable String getRedirectLocation() {
+    return redirectLocation;
+  }
+
+  /**
+   * Get the number of bytes of content written.
+   * 
+   * @return The length of the content.
+   */
+  public long getContentCount() {
+    return contentCount;
+  }
+
+  @Override
+  public void reset() {
+    headers.clear();
+    status = SC_OK;
+    contentType = null;
+    redirectLocation = null;
+    committed = false;
+    contentCount = 0;
+    return;
+  }
+
+  @Override
+  public void resetBuffer() {
+    return;
+  }
+
+  @Override
+  public boolean isCommitted() {
+    return committed;
+  }
+
+  @Override
+  public void flushBuffer() {
+    committed = true;
+    return;
+  }
+
+  @Override
+  public void setStatus(final int sc) {
+    status = sc;
+    return;
+  }
+
+  @Override
+  public int getStatus() {
+    return status;
+  }
+
+  @Override
+  public void sendError(final int sc) {
+    sendError(sc, "");
+    return;
+  }
+
+  @Override
+  public void sendError(final int sc, final String msg) {
+    status = sc;
+    committed = true;
+    return;
+  }
+
+  @Override
+  public void sendRedirect(final String location) {
+    status = SC_FOUND;
+    redirectLocation = location;
+    committed = true;
+    return;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  @Override
+  public void setContentLength(final int len) {
+    setContentLengthLong(len);
+    return;
+  }
+
+  @Override
+  public void setContentLengthLong(final long len) {
+    if (len < 0) {
+      headers.remove("Content-Length");
+    } else {
+      setHeader("Content-Length", Long.toString(len));
+    }
+    return;
+  }
+
+  @Override
+  public void setContentType(final @Nullable String type) {
+    contentType = type;
+    return;
+  }
+
+  @Override
+  public @Nullable String getContentType() {
+    return contentType;
+  }
+
+  @Override
+  public boolean containsHeader(final String name) {
+    return headers.containsKey(name);
+  }
+
+  @Override
+  public @Nullable String getHeader(final String name) {
+    final List<String> values = headers.get(name);
+    return (values != null) ? values.get(0) : null;
+  }
+
+  @Override
+  public Collection<String> getHeaders(final String name) {
+    final List<String> values = headers.get(name);
+    return (values != null) ? new ArrayList<String>(values) : Collections.emptyList();
+  }
+
+  @Override
+  public Collection<String> getHeaderNames() {
+    return new ArrayList<String>(headers.keySet());
+  }
+
+  @Override
+  public void setHeader(final String name, final String value) {
+    final List<String> values = new ArrayList<String>(1);
+    values.add(value);
+    headers.put(name, values);
+    return;
+  }
+
+  @Override
+  public void addHeader(final String name, final String value) {
+    headers.computeIfAbsent(name, (key) -> new ArrayList<String>(1)).add(value);
+    return;
+  }
+
+  @Override
+  public void setIntHeader(final String name, final int value) {
+    setHeader(name, Integer.toString(value));
+    return;
+  }
+
+  @Override
+  public void addIntHeader(final String name, final int value) {
+    addHeader(name, Integer.toString(value));
+    return;
+  }
+
+  @Override
+  public void setDateHeader(final String name, final long date) {
+    setHeader(name, Long.toString(date));
+    return;
+  }
+
+  @Override
+  public void addDateHeader(final String name, final long date) {
+    addHeader(name, Long.toString(date));
+    return;
+  }
+
+  @Override
+  public String encodeRedirectURL(final String url) {
+    return url;
+  }
+
+  @Override
+  public String encodeURL(final String url) {
+    return url;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.mock;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+
+
+/**
+ * A mock {@link ServletContext}, supporting only init parameters, attributes, the context path, and logging (which is
+ * discarded). Since it's only consulted during <code>init</code>, it's implemented using a {@linkplain Proxy proxy}.
+ */
+@NonNullByDefault
+public class MockServletContext implements InvocationHandler {
+  /**
+   * The context init parameters.
+   */
+  protected final Map<String,String> initParameters = new HashMap<String,String>();
+  /**
+   * The context attributes.
+   */
+  protected final Map<String,Object> attributes = new HashMap<String,Object>();
+
+  /**
+   * Construct a <code>MockServletContext</code>.
+   * 
+   * @param initParameters The context init parameters.
+   */
+  protected MockServletContext(final Map<String,String> initParameters) {
+    this.initParameters.putAll(initParameters);
+    return;
+  }
+
+  /**
+   * Create a {@link ServletContext} with the given init parameters. Unless specified otherwise,
+   * {@linkplain FilterMetrics#JMX_ENABLE_PARAM JMX registration} of filter metrics is disabled, so every benchmark
+   * iteration doesn't register an MBean.
+   * 
+   * @param initParameters The context init parameters.
+   * @return The context.
+   */
+  public static ServletContext create(final Map<String,String> initParameters) {
+    final MockServletContext handler = new MockServletContext(initParameters);
+    handler.initParameters.putIfAbsent(FilterMetrics.JMX_ENABLE_PARAM, "false");
+    return (ServletContext)Proxy.newProxyInstance(ServletContext.class.getClassLoader(), new Class<?>[] { ServletContext.class }, handler);
+  }
+
+  /**
+   * Create a {@link ServletContext} with no init parameters (other than {@linkplain #create(Map) disabling JMX}).
+   * 
+   * @return The context.
+   */
+  public static ServletContext create() {
+    return create(Collections.emptyMap());
+  }
+
+  @Override
+  public @Nullable Object invoke(final Object proxy, final Method method, final Object @Nullable [] args) {
+    switch (method.getName()) {
+      case "getInitParameter":
+        return initParameters.get(Objects.requireNonNull(args)[0]);
+      case "getInitParameterNames":
+        return Collections.enumeration(initParameters.keySet());
+      case "getAttribute":
+        return attributes.get(Objects.requireNonNull(args)[0]);
+      case "getAttributeNames":
+        return Collections.enumeration(attributes.keySet());
+      case "setAttribute":
+        attributes.put((String)Objects.requireNonNull(args)[0], Objects.requireNonNull(args[1]));
+        return null;
+      case "removeAttribute":
+        attributes.remove(Objects.requireNonNull(args)[0]);
+        return null;
+      case "getContextPath":
+        return "";
+      case "getServletContextName":
+        return MockServletContext.class.getSimpleName();
+      case "log":
+        return null;
+      case "hashCode":
+        return Integer.valueOf(System.identityHashCode(proxy));
+      case "equals":
+        return Boolean.valueOf(proxy == Objects.requireNonNull(args)[0]);
+      case "toString":
+        return MockServletContext.class.getSimpleName();
+    }
+    throw new UnsupportedOperationException(ServletContext.class.getSimpleName() + '.' + method.getName());
+  }
+
+}
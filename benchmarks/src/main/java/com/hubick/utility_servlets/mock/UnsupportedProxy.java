@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.mock;
+
+import java.lang.reflect.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * Create {@linkplain Proxy proxies} throwing an {@link UnsupportedOperationException} for every method, to serve as the
+ * base of a mock which implements only the methods benchmarks need.
+ */
+@NonNullByDefault
+public abstract class UnsupportedProxy {
+
+  /**
+   * Create a proxy implementing the given interface, for which every method throws.
+   * 
+   * @param <T> The type of the interface.
+   * @param type The interface to implement.
+   * @return The proxy.
+   */
+  public static <T> T create(final Class<T> type) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "hashCode":
+            return Integer.valueOf(System.identityHashCode(proxy));
+          case "equals":
+            return Boolean.valueOf(proxy == args[0]);
+          case "toString":
+            return type.getSimpleName() + '@' + Integer.toHexString(System.identityHashCode(proxy));
+        }
+      }
+      throw new UnsupportedOperationException(type.getSimpleName() + '.' + method.getName());
+    }));
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import com.hubick.utility_servlets.mock.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * Benchmarks for {@link LocaleUserRoleFilter} with <code>Accept-Language</code> headers listing a varying number of
+ * languages, checking a role which matches the last of them, and one which matches none.
+ */
+@NonNullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocaleUserRoleFilterBenchmark {
+  /**
+   * Language tags to build the header from.
+   */
+  protected static final String[] LANGUAGES = Locale.getISOLanguages();
+  /**
+   * The number of languages listed in the <code>Accept-Language</code> header.
+   */
+  @Param({ "1", "8", "64" })
+  public int languageCount = 1;
+  /**
+   * The filter.
+   */
+  protected LocaleUserRoleFilter filter = new LocaleUserRoleFilter();
+  /**
+   * The request.
+   */
+  protected MockHttpServletRequest request = new MockHttpServletRequest();
+  /**
+   * The response.
+   */
+  protected MockHttpServletResponse response = new MockHttpServletResponse();
+  /**
+   * A role matching the last listed language.
+   */
+  protected String lastRole = "locale-en";
+
+  /**
+   * Configure the filter, and build the header.
+   */
+  @Setup
+  public void setup() {
+    filter = new LocaleUserRoleFilter();
+    filter.init(new MockFilterConfig("locale", Collections.emptyMap()));
+    final StringBuilder acceptLanguage = new StringBuilder();
+    for (int i = 0; i < languageCount; i++) {
+      if (i > 0) acceptLanguage.append(", ");
+      final String language = LANGUAGES[i % LANGUAGES.length];
+      acceptLanguage.append(language).append('-').append(language.toUpperCase(Locale.ROOT));
+      if (i > 0) acceptLanguage.append(";q=0.").append(Math.max(1, 9 - (i * 8 / languageCount)));
+    }
+    final String lastLanguage = LANGUAGES[(languageCount - 1) % LANGUAGES.length];
+    lastRole = "locale-" + lastLanguage;
+    request = new MockHttpServletRequest().addHeader("Accept-Language", acceptLanguage.toString());
+    return;
+  }
+
+  /**
+   * Destroy the filter.
+   */
+  @TearDown
+  public void tearDown() {
+    filter.destroy();
+    return;
+  }
+
+  /**
+   * Filter a request, checking for a matching and a non-matching locale role.
+   * 
+   * @param blackhole The blackhole to consume the results.
+   * @throws ServletException If thrown by the filter.
+   * @throws IOException If thrown by the filter.
+   */
+  @Benchmark
+  public void doFilter(final Blackhole blackhole) throws ServletException, IOException {
+    filter.doFilter(request, response, (servletRequest, servletResponse) -> {
+      final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+      blackhole.consume(httpServletRequest.isUserInRole(lastRole));
+      blackhole.consume(httpServletRequest.isUserInRole("locale-zz"));
+    });
+    return;
+  }
+
+}
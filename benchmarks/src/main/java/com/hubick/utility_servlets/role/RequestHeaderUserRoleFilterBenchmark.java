@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import com.hubick.utility_servlets.mock.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * Benchmarks for {@link RequestHeaderUserRoleFilter} matching a <code>User-Agent</code> header against a varying
+ * number of patterns, with the role cache both enabled and disabled.
+ */
+@NonNullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestHeaderUserRoleFilterBenchmark {
+  /**
+   * The <code>User-Agent</code> header value examined.
+   */
+  protected static final String USER_AGENT = "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Mobile Safari/537.36";
+  /**
+   * The number of patterns the filter is configured with (one of which will match).
+   */
+  @Param({ "1", "16", "128" })
+  public int patternCount = 1;
+  /**
+   * The {@linkplain RequestHeaderUserRoleFilter#CACHE_SIZE_PROP cache size}, where <code>0</code> disables caching.
+   */
+  @Param({ "0", "1000" })
+  public int cacheSize = 0;
+  /**
+   * The filter.
+   */
+  protected RequestHeaderUserRoleFilter filter = new RequestHeaderUserRoleFilter();
+  /**
+   * The request.
+   */
+  protected MockHttpServletRequest request = new MockHttpServletRequest();
+  /**
+   * The response.
+   */
+  protected MockHttpServletResponse response = new MockHttpServletResponse();
+
+  /**
+   * Configure the filter.
+   */
+  @Setup
+  public void setup() {
+    final String prefix = RequestHeaderUserRoleFilter.class.getSimpleName() + ".user-agent.";
+    final Map<String,String> initParameters = new HashMap<String,String>();
+    initParameters.put(prefix + RequestHeaderUserRoleFilter.HEADER_NAME_PROP, "User-Agent");
+    initParameters.put(prefix + RequestHeaderUserRoleFilter.CACHE_SIZE_PROP, Integer.toString(cacheSize));
+    for (int i = 0; i < patternCount - 1; i++) {
+      initParameters.put(prefix + ".*\\bdevice" + i + "\\b.*", "device" + i);
+    }
+    initParameters.put(prefix + ".*\\bandroid\\b.*mobile.*", "mobile");
+    filter = new RequestHeaderUserRoleFilter();
+    filter.init(new MockFilterConfig("user-agent", initParameters));
+    request = new MockHttpServletRequest().addHeader("User-Agent", USER_AGENT);
+    return;
+  }
+
+  /**
+   * Destroy the filter.
+   */
+  @TearDown
+  public void tearDown() {
+    filter.destroy();
+    return;
+  }
+
+  /**
+   * Filter a request, checking for the matched role.
+   * 
+   * @param blackhole The blackhole to consume the results.
+   * @throws ServletException If thrown by the filter.
+   * @throws IOException If thrown by the filter.
+   */
+  @Benchmark
+  public void doFilter(final Blackhole blackhole) throws ServletException, IOException {
+    filter.doFilter(request, response, (servletRequest, servletResponse) -> blackhole.consume(((HttpServletRequest)servletRequest).isUserInRole("mobile")));
+    return;
+  }
+
+}
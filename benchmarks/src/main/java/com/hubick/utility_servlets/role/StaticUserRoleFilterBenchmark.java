@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import com.hubick.utility_servlets.mock.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * Benchmarks for {@link StaticUserRoleFilter}, configured with a varying number of roles, including the
+ * {@linkplain HttpServletRequest#isUserInRole(String) role checks} made downstream.
+ */
+@NonNullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StaticUserRoleFilterBenchmark {
+  /**
+   * The number of roles the filter is configured with.
+   */
+  @Param({ "1", "8", "64" })
+  public int roleCount = 1;
+  /**
+   * The filter.
+   */
+  protected StaticUserRoleFilter filter = new StaticUserRoleFilter();
+  /**
+   * The request.
+   */
+  protected MockHttpServletRequest request = new MockHttpServletRequest();
+  /**
+   * The response.
+   */
+  protected MockHttpServletResponse response = new MockHttpServletResponse();
+  /**
+   * The last role the filter is configured with.
+   */
+  protected String lastRole = "role0";
+
+  /**
+   * Configure the filter.
+   */
+  @Setup
+  public void setup() {
+    final String roles = IntStream.range(0, roleCount).mapToObj((i) -> "static-role" + i).collect(Collectors.joining(","));
+    lastRole = "static-role" + (roleCount - 1);
+    filter = new StaticUserRoleFilter();
+    filter.init(new MockFilterConfig("static", Map.of(StaticUserRoleFilter.class.getSimpleName() + ".static." + StaticUserRoleFilter.ROLES_PROP, roles)));
+    return;
+  }
+
+  /**
+   * Destroy the filter.
+   */
+  @TearDown
+  public void tearDown() {
+    filter.destroy();
+    return;
+  }
+
+  /**
+   * Filter a request, checking for the last configured role, and one which isn't granted.
+   * 
+   * @param blackhole The blackhole to consume the results.
+   * @throws ServletException If thrown by the filter.
+   * @throws IOException If thrown by the filter.
+   */
+  @Benchmark
+  public void doFilter(final Blackhole blackhole) throws ServletException, IOException {
+    filter.doFilter(request, response, (servletRequest, servletResponse) -> {
+      final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+      blackhole.consume(httpServletRequest.isUserInRole(lastRole));
+      blackhole.consume(httpServletRequest.isUserInRole("admin"));
+    });
+    return;
+  }
+
+}
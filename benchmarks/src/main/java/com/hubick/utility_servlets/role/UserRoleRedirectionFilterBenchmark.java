@@ -0,0 +1,95 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.openjdk.jmh.annotations.*;
+
+import com.hubick.utility_servlets.mock.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * Benchmarks for {@link UserRoleRedirectionFilter} dispatch, with a varying number of role mappings, for a user in the
+ * role of only one of them (granted by a {@link UserRoleRequestWrapper}).
+ */
+@NonNullByDefault
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserRoleRedirectionFilterBenchmark {
+  /**
+   * The number of role mappings the filter is configured with.
+   */
+  @Param({ "1", "16", "64" })
+  public int mappingCount = 1;
+  /**
+   * The filter.
+   */
+  protected UserRoleRedirectionFilter filter = new UserRoleRedirectionFilter();
+  /**
+   * The request, with the user in the role of one mapping.
+   */
+  protected HttpServletRequest request = new MockHttpServletRequest();
+  /**
+   * The response.
+   */
+  protected MockHttpServletResponse response = new MockHttpServletResponse();
+
+  /**
+   * Configure the filter.
+   */
+  @Setup
+  public void setup() {
+    final String prefix = UserRoleRedirectionFilter.class.getSimpleName() + ".redirect.";
+    final Map<String,String> initParameters = new HashMap<String,String>();
+    for (int i = 0; i < mappingCount; i++) {
+      initParameters.put(prefix + "redirect-role" + i, "/home/role" + i + '/');
+    }
+    initParameters.put(prefix + UserRoleRedirectionFilter.DEFAULT_LOCATION_PROP, "/home/");
+    filter = new UserRoleRedirectionFilter();
+    filter.init(new MockFilterConfig("redirect", initParameters));
+    request = UserRoleRequestWrapper.addRole(new MockHttpServletRequest().setRemoteUser("user"), "redirect-role" + (mappingCount / 2));
+    return;
+  }
+
+  /**
+   * Destroy the filter.
+   */
+  @TearDown
+  public void tearDown() {
+    filter.destroy();
+    return;
+  }
+
+  /**
+   * Filter a request, which will be redirected.
+   * 
+   * @return The redirect location.
+   * @throws ServletException If thrown by the filter.
+   * @throws IOException If thrown by the filter.
+   */
+  @Benchmark
+  public @Nullable String doFilter() throws ServletException, IOException {
+    response.reset();
+    filter.doFilter(request, response, (servletRequest, servletResponse) -> {
+      throw new IllegalStateException("Not redirected");
+    });
+    return response.getRedirectLocation();
+  }
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Size response buffers to fit the responses actually produced, so that typical responses are sent with an exact
+ * <code>Content-Length</code> in a single write, rather than going out chunked in many small flushes, while small ones
+ * don't pay for a needlessly large buffer.
+ * </p>
+ * 
+ * <p>
+ * The sizes of the responses observed for each {@linkplain HttpServletMapping#getPattern() URL pattern} (or servlet
+ * path, where the request has no mapping) are tracked in a small histogram of power of two size classes. Before the
+ * chain runs, the {@linkplain #PERCENTILE_PROP percentile} size class is the buffer size used. Where that's no larger
+ * than the container's own (already allocated) buffer, the container's buffer is
+ * {@linkplain ServletResponse#setBufferSize(int) shrunk} to it (for containers which allocate on demand), and the
+ * content is streamed straight into it (counted, but not copied), the container sending an exact
+ * <code>Content-Length</code> itself if the whole response fits. Where it's larger, rather than have the container
+ * allocate a larger buffer for every request, the content is buffered up to that size in a {@linkplain BufferPool
+ * pooled} buffer. If the whole response fits, it's written with an exact <code>Content-Length</code>, otherwise it's
+ * streamed through the container's buffer.
+ * </p>
+ */
+@NonNullByDefault
+public class AdaptiveBufferFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AdaptiveBufferFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the proportion of the responses for a URL pattern the buffer should fit. If
+   * not set, defaults to <code>0.9</code>.
+   */
+  public static final String PERCENTILE_PROP = "Percentile";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AdaptiveBufferFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the buffer size to use for a URL pattern until enough of its responses have
+   * been observed. If not set, defaults to <code>8192</code>.
+   */
+  public static final String INITIAL_BUFFER_SIZE_PROP = "InitialBufferSize";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AdaptiveBufferFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the largest buffer size to use. If not set, defaults to
+   * <code>1048576</code>.
+   */
+  public static final String MAX_BUFFER_SIZE_PROP = "MaxBufferSize";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AdaptiveBufferFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the maximum total size of the idle buffers retained in the pool. If not set,
+   * defaults to <code>16777216</code>.
+   */
+  public static final String MAX_POOLED_BYTES_PROP = "MaxPooledBytes";
+  /**
+   * The maximum number of URL patterns to track sizes for.
+   */
+  protected static final int MAX_PATTERNS = 1000;
+  /**
+   * @see #PERCENTILE_PROP
+   */
+  protected double percentile = 0.9;
+  /**
+   * @see #INITIAL_BUFFER_SIZE_PROP
+   */
+  protected int initialBufferSize = 8192;
+  /**
+   * @see #MAX_BUFFER_SIZE_PROP
+   */
+  protected int maxBufferSize = 1048576;
+  /**
+   * The pool buffers are allocated from.
+   */
+  protected BufferPool bufferPool = new BufferPool(1048576, 16777216);
+  /**
+   * The histogram of response sizes observed for each URL pattern.
+   */
+  protected BoundedCache<String,SizeHistogram> histograms = new BoundedCache<String,SizeHistogram>(MAX_PATTERNS);
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of responses which fit their buffer.
+   */
+  protected LongAdder fittedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of responses which overflowed their buffer.
+   */
+  protected LongAdder overflowedCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    fittedCounter = metrics.counter("fitted");
+    overflowedCounter = metrics.counter("overflowed");
+    final String prefix = AdaptiveBufferFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    percentile = getDoubleInitParameter(filterConfig, prefix + PERCENTILE_PROP, 0.9);
+    if (percentile > 1) throw new IllegalArgumentException("Invalid " + prefix + PERCENTILE_PROP + ": '" + percentile + '\'');
+    maxBufferSize = (int)Math.min(1 << 30, getDoubleInitParameter(filterConfig, prefix + MAX_BUFFER_SIZE_PROP, 1048576));
+    initialBufferSize = (int)Math.min(maxBufferSize, getDoubleInitParameter(filterConfig, prefix + INITIAL_BUFFER_SIZE_PROP, 8192));
+    bufferPool = new BufferPool(maxBufferSize, (long)getDoubleInitParameter(filterConfig, prefix + MAX_POOLED_BYTES_PROP, 16777216));
+    return;
+  }
+
+  /**
+   * Get the value of a numeric {@linkplain FilterConfig#getInitParameter(String) configuration parameter}.
+   * 
+   * @param filterConfig The filter configuration.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to return if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws IllegalArgumentException If the parameter value is not a valid positive number.
+   */
+  protected static double getDoubleInitParameter(final FilterConfig filterConfig, final String name, final double defaultValue) throws IllegalArgumentException {
+    final String value = filterConfig.getInitParameter(name);
+    if (value == null) return defaultValue;
+    final double result;
+    try {
+      result = Double.parseDouble(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'', nfe);
+    }
+    if ((!(result > 0)) || (Double.isInfinite(result))) throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'');
+    return result;
+  }
+
+  /**
+   * Get the URL pattern the given <code>request</code> was mapped by, which response sizes are tracked under.
+   * 
+   * @param request The request.
+   * @return The {@linkplain HttpServletMapping#getPattern() pattern}, or the servlet path if there is none.
+   */
+  protected static String getPattern(final HttpServletRequest request) {
+    final HttpServletMapping mapping = request.getHttpServletMapping();
+    final String pattern = (mapping != null) ? mapping.getPattern() : null;
+    return ((pattern != null) && (!pattern.isEmpty())) ? pattern : request.getServletPath();
+  }
+
+  /**
+   * Get the buffer size to use for responses to the given <code>histogram</code>'s URL pattern.
+   * 
+   * @param histogram The histogram of response sizes.
+   * @return The buffer size.
+   */
+  protected int getBufferSize(final SizeHistogram histogram) {
+    final long size = histogram.getPercentile(percentile);
+    return (size > 0) ? (int)Math.min(maxBufferSize, size) : initialBufferSize;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+
+    // HEAD responses have no content to measure, and mustn't be given a zero Content-Length.
+    if ((!"GET".equals(httpServletRequest.getMethod())) || (httpServletRequest.getDispatcherType() != DispatcherType.REQUEST) || (httpServletResponse.isCommitted())) {
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      metrics.record(start, chainNanos);
+      return;
+    }
+
+    final SizeHistogram histogram = histograms.get(getPattern(httpServletRequest), (pattern) -> new SizeHistogram());
+    final int bufferSize = getBufferSize(histogram);
+    final boolean containerFits = bufferSize <= httpServletResponse.getBufferSize();
+    if (containerFits) {
+      try {
+        httpServletResponse.setBufferSize(bufferSize);
+      } catch (IllegalStateException ise) {} // Something was already written by an earlier filter.
+    }
+    // A zero threshold streams straight through to the container's buffer, which already fits the learned size.
+    final AdaptiveBufferResponseWrapper responseWrapper = new AdaptiveBufferResponseWrapper(httpServletResponse, containerFits ? 0 : bufferSize, bufferPool);
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, responseWrapper);
+    if (!responseWrapper.deferIfAsync(servletRequest, () -> record(histogram, responseWrapper, bufferSize))) {
+      responseWrapper.complete();
+      record(histogram, responseWrapper, bufferSize);
+    }
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  /**
+   * Record the size of a completed response.
+   * 
+   * @param histogram The histogram of response sizes for the URL pattern of the request.
+   * @param responseWrapper The completed response.
+   * @param bufferSize The buffer size used for the response.
+   */
+  protected void record(final SizeHistogram histogram, final AdaptiveBufferResponseWrapper responseWrapper, final int bufferSize) {
+    if (responseWrapper.isBypassed()) return;
+    histogram.record(responseWrapper.getWrittenLength());
+    if (responseWrapper.getWrittenLength() > bufferSize) {
+      overflowedCounter.increment();
+    } else {
+      fittedCounter.increment();
+    }
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    histograms.clear();
+    bufferPool.clear();
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * A histogram of response sizes, counted in power of two size classes (the same as those of a {@link BufferPool}).
+   * Counts are halved once enough have been recorded, so the histogram follows changes in the responses. Updates are
+   * lock-free, and may occasionally lose a count to a concurrent halving, which is harmless for sizing buffers.
+   */
+  protected static class SizeHistogram {
+    /**
+     * The number of sizes which must be recorded before a percentile is reported.
+     */
+    protected static final long MINIMUM_SAMPLES = 16;
+    /**
+     * The number of sizes recorded after which the counts are halved.
+     */
+    protected static final long DECAY_SAMPLES = 1024;
+    /**
+     * The number of size classes, the largest of which holds sizes up to 1GiB.
+     */
+    protected static final int SIZE_CLASSES = 21;
+    /**
+     * The number of sizes recorded in each class, indexed by class.
+     */
+    protected final AtomicLongArray counts = new AtomicLongArray(SIZE_CLASSES);
+    /**
+     * The total of the {@link #counts}.
+     */
+    protected final AtomicLong total = new AtomicLong();
+
+    /**
+     * Get the size class of the given <code>size</code>.
+     * 
+     * @param size The size.
+     * @return The index of the class, whose upper bound is {@link BufferPool#MINIMUM_CLASS_SIZE} shifted left by it.
+     */
+    protected int getSizeClass(final long size) {
+      if (size <= BufferPool.MINIMUM_CLASS_SIZE) return 0;
+      final int sizeClass = (Long.SIZE - Long.numberOfLeadingZeros(size - 1)) - (Integer.SIZE - Integer.numberOfLeadingZeros(BufferPool.MINIMUM_CLASS_SIZE - 1));
+      return Math.min(sizeClass, SIZE_CLASSES - 1);
+    }
+
+    /**
+     * Record a response size.
+     * 
+     * @param size The size of the response, in bytes.
+     */
+    public void record(final long size) {
+      counts.incrementAndGet(getSizeClass(size));
+      final long total = this.total.incrementAndGet();
+      if ((total >= DECAY_SAMPLES) && (this.total.compareAndSet(total, 0))) {
+        long remaining = 0;
+        for (int i = 0; i < counts.length(); i++) {
+          final long count = counts.get(i);
+          counts.addAndGet(i, -(count - (count / 2)));
+          remaining += count / 2;
+        }
+        this.total.addAndGet(remaining);
+      }
+      return;
+    }
+
+    /**
+     * Get the upper bound of the size class containing the given <code>percentile</code> of the recorded sizes.
+     * 
+     * @param percentile The percentile, as a proportion.
+     * @return The size, or <code>-1</code> if not enough sizes have been recorded yet.
+     */
+    public long getPercentile(final double percentile) {
+      final long total = this.total.get();
+      if (total < MINIMUM_SAMPLES) return -1;
+      final long target = (long)Math.ceil(total * percentile);
+      long cumulative = 0;
+      for (int i = 0; i < counts.length(); i++) {
+        cumulative += counts.get(i);
+        if (cumulative >= target) return (long)BufferPool.MINIMUM_CLASS_SIZE << i;
+      }
+      return (long)BufferPool.MINIMUM_CLASS_SIZE << (counts.length() - 1);
+    }
+
+  } // SizeHistogram
+
+  /**
+   * Wraps an {@link HttpServletResponse} to buffer its content in {@linkplain BufferPool pooled} buffers, while
+   * counting its total length.
+   */
+  protected static class AdaptiveBufferResponseWrapper extends BufferingResponseWrapper {
+    /**
+     * The pool buffers are allocated from.
+     */
+    protected final BufferPool bufferPool;
+    /**
+     * The total number of bytes written, whether buffered or not.
+     */
+    protected long writtenLength = 0;
+
+    /**
+     * Construct an <code>AdaptiveBufferResponseWrapper</code>.
+     * 
+     * @param response The response being wrapped.
+     * @param threshold The maximum number of bytes to buffer, which is also the size of the first buffer allocated.
+     * @param bufferPool The pool buffers are allocated from.
+     */
+    public AdaptiveBufferResponseWrapper(final HttpServletResponse response, final int threshold, final BufferPool bufferPool) {
+      super(response, threshold);
+      this.bufferPool = bufferPool;
+      return;
+    }
+
+    /**
+     * Get the total number of bytes written.
+     * 
+     * @return The length of the content.
+     */
+    public long getWrittenLength() {
+      return writtenLength;
+    }
+
+    @Override
+    protected byte[] allocateBuffer(final int minimumCapacity) {
+      return bufferPool.acquire(Math.max(minimumCapacity, threshold));
+    }
+
+    @Override
+    protected void releaseBuffer(final byte[] buffer) {
+      bufferPool.release(buffer);
+      return;
+    }
+
+    @Override
+    protected void write(final byte[] b, final int off, final int len) throws IOException {
+      if (!bypassed) writtenLength += len;
+      super.write(b, off, len);
+      return;
+    }
+
+    @Override
+    protected void bufferReset() {
+      writtenLength = 0;
+      return;
+    }
+
+  } // AdaptiveBufferResponseWrapper
+
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Free container threads from requests waiting to run blocking downstream code, by bounding the number of requests
+ * running the rest of the filter chain at once to a {@linkplain #CONCURRENCY_PROP concurrency} limit, and
+ * {@linkplain ServletRequest#startAsync(ServletRequest, ServletResponse) parking} any beyond it asynchronously, in a
+ * {@linkplain #QUEUE_CAPACITY_PROP bounded} queue, rather than on a blocked thread. As each running request's chain
+ * returns, the next queued request is {@linkplain AsyncContext#dispatch() dispatched} back into the container, which
+ * runs the chain (on one of its own threads, which are virtual threads if the container is configured to use them).
+ * </p>
+ * 
+ * <p>
+ * The chain is never run on a thread of this filter's own, since the container's filter chain may only be used by the
+ * thread it was invoked on. The request and response passed to this filter (including any
+ * {@linkplain com.hubick.utility_servlets.role.UserRoleRequestWrapper role} or other wrappers applied before it) are
+ * supplied to the {@link AsyncContext}, so the dispatched chain sees exactly what it would have without queueing. If a
+ * queued request isn't dispatched within the {@linkplain #TIMEOUT_PROP timeout} (enforced by the container), a
+ * {@linkplain HttpServletResponse#SC_SERVICE_UNAVAILABLE service unavailable} error is sent, as it is if the queue is
+ * full. Once dispatched, a request runs exactly as it would synchronously, including any asynchronous processing the
+ * downstream code starts itself. The time each request spends queued is recorded as the "queue"
+ * {@linkplain FilterMetrics#histogram(String) latency}.
+ * </p>
+ * 
+ * <p>
+ * This filter must be mapped for both the {@linkplain DispatcherType#REQUEST REQUEST} and
+ * {@linkplain DispatcherType#ASYNC ASYNC} dispatcher types, and should be mapped <em>before</em> any other filters
+ * which are also mapped for <code>ASYNC</code>, since those will otherwise run again for each dispatched request.
+ * Filters mapped before it (such as a {@link ConcurrencyLimitFilter}, shedding requests before they're queued) must
+ * {@linkplain ServletRequest#isAsyncStarted() handle} the chain returning before the response is complete. Every filter and servlet the request passes through must be declared as
+ * <code>async-supported</code>, otherwise the chain is simply run on the container thread. Requests which aren't an
+ * initial <code>REQUEST</code> dispatch (or one dispatched by this filter) are also run immediately, without counting
+ * against the limit.
+ * </p>
+ */
+@NonNullByDefault
+public class AsyncOffloadFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AsyncOffloadFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>')
+   * whose value specifies the number of milliseconds a request may wait in the queue before timing out. If not set,
+   * defaults to <code>30000</code>.
+   */
+  public static final String TIMEOUT_PROP = "Timeout";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AsyncOffloadFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>')
+   * whose value specifies the maximum number of requests which may run the rest of the filter chain at once. If not
+   * set, defaults to <code>200</code>.
+   */
+  public static final String CONCURRENCY_PROP = "Concurrency";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>AsyncOffloadFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>')
+   * whose value specifies the maximum number of requests which may wait in the queue, beyond which a
+   * {@linkplain HttpServletResponse#SC_SERVICE_UNAVAILABLE service unavailable} error is sent. If not set, defaults to
+   * <code>1000</code>.
+   */
+  public static final String QUEUE_CAPACITY_PROP = "QueueCapacity";
+  /**
+   * The state of a {@link QueuedRequest} waiting in the {@link #queue}.
+   */
+  protected static final int QUEUED = 0;
+  /**
+   * The state of a {@link QueuedRequest} which has been dispatched.
+   */
+  protected static final int DISPATCHED = 1;
+  /**
+   * The state of a {@link QueuedRequest} which timed out or failed before being dispatched.
+   */
+  protected static final int FAILED = 2;
+  /**
+   * @see #TIMEOUT_PROP
+   */
+  protected long timeout = 30000;
+  /**
+   * @see #CONCURRENCY_PROP
+   */
+  protected int concurrency = 200;
+  /**
+   * @see #QUEUE_CAPACITY_PROP
+   */
+  protected int queueCapacity = 1000;
+  /**
+   * The name of the request attribute marking a request dispatched by this filter, which holds one of the
+   * {@link #running} permits.
+   */
+  protected String permitAttribute = AsyncOffloadFilter.class.getName() + ".permit";
+  /**
+   * The number of requests holding a permit to run the rest of the filter chain.
+   */
+  protected final AtomicInteger running = new AtomicInteger();
+  /**
+   * The requests waiting for a permit.
+   */
+  protected final ConcurrentLinkedQueue<QueuedRequest> queue = new ConcurrentLinkedQueue<QueuedRequest>();
+  /**
+   * The number of requests in the {@link #queue}.
+   */
+  protected final AtomicInteger queueLength = new AtomicInteger();
+  /**
+   * The servlet context, for logging.
+   */
+  protected @Nullable ServletContext servletContext = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#histogram(String) latency} of requests waiting in the {@link #queue}.
+   */
+  protected LatencyHistogram queueLatency = new LatencyHistogram();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests run immediately, without queueing.
+   */
+  protected LongAdder inlineCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests which timed out in the queue.
+   */
+  protected LongAdder timeoutCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests which failed in the queue.
+   */
+  protected LongAdder errorCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests rejected by a full queue.
+   */
+  protected LongAdder rejectedCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    queueLatency = metrics.histogram("queue");
+    inlineCounter = metrics.counter("inline");
+    timeoutCounter = metrics.counter("timeout");
+    errorCounter = metrics.counter("error");
+    rejectedCounter = metrics.counter("rejected");
+    servletContext = filterConfig.getServletContext();
+    final String prefix = AsyncOffloadFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    timeout = getLongInitParameter(filterConfig, prefix + TIMEOUT_PROP, 30000);
+    concurrency = (int)getLongInitParameter(filterConfig, prefix + CONCURRENCY_PROP, 200);
+    queueCapacity = (int)getLongInitParameter(filterConfig, prefix + QUEUE_CAPACITY_PROP, 1000);
+    permitAttribute = AsyncOffloadFilter.class.getName() + '.' + filterConfig.getFilterName() + ".permit";
+    return;
+  }
+
+  /**
+   * Get the value of a numeric {@linkplain FilterConfig#getInitParameter(String) configuration parameter}.
+   * 
+   * @param filterConfig The filter configuration.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to return if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws IllegalArgumentException If the parameter value is not a valid positive number.
+   */
+  protected static long getLongInitParameter(final FilterConfig filterConfig, final String name, final long defaultValue) throws IllegalArgumentException {
+    final String value = filterConfig.getInitParameter(name);
+    if (value == null) return defaultValue;
+    final long result;
+    try {
+      result = Long.parseLong(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'', nfe);
+    }
+    if (result <= 0) throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'');
+    return result;
+  }
+
+  /**
+   * Acquire one of the {@link #running} permits, if one is available.
+   * 
+   * @return <code>true</code> if a permit was acquired.
+   */
+  protected boolean tryAcquire() {
+    while (true) {
+      final int current = running.get();
+      if (current >= concurrency) return false;
+      if (running.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  /**
+   * Release a {@link #running} permit, and {@linkplain #drain() dispatch} any queued requests it frees up.
+   */
+  protected void release() {
+    running.decrementAndGet();
+    drain();
+    return;
+  }
+
+  /**
+   * Dispatch queued requests for as long as there are permits available for them.
+   */
+  protected void drain() {
+    while ((queue.peek() != null) && (tryAcquire())) {
+      final QueuedRequest queuedRequest = queue.poll();
+      if (queuedRequest != null) queueLength.decrementAndGet();
+      if ((queuedRequest == null) || (!queuedRequest.dispatch())) running.decrementAndGet(); // Return the unused permit, and try again.
+    }
+    return;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final DispatcherType dispatcherType = servletRequest.getDispatcherType();
+    final boolean permitted;
+    if ((dispatcherType == DispatcherType.ASYNC) && (servletRequest.getAttribute(permitAttribute) != null)) {
+      servletRequest.removeAttribute(permitAttribute);
+      permitted = true; // Dispatched from the queue, holding the permit acquired for it.
+    } else if ((dispatcherType != DispatcherType.REQUEST) || (!servletRequest.isAsyncSupported())) {
+      permitted = false;
+    } else if ((queueLength.get() == 0) && (tryAcquire())) {
+      inlineCounter.increment();
+      permitted = true;
+    } else {
+      enqueue(servletRequest, servletResponse);
+      metrics.record(start, 0);
+      return;
+    }
+    long chainNanos = 0;
+    try {
+      chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    } finally {
+      if (permitted) release();
+    }
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  /**
+   * Park the request in the {@link #queue}, or reject it if the queue is full.
+   * 
+   * @param servletRequest The request.
+   * @param servletResponse The response.
+   * @throws IOException If there was a problem sending the rejection.
+   */
+  protected void enqueue(final ServletRequest servletRequest, final ServletResponse servletResponse) throws IOException {
+    if (queueLength.incrementAndGet() > queueCapacity) {
+      queueLength.decrementAndGet();
+      rejectedCounter.increment();
+      ((HttpServletResponse)servletResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    final AsyncContext asyncContext = servletRequest.startAsync(servletRequest, servletResponse);
+    asyncContext.setTimeout(timeout);
+    final QueuedRequest queuedRequest = new QueuedRequest(asyncContext);
+    asyncContext.addListener(queuedRequest);
+    queue.add(queuedRequest);
+    drain(); // In case a permit was released after ours was refused.
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    for (QueuedRequest queuedRequest = queue.poll(); queuedRequest != null; queuedRequest = queue.poll()) {
+      queueLength.decrementAndGet();
+      queuedRequest.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE, null);
+    }
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * A request waiting in the {@link #queue}, which listens for its {@link AsyncContext} timing out or failing.
+   */
+  protected class QueuedRequest implements AsyncListener {
+    /**
+     * The asynchronous context of the request.
+     */
+    protected final AsyncContext asyncContext;
+    /**
+     * The {@linkplain System#nanoTime() time} the request was queued.
+     */
+    protected final long queued = System.nanoTime();
+    /**
+     * The state of the request, being {@link #QUEUED}, {@link #DISPATCHED}, or {@link #FAILED}.
+     */
+    protected final AtomicInteger state = new AtomicInteger(QUEUED);
+
+    /**
+     * Construct a <code>QueuedRequest</code>.
+     * 
+     * @param asyncContext The asynchronous context of the request.
+     */
+    public QueuedRequest(final AsyncContext asyncContext) {
+      this.asyncContext = asyncContext;
+      return;
+    }
+
+    /**
+     * Dispatch the request back into the container, passing it the permit acquired for it.
+     * 
+     * @return <code>true</code> if the request was dispatched, or <code>false</code> if it had already failed (so the
+     * permit wasn't used).
+     */
+    public boolean dispatch() {
+      if (!state.compareAndSet(QUEUED, DISPATCHED)) return false;
+      queueLatency.record(System.nanoTime() - queued);
+      try {
+        asyncContext.getRequest().setAttribute(permitAttribute, Boolean.TRUE);
+        asyncContext.dispatch();
+      } catch (IllegalStateException ise) {
+        return false; // Completed by the container in the meantime.
+      }
+      return true;
+    }
+
+    /**
+     * Complete the request with an error, unless it has already been dispatched.
+     * 
+     * @param status The status code to send, if the response isn't yet committed.
+     * @param cause The cause of the failure, to be logged, if there is one.
+     * @return <code>true</code> if the request was failed.
+     */
+    public boolean fail(final int status, final @Nullable Throwable cause) {
+      if (!state.compareAndSet(QUEUED, FAILED)) return false;
+      if (queue.remove(this)) queueLength.decrementAndGet();
+      final ServletContext servletContext = AsyncOffloadFilter.this.servletContext;
+      if ((cause != null) && (servletContext != null)) servletContext.log("Failed queued request", cause);
+      try {
+        final ServletResponse response = asyncContext.getResponse();
+        if ((!response.isCommitted()) && (response instanceof HttpServletResponse)) ((HttpServletResponse)response).sendError(status);
+      } catch (IOException | IllegalStateException e) {}
+      try {
+        asyncContext.complete();
+      } catch (IllegalStateException ise) {}
+      return true;
+    }
+
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+      if (fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE, null)) timeoutCounter.increment();
+      return;
+    }
+
+    @Override
+    public void onError(final AsyncEvent event) {
+      if (fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, event.getThrowable())) errorCounter.increment();
+      return;
+    }
+
+    @Override
+    public void onComplete(final AsyncEvent event) {
+      if (state.compareAndSet(QUEUED, FAILED)) { // Completed by the container while still queued.
+        if (queue.remove(this)) queueLength.decrementAndGet();
+      }
+      return;
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+      return;
+    }
+
+  } // QueuedRequest
+
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Compress responses using the <code>gzip</code> or <code>deflate</code> content coding, as negotiated by the request's
+ * <code>Accept-Encoding</code> header.
+ * </p>
+ * 
+ * <p>
+ * Content is buffered up to a {@linkplain #THRESHOLD_PROP threshold}, and responses which fit within it are sent
+ * uncompressed (with an exact <code>Content-Length</code>), since compressing them isn't worth the CPU. Larger
+ * responses are compressed as they're streamed, unless they have an {@linkplain #EXCLUDED_TYPES_PROP excluded} content
+ * type, already have a <code>Content-Encoding</code>, or are a partial (<code>206</code>) response.
+ * {@link Deflater} instances are {@linkplain DeflaterPool pooled}.
+ * </p>
+ * 
+ * <pre>
+ * &lt;filter&gt;
+ *   &lt;filter-name&gt;Compression&lt;/filter-name&gt;
+ *   &lt;filter-class&gt;com.hubick.utility_servlets.CompressionFilter&lt;/filter-class&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;CompressionFilter.Compression.Threshold&lt;/param-name&gt;
+ *     &lt;param-value&gt;2048&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ * &lt;/filter&gt;
+ * &lt;filter-mapping&gt;
+ *   &lt;filter-name&gt;Compression&lt;/filter-name&gt;
+ *   &lt;url-pattern&gt;/*&lt;/url-pattern&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre>
+ */
+@NonNullByDefault
+public class CompressionFilter implements Filter {
+  /**
+   * The key to an integer config option specifying the size (in bytes) a response must exceed to be compressed
+   * (default <code>1024</code>).
+   */
+  public static final String THRESHOLD_PROP = "Threshold";
+  /**
+   * The key to an integer config option specifying the compression level, from <code>1</code> (fastest) to
+   * <code>9</code> (smallest), with the default being <code>6</code>.
+   */
+  public static final String LEVEL_PROP = "Level";
+  /**
+   * The key to an integer config option specifying the maximum number of idle {@link Deflater} instances to pool for
+   * each content coding (default twice the number of processors).
+   */
+  public static final String POOL_SIZE_PROP = "PoolSize";
+  /**
+   * The key to a config option specifying a comma separated list of content types which won't be compressed, where
+   * <code>type/*</code> excludes all subtypes. Types with a <code>+xml</code> or <code>+json</code> suffix are always
+   * compressed.
+   */
+  public static final String EXCLUDED_TYPES_PROP = "ExcludedTypes";
+  /**
+   * The default {@linkplain #EXCLUDED_TYPES_PROP excluded types}, which are already compressed.
+   */
+  public static final String DEFAULT_EXCLUDED_TYPES = "image/*,audio/*,video/*,font/woff,font/woff2,application/zip,application/gzip,application/x-gzip,application/x-bzip2,application/x-xz,application/x-7z-compressed,application/x-rar-compressed,application/zstd,application/pdf";
+  /**
+   * The default value for the {@linkplain #THRESHOLD_PROP threshold}.
+   */
+  protected static final int DEFAULT_THRESHOLD = 1024;
+  /**
+   * The size of the buffer compressed content is drained into.
+   */
+  protected static final int OUTPUT_BUFFER_SIZE = 8192;
+  /**
+   * @see #THRESHOLD_PROP
+   */
+  protected int threshold = DEFAULT_THRESHOLD;
+  /**
+   * Excluded content types without wildcards, in lower case.
+   * 
+   * @see #EXCLUDED_TYPES_PROP
+   */
+  protected Set<String> excludedTypes = new HashSet<String>();
+  /**
+   * Excluded top level types (from <code>type/*</code> entries), in lower case, including the trailing
+   * <code>/</code>.
+   * 
+   * @see #EXCLUDED_TYPES_PROP
+   */
+  protected String[] excludedTypePrefixes = new String[0];
+  /**
+   * Pooled {@link Deflater} instances for <code>gzip</code>.
+   */
+  protected @Nullable DeflaterPool gzipPool = null;
+  /**
+   * Pooled {@link Deflater} instances for <code>deflate</code>.
+   */
+  protected @Nullable DeflaterPool deflatePool = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of responses compressed using <code>gzip</code>.
+   */
+  protected LongAdder gzipCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of responses compressed using <code>deflate</code>.
+   */
+  protected LongAdder deflateCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
+    gzipCounter = metrics.counter("compressed:gzip");
+    deflateCounter = metrics.counter("compressed:deflate");
+    final String prefix = CompressionFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    final String thresholdParam = filterConfig.getInitParameter(prefix + THRESHOLD_PROP);
+    threshold = (thresholdParam != null) ? Integer.parseInt(thresholdParam.trim()) : DEFAULT_THRESHOLD;
+    if (threshold < 0) throw new IllegalArgumentException("Invalid " + prefix + THRESHOLD_PROP + ": " + threshold);
+    final String levelParam = filterConfig.getInitParameter(prefix + LEVEL_PROP);
+    final int level = (levelParam != null) ? Integer.parseInt(levelParam.trim()) : 6;
+    final String poolSizeParam = filterConfig.getInitParameter(prefix + POOL_SIZE_PROP);
+    final int poolSize = (poolSizeParam != null) ? Integer.parseInt(poolSizeParam.trim()) : Runtime.getRuntime().availableProcessors() * 2;
+    gzipPool = new DeflaterPool(level, true, poolSize);
+    deflatePool = new DeflaterPool(level, false, poolSize);
+
+    final String excludedTypesParam = filterConfig.getInitParameter(prefix + EXCLUDED_TYPES_PROP);
+    final Set<String> excludedTypes = new HashSet<String>();
+    final List<String> excludedTypePrefixes = new ArrayList<String>();
+    for (String type : ((excludedTypesParam != null) ? excludedTypesParam : DEFAULT_EXCLUDED_TYPES).split(",")) {
+      type = type.trim().toLowerCase(Locale.ROOT);
+      if (type.isEmpty()) continue;
+      if (type.endsWith("/*")) {
+        excludedTypePrefixes.add(type.substring(0, type.length() - 1));
+      } else {
+        excludedTypes.add(type);
+      }
+    }
+    this.excludedTypes = excludedTypes;
+    this.excludedTypePrefixes = excludedTypePrefixes.toArray(new String[excludedTypePrefixes.size()]);
+    return;
+  }
+
+  /**
+   * Select the content coding to use for a response, given the request's <code>Accept-Encoding</code> header. The
+   * value is tokenized without allocating. <code>gzip</code> (or <code>x-gzip</code>) is preferred over
+   * <code>deflate</code>, and a <code>*</code> wildcard selects <code>gzip</code> unless it was explicitly refused.
+   * 
+   * @param acceptEncoding The value of the <code>Accept-Encoding</code> header.
+   * @return <code>"gzip"</code>, <code>"deflate"</code>, or <code>null</code> if the response shouldn't be compressed.
+   */
+  public static @Nullable String negotiate(final String acceptEncoding) {
+    return selectCoding(scanCodings(acceptEncoding, HeaderValues.NO_QUALITIES));
+  }
+
+  /**
+   * Tokenize one value of the <code>Accept-Encoding</code> header, without allocating, folding the qualities it gives
+   * to <code>gzip</code>, <code>deflate</code>, and the <code>*</code> wildcard into those
+   * {@linkplain HeaderValues#setQuality(long, int, int) packed} from any earlier values.
+   * 
+   * @param acceptEncoding The value of the <code>Accept-Encoding</code> header.
+   * @param qualities The qualities from earlier values, or {@link HeaderValues#NO_QUALITIES}.
+   * @return The combined qualities.
+   * @see #selectCoding(long)
+   */
+  protected static long scanCodings(final String acceptEncoding, final long qualities) {
+    int gzipQuality = HeaderValues.getQuality(qualities, 0);
+    int deflateQuality = HeaderValues.getQuality(qualities, 1);
+    int wildcardQuality = HeaderValues.getQuality(qualities, 2);
+    final int length = acceptEncoding.length();
+    int codingStart = 0;
+    while (codingStart < length) {
+      int codingEnd = acceptEncoding.indexOf(',', codingStart);
+      if (codingEnd < 0) codingEnd = length;
+      int parametersStart = acceptEncoding.indexOf(';', codingStart);
+      if ((parametersStart < 0) || (parametersStart > codingEnd)) parametersStart = codingEnd;
+      int nameStart = codingStart;
+      while ((nameStart < parametersStart) && (HeaderValues.isWhitespace(acceptEncoding.charAt(nameStart)))) nameStart++;
+      int nameEnd = parametersStart;
+      while ((nameEnd > nameStart) && (HeaderValues.isWhitespace(acceptEncoding.charAt(nameEnd - 1)))) nameEnd--;
+      if (nameEnd > nameStart) {
+        final int quality = HeaderValues.parseQuality(acceptEncoding, parametersStart, codingEnd);
+        if ((HeaderValues.regionEquals(acceptEncoding, nameStart, nameEnd, "gzip")) || (HeaderValues.regionEquals(acceptEncoding, nameStart, nameEnd, "x-gzip"))) {
+          gzipQuality = Math.max(gzipQuality, quality);
+        } else if (HeaderValues.regionEquals(acceptEncoding, nameStart, nameEnd, "deflate")) {
+          deflateQuality = Math.max(deflateQuality, quality);
+        } else if (HeaderValues.regionEquals(acceptEncoding, nameStart, nameEnd, "*")) {
+          wildcardQuality = Math.max(wildcardQuality, quality);
+        }
+      }
+      codingStart = codingEnd + 1;
+    }
+    return HeaderValues.setQuality(HeaderValues.setQuality(HeaderValues.setQuality(qualities, 0, gzipQuality), 1, deflateQuality), 2, wildcardQuality);
+  }
+
+  /**
+   * Select the content coding to use, given the qualities {@linkplain #scanCodings(String, long) tokenized} from the
+   * <code>Accept-Encoding</code> header.
+   * 
+   * @param qualities The packed qualities.
+   * @return <code>"gzip"</code>, <code>"deflate"</code>, or <code>null</code> if the response shouldn't be compressed.
+   */
+  protected static @Nullable String selectCoding(final long qualities) {
+    int gzipQuality = HeaderValues.getQuality(qualities, 0);
+    int deflateQuality = HeaderValues.getQuality(qualities, 1);
+    final int wildcardQuality = HeaderValues.getQuality(qualities, 2);
+    if (gzipQuality < 0) gzipQuality = wildcardQuality;
+    if (deflateQuality < 0) deflateQuality = wildcardQuality;
+    if ((gzipQuality > 0) && (gzipQuality >= deflateQuality)) return "gzip";
+    if (deflateQuality > 0) return "deflate";
+    return null;
+  }
+
+  /**
+   * Select the content coding to use for the response to the given <code>request</code>.
+   * 
+   * @param request The request to examine.
+   * @return <code>"gzip"</code>, <code>"deflate"</code>, or <code>null</code> if the response shouldn't be compressed.
+   * @see #negotiate(String)
+   */
+  protected static @Nullable String negotiate(final HttpServletRequest request) {
+    final Enumeration<String> values = request.getHeaders("Accept-Encoding");
+    if ((values == null) || (!values.hasMoreElements())) return null;
+    long qualities = HeaderValues.NO_QUALITIES;
+    while (values.hasMoreElements()) {
+      qualities = scanCodings(values.nextElement(), qualities);
+    }
+    return selectCoding(qualities);
+  }
+
+  /**
+   * Is the given content type one which should be compressed?
+   * 
+   * @param contentType The value of the <code>Content-Type</code> header.
+   * @return <code>true</code> if the content type isn't {@linkplain #EXCLUDED_TYPES_PROP excluded}.
+   */
+  protected boolean isCompressible(final String contentType) {
+    int end = contentType.indexOf(';');
+    if (end < 0) end = contentType.length();
+    while ((end > 0) && (HeaderValues.isWhitespace(contentType.charAt(end - 1)))) end--;
+    final String baseType = contentType.substring(0, end).trim().toLowerCase(Locale.ROOT);
+    if ((baseType.endsWith("+xml")) || (baseType.endsWith("+json"))) return true;
+    if (excludedTypes.contains(baseType)) return false;
+    for (String excludedTypePrefix : excludedTypePrefixes) {
+      if (baseType.startsWith(excludedTypePrefix)) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+    HeaderValues.addVary(httpServletResponse, "Accept-Encoding");
+
+    final String coding = negotiate((HttpServletRequest)servletRequest);
+    final boolean gzip = "gzip".equals(coding);
+    final DeflaterPool pool = gzip ? gzipPool : deflatePool;
+    if ((coding == null) || (pool == null)) {
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      metrics.record(start, chainNanos);
+      return;
+    }
+
+    final CompressionResponseWrapper responseWrapper = new CompressionResponseWrapper(httpServletResponse, threshold, coding, pool);
+    long chainNanos = 0;
+    boolean deferred = false;
+    try {
+      chainNanos = metrics.doChain(filterChain, servletRequest, responseWrapper);
+      deferred = responseWrapper.deferIfAsync(servletRequest, responseWrapper::release);
+      if (!deferred) responseWrapper.complete();
+    } finally {
+      if (!deferred) responseWrapper.release();
+    }
+    if (responseWrapper.isCompressing()) (gzip ? gzipCounter : deflateCounter).increment();
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    final DeflaterPool gzipPool = this.gzipPool;
+    if (gzipPool != null) gzipPool.clear();
+    this.gzipPool = null;
+    final DeflaterPool deflatePool = this.deflatePool;
+    if (deflatePool != null) deflatePool.clear();
+    this.deflatePool = null;
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * Wraps an {@link HttpServletResponse} to buffer content up to the {@linkplain CompressionFilter#THRESHOLD_PROP
+   * threshold}, compressing it once it overflows.
+   */
+  protected class CompressionResponseWrapper extends BufferingResponseWrapper {
+    /**
+     * The content coding to use, <code>"gzip"</code> or <code>"deflate"</code>.
+     */
+    protected final String coding;
+    /**
+     * The pool to borrow a {@link Deflater} from.
+     */
+    protected final DeflaterPool pool;
+    /**
+     * The compressing sink, or <code>null</code> if the content isn't being compressed.
+     */
+    protected @Nullable CompressingOutputStream compressor = null;
+
+    /**
+     * Construct a <code>CompressionResponseWrapper</code>.
+     * 
+     * @param response The response being wrapped.
+     * @param threshold The maximum number of bytes to buffer before compressing.
+     * @param coding The content coding to use, <code>"gzip"</code> or <code>"deflate"</code>.
+     * @param pool The pool to borrow a {@link Deflater} from.
+     */
+    public CompressionResponseWrapper(final HttpServletResponse response, final int threshold, final String coding, final DeflaterPool pool) {
+      super(response, threshold);
+      this.coding = coding;
+      this.pool = pool;
+      return;
+    }
+
+    /**
+     * Should the content of this response be compressed?
+     * 
+     * @return <code>true</code> if the status, headers, and content type permit compression.
+     */
+    protected boolean shouldCompress() {
+      final int status = getStatus();
+      if ((status == HttpServletResponse.SC_PARTIAL_CONTENT) || (status == HttpServletResponse.SC_NO_CONTENT) || (status == HttpServletResponse.SC_NOT_MODIFIED)) return false;
+      if ((containsHeader("Content-Encoding")) || (containsHeader("Content-Range"))) return false;
+      final String contentType = getContentType();
+      return (contentType != null) && (isCompressible(contentType));
+    }
+
+    @Override
+    protected OutputStream openSink() throws IOException {
+      if (!shouldCompress()) return super.openSink();
+      super.setHeader("Content-Encoding", coding);
+      final CompressingOutputStream compressor = new CompressingOutputStream(getResponse().getOutputStream(), pool, "gzip".equals(coding), OUTPUT_BUFFER_SIZE);
+      this.compressor = compressor;
+      return compressor;
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+      if (compressor != null) return; // The servlet knows the length of the uncompressed content only.
+      super.setContentLengthLong(len);
+      return;
+    }
+
+    @Override
+    public void complete() throws IOException {
+      finishOutput();
+      final CompressingOutputStream compressor = this.compressor;
+      if ((compressor != null) && (!bypassed)) compressor.finish();
+      super.complete();
+      return;
+    }
+
+    /**
+     * Is the content of this response being compressed?
+     * 
+     * @return <code>true</code> if the content overflowed the threshold and is being compressed.
+     */
+    public boolean isCompressing() {
+      return compressor != null;
+    }
+
+    /**
+     * Return any borrowed {@link Deflater} to the pool.
+     */
+    public void release() {
+      final CompressingOutputStream compressor = this.compressor;
+      if (compressor != null) compressor.release();
+      return;
+    }
+
+  } // CompressionResponseWrapper
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.role.*;
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Limit the number of requests concurrently in flight through the rest of the filter chain, adapting the limit to the
+ * observed latency, and shedding excess requests early with a cheap <code>503 Service Unavailable</code> status (and a
+ * <code>Retry-After</code> header), before any expensive work is done for them.
+ * </p>
+ * 
+ * <p>
+ * The limit is adjusted using additive-increase/multiplicative-decrease, driven by the latency gradient. A short term
+ * (exponentially weighted) average latency is compared against a baseline, the minimum of that average over the
+ * current and previous {@linkplain #BASELINE_WINDOW_NANOS window}, approximating the unloaded latency. Whenever the
+ * short term average exceeds a {@linkplain #TOLERANCE_PROP multiple} of the baseline (indicating requests are queueing
+ * downstream), the limit is {@linkplain #BACKOFF_PROP multiplicatively decreased} (at most once per short term
+ * latency, so a single slow period doesn't collapse it). Since the baseline doesn't follow the short term average up,
+ * a gradual but sustained backend slowdown still backs the limit off, for up to two windows, after which the slower
+ * latency becomes the new baseline. Otherwise, if the limit is actually being used, it's increased by roughly one per
+ * limit's worth of completed requests. All limiter state is held in lock-free atomics.
+ * </p>
+ * 
+ * <p>
+ * Clients are assigned to priority {@linkplain #TIERS_PROP tiers} by role (ie, those granted by a
+ * {@link KnownUnknownUserRoleFilter} or {@link StaticUserRoleFilter}), and lower tiers may only use a decreasing share
+ * of the limit, so that as the limit falls, lower priority traffic (ie, <code>unknown-user</code>) is shed before
+ * higher priority traffic (ie, <code>known-user</code>).
+ * </p>
+ * 
+ * <p>
+ * A request which goes {@linkplain ServletRequest#isAsyncStarted() asynchronous} is counted as in flight (and its
+ * latency measured) until its asynchronous processing completes. If used along with an {@link AsyncOffloadFilter},
+ * this filter should be mapped before it, for the {@linkplain DispatcherType#REQUEST REQUEST} dispatcher type only, so
+ * that excess requests are shed before being queued, and queued requests are counted until they actually complete.
+ * </p>
+ */
+@NonNullByDefault
+public class ConcurrencyLimitFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the initial concurrency limit. If not set, defaults to <code>20</code>.
+   */
+  public static final String INITIAL_LIMIT_PROP = "InitialLimit";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the minimum concurrency limit. If not set, defaults to <code>1</code>.
+   */
+  public static final String MIN_LIMIT_PROP = "MinLimit";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the maximum concurrency limit. If not set, defaults to <code>1000</code>.
+   */
+  public static final String MAX_LIMIT_PROP = "MaxLimit";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the multiple of the baseline latency beyond which the short term average
+   * latency is considered to indicate overload. If not set, defaults to <code>2</code>.
+   */
+  public static final String TOLERANCE_PROP = "Tolerance";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the factor the limit is multiplied by upon overload. If not set, defaults to
+   * <code>0.9</code>.
+   */
+  public static final String BACKOFF_PROP = "Backoff";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value is a comma separated list of roles, from highest to lowest priority. Clients are
+   * assigned the tier of the first role they're in, or else a tier below all of them. If not set, there is a single
+   * tier.
+   */
+  public static final String TIERS_PROP = "Tiers";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ConcurrencyLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies the share of the limit the lowest {@linkplain #TIERS_PROP tier} may use,
+   * with the share of the tiers above it increasing linearly up to the whole limit for the highest. If not set,
+   * defaults to <code>0.5</code>.
+   */
+  public static final String MIN_SHARE_PROP = "MinShare";
+  /**
+   * The weight given to each new latency sample in the short term average.
+   */
+  protected static final double LATENCY_SMOOTHING = 0.1;
+  /**
+   * The length of the windows the {@linkplain #baselineLatency baseline} is the minimum short term latency over.
+   */
+  protected static final long BASELINE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+  /**
+   * @see #MIN_LIMIT_PROP
+   */
+  protected double minLimit = 1;
+  /**
+   * @see #MAX_LIMIT_PROP
+   */
+  protected double maxLimit = 1000;
+  /**
+   * @see #TOLERANCE_PROP
+   */
+  protected double tolerance = 2;
+  /**
+   * @see #BACKOFF_PROP
+   */
+  protected double backoff = 0.9;
+  /**
+   * The {@linkplain #TIERS_PROP roles} of each tier, from highest to lowest priority.
+   */
+  protected String[] tierRoles = new String[0];
+  /**
+   * The share of the limit each tier may use, indexed by tier, including the lowest (catch-all) tier.
+   */
+  protected double[] tierShares = { 1 };
+  /**
+   * The current limit, as {@linkplain Double#doubleToRawLongBits(double) raw bits}.
+   */
+  protected final AtomicLong limitBits = new AtomicLong(Double.doubleToRawLongBits(20));
+  /**
+   * The short term average latency, in nanoseconds, or <code>0</code> if there are no samples yet.
+   */
+  protected final AtomicLong averageLatency = new AtomicLong();
+  /**
+   * The baseline latency, being the minimum {@linkplain #averageLatency short term average} over the current and
+   * previous window, in nanoseconds, or <code>0</code> if there are no samples yet.
+   */
+  protected final AtomicLong baselineLatency = new AtomicLong();
+  /**
+   * The minimum {@linkplain #averageLatency short term average} over the current window, in nanoseconds, or
+   * <code>0</code> if there are no samples yet.
+   */
+  protected final AtomicLong windowMinimumLatency = new AtomicLong();
+  /**
+   * The {@linkplain System#nanoTime() time} the current baseline window started.
+   */
+  protected final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+  /**
+   * The {@linkplain System#nanoTime() time} the limit was last decreased.
+   */
+  protected final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+  /**
+   * The number of requests currently in flight.
+   */
+  protected final AtomicInteger inFlight = new AtomicInteger();
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#histogram(String) latency} of the rest of the filter chain.
+   */
+  protected LatencyHistogram chainLatency = new LatencyHistogram();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests shed, indexed by tier.
+   */
+  protected LongAdder[] shedCounters = { new LongAdder() };
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    chainLatency = metrics.histogram("chain");
+    final String prefix = ConcurrencyLimitFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    minLimit = getDoubleInitParameter(filterConfig, prefix + MIN_LIMIT_PROP, 1);
+    maxLimit = getDoubleInitParameter(filterConfig, prefix + MAX_LIMIT_PROP, 1000);
+    if (maxLimit < minLimit) throw new IllegalArgumentException("Invalid " + prefix + MAX_LIMIT_PROP + ": '" + maxLimit + '\'');
+    final double initialLimit = getDoubleInitParameter(filterConfig, prefix + INITIAL_LIMIT_PROP, 20);
+    limitBits.set(Double.doubleToRawLongBits(Math.min(maxLimit, Math.max(minLimit, initialLimit))));
+    tolerance = getDoubleInitParameter(filterConfig, prefix + TOLERANCE_PROP, 2);
+    if (tolerance <= 1) throw new IllegalArgumentException("Invalid " + prefix + TOLERANCE_PROP + ": '" + tolerance + '\'');
+    backoff = getDoubleInitParameter(filterConfig, prefix + BACKOFF_PROP, 0.9);
+    if (backoff >= 1) throw new IllegalArgumentException("Invalid " + prefix + BACKOFF_PROP + ": '" + backoff + '\'');
+    final double minShare = getDoubleInitParameter(filterConfig, prefix + MIN_SHARE_PROP, 0.5);
+    if (minShare > 1) throw new IllegalArgumentException("Invalid " + prefix + MIN_SHARE_PROP + ": '" + minShare + '\'');
+
+    final String tiersProp = filterConfig.getInitParameter(prefix + TIERS_PROP);
+    tierRoles = ((tiersProp != null) && (!tiersProp.isBlank())) ? tiersProp.trim().split("[\\s]*,[\\s]*") : new String[0];
+    final double[] tierShares = new double[tierRoles.length + 1];
+    final LongAdder[] shedCounters = new LongAdder[tierShares.length];
+    for (int tier = 0; tier < tierShares.length; tier++) {
+      tierShares[tier] = (tierRoles.length > 0) ? 1 - (tier * (1 - minShare) / tierRoles.length) : 1;
+      shedCounters[tier] = metrics.counter("shed:" + ((tier < tierRoles.length) ? tierRoles[tier] : "*"));
+    }
+    this.tierShares = tierShares;
+    this.shedCounters = shedCounters;
+    return;
+  }
+
+  /**
+   * Get the value of a numeric {@linkplain FilterConfig#getInitParameter(String) configuration parameter}.
+   * 
+   * @param filterConfig The filter configuration.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to return if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws IllegalArgumentException If the parameter value is not a valid positive number.
+   */
+  protected static double getDoubleInitParameter(final FilterConfig filterConfig, final String name, final double defaultValue) throws IllegalArgumentException {
+    final String value = filterConfig.getInitParameter(name);
+    if (value == null) return defaultValue;
+    final double result;
+    try {
+      result = Double.parseDouble(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'', nfe);
+    }
+    if ((!(result > 0)) || (Double.isInfinite(result))) throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'');
+    return result;
+  }
+
+  /**
+   * Get the current concurrency limit.
+   * 
+   * @return The limit.
+   */
+  public double getLimit() {
+    return Double.longBitsToDouble(limitBits.get());
+  }
+
+  /**
+   * Get the number of requests currently in flight.
+   * 
+   * @return The in-flight count.
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Get the priority tier of the client making the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The index of the first tier whose role the client is in, or else that of the lowest tier.
+   */
+  protected int getTier(final HttpServletRequest request) {
+    final String[] tierRoles = this.tierRoles;
+    for (int tier = 0; tier < tierRoles.length; tier++) {
+      if (request.isUserInRole(tierRoles[tier])) return tier;
+    }
+    return tierRoles.length;
+  }
+
+  /**
+   * Attempt to admit a request in the given <code>tier</code>, incrementing the {@link #inFlight} count if it is.
+   * 
+   * @param tier The tier of the request.
+   * @return <code>true</code> if the request was admitted, or <code>false</code> if it should be shed.
+   */
+  protected boolean admit(final int tier) {
+    final int allowed = (int)Math.max(1, getLimit() * tierShares[tier]);
+    while (true) {
+      final int current = inFlight.get();
+      if (current >= allowed) return false;
+      if (inFlight.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  /**
+   * Adjust the limit given a completed request.
+   * 
+   * @param latency The latency of the request, in nanoseconds.
+   * @param concurrency The number of requests in flight when it was admitted (including itself).
+   */
+  protected void update(final long latency, final int concurrency) {
+    final long average = averageLatency.get();
+    final long newAverage = (average == 0) ? latency : average + (long)((latency - average) * LATENCY_SMOOTHING);
+    averageLatency.compareAndSet(average, newAverage); // Losing a sample to contention is harmless.
+    final long baseline = updateBaseline(Math.max(1, newAverage));
+    while (true) {
+      final long bits = limitBits.get();
+      final double limit = Double.longBitsToDouble(bits);
+      final double newLimit;
+      if (newAverage > baseline * tolerance) {
+        final long now = System.nanoTime();
+        final long last = lastDecrease.get();
+        if ((now - last < newAverage) || (!lastDecrease.compareAndSet(last, now))) return;
+        newLimit = Math.max(minLimit, limit * backoff);
+      } else if (concurrency * 2 >= limit) {
+        newLimit = Math.min(maxLimit, limit + (1 / limit));
+      } else {
+        return;
+      }
+      if ((newLimit == limit) || (limitBits.compareAndSet(bits, Double.doubleToRawLongBits(newLimit)))) return;
+    }
+  }
+
+  /**
+   * Fold the given short term <code>average</code> latency into the {@link #baselineLatency}, rolling the window over if
+   * it has elapsed.
+   * 
+   * @param average The short term average latency, in nanoseconds.
+   * @return The baseline latency.
+   */
+  protected long updateBaseline(final long average) {
+    final long now = System.nanoTime();
+    final long start = windowStart.get();
+    if ((now - start >= BASELINE_WINDOW_NANOS) && (windowStart.compareAndSet(start, now))) {
+      final long windowMinimum = windowMinimumLatency.getAndSet(average);
+      baselineLatency.set(Math.min((windowMinimum > 0) ? windowMinimum : average, average));
+    } else {
+      windowMinimumLatency.accumulateAndGet(average, (current, sample) -> (current == 0) ? sample : Math.min(current, sample));
+    }
+    return baselineLatency.accumulateAndGet(average, (current, sample) -> (current == 0) ? sample : Math.min(current, sample));
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final int tier = getTier((HttpServletRequest)servletRequest);
+    if (!admit(tier)) {
+      shedCounters[tier].increment();
+      final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+      httpServletResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      httpServletResponse.setHeader("Retry-After", "1");
+      httpServletResponse.setContentLength(0);
+      metrics.record(start, 0);
+      return;
+    }
+    final int concurrency = inFlight.get();
+    final long chainStart = System.nanoTime();
+    final long chainNanos;
+    boolean deferred = false;
+    try {
+      chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      deferred = PipelineExchange.deferIfAsync(servletRequest, () -> complete(System.nanoTime() - chainStart, concurrency));
+    } finally {
+      if (!deferred) inFlight.decrementAndGet();
+    }
+    if (!deferred) {
+      chainLatency.record(chainNanos);
+      update(chainNanos, concurrency);
+    }
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  /**
+   * Complete a request whose asynchronous processing has finished, removing it from those {@link #inFlight}, and
+   * {@linkplain #update(long, int) updating} the limit with its latency.
+   * 
+   * @param latency The time from the request entering the rest of the chain until it completed, in nanoseconds.
+   * @param concurrency The number of requests in flight when it was admitted.
+   */
+  protected void complete(final long latency, final int concurrency) {
+    inFlight.decrementAndGet();
+    chainLatency.record(latency);
+    update(latency, concurrency);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    metrics.unregister();
+    return;
+  }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Generate an <code>ETag</code> for <code>GET</code> responses from a digest of their content, and answer a
+ * <code>304 Not Modified</code> (with no content) when it matches the request's <code>If-None-Match</code> header.
+ * </p>
+ * 
+ * <p>
+ * The digest is computed incrementally as content is written, while the content is buffered up to a
+ * {@linkplain #THRESHOLD_PROP threshold}. Responses larger than the threshold overflow the buffer and are streamed to
+ * the client as-is, without an <code>ETag</code>. Responses which aren't a <code>200 OK</code>, or which already have
+ * an <code>ETag</code> supplied by the servlet, are never replaced by a generated one. An
+ * <code>If-Modified-Since</code> header is left for the servlet to evaluate.
+ * </p>
+ * 
+ * <p>
+ * This pairs well with a {@link SetResponseHeaderFilter} supplying a <code>Cache-Control: no-cache</code> header, so
+ * that clients revalidate each time, but only download content which has actually changed:
+ * </p>
+ * 
+ * <pre>
+ * &lt;filter&gt;
+ *   &lt;filter-name&gt;PageETag&lt;/filter-name&gt;
+ *   &lt;filter-class&gt;com.hubick.utility_servlets.ETagFilter&lt;/filter-class&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;ETagFilter.PageETag.Threshold&lt;/param-name&gt;
+ *     &lt;param-value&gt;262144&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ * &lt;/filter&gt;
+ * &lt;filter-mapping&gt;
+ *   &lt;filter-name&gt;PageETag&lt;/filter-name&gt;
+ *   &lt;url-pattern&gt;*.jsp&lt;/url-pattern&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre>
+ */
+@NonNullByDefault
+public class ETagFilter implements Filter {
+  /**
+   * The key to an integer config option specifying the maximum number of bytes of content to buffer (default
+   * <code>65536</code>). Larger responses won't get an <code>ETag</code>.
+   */
+  public static final String THRESHOLD_PROP = "Threshold";
+  /**
+   * The key to a config option specifying the {@link MessageDigest} algorithm used to compute the <code>ETag</code>
+   * (default <code>MD5</code>).
+   */
+  public static final String ALGORITHM_PROP = "Algorithm";
+  /**
+   * The key to a boolean config option which will cause weak (<code>W/"..."</code>) validators to be generated, for use
+   * when the content may be transformed in ways that don't change its meaning (ie, by compression).
+   */
+  public static final String WEAK_ENABLE_PROP = "Weak.Enable";
+  /**
+   * The default value for the {@linkplain #THRESHOLD_PROP threshold}.
+   */
+  protected static final int DEFAULT_THRESHOLD = 65536;
+  /**
+   * @see #THRESHOLD_PROP
+   */
+  protected int threshold = DEFAULT_THRESHOLD;
+  /**
+   * @see #WEAK_ENABLE_PROP
+   */
+  protected boolean weak = false;
+  /**
+   * A {@link MessageDigest} for the configured {@linkplain #ALGORITHM_PROP algorithm}, which is
+   * {@linkplain MessageDigest#clone() cloned} for each response, avoiding a provider lookup.
+   */
+  protected @Nullable MessageDigest digestPrototype = null;
+  /**
+   * @see #ALGORITHM_PROP
+   */
+  protected String algorithm = "MD5";
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of <code>304 Not Modified</code> responses.
+   */
+  protected LongAdder notModifiedCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
+    notModifiedCounter = metrics.counter("not-modified");
+    final String prefix = ETagFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    final String thresholdParam = filterConfig.getInitParameter(prefix + THRESHOLD_PROP);
+    threshold = (thresholdParam != null) ? Integer.parseInt(thresholdParam.trim()) : DEFAULT_THRESHOLD;
+    if (threshold < 0) throw new IllegalArgumentException("Invalid " + prefix + THRESHOLD_PROP + ": " + threshold);
+    final String algorithmParam = filterConfig.getInitParameter(prefix + ALGORITHM_PROP);
+    algorithm = (algorithmParam != null) ? algorithmParam.trim() : "MD5";
+    weak = Boolean.parseBoolean(filterConfig.getInitParameter(prefix + WEAK_ENABLE_PROP));
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalArgumentException("Invalid " + prefix + ALGORITHM_PROP + ": " + algorithm, nsae);
+    }
+    try {
+      digestPrototype = (MessageDigest)digest.clone();
+    } catch (CloneNotSupportedException cnse) {
+      digestPrototype = null;
+    }
+    return;
+  }
+
+  /**
+   * Create a new {@link MessageDigest} for the configured {@linkplain #ALGORITHM_PROP algorithm}.
+   * 
+   * @return The new digest.
+   */
+  protected MessageDigest createDigest() {
+    final MessageDigest digestPrototype = this.digestPrototype;
+    try {
+      if (digestPrototype != null) return (MessageDigest)digestPrototype.clone();
+      return MessageDigest.getInstance(algorithm);
+    } catch (CloneNotSupportedException | NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Format the given <code>digest</code> as an entity tag.
+   * 
+   * @param digest The digest of the content.
+   * @param weak Should the tag be a weak validator?
+   * @return The quoted entity tag.
+   */
+  public static String formatETag(final byte[] digest, final boolean weak) {
+    final String opaque = Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    final StringBuilder etag = new StringBuilder(opaque.length() + 4);
+    if (weak) etag.append("W/");
+    return etag.append('"').append(opaque).append('"').toString();
+  }
+
+  /**
+   * Does the given <code>If-None-Match</code> header value match the supplied <code>etag</code>, using the weak
+   * comparison function (as RFC 7232 requires for <code>If-None-Match</code>)?
+   * 
+   * @param ifNoneMatch The <code>If-None-Match</code> header value, a comma separated list of entity tags, or
+   * <code>*</code>.
+   * @param etag The entity tag of the current content.
+   * @return <code>true</code> if a tag in the list matches.
+   */
+  public static boolean matches(final String ifNoneMatch, final String etag) {
+    final int etagStart = etag.startsWith("W/") ? 2 : 0;
+    final int etagLength = etag.length() - etagStart;
+    final int length = ifNoneMatch.length();
+    int i = 0;
+    while (i < length) {
+      while ((i < length) && ((ifNoneMatch.charAt(i) == ' ') || (ifNoneMatch.charAt(i) == '\t') || (ifNoneMatch.charAt(i) == ','))) i++;
+      if (i >= length) break;
+      if (ifNoneMatch.charAt(i) == '*') return true;
+      if (ifNoneMatch.startsWith("W/", i)) i += 2;
+      final int start = i;
+      if ((i < length) && (ifNoneMatch.charAt(i) == '"')) {
+        i++;
+        while ((i < length) && (ifNoneMatch.charAt(i) != '"')) i++;
+        if (i < length) i++;
+      } else {
+        while ((i < length) && (ifNoneMatch.charAt(i) != ',')) i++;
+      }
+      if ((i - start == etagLength) && (ifNoneMatch.regionMatches(start, etag, etagStart, etagLength))) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Does the given <code>request</code> have an <code>If-None-Match</code> header matching the supplied
+   * <code>etag</code>?
+   * 
+   * @param request The request to examine.
+   * @param etag The entity tag of the current content.
+   * @return <code>true</code> if the client already has the current content.
+   */
+  protected static boolean matches(final HttpServletRequest request, final String etag) {
+    final Enumeration<String> ifNoneMatch = request.getHeaders("If-None-Match");
+    if (ifNoneMatch == null) return false;
+    while (ifNoneMatch.hasMoreElements()) {
+      if (matches(ifNoneMatch.nextElement(), etag)) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+
+    // HEAD responses have no content to digest, so those are left to the servlet.
+    if (!"GET".equals(httpServletRequest.getMethod())) {
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      metrics.record(start, chainNanos);
+      return;
+    }
+
+    final ETagResponseWrapper responseWrapper = new ETagResponseWrapper(httpServletResponse, threshold, createDigest());
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, responseWrapper);
+    if (responseWrapper.deferIfAsync(servletRequest, null)) { // The content isn't all written yet, so can't be digested.
+      metrics.record(start, chainNanos);
+      return;
+    }
+    responseWrapper.finishOutput();
+
+    if ((!responseWrapper.isBypassed()) && (!responseWrapper.isOverflowed()) && (httpServletResponse.getStatus() == HttpServletResponse.SC_OK) && (!httpServletResponse.isCommitted())) {
+      String etag = httpServletResponse.getHeader("ETag");
+      if (etag == null) {
+        etag = formatETag(responseWrapper.digest.digest(), weak);
+        httpServletResponse.setHeader("ETag", etag);
+      }
+      if (matches(httpServletRequest, etag)) {
+        httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        notModifiedCounter.increment();
+        metrics.record(start, chainNanos);
+        return;
+      }
+    }
+
+    responseWrapper.complete();
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    digestPrototype = null;
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * Wraps an {@link HttpServletResponse} to buffer its content while computing a digest of it.
+   */
+  protected static class ETagResponseWrapper extends BufferingResponseWrapper {
+    /**
+     * The digest of the buffered content.
+     */
+    protected final MessageDigest digest;
+
+    /**
+     * Construct an <code>ETagResponseWrapper</code>.
+     * 
+     * @param response The response being wrapped.
+     * @param threshold The maximum number of bytes to buffer.
+     * @param digest The digest to compute over the buffered content.
+     */
+    public ETagResponseWrapper(final HttpServletResponse response, final int threshold, final MessageDigest digest) {
+      super(response, threshold);
+      this.digest = digest;
+      return;
+    }
+
+    @Override
+    protected void buffered(final byte[] b, final int off, final int len) {
+      digest.update(b, off, len);
+      return;
+    }
+
+    @Override
+    protected void bufferReset() {
+      digest.reset();
+      return;
+    }
+
+  } // ETagResponseWrapper
+
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.role.*;
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Throttle clients exceeding a {@linkplain #RATE_PROP rate} of requests, responding to them with a cheap
+ * <code>429 Too Many Requests</code> status, and a <code>Retry-After</code> header giving the number of seconds until
+ * their next request would be allowed.
+ * </p>
+ * 
+ * <p>
+ * Clients are identified by their {@linkplain ServletRequest#getRemoteAddr() remote address} (as with
+ * {@link RemoteAddrUserRoleFilter}), optionally bucketed into {@linkplain #IPV4_PREFIX_PROP IPv4} or
+ * {@linkplain #IPV6_PREFIX_PROP IPv6} blocks, so that a client can't evade the limit by cycling through the addresses
+ * of a block it controls. Alternatively, clients in any of the {@linkplain #KEY_ROLES_PROP specified} roles (ie, as
+ * granted by a {@link RequestHeaderUserRoleFilter}) share a bucket for that role.
+ * </p>
+ * 
+ * <p>
+ * {@linkplain #ROLE_LIMITS_PROP Per-role limits} allow clients in trusted roles to be given a higher limit, or to
+ * bypass throttling altogether, in which case they never touch the table of buckets.
+ * </p>
+ * 
+ * <p>
+ * Each bucket is implemented using the Generic Cell Rate Algorithm, which is equivalent to a token bucket, but whose
+ * entire state is a single "theoretical arrival time", updated with a compare-and-set, so the request path takes no
+ * lock. Since a bucket whose theoretical arrival time has passed is indistinguishable from a new one, idle buckets can
+ * be expired at any time without changing behaviour. Buckets are held in a fixed number of independently sized
+ * stripes, each of which is swept of idle buckets when it fills, and which (if it's still mostly full) evicts a batch
+ * of the buckets closest to being full, to enforce a bound on the {@linkplain #MAX_BUCKETS_PROP total number} held.
+ * </p>
+ */
+@NonNullByDefault
+public class RateLimitFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the sustained number of requests per second allowed for each client. If not set, defaults to
+   * <code>10</code>.
+   */
+  public static final String RATE_PROP = "Rate";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the number of requests a client may make in a burst, exceeding the {@linkplain #RATE_PROP rate}.
+   * If not set, defaults to twice the rate (but at least one).
+   */
+  public static final String BURST_PROP = "Burst";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the prefix length of the blocks IPv4 addresses are bucketed into. If not set, defaults to
+   * <code>32</code> (ie, each address has its own bucket).
+   */
+  public static final String IPV4_PREFIX_PROP = "IPv4Prefix";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the prefix length of the blocks IPv6 addresses are bucketed into. If not set, defaults to
+   * <code>64</code> (ie, the typical allocation to a single site).
+   */
+  public static final String IPV6_PREFIX_PROP = "IPv6Prefix";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value is a comma separated list of roles. Clients in any of them share a bucket with the other clients in the first
+   * such role, rather than being identified by their address.
+   */
+  public static final String KEY_ROLES_PROP = "KeyRoles";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value is a comma separated list of '<code>role=rate</code>', '<code>role=rate/burst</code>', or
+   * '<code>role=unlimited</code>' entries, giving the limit applied to clients in each role, in priority order.
+   * Clients in none of them are subject to the default {@linkplain #RATE_PROP rate}.
+   */
+  public static final String ROLE_LIMITS_PROP = "RoleLimits";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RateLimitFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the maximum number of buckets to hold. If not set, defaults to <code>100000</code>.
+   */
+  public static final String MAX_BUCKETS_PROP = "MaxBuckets";
+  /**
+   * The status code sent to clients exceeding their limit.
+   */
+  public static final int SC_TOO_MANY_REQUESTS = 429;
+  /**
+   * The number of stripes the buckets are divided into.
+   */
+  protected static final int STRIPE_COUNT = 64;
+  /**
+   * A per-thread buffer to {@linkplain CIDRTrie#parseAddress(CharSequence, byte[]) parse} addresses into.
+   */
+  protected static final ThreadLocal<byte[]> ADDRESS_BUFFER = ThreadLocal.withInitial(() -> new byte[CIDRTrie.ADDRESS_LENGTH]);
+  /**
+   * The limit applied to clients in none of the {@link #roleLimits}.
+   */
+  protected Limit defaultLimit = new Limit(0, 10, 20);
+  /**
+   * The limits for each {@linkplain #ROLE_LIMITS_PROP role}, in priority order.
+   */
+  protected Limit[] roleLimits = new Limit[0];
+  /**
+   * The {@linkplain #KEY_ROLES_PROP roles} clients are keyed by, in priority order.
+   */
+  protected String[] keyRoles = new String[0];
+  /**
+   * The {@linkplain RoleRegistry#intern(String) IDs} of the {@link #keyRoles}.
+   */
+  protected int[] keyRoleIDs = new int[0];
+  /**
+   * @see #IPV4_PREFIX_PROP
+   */
+  protected int ipv4Prefix = 32;
+  /**
+   * @see #IPV6_PREFIX_PROP
+   */
+  protected int ipv6Prefix = 64;
+  /**
+   * The maximum number of buckets held by each of the {@link #stripes}.
+   */
+  protected int stripeCapacity = 100000 / STRIPE_COUNT;
+  /**
+   * The buckets, divided into stripes by the hash of their key.
+   */
+  protected final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests which were throttled.
+   */
+  protected LongAdder limitedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests which bypassed throttling.
+   */
+  protected LongAdder bypassedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of buckets evicted before they were idle.
+   */
+  protected LongAdder evictedCounter = new LongAdder();
+
+  /**
+   * Construct a <code>RateLimitFilter</code>.
+   */
+  public RateLimitFilter() {
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes[i] = new Stripe();
+    }
+    return;
+  }
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    limitedCounter = metrics.counter("limited");
+    bypassedCounter = metrics.counter("bypassed");
+    evictedCounter = metrics.counter("evicted");
+    final String prefix = RateLimitFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    final double rate = getDoubleInitParameter(filterConfig, prefix + RATE_PROP, 10);
+    final double burst = getDoubleInitParameter(filterConfig, prefix + BURST_PROP, Math.max(1, rate * 2));
+    defaultLimit = new Limit(0, rate, burst);
+    ipv4Prefix = (int)getDoubleInitParameter(filterConfig, prefix + IPV4_PREFIX_PROP, 32);
+    if (ipv4Prefix > 32) throw new IllegalArgumentException("Invalid " + prefix + IPV4_PREFIX_PROP + ": '" + ipv4Prefix + '\'');
+    ipv6Prefix = (int)getDoubleInitParameter(filterConfig, prefix + IPV6_PREFIX_PROP, 64);
+    if (ipv6Prefix > 128) throw new IllegalArgumentException("Invalid " + prefix + IPV6_PREFIX_PROP + ": '" + ipv6Prefix + '\'');
+    stripeCapacity = Math.max(1, (int)getDoubleInitParameter(filterConfig, prefix + MAX_BUCKETS_PROP, 100000) / STRIPE_COUNT);
+
+    final String keyRolesProp = filterConfig.getInitParameter(prefix + KEY_ROLES_PROP);
+    keyRoles = ((keyRolesProp != null) && (!keyRolesProp.isBlank())) ? keyRolesProp.trim().split("[\\s]*,[\\s]*") : new String[0];
+    keyRoleIDs = Arrays.stream(keyRoles).mapToInt(RoleRegistry::intern).toArray();
+
+    final List<Limit> roleLimits = new ArrayList<Limit>();
+    final String roleLimitsProp = filterConfig.getInitParameter(prefix + ROLE_LIMITS_PROP);
+    if ((roleLimitsProp != null) && (!roleLimitsProp.isBlank())) {
+      for (String entry : roleLimitsProp.trim().split("[\\s]*,[\\s]*")) {
+        final int equals = entry.indexOf('=');
+        if (equals <= 0) throw new IllegalArgumentException("Invalid " + prefix + ROLE_LIMITS_PROP + " entry: '" + entry + '\'');
+        final String role = entry.substring(0, equals).trim();
+        final String limit = entry.substring(equals + 1).trim();
+        if ("unlimited".equalsIgnoreCase(limit)) {
+          roleLimits.add(new Limit(roleLimits.size() + 1, role));
+          continue;
+        }
+        final int slash = limit.indexOf('/');
+        try {
+          final double roleRate = Double.parseDouble((slash >= 0) ? limit.substring(0, slash) : limit);
+          final double roleBurst = (slash >= 0) ? Double.parseDouble(limit.substring(slash + 1)) : Math.max(1, roleRate * 2);
+          roleLimits.add(new Limit(roleLimits.size() + 1, role, roleRate, roleBurst));
+        } catch (IllegalArgumentException iae) {
+          throw new IllegalArgumentException("Invalid " + prefix + ROLE_LIMITS_PROP + " entry: '" + entry + '\'', iae);
+        }
+      }
+    }
+    this.roleLimits = roleLimits.toArray(new Limit[roleLimits.size()]);
+    return;
+  }
+
+  /**
+   * Get the value of a numeric {@linkplain FilterConfig#getInitParameter(String) configuration parameter}.
+   * 
+   * @param filterConfig The filter configuration.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to return if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws IllegalArgumentException If the parameter value is not a valid positive number.
+   */
+  protected static double getDoubleInitParameter(final FilterConfig filterConfig, final String name, final double defaultValue) throws IllegalArgumentException {
+    final String value = filterConfig.getInitParameter(name);
+    if (value == null) return defaultValue;
+    final double result;
+    try {
+      result = Double.parseDouble(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'', nfe);
+    }
+    if ((!(result > 0)) || (Double.isInfinite(result))) throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'');
+    return result;
+  }
+
+  /**
+   * Get the limit applying to the client making the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The first of the {@link #roleLimits} whose role the client is in, or else the {@link #defaultLimit}.
+   */
+  protected Limit getLimit(final HttpServletRequest request) {
+    for (Limit roleLimit : roleLimits) {
+      if (request.isUserInRole(roleLimit.role)) return roleLimit;
+    }
+    return defaultLimit;
+  }
+
+  /**
+   * Get the key of the bucket for the client making the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @param limit The limit applying to the client.
+   * @return The key, or <code>null</code> if the client couldn't be identified.
+   */
+  protected @Nullable BucketKey getKey(final HttpServletRequest request, final Limit limit) {
+    for (int i = 0; i < keyRoles.length; i++) {
+      if (request.isUserInRole(keyRoles[i])) return new BucketKey(limit.tier, true, keyRoleIDs[i], 0);
+    }
+    final String remoteAddr = request.getRemoteAddr();
+    if (remoteAddr == null) return null;
+    final byte[] address = ADDRESS_BUFFER.get();
+    if (!CIDRTrie.parseAddress(remoteAddr, address)) return null;
+    long high = 0;
+    long low = 0;
+    for (int i = 0; i < 8; i++) {
+      high = (high << 8) | (address[i] & 0xFF);
+      low = (low << 8) | (address[i + 8] & 0xFF);
+    }
+    final boolean ipv4 = (high == 0) && ((low >>> 32) == 0xFFFFL);
+    final int prefixLength = ipv4 ? ipv4Prefix + 96 : ipv6Prefix;
+    if (prefixLength <= 64) {
+      if (prefixLength < 64) high &= (prefixLength == 0) ? 0 : -1L << (64 - prefixLength);
+      low = 0;
+    } else if (prefixLength < 128) {
+      low &= -1L << (128 - prefixLength);
+    }
+    return new BucketKey(limit.tier, false, high, low);
+  }
+
+  /**
+   * Attempt to take a token for the given <code>key</code>.
+   * 
+   * @param key The key of the bucket.
+   * @param limit The limit applying to the bucket.
+   * @param now The current {@linkplain System#nanoTime() time}.
+   * @return <code>0</code> if the request is allowed, else the number of nanoseconds until it would be.
+   */
+  protected long acquire(final BucketKey key, final Limit limit, final long now) {
+    final Stripe stripe = stripes[key.hashCode() & (STRIPE_COUNT - 1)];
+    AtomicLong bucket = stripe.buckets.get(key);
+    if (bucket == null) {
+      if (stripe.buckets.size() >= stripeCapacity) evictedCounter.add(stripe.sweep(now, stripeCapacity));
+      // A new bucket starts out full, so the first request always gets a token.
+      final AtomicLong newBucket = new AtomicLong(now + limit.interval);
+      bucket = stripe.buckets.putIfAbsent(key, newBucket);
+      if (bucket == null) return 0;
+    }
+    while (true) {
+      final long tat = bucket.get();
+      final long newTAT = Math.max(tat, now) + limit.interval;
+      final long excess = newTAT - now - limit.capacity;
+      if (excess > 0) return excess;
+      if (bucket.compareAndSet(tat, newTAT)) return 0;
+    }
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+    final Limit limit = getLimit(httpServletRequest);
+    if (limit.unlimited) {
+      bypassedCounter.increment();
+    } else {
+      final BucketKey key = getKey(httpServletRequest, limit);
+      final long wait = (key != null) ? acquire(key, limit, start) : 0;
+      if (wait > 0) {
+        limitedCounter.increment();
+        final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+        httpServletResponse.setStatus(SC_TOO_MANY_REQUESTS);
+        httpServletResponse.setHeader("Retry-After", Long.toString(Math.max(1, (wait + 999_999_999L) / 1_000_000_000L)));
+        httpServletResponse.setContentLength(0);
+        metrics.record(start, 0);
+        return;
+      }
+    }
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    for (Stripe stripe : stripes) {
+      stripe.buckets.clear();
+    }
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * A rate limit.
+   */
+  protected static class Limit {
+    /**
+     * The index of this limit, which distinguishes the buckets of clients subject to different limits.
+     */
+    public final int tier;
+    /**
+     * The role this limit applies to, or an empty string for the default limit.
+     */
+    public final String role;
+    /**
+     * Is throttling bypassed?
+     */
+    public final boolean unlimited;
+    /**
+     * The number of nanoseconds between requests at the sustained rate (the "emission interval").
+     */
+    public final long interval;
+    /**
+     * The number of nanoseconds of requests which may be made in a burst (the interval times the burst size).
+     */
+    public final long capacity;
+
+    /**
+     * Construct an unlimited <code>Limit</code>.
+     * 
+     * @param tier The index of this limit.
+     * @param role The role this limit applies to.
+     */
+    public Limit(final int tier, final String role) {
+      this.tier = tier;
+      this.role = role;
+      unlimited = true;
+      interval = 0;
+      capacity = 0;
+      return;
+    }
+
+    /**
+     * Construct a default <code>Limit</code>.
+     * 
+     * @param tier The index of this limit.
+     * @param rate The sustained number of requests per second.
+     * @param burst The number of requests which may be made in a burst.
+     */
+    public Limit(final int tier, final double rate, final double burst) {
+      this(tier, "", rate, burst);
+      return;
+    }
+
+    /**
+     * Construct a <code>Limit</code>.
+     * 
+     * @param tier The index of this limit.
+     * @param role The role this limit applies to.
+     * @param rate The sustained number of requests per second.
+     * @param burst The number of requests which may be made in a burst.
+     * @throws IllegalArgumentException If the <code>rate</code> or <code>burst</code> aren't positive.
+     */
+    public Limit(final int tier, final String role, final double rate, final double burst) throws IllegalArgumentException {
+      if ((!(rate > 0)) || (!(burst >= 1)) || (Double.isInfinite(rate)) || (Double.isInfinite(burst))) throw new IllegalArgumentException("Invalid rate limit: " + rate + '/' + burst);
+      this.tier = tier;
+      this.role = role;
+      unlimited = false;
+      interval = Math.max(1, (long)(1_000_000_000L / rate));
+      capacity = (long)(interval * Math.floor(burst));
+      return;
+    }
+
+  } // Limit
+
+  /**
+   * The key of a bucket, being either a (masked) address, or a role ID, along with the tier of the limit applied.
+   */
+  protected static final class BucketKey {
+    /**
+     * The {@linkplain Limit#tier tier} of the limit applied.
+     */
+    protected final int tier;
+    /**
+     * Is this the key of a role, rather than an address?
+     */
+    protected final boolean role;
+    /**
+     * The high 64 bits of the address, or the role ID.
+     */
+    protected final long high;
+    /**
+     * The low 64 bits of the address.
+     */
+    protected final long low;
+
+    /**
+     * Construct a <code>BucketKey</code>.
+     * 
+     * @param tier The tier of the limit applied.
+     * @param role Is this the key of a role?
+     * @param high The high 64 bits of the address, or the role ID.
+     * @param low The low 64 bits of the address.
+     */
+    public BucketKey(final int tier, final boolean role, final long high, final long low) {
+      this.tier = tier;
+      this.role = role;
+      this.high = high;
+      this.low = low;
+      return;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object other) {
+      if (this == other) return true;
+      if (!(other instanceof BucketKey)) return false;
+      final BucketKey otherKey = (BucketKey)other;
+      return (tier == otherKey.tier) && (role == otherKey.role) && (high == otherKey.high) && (low == otherKey.low);
+    }
+
+    @Override
+    public int hashCode() {
+      long hash = (high * 0x9E3779B97F4A7C15L) ^ (low * 0xC2B2AE3D27D4EB4FL) ^ (tier * 31L) ^ (role ? 1 : 0);
+      hash ^= hash >>> 29;
+      return (int)(hash ^ (hash >>> 32));
+    }
+
+  } // BucketKey
+
+  /**
+   * A stripe of the buckets, mapping each key to its theoretical arrival time.
+   */
+  protected static class Stripe {
+    /**
+     * The proportion of its capacity a full stripe is {@linkplain #sweep(long, int) swept} down to.
+     */
+    protected static final double SWEEP_TARGET = 0.75;
+    /**
+     * The buckets.
+     */
+    protected final ConcurrentHashMap<BucketKey,AtomicLong> buckets = new ConcurrentHashMap<BucketKey,AtomicLong>();
+
+    /**
+     * Construct a <code>Stripe</code>.
+     */
+    public Stripe() {
+      return;
+    }
+
+    /**
+     * Is a {@linkplain #sweep(long, int) sweep} in progress?
+     */
+    protected final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * Remove all idle buckets (those whose theoretical arrival time has passed, which are therefore full), and then (if
+     * the stripe is still above {@link #SWEEP_TARGET} of its <code>capacity</code>) those closest to being full, until
+     * it isn't. Evicting in a batch amortizes the scan over the many new keys which can then be added before the next
+     * sweep, and the most throttled buckets (those furthest from being full) are the last to be evicted, so a client
+     * spraying new addresses can't cheaply reset the limits of others. Only one thread sweeps a stripe at a time; any
+     * others simply proceed.
+     * 
+     * @param now The current {@linkplain System#nanoTime() time}.
+     * @param capacity The maximum number of buckets the stripe may hold.
+     * @return The number of non-idle buckets evicted.
+     */
+    protected int sweep(final long now, final int capacity) {
+      if (!sweeping.compareAndSet(false, true)) return 0;
+      try {
+        buckets.values().removeIf((bucket) -> bucket.get() - now <= 0);
+        final int target = (int)(capacity * SWEEP_TARGET);
+        final int excess = buckets.size() - target;
+        if (excess <= 0) return 0;
+        long[] remaining = new long[buckets.size() + 16];
+        int count = 0;
+        for (AtomicLong bucket : buckets.values()) {
+          if (count == remaining.length) remaining = Arrays.copyOf(remaining, count * 2);
+          remaining[count++] = bucket.get() - now;
+        }
+        Arrays.sort(remaining, 0, count);
+        final long threshold = remaining[Math.min(excess, count) - 1]; // Evict those at most this far from being full.
+        int evicted = 0;
+        final Iterator<AtomicLong> iterator = buckets.values().iterator();
+        while ((evicted < excess) && (iterator.hasNext())) {
+          if (iterator.next().get() - now > threshold) continue;
+          iterator.remove();
+          evicted++;
+        }
+        return evicted;
+      } finally {
+        sweeping.set(false);
+      }
+    }
+
+  } // Stripe
+
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+
+
+/**
+ * <p>
+ * Host another {@link Filter} whose configuration may be edited at runtime, without a redeploy.
+ * </p>
+ * 
+ * <p>
+ * The hosted {@linkplain #FILTER_PROP filter} is initialized with the init parameters of this filter, overlaid with
+ * those in an external {@linkplain #FILE_PROP properties file}, which is watched for changes using a
+ * {@link WatchService}. Whenever the file changes, a new instance of the filter is initialized from the edited
+ * configuration (compiling its patterns, header plans, role tables, etc) and published through a single volatile
+ * reference, so the request path never takes a lock. If the edited configuration is invalid (ie, the new instance
+ * fails to initialize), the failure is {@linkplain ServletContext#log(String, Throwable) logged} and the last good
+ * instance is retained. A replaced instance is {@linkplain Filter#destroy() destroyed} once the last request using it
+ * completes (including any {@linkplain ServletRequest#startAsync() asynchronous} processing it started).
+ * </p>
+ * 
+ * <p>
+ * For example, the following allows the redirects of a <code>UserRoleRedirectionFilter</code> named <code>Home</code>
+ * to be edited in <code>/etc/example/home.properties</code>:
+ * </p>
+ * 
+ * <pre>
+ * &lt;filter&gt;
+ *   &lt;filter-name&gt;Home&lt;/filter-name&gt;
+ *   &lt;filter-class&gt;com.hubick.utility_servlets.ReloadableFilter&lt;/filter-class&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;ReloadableFilter.Home.Filter&lt;/param-name&gt;
+ *     &lt;param-value&gt;UserRoleRedirectionFilter&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;ReloadableFilter.Home.File&lt;/param-name&gt;
+ *     &lt;param-value&gt;/etc/example/home.properties&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ * 
+ * <p>
+ * The metrics of the hosted filter aren't registered with JMX, only those of this filter.
+ * </p>
+ */
+@NonNullByDefault
+public class ReloadableFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ReloadableFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>')
+   * whose value is the class name of the {@link Filter} to host (which may be given as a simple name for those in this
+   * library).
+   */
+  public static final String FILTER_PROP = "Filter";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ReloadableFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>')
+   * whose value is the path of the (UTF-8) {@linkplain Properties#load(Reader) properties} file whose entries overlay
+   * the init parameters of the hosted filter. A relative path is resolved against the
+   * {@linkplain ServletContext#getRealPath(String) web application}. The file needn't exist yet.
+   */
+  public static final String FILE_PROP = "File";
+  /**
+   * How long to wait for further changes to the file after one is noticed, before reloading it, in milliseconds. This
+   * avoids reloading a file which is still being written.
+   */
+  protected static final long SETTLE_MILLIS = 100;
+  /**
+   * The configuration of this filter.
+   */
+  protected @Nullable FilterConfig filterConfig = null;
+  /**
+   * The class name of the hosted filter.
+   */
+  protected String filterClassName = "";
+  /**
+   * The properties file being watched, or <code>null</code> if this filter hasn't been initialized.
+   */
+  protected @Nullable Path file = null;
+  /**
+   * The currently published snapshot, which is only ever replaced by compare-and-set, so a reload can't publish a new
+   * snapshot after this filter has been destroyed.
+   */
+  protected final AtomicReference<@Nullable Snapshot> snapshot = new AtomicReference<@Nullable Snapshot>();
+  /**
+   * The watch service monitoring the {@link #file}.
+   */
+  protected volatile @Nullable WatchService watchService = null;
+  /**
+   * The thread waiting on the {@link #watchService}.
+   */
+  protected @Nullable Thread watcherThread = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of successful reloads.
+   */
+  protected LongAdder reloadCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of rejected reloads.
+   */
+  protected LongAdder reloadFailureCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws ServletException, IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    reloadCounter = metrics.counter("reloads");
+    reloadFailureCounter = metrics.counter("reload-failures");
+    this.filterConfig = filterConfig;
+    final String prefix = ReloadableFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    final String filterProp = filterConfig.getInitParameter(prefix + FILTER_PROP);
+    if (filterProp == null) throw new IllegalArgumentException("No '" + prefix + FILTER_PROP + "' specified");
+    filterClassName = filterProp.trim();
+    final String fileProp = filterConfig.getInitParameter(prefix + FILE_PROP);
+    if (fileProp == null) throw new IllegalArgumentException("No '" + prefix + FILE_PROP + "' specified");
+    Path file = Paths.get(fileProp.trim());
+    if (!file.isAbsolute()) {
+      final String realPath = filterConfig.getServletContext().getRealPath(fileProp.trim());
+      if (realPath != null) file = Paths.get(realPath);
+    }
+    file = file.toAbsolutePath().normalize();
+    this.file = file;
+
+    try {
+      snapshot.set(createSnapshot(filterConfig, file));
+      startWatching(filterConfig, file);
+    } catch (IOException ioe) {
+      destroy();
+      throw new ServletException("Failed to load or watch '" + file + "'", ioe);
+    } catch (ServletException | RuntimeException e) {
+      destroy();
+      throw e;
+    }
+    return;
+  }
+
+  /**
+   * Create a new snapshot, initializing a new instance of the hosted filter using the current contents of the
+   * <code>file</code>.
+   * 
+   * @param filterConfig The configuration of this filter.
+   * @param file The properties file.
+   * @return The new snapshot.
+   * @throws ServletException If the hosted filter failed to initialize.
+   * @throws IOException If there was a problem reading the file.
+   * @throws IllegalArgumentException If the hosted filter couldn't be created, or the configuration is invalid.
+   */
+  protected Snapshot createSnapshot(final FilterConfig filterConfig, final Path file) throws ServletException, IOException, IllegalArgumentException {
+    final Map<String,String> parameters = new HashMap<String,String>();
+    Collections.list(filterConfig.getInitParameterNames()).forEach((name) -> parameters.put(name, filterConfig.getInitParameter(name)));
+    if (Files.exists(file)) {
+      final Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      }
+      properties.stringPropertyNames().forEach((name) -> parameters.put(name, properties.getProperty(name)));
+    }
+    final Filter filter = UtilityPipelineFilter.createFilter(filterClassName, Filter.class);
+    filter.init(new SnapshotFilterConfig(filterConfig, parameters));
+    return new Snapshot(filter);
+  }
+
+  /**
+   * Start a daemon thread watching the directory containing the <code>file</code> for changes to it.
+   * 
+   * @param filterConfig The configuration of this filter.
+   * @param file The properties file.
+   * @throws IOException If the directory couldn't be watched.
+   */
+  protected void startWatching(final FilterConfig filterConfig, final Path file) throws IOException {
+    final Path directory = file.getParent();
+    if (directory == null) throw new IOException("No parent directory for '" + file + "'");
+    final WatchService watchService = directory.getFileSystem().newWatchService();
+    try {
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+    this.watchService = watchService;
+    final Thread watcherThread = new Thread(() -> watch(filterConfig, file, watchService), ReloadableFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + "-watcher");
+    watcherThread.setDaemon(true);
+    this.watcherThread = watcherThread;
+    watcherThread.start();
+    return;
+  }
+
+  /**
+   * Wait for changes to the <code>file</code>, and {@linkplain #reload(FilterConfig, Path) reload} it, until the
+   * <code>watchService</code> is closed.
+   * 
+   * @param filterConfig The configuration of this filter.
+   * @param file The properties file.
+   * @param watchService The watch service monitoring the directory containing the file.
+   */
+  protected void watch(final FilterConfig filterConfig, final Path file, final WatchService watchService) {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean changed = false;
+        while (key != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if ((event.kind() == StandardWatchEventKinds.OVERFLOW) || (file.getFileName().equals(event.context()))) changed = true;
+          }
+          key.reset();
+          key = changed ? watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS) : null;
+        }
+        if (changed) reload(filterConfig, file);
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {}
+    return;
+  }
+
+  /**
+   * Publish a new snapshot created from the current contents of the <code>file</code>, or retain the current one if
+   * that fails.
+   * 
+   * @param filterConfig The configuration of this filter.
+   * @param file The properties file.
+   * @return <code>true</code> if the new snapshot was published.
+   */
+  protected boolean reload(final FilterConfig filterConfig, final Path file) {
+    final Snapshot newSnapshot;
+    try {
+      newSnapshot = createSnapshot(filterConfig, file);
+    } catch (ServletException | IOException | RuntimeException e) {
+      reloadFailureCounter.increment();
+      filterConfig.getServletContext().log("Rejected configuration change to '" + file + "' for filter '" + filterConfig.getFilterName() + "', retaining the previous configuration", e);
+      return false;
+    }
+    final Snapshot oldSnapshot = snapshot.get();
+    if ((oldSnapshot == null) || (!snapshot.compareAndSet(oldSnapshot, newSnapshot))) { // Destroyed while reloading.
+      newSnapshot.retire();
+      return false;
+    }
+    oldSnapshot.retire();
+    reloadCounter.increment();
+    return true;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final Snapshot snapshot = acquire();
+    if (snapshot == null) throw new ServletException(ReloadableFilter.class.getSimpleName() + " not initialized");
+    final TimedFilterChain timedFilterChain = new TimedFilterChain(filterChain);
+    boolean deferred = false;
+    try {
+      snapshot.filter.doFilter(servletRequest, servletResponse, timedFilterChain);
+      deferred = releaseOnAsyncComplete(servletRequest, snapshot);
+    } finally {
+      if (!deferred) snapshot.release();
+    }
+    metrics.record(start, timedFilterChain.chainNanos);
+    return;
+  }
+
+  /**
+   * If the request went {@linkplain ServletRequest#isAsyncStarted() asynchronous}, defer releasing the
+   * <code>snapshot</code> until the asynchronous processing completes, since the hosted filter may still be in use
+   * (ie, by a wrapper it passed down the chain) until then.
+   * 
+   * @param request The request.
+   * @param snapshot The snapshot acquired for the request.
+   * @return <code>true</code> if the release was deferred, or <code>false</code> if the caller must release the
+   * snapshot now.
+   */
+  protected static boolean releaseOnAsyncComplete(final ServletRequest request, final Snapshot snapshot) {
+    if (!request.isAsyncStarted()) return false;
+    try {
+      request.getAsyncContext().addListener(new AsyncListener() {
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+          snapshot.release();
+          return;
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+          return;
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+          return;
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+          final AsyncContext asyncContext = event.getAsyncContext();
+          if (asyncContext != null) asyncContext.addListener(this); // Listeners are cleared when async is restarted.
+          return;
+        }
+
+      });
+    } catch (IllegalStateException ise) {
+      return false; // Already completed.
+    }
+    return true;
+  }
+
+  /**
+   * Acquire the currently published snapshot for the duration of a request, retrying if it's replaced concurrently.
+   * 
+   * @return The acquired snapshot, which must be {@linkplain Snapshot#release() released}, or <code>null</code> if
+   * this filter isn't initialized.
+   */
+  protected @Nullable Snapshot acquire() {
+    while (true) {
+      final Snapshot snapshot = this.snapshot.get();
+      if (snapshot == null) return null;
+      if (snapshot.acquire()) return snapshot;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    final WatchService watchService = this.watchService;
+    this.watchService = null;
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException ioe) {}
+    }
+    final Thread watcherThread = this.watcherThread;
+    this.watcherThread = null;
+    if (watcherThread != null) watcherThread.interrupt();
+    final Snapshot snapshot = this.snapshot.getAndSet(null);
+    if (snapshot != null) snapshot.retire();
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * An initialized instance of the hosted filter, along with a count of the requests using it, so it can be
+   * {@linkplain Filter#destroy() destroyed} once it's been replaced and the last of them completes. The count is kept
+   * as separate (striped) tallies of acquisitions and releases, so concurrent requests don't contend on a single atomic
+   * counter, and is only summed once the snapshot has been retired.
+   */
+  protected static class Snapshot {
+    /**
+     * The hosted filter.
+     */
+    public final Filter filter;
+    /**
+     * The number of times this snapshot has been acquired.
+     */
+    protected final LongAdder acquired = new LongAdder();
+    /**
+     * The number of times this snapshot has been released.
+     */
+    protected final LongAdder released = new LongAdder();
+    /**
+     * Has this snapshot been replaced?
+     */
+    protected volatile boolean retired = false;
+    /**
+     * Has the {@link #filter} been destroyed?
+     */
+    protected final AtomicBoolean destroyed = new AtomicBoolean();
+
+    /**
+     * Construct a <code>Snapshot</code>.
+     * 
+     * @param filter The (initialized) hosted filter.
+     */
+    public Snapshot(final Filter filter) {
+      this.filter = filter;
+      return;
+    }
+
+    /**
+     * Register a request as using this snapshot.
+     * 
+     * @return <code>true</code> if the request may use this snapshot, or <code>false</code> if it has been retired, in
+     * which case the current snapshot should be acquired instead.
+     */
+    public boolean acquire() {
+      acquired.increment();
+      if (!retired) return true;
+      release();
+      return false;
+    }
+
+    /**
+     * Register a request as having finished using this snapshot.
+     */
+    public void release() {
+      released.increment();
+      if (retired) destroyIfUnused();
+      return;
+    }
+
+    /**
+     * Retire this snapshot, destroying the filter once no requests are using it.
+     */
+    public void retire() {
+      retired = true;
+      destroyIfUnused();
+      return;
+    }
+
+    /**
+     * Destroy the filter if no requests are using it. This must only be called once the snapshot is
+     * {@linkplain #retire() retired}, after which any request acquiring it backs off again. Releases are summed first,
+     * since every release counted was preceded by its acquisition, so equal sums mean no request still holds it.
+     */
+    protected void destroyIfUnused() {
+      final long releasedCount = released.sum();
+      if (acquired.sum() == releasedCount) destroy();
+      return;
+    }
+
+    /**
+     * {@linkplain Filter#destroy() Destroy} the filter, if that hasn't been done already.
+     */
+    protected void destroy() {
+      if (destroyed.compareAndSet(false, true)) filter.destroy();
+      return;
+    }
+
+  } // Snapshot
+
+  /**
+   * The {@link FilterConfig} supplied to the hosted filter, which is that of this filter, but with the parameters from
+   * the properties file overlaid, and {@linkplain FilterMetrics#JMX_ENABLE_PARAM JMX registration} of its metrics
+   * disabled.
+   */
+  protected static class SnapshotFilterConfig implements FilterConfig {
+    /**
+     * The configuration of this filter.
+     */
+    protected final FilterConfig filterConfig;
+    /**
+     * The combined init parameters.
+     */
+    protected final Map<String,String> parameters;
+
+    /**
+     * Construct a <code>SnapshotFilterConfig</code>.
+     * 
+     * @param filterConfig The configuration of this filter.
+     * @param parameters The combined init parameters.
+     */
+    public SnapshotFilterConfig(final FilterConfig filterConfig, final Map<String,String> parameters) {
+      this.filterConfig = filterConfig;
+      this.parameters = Collections.unmodifiableMap(parameters);
+      return;
+    }
+
+    @Override
+    public String getFilterName() {
+      return filterConfig.getFilterName();
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+      return filterConfig.getServletContext();
+    }
+
+    @Override
+    public @Nullable String getInitParameter(final String name) {
+      if (FilterMetrics.JMX_ENABLE_PARAM.equals(name)) return Boolean.FALSE.toString();
+      return parameters.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getInitParameterNames() {
+      return Collections.enumeration(parameters.keySet());
+    }
+
+  } // SnapshotFilterConfig
+
+  /**
+   * A {@link FilterChain} timing the rest of the chain, on behalf of the hosted filter.
+   */
+  protected class TimedFilterChain implements FilterChain {
+    /**
+     * The rest of the chain.
+     */
+    protected final FilterChain filterChain;
+    /**
+     * The time spent in the rest of the chain.
+     */
+    protected long chainNanos = 0;
+
+    /**
+     * Construct a <code>TimedFilterChain</code>.
+     * 
+     * @param filterChain The rest of the chain.
+     */
+    public TimedFilterChain(final FilterChain filterChain) {
+      this.filterChain = filterChain;
+      return;
+    }
+
+    @Override
+    public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse) throws IOException, ServletException {
+      chainNanos += metrics.doChain(filterChain, servletRequest, servletResponse);
+      return;
+    }
+
+  } // TimedFilterChain
+
+}
@@ -0,0 +1,655 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.role.*;
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Cache complete <code>GET</code> responses (status, headers, and content) in memory, and replay them for subsequent
+ * requests without invoking the servlet.
+ * </p>
+ * 
+ * <p>
+ * The cache key is the request URL (including the query string), plus the roles of the user, the
+ * {@linkplain XHTMLAcceptFilter#acceptsXHTML(HttpServletRequest) XHTML decision}, and the content coding which would be
+ * {@linkplain CompressionFilter#negotiate(String) negotiated}. If {@linkplain #VARY_ROLES_PROP specific roles} are
+ * configured, exactly those are tested. Otherwise, the roles are those granted by any {@link UserRoleRequestWrapper},
+ * and requests to which it grants any roles which can't be {@linkplain UserRoleRequestWrapper#isEnumerable()
+ * enumerated} (such as locale, address, or host roles, which a page could test for individually) bypass the cache
+ * entirely, so that a response is never served to a client it wasn't produced for. This makes it possible to cache
+ * pages which are "personalised" only according to the coarse roles assigned by the <code>role</code> package
+ * filters.
+ * </p>
+ * 
+ * <p>
+ * Only <code>200</code> responses no larger than the {@linkplain #MAX_ENTRY_SIZE_PROP maximum entry size} are cached,
+ * for the time given by their <code>Cache-Control</code> <code>s-maxage</code> or <code>max-age</code> directive (or
+ * the {@linkplain #DEFAULT_TTL_PROP default}), and never if they are <code>no-store</code>, <code>no-cache</code>, or
+ * <code>private</code>, set a cookie, or <code>Vary</code> on anything beyond <code>Accept-Encoding</code> and (only
+ * if {@linkplain #VARY_XHTML_ENABLE_PROP varying by the XHTML decision}) <code>Accept</code>. Note that the XHTML
+ * decision is the only part of the <code>Accept</code> header which is keyed, so a servlet negotiating other types
+ * must not have its responses cached. Requests from authenticated users (or with an <code>Authorization</code> header)
+ * are never cached. The cache is bounded by the {@linkplain #MAX_SIZE_PROP total size} of the content, evicting entries
+ * which haven't been recently used.
+ * </p>
+ * 
+ * <p>
+ * Concurrent misses for the same key are coalesced, so only one request reaches the servlet while the others wait
+ * (up to a {@linkplain #COALESCE_TIMEOUT_PROP timeout}) for its response. If that response can't be cached, a
+ * <em>hit-for-pass</em> marker is cached in its place (for the {@linkplain #HIT_FOR_PASS_TTL_PROP hit-for-pass TTL}),
+ * so later requests for the key go straight to the servlet rather than waiting on each other.
+ * </p>
+ * 
+ * <p>
+ * Hits honour the request's <code>If-None-Match</code> (or, failing that, <code>If-Modified-Since</code>) header,
+ * against the cached <code>ETag</code> (or <code>Last-Modified</code>) header, answering with a
+ * <code>304 Not Modified</code> when the client already has the cached content.
+ * </p>
+ */
+@NonNullByDefault
+public class ResponseCacheFilter implements Filter {
+  /**
+   * The key to an integer config option specifying the maximum total size (in bytes) of cached content (default
+   * <code>16777216</code>).
+   */
+  public static final String MAX_SIZE_PROP = "MaxSize";
+  /**
+   * The key to an integer config option specifying the maximum size (in bytes) of the content of a response to be
+   * cached (default <code>262144</code>).
+   */
+  public static final String MAX_ENTRY_SIZE_PROP = "MaxEntrySize";
+  /**
+   * The key to an integer config option specifying the number of seconds to cache responses without a
+   * <code>max-age</code> or <code>s-maxage</code> directive (default <code>0</code>, meaning they won't be cached).
+   */
+  public static final String DEFAULT_TTL_PROP = "DefaultTTL";
+  /**
+   * The key to a config option specifying a comma separated list of the roles responses vary by. If not set, all the
+   * roles granted by any {@link UserRoleRequestWrapper} are used, and requests granted any roles which can't be
+   * enumerated aren't cached.
+   */
+  public static final String VARY_ROLES_PROP = "VaryRoles";
+  /**
+   * The key to a boolean config option controlling whether responses vary by the
+   * {@linkplain XHTMLAcceptFilter#acceptsXHTML(HttpServletRequest) XHTML decision} (default <code>true</code>). If
+   * disabled, responses which <code>Vary</code> on <code>Accept</code> aren't cached.
+   */
+  public static final String VARY_XHTML_ENABLE_PROP = "VaryXHTML.Enable";
+  /**
+   * The key to an integer config option specifying the number of milliseconds a request will wait for a concurrent
+   * request with the same key to produce a response, before invoking the servlet itself (default <code>10000</code>).
+   */
+  public static final String COALESCE_TIMEOUT_PROP = "CoalesceTimeout";
+  /**
+   * The key to an integer config option specifying the number of seconds requests for a key whose response couldn't be
+   * cached will go straight to the servlet, without coalescing (default <code>60</code>).
+   */
+  public static final String HIT_FOR_PASS_TTL_PROP = "HitForPassTTL";
+  /**
+   * A shared empty role set, for requests without any roles.
+   */
+  protected static final RoleSet NO_ROLES = new RoleSet();
+  /**
+   * @see #MAX_ENTRY_SIZE_PROP
+   */
+  protected int maxEntrySize = 262144;
+  /**
+   * @see #DEFAULT_TTL_PROP
+   */
+  protected long defaultTTLNanos = 0;
+  /**
+   * The names of the configured {@linkplain #VARY_ROLES_PROP roles}, or <code>null</code> to use those granted by any
+   * {@link UserRoleRequestWrapper}.
+   */
+  protected String @Nullable [] varyRoleNames = null;
+  /**
+   * The {@linkplain RoleRegistry#intern(String) IDs} of the {@link #varyRoleNames}.
+   */
+  protected int[] varyRoleIDs = new int[0];
+  /**
+   * @see #VARY_XHTML_ENABLE_PROP
+   */
+  protected boolean varyXHTML = true;
+  /**
+   * @see #COALESCE_TIMEOUT_PROP
+   */
+  protected long coalesceTimeoutMillis = 10000;
+  /**
+   * @see #HIT_FOR_PASS_TTL_PROP
+   */
+  protected long hitForPassTTLNanos = TimeUnit.SECONDS.toNanos(60);
+  /**
+   * The cached responses.
+   */
+  protected @Nullable BoundedCache<CacheKey,CachedResponse> cache = null;
+  /**
+   * The responses currently being produced for a miss, which concurrent requests for the same key will wait on.
+   */
+  protected final ConcurrentHashMap<CacheKey,CompletableFuture<@Nullable CachedResponse>> inFlight = new ConcurrentHashMap<CacheKey,CompletableFuture<@Nullable CachedResponse>>();
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of misses which waited on a concurrent request for the same
+   * key, rather than reaching the servlet.
+   */
+  protected LongAdder coalescedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests which went straight to the servlet because of a
+   * hit-for-pass marker.
+   */
+  protected LongAdder passedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests which bypassed the cache because they were
+   * granted roles which can't be enumerated.
+   */
+  protected LongAdder unenumerableCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of hits answered with a <code>304 Not Modified</code>.
+   */
+  protected LongAdder notModifiedCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
+    coalescedCounter = metrics.counter("coalesced");
+    passedCounter = metrics.counter("passed");
+    unenumerableCounter = metrics.counter("unenumerable");
+    notModifiedCounter = metrics.counter("notModified");
+    final String prefix = ResponseCacheFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    final String maxSizeParam = filterConfig.getInitParameter(prefix + MAX_SIZE_PROP);
+    final long maxSize = (maxSizeParam != null) ? Long.parseLong(maxSizeParam.trim()) : 16777216;
+    final String maxEntrySizeParam = filterConfig.getInitParameter(prefix + MAX_ENTRY_SIZE_PROP);
+    maxEntrySize = (maxEntrySizeParam != null) ? Integer.parseInt(maxEntrySizeParam.trim()) : 262144;
+    if ((maxEntrySize < 0) || (maxEntrySize > maxSize)) throw new IllegalArgumentException("Invalid " + prefix + MAX_ENTRY_SIZE_PROP + ": " + maxEntrySize);
+    final String defaultTTLParam = filterConfig.getInitParameter(prefix + DEFAULT_TTL_PROP);
+    defaultTTLNanos = (defaultTTLParam != null) ? TimeUnit.SECONDS.toNanos(Long.parseLong(defaultTTLParam.trim())) : 0;
+    final String varyRolesParam = filterConfig.getInitParameter(prefix + VARY_ROLES_PROP);
+    if (varyRolesParam != null) {
+      final String[] varyRoleNames = Arrays.stream(varyRolesParam.split(",")).map(String::trim).filter((role) -> !role.isEmpty()).toArray(String[]::new);
+      this.varyRoleNames = varyRoleNames;
+      varyRoleIDs = Arrays.stream(varyRoleNames).mapToInt(RoleRegistry::intern).toArray();
+    }
+    final String varyXHTMLParam = filterConfig.getInitParameter(prefix + VARY_XHTML_ENABLE_PROP);
+    varyXHTML = (varyXHTMLParam != null) ? Boolean.parseBoolean(varyXHTMLParam) : true;
+    final String coalesceTimeoutParam = filterConfig.getInitParameter(prefix + COALESCE_TIMEOUT_PROP);
+    if (coalesceTimeoutParam != null) coalesceTimeoutMillis = Long.parseLong(coalesceTimeoutParam.trim());
+    final String hitForPassTTLParam = filterConfig.getInitParameter(prefix + HIT_FOR_PASS_TTL_PROP);
+    if (hitForPassTTLParam != null) hitForPassTTLNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(hitForPassTTLParam.trim()));
+    cache = new BoundedCache<CacheKey,CachedResponse>(maxSize, CachedResponse::weight);
+    return;
+  }
+
+  /**
+   * Compute the cache key for the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The cache key, or <code>null</code> if the request may have been granted roles the key can't capture, and
+   * so must bypass the cache.
+   */
+  protected @Nullable CacheKey getKey(final HttpServletRequest request) {
+    final StringBuffer url = request.getRequestURL();
+    final String queryString = request.getQueryString();
+    if (queryString != null) url.append('?').append(queryString);
+
+    RoleSet roles = NO_ROLES;
+    final String[] varyRoleNames = this.varyRoleNames;
+    if (varyRoleNames != null) {
+      for (int i = 0; i < varyRoleNames.length; i++) {
+        if (!request.isUserInRole(varyRoleNames[i])) continue;
+        if (roles == NO_ROLES) roles = new RoleSet();
+        roles.add(varyRoleIDs[i]);
+      }
+    } else {
+      final UserRoleRequestWrapper wrapper = UserRoleRequestWrapper.find(request);
+      if (wrapper != null) {
+        if (!wrapper.isEnumerable()) return null;
+        if (!wrapper.getRoles().isEmpty()) roles = new RoleSet(wrapper.getRoles());
+      }
+    }
+
+    final boolean xhtml = (varyXHTML) && (XHTMLAcceptFilter.acceptsXHTML(request));
+    final String acceptEncoding = request.getHeader("Accept-Encoding");
+    final String coding = (acceptEncoding != null) ? CompressionFilter.negotiate(acceptEncoding) : null;
+    return new CacheKey(url.toString(), roles, xhtml, coding);
+  }
+
+  /**
+   * Determine how long the response should be cached for, according to its headers.
+   * 
+   * @param response The response.
+   * @return The time to live, in nanoseconds, or <code>0</code> if the response shouldn't be cached.
+   */
+  protected long getTTLNanos(final HttpServletResponse response) {
+    if (response.containsHeader("Set-Cookie")) return 0;
+    for (String vary : response.getHeaders("Vary")) {
+      for (String field : vary.split(",")) {
+        field = field.trim();
+        if ((field.equalsIgnoreCase("Accept")) && (varyXHTML)) continue; // Keyed by the XHTML decision.
+        if ((!field.equalsIgnoreCase("Accept-Encoding")) && (!field.isEmpty())) return 0;
+      }
+    }
+    long maxAge = -1;
+    long sMaxAge = -1;
+    for (String cacheControl : response.getHeaders("Cache-Control")) {
+      for (String directive : cacheControl.split(",")) {
+        directive = directive.trim().toLowerCase(Locale.ROOT);
+        if ((directive.equals("no-store")) || (directive.startsWith("no-cache")) || (directive.startsWith("private"))) return 0;
+        try {
+          if (directive.startsWith("s-maxage=")) {
+            sMaxAge = Long.parseLong(directive.substring(9).replace("\"", "").trim());
+          } else if (directive.startsWith("max-age=")) {
+            maxAge = Long.parseLong(directive.substring(8).replace("\"", "").trim());
+          }
+        } catch (NumberFormatException nfe) {
+          return 0;
+        }
+      }
+    }
+    if (sMaxAge >= 0) return TimeUnit.SECONDS.toNanos(sMaxAge);
+    if (maxAge >= 0) return TimeUnit.SECONDS.toNanos(maxAge);
+    return defaultTTLNanos;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+    final BoundedCache<CacheKey,CachedResponse> cache = this.cache;
+
+    if ((cache == null) || (!"GET".equals(httpServletRequest.getMethod())) || (httpServletRequest.getRemoteUser() != null) || (httpServletRequest.getHeader("Authorization") != null)) {
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      metrics.record(start, chainNanos);
+      return;
+    }
+
+    final CacheKey key = getKey(httpServletRequest);
+    if (key == null) {
+      unenumerableCounter.increment();
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      metrics.record(start, chainNanos);
+      return;
+    }
+    final CachedResponse cached = cache.get(key);
+    if (cached != null) {
+      if (!cached.isExpired(System.nanoTime())) {
+        if (cached.isHitForPass()) {
+          passedCounter.increment();
+          final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+          metrics.record(start, chainNanos);
+          return;
+        }
+        if (cached.isNotModified(httpServletRequest)) {
+          cached.replayNotModified(httpServletResponse);
+          notModifiedCounter.increment();
+        } else {
+          cached.replay(httpServletResponse);
+        }
+        metrics.record(start, 0);
+        return;
+      }
+      cache.remove(key, cached);
+    }
+
+    final CompletableFuture<@Nullable CachedResponse> flight = new CompletableFuture<@Nullable CachedResponse>();
+    final CompletableFuture<@Nullable CachedResponse> leader = inFlight.putIfAbsent(key, flight);
+    if (leader != null) {
+      CachedResponse coalesced = null;
+      try {
+        coalesced = leader.get(coalesceTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException | TimeoutException e) {}
+      long chainNanos = 0;
+      if ((coalesced != null) && (!coalesced.isHitForPass())) {
+        coalesced.replay(httpServletResponse);
+        coalescedCounter.increment();
+      } else {
+        chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      }
+      metrics.record(start, chainNanos);
+      return;
+    }
+
+    CachedResponse captured = null;
+    long chainNanos = 0;
+    try {
+      final BufferingResponseWrapper responseWrapper = new BufferingResponseWrapper(httpServletResponse, maxEntrySize);
+      chainNanos = metrics.doChain(filterChain, servletRequest, responseWrapper);
+      if (responseWrapper.deferIfAsync(servletRequest, null)) { // Asynchronous responses aren't cached.
+        captured = hitForPass(cache, key);
+      } else {
+        responseWrapper.finishOutput();
+        if ((!responseWrapper.isBypassed()) && (httpServletResponse.getStatus() == HttpServletResponse.SC_OK)) {
+          final long ttlNanos = ((!responseWrapper.isOverflowed()) && (!httpServletResponse.isCommitted())) ? getTTLNanos(httpServletResponse) : 0;
+          if (ttlNanos > 0) {
+            captured = new CachedResponse(httpServletResponse, Arrays.copyOf(responseWrapper.getBuffer(), responseWrapper.getBufferedLength()), System.nanoTime() + ttlNanos);
+            cache.put(key, captured);
+          } else {
+            captured = hitForPass(cache, key);
+          }
+        }
+        responseWrapper.complete();
+      }
+    } finally {
+      flight.complete(captured);
+      inFlight.remove(key, flight);
+    }
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  /**
+   * Cache a hit-for-pass marker for the given <code>key</code>, whose response couldn't be cached.
+   * 
+   * @param cache The cache.
+   * @param key The key.
+   * @return The marker, or <code>null</code> if hit-for-pass is disabled.
+   */
+  protected @Nullable CachedResponse hitForPass(final BoundedCache<CacheKey,CachedResponse> cache, final CacheKey key) {
+    if (hitForPassTTLNanos <= 0) return null;
+    final CachedResponse marker = new CachedResponse(System.nanoTime() + hitForPassTTLNanos);
+    cache.put(key, marker);
+    return marker;
+  }
+
+  /**
+   * Get the number of requests answered from the cache.
+   * 
+   * @return The hit count.
+   */
+  public long getHitCount() {
+    final BoundedCache<CacheKey,CachedResponse> cache = this.cache;
+    return (cache != null) ? cache.getHitCount() : 0;
+  }
+
+  /**
+   * Get the number of requests which weren't found in the cache.
+   * 
+   * @return The miss count.
+   */
+  public long getMissCount() {
+    final BoundedCache<CacheKey,CachedResponse> cache = this.cache;
+    return (cache != null) ? cache.getMissCount() : 0;
+  }
+
+  @Override
+  public void destroy() {
+    final BoundedCache<CacheKey,CachedResponse> cache = this.cache;
+    if (cache != null) cache.clear();
+    this.cache = null;
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * The key a response is cached under.
+   */
+  protected static final class CacheKey {
+    /**
+     * The request URL, including the query string.
+     */
+    protected final String url;
+    /**
+     * The roles of the user.
+     */
+    protected final RoleSet roles;
+    /**
+     * Does the client accept XHTML?
+     */
+    protected final boolean xhtml;
+    /**
+     * The negotiated content coding, if any.
+     */
+    protected final @Nullable String coding;
+    /**
+     * The precomputed hash code.
+     */
+    protected final int hashCode;
+
+    /**
+     * Construct a <code>CacheKey</code>.
+     * 
+     * @param url The request URL, including the query string.
+     * @param roles The roles of the user.
+     * @param xhtml Does the client accept XHTML?
+     * @param coding The negotiated content coding, if any.
+     */
+    protected CacheKey(final String url, final RoleSet roles, final boolean xhtml, final @Nullable String coding) {
+      this.url = url;
+      this.roles = roles;
+      this.xhtml = xhtml;
+      this.coding = coding;
+      hashCode = ((url.hashCode() * 31 + roles.hashCode()) * 31 + Boolean.hashCode(xhtml)) * 31 + Objects.hashCode(coding);
+      return;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object other) {
+      if (this == other) return true;
+      if (!(other instanceof CacheKey)) return false;
+      final CacheKey otherKey = (CacheKey)other;
+      return (hashCode == otherKey.hashCode) && (xhtml == otherKey.xhtml) && (url.equals(otherKey.url)) && (roles.equals(otherKey.roles)) && (Objects.equals(coding, otherKey.coding));
+    }
+
+  } // CacheKey
+
+  /**
+   * A cached response.
+   */
+  protected static final class CachedResponse {
+    /**
+     * The (identity) content of hit-for-pass markers.
+     */
+    protected static final byte[] HIT_FOR_PASS = new byte[0];
+    /**
+     * The names of the response headers, parallel to {@link #headerValues}.
+     */
+    protected final String[] headerNames;
+    /**
+     * The values of the response headers, parallel to {@link #headerNames}.
+     */
+    protected final String[] headerValues;
+    /**
+     * The content.
+     */
+    protected final byte[] content;
+    /**
+     * When this response expires, as a {@linkplain System#nanoTime() nano time}.
+     */
+    protected final long expiresAt;
+    /**
+     * The <code>ETag</code> header of the response, if it had one.
+     */
+    protected final @Nullable String etag;
+    /**
+     * The <code>Last-Modified</code> header of the response, in milliseconds since the epoch, or <code>-1</code> if it
+     * didn't have a valid one.
+     */
+    protected final long lastModified;
+
+    /**
+     * Construct a <code>CachedResponse</code>, capturing the headers of the given <code>response</code>.
+     * 
+     * @param response The response.
+     * @param content The content.
+     * @param expiresAt When this response expires.
+     */
+    protected CachedResponse(final HttpServletResponse response, final byte[] content, final long expiresAt) {
+      final List<String> headerNames = new ArrayList<String>();
+      final List<String> headerValues = new ArrayList<String>();
+      for (String name : new LinkedHashSet<String>(response.getHeaderNames())) {
+        if ("Content-Length".equalsIgnoreCase(name)) continue;
+        for (String value : response.getHeaders(name)) {
+          headerNames.add(name);
+          headerValues.add(value);
+        }
+      }
+      this.headerNames = headerNames.toArray(new String[headerNames.size()]);
+      this.headerValues = headerValues.toArray(new String[headerValues.size()]);
+      this.content = content;
+      this.expiresAt = expiresAt;
+      etag = response.getHeader("ETag");
+      lastModified = parseDate(response.getHeader("Last-Modified"));
+      return;
+    }
+
+    /**
+     * Parse an HTTP date header value.
+     * 
+     * @param value The header value.
+     * @return The date, in milliseconds since the epoch, or <code>-1</code> if the <code>value</code> is missing or
+     * invalid.
+     */
+    protected static long parseDate(final @Nullable String value) {
+      if (value == null) return -1;
+      try {
+        return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+      } catch (DateTimeException dte) {
+        return -1;
+      }
+    }
+
+    /**
+     * Construct a hit-for-pass <code>CachedResponse</code>, marking a key whose response couldn't be cached.
+     * 
+     * @param expiresAt When this marker expires.
+     */
+    protected CachedResponse(final long expiresAt) {
+      headerNames = new String[0];
+      headerValues = new String[0];
+      content = HIT_FOR_PASS;
+      this.expiresAt = expiresAt;
+      etag = null;
+      lastModified = -1;
+      return;
+    }
+
+    /**
+     * Is this a hit-for-pass marker, rather than a response which can be replayed?
+     * 
+     * @return <code>true</code> if requests should go straight to the servlet.
+     */
+    protected boolean isHitForPass() {
+      return content == HIT_FOR_PASS;
+    }
+
+    /**
+     * Has this response expired?
+     * 
+     * @param now The current {@linkplain System#nanoTime() time}.
+     * @return <code>true</code> if this response should no longer be served.
+     */
+    protected boolean isExpired(final long now) {
+      return now - expiresAt >= 0;
+    }
+
+    /**
+     * Get the approximate memory used by this response.
+     * 
+     * @return The weight of this response, in bytes.
+     */
+    protected long weight() {
+      long weight = content.length + 64;
+      for (int i = 0; i < headerNames.length; i++) {
+        weight += headerNames[i].length() + headerValues[i].length() + 16;
+      }
+      return weight;
+    }
+
+    /**
+     * Does the client already have this response, according to the conditional headers of the given
+     * <code>request</code>? An <code>If-None-Match</code> header takes precedence over <code>If-Modified-Since</code>,
+     * per RFC 7232 section 6.
+     * 
+     * @param request The request.
+     * @return <code>true</code> if a <code>304 Not Modified</code> should be sent instead of the content.
+     */
+    protected boolean isNotModified(final HttpServletRequest request) {
+      if (request.getHeader("If-None-Match") != null) {
+        final String etag = this.etag;
+        return (etag != null) && (ETagFilter.matches(request, etag));
+      }
+      if (lastModified < 0) return false;
+      final long ifModifiedSince;
+      try {
+        ifModifiedSince = request.getDateHeader("If-Modified-Since");
+      } catch (IllegalArgumentException iae) {
+        return false;
+      }
+      return (ifModifiedSince >= 0) && (lastModified / 1000 <= ifModifiedSince / 1000);
+    }
+
+    /**
+     * Replay the headers of this response, as {@linkplain #replay(HttpServletResponse) replayed} for the full response.
+     * 
+     * @param response The response to write to.
+     */
+    protected void replayHeaders(final HttpServletResponse response) {
+      for (int i = 0; i < headerNames.length; i++) {
+        if ((i == 0) || (!headerNames[i].equalsIgnoreCase(headerNames[i - 1]))) {
+          response.setHeader(headerNames[i], headerValues[i]);
+        } else {
+          response.addHeader(headerNames[i], headerValues[i]);
+        }
+      }
+      return;
+    }
+
+    /**
+     * Replay this response as a <code>304 Not Modified</code>, with its headers, but no content.
+     * 
+     * @param response The response to write to.
+     */
+    protected void replayNotModified(final HttpServletResponse response) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      replayHeaders(response);
+      return;
+    }
+
+    /**
+     * Replay this response. The first value of each header is {@linkplain HttpServletResponse#setHeader(String, String)
+     * set} (replacing any value already set by an upstream filter), and any others are
+     * {@linkplain HttpServletResponse#addHeader(String, String) added}.
+     * 
+     * @param response The response to write to.
+     * @throws IOException If there was a problem writing the content.
+     */
+    protected void replay(final HttpServletResponse response) throws IOException {
+      response.setStatus(HttpServletResponse.SC_OK);
+      replayHeaders(response);
+      response.setContentLength(content.length);
+      response.getOutputStream().write(content);
+      return;
+    }
+
+  } // CachedResponse
+
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Learn which sub-resources (stylesheets, scripts, images, etc) clients fetch after loading each page, and
+ * {@linkplain HttpServletRequest#newPushBuilder() push} them over HTTP/2 on later navigations to that page, before the
+ * page itself is even generated.
+ * </p>
+ * 
+ * <p>
+ * Each successful non-navigation <code>GET</code> whose <code>Referer</code> is a page on the same host is counted
+ * against that page, using a small fixed size (Space-Saving) frequency sketch per page, with the number of pages
+ * tracked {@linkplain #MAX_PAGES_PROP bounded}. Counts are periodically halved, so the sketch follows changes to the
+ * page. When a navigation request is received, up to {@linkplain #MAX_PUSHES_PROP N} of the most frequent resources
+ * fetched on at least a {@linkplain #THRESHOLD_PROP threshold} proportion of the views of the page are pushed (pushed
+ * requests carry the page as their <code>Referer</code>, so they continue to be counted).
+ * </p>
+ * 
+ * <p>
+ * Since what is learned from one client is pushed to every other (carrying their cookies), and the
+ * <code>Referer</code> is client supplied, only {@linkplain #isLearnable(HttpServletRequest, HttpServletResponse)
+ * learnable} fetches are counted: those without a query, from unauthenticated clients, whose responses are publicly
+ * cacheable static content (stylesheets, scripts, images, fonts) not setting any cookie.
+ * </p>
+ * 
+ * <p>
+ * To avoid pushing resources the client already has cached, a short-lived {@linkplain #COOKIE_PROP cookie} carries a
+ * digest (hashes) of the resources pushed to it, and those are skipped until the cookie expires, which should be no
+ * longer than the resources are cached for (ie, by a {@link SetResponseHeaderFilter} setting their
+ * <code>Cache-Control</code>).
+ * </p>
+ * 
+ * <p>
+ * This filter must be mapped to both the pages and the resources they reference (ie, <code>/*</code>). Requests over
+ * protocols not supporting push (or where the client has disabled it) are still used for learning.
+ * </p>
+ */
+@NonNullByDefault
+public class ServerPushFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ServerPushFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the maximum number of resources to push for a navigation. If not set, defaults to <code>8</code>.
+   */
+  public static final String MAX_PUSHES_PROP = "MaxPushes";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ServerPushFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the minimum proportion of the views of a page a resource must be fetched after in order to be
+   * pushed. If not set, defaults to <code>0.5</code>.
+   */
+  public static final String THRESHOLD_PROP = "Threshold";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ServerPushFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the maximum number of pages to learn resources for. If not set, defaults to <code>1000</code>.
+   */
+  public static final String MAX_PAGES_PROP = "MaxPages";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ServerPushFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the name of the cookie carrying the digest of pushed resources. If not set, defaults to
+   * <code>pushed</code>.
+   */
+  public static final String COOKIE_PROP = "Cookie";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>ServerPushFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>') whose
+   * value specifies the number of seconds before the {@linkplain #COOKIE_PROP cookie} expires, and a resource may be
+   * pushed to the same client again. If not set, defaults to <code>300</code>.
+   */
+  public static final String COOKIE_MAX_AGE_PROP = "CookieMaxAge";
+  /**
+   * The maximum number of resource hashes carried by the {@linkplain #COOKIE_PROP cookie}.
+   */
+  protected static final int MAX_DIGEST_SIZE = 32;
+  /**
+   * The number of views of a page after which its counts are halved.
+   */
+  protected static final long AGING_VIEWS = 256;
+  /**
+   * @see #MAX_PUSHES_PROP
+   */
+  protected int maxPushes = 8;
+  /**
+   * @see #THRESHOLD_PROP
+   */
+  protected double threshold = 0.5;
+  /**
+   * @see #COOKIE_PROP
+   */
+  protected String cookieName = "pushed";
+  /**
+   * @see #COOKIE_MAX_AGE_PROP
+   */
+  protected int cookieMaxAge = 300;
+  /**
+   * The sketch of resources fetched after each page, keyed by the path of the page.
+   */
+  protected BoundedCache<String,PageSketch> pages = new BoundedCache<String,PageSketch>(1000);
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of resources pushed.
+   */
+  protected LongAdder pushedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of resources not pushed because the client already had them.
+   */
+  protected LongAdder skippedCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    pushedCounter = metrics.counter("pushed");
+    skippedCounter = metrics.counter("skipped");
+    final String prefix = ServerPushFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    maxPushes = (int)getDoubleInitParameter(filterConfig, prefix + MAX_PUSHES_PROP, 8);
+    threshold = getDoubleInitParameter(filterConfig, prefix + THRESHOLD_PROP, 0.5);
+    pages = new BoundedCache<String,PageSketch>((int)getDoubleInitParameter(filterConfig, prefix + MAX_PAGES_PROP, 1000));
+    final String cookieProp = filterConfig.getInitParameter(prefix + COOKIE_PROP);
+    if (cookieProp != null) {
+      cookieName = cookieProp.trim();
+      try {
+        new Cookie(cookieName, "");
+      } catch (IllegalArgumentException iae) {
+        throw new IllegalArgumentException("Invalid " + prefix + COOKIE_PROP + ": '" + cookieProp + '\'', iae);
+      }
+    }
+    cookieMaxAge = (int)getDoubleInitParameter(filterConfig, prefix + COOKIE_MAX_AGE_PROP, 300);
+    return;
+  }
+
+  /**
+   * Get the value of a numeric {@linkplain FilterConfig#getInitParameter(String) configuration parameter}.
+   * 
+   * @param filterConfig The filter configuration.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to return if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws IllegalArgumentException If the parameter value is not a valid positive number.
+   */
+  protected static double getDoubleInitParameter(final FilterConfig filterConfig, final String name, final double defaultValue) throws IllegalArgumentException {
+    final String value = filterConfig.getInitParameter(name);
+    if (value == null) return defaultValue;
+    final double result;
+    try {
+      result = Double.parseDouble(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'', nfe);
+    }
+    if ((!(result > 0)) || (Double.isInfinite(result))) throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'');
+    return result;
+  }
+
+  /**
+   * Is the given <code>request</code> a navigation (ie, the loading of a page, as opposed to a resource within it)?
+   * 
+   * @param request The request.
+   * @return <code>true</code> if the request is a navigation.
+   */
+  protected static boolean isNavigation(final HttpServletRequest request) {
+    final String fetchMode = request.getHeader("Sec-Fetch-Mode");
+    if (fetchMode != null) return "navigate".equals(fetchMode);
+    final String accept = request.getHeader("Accept");
+    return (accept != null) && (accept.contains("text/html"));
+  }
+
+  /**
+   * Get the path of the page on this host the given <code>request</code> was referred from.
+   * 
+   * @param request The request.
+   * @return The path of the referring page (without any query), or <code>null</code> if there is no
+   * <code>Referer</code>, or it's on another host.
+   */
+  protected static @Nullable String getReferringPage(final HttpServletRequest request) {
+    final String referer = request.getHeader("Referer");
+    final String host = request.getHeader("Host");
+    if ((referer == null) || (host == null)) return null;
+    final int schemeEnd = referer.indexOf("://");
+    if (schemeEnd < 0) return null;
+    final int hostStart = schemeEnd + 3;
+    final int pathStart = referer.indexOf('/', hostStart);
+    if ((pathStart < 0) || (pathStart - hostStart != host.length()) || (!referer.regionMatches(true, hostStart, host, 0, host.length()))) return null;
+    int pathEnd = referer.indexOf('?', pathStart);
+    if (pathEnd < 0) pathEnd = referer.indexOf('#', pathStart);
+    return referer.substring(pathStart, (pathEnd >= 0) ? pathEnd : referer.length());
+  }
+
+  /**
+   * Is the given <code>contentType</code> that of a static sub-resource, which may be pushed?
+   * 
+   * @param contentType The content type of the response.
+   * @return <code>true</code> if the content is a stylesheet, script, image, or font.
+   */
+  protected static boolean isStaticContentType(final @Nullable String contentType) {
+    if (contentType == null) return false;
+    return (contentType.regionMatches(true, 0, "text/css", 0, 8)) || (contentType.regionMatches(true, 0, "text/javascript", 0, 15)) || (contentType.regionMatches(true, 0, "application/javascript", 0, 22)) || (contentType.regionMatches(true, 0, "image/", 0, 6)) || (contentType.regionMatches(true, 0, "font/", 0, 5));
+  }
+
+  /**
+   * May the fetch made by the given <code>request</code> be learned, and so later pushed to <em>other</em> clients?
+   * Only a resource which any client could equally have fetched from a shared cache is learned, so nothing specific to
+   * the client making this request (its query tokens, credentials, or state changing requests) is disclosed to, or
+   * replayed on behalf of, anyone else.
+   * 
+   * @param request The (non-navigation) request.
+   * @param response The response, after the chain has completed.
+   * @return <code>true</code> if the resource may be learned.
+   */
+  protected static boolean isLearnable(final HttpServletRequest request, final HttpServletResponse response) {
+    if (response.getStatus() != HttpServletResponse.SC_OK) return false;
+    if (request.getQueryString() != null) return false;
+    if ((request.getRemoteUser() != null) || (request.getHeader("Authorization") != null)) return false;
+    if (response.containsHeader("Set-Cookie")) return false;
+    if (!isStaticContentType(response.getContentType())) return false;
+    for (String cacheControl : response.getHeaders("Cache-Control")) {
+      final String lower = cacheControl.toLowerCase(Locale.ROOT);
+      if ((lower.contains("private")) || (lower.contains("no-store"))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Get the digest of resources already pushed to the client making the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The {@linkplain String#hashCode() hashes} of the pushed resources.
+   */
+  protected int[] getDigest(final HttpServletRequest request) {
+    final Cookie[] cookies = request.getCookies();
+    if (cookies == null) return new int[0];
+    for (Cookie cookie : cookies) {
+      if (!cookieName.equals(cookie.getName())) continue;
+      final String value = cookie.getValue();
+      if ((value == null) || (value.isEmpty())) break;
+      final String[] hashes = value.split("\\.", MAX_DIGEST_SIZE + 1);
+      final int[] digest = new int[Math.min(hashes.length, MAX_DIGEST_SIZE)];
+      int digestSize = 0;
+      for (int i = 0; i < digest.length; i++) {
+        try {
+          final int hash = Integer.parseUnsignedInt(hashes[i], 16);
+          digest[digestSize++] = hash;
+        } catch (NumberFormatException nfe) {}
+      }
+      return Arrays.copyOf(digest, digestSize);
+    }
+    return new int[0];
+  }
+
+  /**
+   * Push the resources learned for the page being navigated to by the given <code>request</code>, other than those in
+   * the client's digest, and update the digest.
+   * 
+   * @param request The navigation request.
+   * @param response The response.
+   */
+  protected void push(final HttpServletRequest request, final HttpServletResponse response) {
+    final PageSketch sketch = pages.get(request.getRequestURI(), (page) -> new PageSketch(maxPushes * 4));
+    final String[] resources = sketch.view(maxPushes, threshold);
+    if (resources.length == 0) return;
+    final PushBuilder pushBuilder = request.newPushBuilder();
+    if (pushBuilder == null) return;
+    pushBuilder.queryString(null); // Resources are learned without any query, so don't inherit the page's.
+    pushBuilder.setHeader("Accept", "*/*"); // The pushed requests mustn't look like navigations themselves.
+    pushBuilder.removeHeader("Sec-Fetch-Mode");
+    pushBuilder.removeHeader("Sec-Fetch-Dest");
+    pushBuilder.removeHeader("Sec-Fetch-User");
+    final int[] digest = getDigest(request);
+    final int[] newDigest = Arrays.copyOf(digest, Math.min(digest.length + resources.length, MAX_DIGEST_SIZE));
+    int newDigestSize = digest.length;
+    boolean pushed = false;
+    resourceLoop: for (String resource : resources) {
+      final int hash = resource.hashCode();
+      for (int i = 0; i < digest.length; i++) {
+        if (digest[i] != hash) continue;
+        skippedCounter.increment();
+        continue resourceLoop;
+      }
+      pushBuilder.path(resource).push();
+      pushedCounter.increment();
+      pushed = true;
+      if (newDigestSize < newDigest.length) {
+        newDigest[newDigestSize++] = hash;
+      } else if (newDigest.length > 0) { // Full, so drop the oldest.
+        System.arraycopy(newDigest, 1, newDigest, 0, newDigest.length - 1);
+        newDigest[newDigest.length - 1] = hash;
+      }
+    }
+    if (!pushed) return;
+    final StringBuilder value = new StringBuilder(newDigestSize * 9);
+    for (int i = 0; i < newDigestSize; i++) {
+      if (i > 0) value.append('.');
+      value.append(Integer.toHexString(newDigest[i]));
+    }
+    final Cookie cookie = new Cookie(cookieName, value.toString());
+    cookie.setMaxAge(cookieMaxAge);
+    cookie.setPath(!request.getContextPath().isEmpty() ? request.getContextPath() : "/");
+    cookie.setHttpOnly(true);
+    if (request.isSecure()) cookie.setSecure(true);
+    response.addCookie(cookie);
+    return;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+    if ((!"GET".equals(httpServletRequest.getMethod())) || (httpServletRequest.getDispatcherType() != DispatcherType.REQUEST)) {
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+      metrics.record(start, chainNanos);
+      return;
+    }
+    final boolean navigation = isNavigation(httpServletRequest);
+    if (navigation) push(httpServletRequest, httpServletResponse);
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    if ((!navigation) && (isLearnable(httpServletRequest, httpServletResponse))) {
+      final String page = getReferringPage(httpServletRequest);
+      if (page != null) {
+        final PageSketch sketch = pages.get(page);
+        if (sketch != null) sketch.fetched(httpServletRequest.getRequestURI());
+      }
+    }
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    pages.clear();
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * A Space-Saving sketch of the resources most frequently fetched after viewing a page, tracking a fixed number of
+   * candidates, each with a (possibly over-estimated) count. Since the sketch is small, and updated once per request,
+   * access is simply synchronized.
+   */
+  protected static class PageSketch {
+    /**
+     * The candidate resources, the first {@link #size} of which are in use.
+     */
+    protected final String[] resources;
+    /**
+     * The counts of the {@link #resources}.
+     */
+    protected final long[] counts;
+    /**
+     * The number of {@link #resources} in use.
+     */
+    protected int size = 0;
+    /**
+     * The number of views of the page.
+     */
+    protected long views = 0;
+
+    /**
+     * Construct a <code>PageSketch</code>.
+     * 
+     * @param capacity The number of candidate resources to track.
+     */
+    public PageSketch(final int capacity) {
+      resources = new String[capacity];
+      counts = new long[capacity];
+      return;
+    }
+
+    /**
+     * Record a view of the page, and get the resources to push for it.
+     * 
+     * @param maxResources The maximum number of resources to return.
+     * @param threshold The minimum proportion of views a resource must be fetched after.
+     * @return The most frequently fetched resources, in descending order of frequency.
+     */
+    public synchronized String[] view(final int maxResources, final double threshold) {
+      if (++views > AGING_VIEWS) {
+        views /= 2;
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+          if ((counts[i] /= 2) == 0) continue;
+          resources[newSize] = resources[i];
+          counts[newSize++] = counts[i];
+        }
+        Arrays.fill(resources, newSize, size, null);
+        size = newSize;
+      }
+      final long minCount = Math.max(1, (long)Math.ceil(views * threshold));
+      final String[] top = new String[Math.min(maxResources, size)];
+      final long[] topCounts = new long[top.length];
+      int topSize = 0;
+      for (int i = 0; i < size; i++) {
+        if (counts[i] < minCount) continue;
+        int position = topSize;
+        while ((position > 0) && (topCounts[position - 1] < counts[i])) position--;
+        if (position >= top.length) continue;
+        final int moved = Math.min(topSize, top.length - 1) - position;
+        System.arraycopy(top, position, top, position + 1, moved);
+        System.arraycopy(topCounts, position, topCounts, position + 1, moved);
+        top[position] = resources[i];
+        topCounts[position] = counts[i];
+        if (topSize < top.length) topSize++;
+      }
+      return (topSize == top.length) ? top : Arrays.copyOf(top, topSize);
+    }
+
+    /**
+     * Record the given <code>resource</code> being fetched after a view of the page.
+     * 
+     * @param resource The path of the resource.
+     */
+    public synchronized void fetched(final String resource) {
+      int min = 0;
+      for (int i = 0; i < size; i++) {
+        if (resources[i].equals(resource)) {
+          counts[i]++;
+          return;
+        }
+        if (counts[i] < counts[min]) min = i;
+      }
+      if (size < resources.length) {
+        resources[size] = resource;
+        counts[size++] = 1;
+        return;
+      }
+      resources[min] = resource; // Replace the least frequent, inheriting its count as the error bound.
+      counts[min]++;
+      return;
+    }
+
+  } // PageSketch
+
+}
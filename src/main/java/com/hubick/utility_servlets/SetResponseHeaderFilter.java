@@ -12,6 +12,8 @@ import java.util.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
@@ -40,9 +42,16 @@ import javax.servlet.http.*;
  *   &lt;url-pattern&gt;*.png&lt;/url-pattern&gt;
  * &lt;/filter-mapping&gt;
  * </pre>
+ * 
+ * <p>
+ * In {@linkplain #POST_MODE_ENABLE_PROP post mode}, the response is wrapped so that the headers are applied at the
+ * moment the response is about to be committed (when the first byte of content is written, or the response is
+ * flushed, or an error or redirect is sent), as well as once more after servlet processing if the response still hasn't
+ * been committed by then. This ensures the headers are sent even for responses larger than the buffer.
+ * </p>
  */
 @NonNullByDefault
-public class SetResponseHeaderFilter implements Filter {
+public class SetResponseHeaderFilter implements Filter, PipelineStage {
   /**
    * The key to a boolean config option which will cause the headers to be
    * {@linkplain HttpServletResponse#addHeader(String, String) added} instead of
@@ -65,42 +74,101 @@ public class SetResponseHeaderFilter implements Filter {
    * @see #POST_MODE_ENABLE_PROP
    */
   protected boolean postMode = false;
+  /**
+   * The names of the configured {@link #headers}, compiled into an array parallel to {@link #headerValues}.
+   */
+  protected String[] headerNames = new String[0];
+  /**
+   * The values of the configured {@link #headers}, compiled into an array parallel to {@link #headerNames}.
+   */
+  protected String[] headerValues = new String[0];
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
     final String prefix = SetResponseHeaderFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
     additiveMode = Boolean.parseBoolean(filterConfig.getInitParameter(prefix + ADDITIVE_MODE_ENABLE_PROP));
     postMode = Boolean.parseBoolean(filterConfig.getInitParameter(prefix + POST_MODE_ENABLE_PROP));
     Collections.list(filterConfig.getInitParameterNames()).stream().filter((name) -> name.startsWith(prefix)).filter((name) -> !name.equals(prefix + ADDITIVE_MODE_ENABLE_PROP)).filter((name) -> !name.equals(prefix + POST_MODE_ENABLE_PROP)).forEach((name) -> headers.put(name.substring(prefix.length()), Objects.requireNonNull(filterConfig.getInitParameter(name))));
+    headerNames = headers.keySet().toArray(new String[headers.size()]);
+    headerValues = new String[headerNames.length];
+    for (int i = 0; i < headerNames.length; i++) {
+      headerValues[i] = headers.get(headerNames[i]);
+    }
     return;
   }
 
-  @Override
-  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-
-    if (postMode) {
-      filterChain.doFilter(servletRequest, servletResponse);
-    }
-
-    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
-    for (Map.Entry<String,String> header : headers.entrySet()) {
+  /**
+   * Set (or {@linkplain #ADDITIVE_MODE_ENABLE_PROP add}) the configured headers on the given response.
+   * 
+   * @param httpServletResponse The response to set the headers on.
+   */
+  protected void applyHeaders(final HttpServletResponse httpServletResponse) {
+    final String[] headerNames = this.headerNames;
+    final String[] headerValues = this.headerValues;
+    for (int i = 0; i < headerNames.length; i++) {
       if (additiveMode) {
-        httpServletResponse.addHeader(header.getKey(), header.getValue());
+        httpServletResponse.addHeader(headerNames[i], headerValues[i]);
       } else {
-        httpServletResponse.setHeader(header.getKey(), header.getValue());
+        httpServletResponse.setHeader(headerNames[i], headerValues[i]);
       }
     }
+    return;
+  }
+
+  /**
+   * Have the configured headers {@linkplain #applyHeaders(HttpServletResponse) applied} to the response wrapped by the
+   * given <code>responseWrapper</code> immediately before it's committed, for {@linkplain #POST_MODE_ENABLE_PROP post
+   * mode}.
+   * 
+   * @param responseWrapper The response wrapper.
+   */
+  protected void addCommitHook(final PipelineResponseWrapper responseWrapper) {
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)responseWrapper.getResponse();
+    responseWrapper.addCommitHook(() -> applyHeaders(httpServletResponse), !additiveMode);
+    return;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
 
-    if (!postMode) {
-      filterChain.doFilter(servletRequest, servletResponse);
+    if (postMode) {
+      final PipelineResponseWrapper responseWrapper = new PipelineResponseWrapper(httpServletResponse);
+      addCommitHook(responseWrapper);
+      final long chainNanos = metrics.doChain(filterChain, servletRequest, responseWrapper);
+      responseWrapper.complete();
+      metrics.record(start, chainNanos);
+      return;
     }
 
+    applyHeaders(httpServletResponse);
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    if (postMode) {
+      addCommitHook(exchange.getResponseWrapper());
+    } else {
+      applyHeaders(exchange.getResponse());
+    }
+    return true;
+  }
+
   @Override
   public void destroy() {
     headers.clear();
+    headerNames = new String[0];
+    headerValues = new String[0];
+    metrics.unregister();
     return;
   }
 
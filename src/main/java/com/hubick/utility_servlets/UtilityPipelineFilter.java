@@ -0,0 +1,242 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Run an ordered list of {@linkplain PipelineStage pipeline capable} filters (such as the role filters,
+ * {@link SetResponseHeaderFilter}, {@link XHTMLAcceptFilter}, and <code>UserRoleRedirectionFilter</code>) in a single
+ * pass, rather than chaining each of them separately in web.xml.
+ * </p>
+ * 
+ * <p>
+ * The {@linkplain #STAGES_PROP stages} are instantiated and initialized once, during <code>init</code>, each with the
+ * same init parameters they would be given as a standalone filter, so the behaviour is identical. Per request, however,
+ * there is no filter chain hop between stages, roles granted by any number of stages are answered for by the outermost
+ * request wrapper, and all response modifications share a single (lazily created)
+ * {@linkplain PipelineResponseWrapper response wrapper}. The metrics of the individual stages aren't registered with
+ * JMX, only those of the pipeline itself.
+ * </p>
+ * 
+ * <p>
+ * For example, the following is equivalent to separately chaining a <code>KnownUnknownUserRoleFilter</code> and a
+ * <code>UserRoleRedirectionFilter</code>, each named <code>Home</code>:
+ * </p>
+ * 
+ * <pre>
+ * &lt;filter&gt;
+ *   &lt;filter-name&gt;Home&lt;/filter-name&gt;
+ *   &lt;filter-class&gt;com.hubick.utility_servlets.UtilityPipelineFilter&lt;/filter-class&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;UtilityPipelineFilter.Home.Stages&lt;/param-name&gt;
+ *     &lt;param-value&gt;KnownUnknownUserRoleFilter, UserRoleRedirectionFilter&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;UserRoleRedirectionFilter.Home.known-user&lt;/param-name&gt;
+ *     &lt;param-value&gt;/home/&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ */
+@NonNullByDefault
+public class UtilityPipelineFilter implements Filter {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>UtilityPipelineFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value is a comma separated list of the stages to run, in order. Each stage is the class name
+   * of a {@link Filter} implementing {@link PipelineStage} (which may be given as a simple name for those in this
+   * library), optionally followed by '<code>:</code>' and the filter name to configure it with (by default, that of
+   * the pipeline), ie, "<code>StaticUserRoleFilter:Staff</code>".
+   */
+  public static final String STAGES_PROP = "Stages";
+  /**
+   * The packages searched for stages (and the filters hosted by a {@link ReloadableFilter}) given by simple class name.
+   */
+  protected static final String[] STAGE_PACKAGES = { UtilityPipelineFilter.class.getPackageName(), UtilityPipelineFilter.class.getPackageName() + ".role" };
+  /**
+   * The stages, in order.
+   */
+  protected PipelineStage[] stages = new PipelineStage[0];
+  /**
+   * The {@link #stages}, as filters.
+   */
+  protected Filter[] filters = new Filter[0];
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of requests completed by a stage (ie, redirected), which
+   * didn't reach the rest of the filter chain.
+   */
+  protected LongAdder completedCounter = new LongAdder();
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws ServletException, IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
+    completedCounter = metrics.counter("completed");
+    final String prefix = UtilityPipelineFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    final String stagesProp = filterConfig.getInitParameter(prefix + STAGES_PROP);
+    if (stagesProp == null) throw new IllegalArgumentException("No '" + prefix + STAGES_PROP + "' specified");
+
+    final List<Filter> filters = new ArrayList<Filter>();
+    try {
+      for (String stage : stagesProp.split(",")) {
+        stage = stage.trim();
+        if (stage.isEmpty()) continue;
+        final int colon = stage.indexOf(':');
+        final String className = ((colon >= 0) ? stage.substring(0, colon) : stage).trim();
+        final String filterName = (colon >= 0) ? stage.substring(colon + 1).trim() : filterConfig.getFilterName();
+        final Filter filter = createFilter(className, PipelineStage.class);
+        filter.init(new StageFilterConfig(filterConfig, filterName));
+        filters.add(filter);
+      }
+    } catch (ServletException | RuntimeException e) {
+      destroyStages(filters);
+      metrics.unregister();
+      throw e;
+    }
+    this.filters = filters.toArray(new Filter[filters.size()]);
+    stages = filters.stream().map(PipelineStage.class::cast).toArray(PipelineStage[]::new);
+    return;
+  }
+
+  /**
+   * Instantiate the filter with the given class name.
+   * 
+   * @param className The simple name of a filter in one of the {@link #STAGE_PACKAGES} of this library, or the fully
+   * qualified name of any other.
+   * @param requiredType A type the filter must also be an instance of (ie, {@link PipelineStage}), or
+   * <code>Filter.class</code>.
+   * @return The (uninitialized) filter.
+   * @throws IllegalArgumentException If the class couldn't be found, isn't a {@link Filter} of the
+   * <code>requiredType</code>, or couldn't be instantiated.
+   */
+  protected static Filter createFilter(final String className, final Class<?> requiredType) throws IllegalArgumentException {
+    final List<String> candidateNames = new ArrayList<String>(STAGE_PACKAGES.length);
+    if (className.indexOf('.') >= 0) {
+      candidateNames.add(className);
+    } else {
+      Arrays.stream(STAGE_PACKAGES).map((packageName) -> packageName + '.' + className).forEach(candidateNames::add);
+    }
+    Class<?> filterClass = null;
+    for (String candidateName : candidateNames) {
+      try {
+        filterClass = Class.forName(candidateName, true, UtilityPipelineFilter.class.getClassLoader());
+        break;
+      } catch (ClassNotFoundException cnfe) {}
+    }
+    if (filterClass == null) throw new IllegalArgumentException("Filter class '" + className + "' not found");
+    if ((!Filter.class.isAssignableFrom(filterClass)) || (!requiredType.isAssignableFrom(filterClass))) throw new IllegalArgumentException("Filter class '" + className + "' isn't a " + ((requiredType != Filter.class) ? requiredType.getSimpleName() + " " : "") + Filter.class.getSimpleName());
+    try {
+      return (Filter)filterClass.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException roe) {
+      throw new IllegalArgumentException("Failed to instantiate filter class '" + className + "'", roe);
+    }
+  }
+
+  /**
+   * {@linkplain Filter#destroy() Destroy} the given stages, in reverse order.
+   * 
+   * @param filters The stages.
+   */
+  protected static void destroyStages(final List<Filter> filters) {
+    for (int i = filters.size() - 1; i >= 0; i--) {
+      filters.get(i).destroy();
+    }
+    return;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final PipelineExchange exchange = new PipelineExchange((HttpServletRequest)servletRequest, (HttpServletResponse)servletResponse);
+    for (PipelineStage stage : stages) {
+      if (!stage.apply(exchange)) {
+        completedCounter.increment();
+        metrics.record(start, 0);
+        return;
+      }
+    }
+    final long chainNanos = metrics.doChain(filterChain, exchange.getRequest(), exchange.getResponse());
+    exchange.complete();
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    destroyStages(Arrays.asList(filters));
+    filters = new Filter[0];
+    stages = new PipelineStage[0];
+    metrics.unregister();
+    return;
+  }
+
+  /**
+   * The {@link FilterConfig} supplied to each stage, which is that of the pipeline, but with the stage's filter name,
+   * and {@linkplain FilterMetrics#JMX_ENABLE_PARAM JMX registration} of its metrics disabled.
+   */
+  protected static class StageFilterConfig implements FilterConfig {
+    /**
+     * The configuration of the pipeline.
+     */
+    protected final FilterConfig filterConfig;
+    /**
+     * The filter name of the stage.
+     */
+    protected final String filterName;
+
+    /**
+     * Construct a <code>StageFilterConfig</code>.
+     * 
+     * @param filterConfig The configuration of the pipeline.
+     * @param filterName The filter name of the stage.
+     */
+    public StageFilterConfig(final FilterConfig filterConfig, final String filterName) {
+      this.filterConfig = filterConfig;
+      this.filterName = filterName;
+      return;
+    }
+
+    @Override
+    public String getFilterName() {
+      return filterName;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+      return filterConfig.getServletContext();
+    }
+
+    @Override
+    public @Nullable String getInitParameter(final String name) {
+      if (FilterMetrics.JMX_ENABLE_PARAM.equals(name)) return Boolean.FALSE.toString();
+      return filterConfig.getInitParameter(name);
+    }
+
+    @Override
+    public Enumeration<String> getInitParameterNames() {
+      return filterConfig.getInitParameterNames();
+    }
+
+  } // StageFilterConfig
+
+}
@@ -8,27 +8,84 @@
 package com.hubick.utility_servlets;
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import javax.activation.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
 
 /**
+ * <p>
  * A filter to only {@linkplain ServletResponse#setContentType(String) send} an XHTML content type for clients which can
  * accept it, else send the content using the "text/html" content type.
+ * </p>
+ * 
+ * <p>
+ * Since the response varies by the <code>Accept</code> request header, a <code>Vary: Accept</code> response header is
+ * {@linkplain HttpServletResponse#addHeader(String, String) added}.
+ * </p>
+ * 
+ * <p>
+ * Optionally, the {@linkplain #SERIALIZER_ENABLE_PROP serializer} will also rewrite the XML-only syntax in the content
+ * of responses sent as "text/html" (ie, self-closed <code>&lt;div/&gt;</code> elements, the XML declaration, and CDATA
+ * sections), streaming it through an {@link HTMLSerializingOutputStream} as it's written, so browsers parse it as
+ * intended. Since that changes the length of the content, any <code>Content-Length</code> is discarded. When run as a
+ * pipeline stage, the serializer {@linkplain PipelineExchange#decorateResponse(java.util.function.Function) decorates}
+ * the shared response wrapper.
+ * </p>
  * 
  * @see ServletResponse#setContentType(String)
  */
 @NonNullByDefault
-public class XHTMLAcceptFilter implements Filter {
+public class XHTMLAcceptFilter implements Filter, PipelineStage {
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>XHTMLAcceptFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '<code>.</code>')
+   * whose boolean value specifies if the content of responses converted to "text/html" should be rewritten to HTML
+   * syntax. If not set, defaults to <code>false</code>.
+   */
+  public static final String SERIALIZER_ENABLE_PROP = "Serializer.Enable";
+  /**
+   * The maximum number of distinct <code>Accept</code> header values to cache the {@linkplain #acceptsXHTML(String)
+   * decision} for.
+   */
+  protected static final int ACCEPT_CACHE_SIZE = 256;
+  /**
+   * <code>Accept</code> header values longer than this won't be cached.
+   */
+  protected static final int MAX_CACHED_ACCEPT_LENGTH = 1024;
+  /**
+   * The {@linkplain #acceptsXHTML(String) decision} for recently seen <code>Accept</code> header values.
+   */
+  protected static final BoundedCache<String,Boolean> ACCEPT_CACHE = new BoundedCache<String,Boolean>(ACCEPT_CACHE_SIZE);
+  /**
+   * @see #SERIALIZER_ENABLE_PROP
+   */
+  protected boolean serializer = false;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of XHTML content types rewritten for clients not accepting
+   * it.
+   */
+  protected LongAdder htmlCounter = new LongAdder();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
+    htmlCounter = metrics.counter("html");
+    final String prefix = XHTMLAcceptFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
+    serializer = Boolean.parseBoolean(filterConfig.getInitParameter(prefix + SERIALIZER_ENABLE_PROP));
     return;
   }
 
@@ -40,35 +97,219 @@ public class XHTMLAcceptFilter implements Filter {
    * {@linkplain HttpServletRequest#getHeaders(String) header} indicating the client is capable of receiving XHTML
    * content.
    * @throws IllegalArgumentException If the supplied <code>request</code> is <code>null</code>.
+   * @see #acceptsXHTML(String)
    */
   public static final boolean acceptsXHTML(final HttpServletRequest request) throws IllegalArgumentException {
     final Enumeration<String> values = request.getHeaders("Accept");
+    if ((values == null) || (!values.hasMoreElements())) return false;
+    final String value = values.nextElement();
+    if (!values.hasMoreElements()) return acceptsXHTML(value);
+    long qualities = scanAccept(value, HeaderValues.NO_QUALITIES);
     while (values.hasMoreElements()) {
-      final String acceptHeaderLC = values.nextElement().toLowerCase();
-      if (acceptHeaderLC.contains("application/xhtml+xml")) return true;
-      if (acceptHeaderLC.contains("text/xml")) return true;
-      if (acceptHeaderLC.contains("application/xml")) return true;
+      qualities = scanAccept(values.nextElement(), qualities);
     }
-    return false;
+    return acceptsXHTML(qualities);
+  }
+
+  /**
+   * <p>
+   * Does the given <code>Accept</code> header value indicate the client is capable of accepting an XHTML response?
+   * </p>
+   * 
+   * <p>
+   * The client must explicitly list one of the "application/xhtml+xml", "application/xml", or "text/xml" media types
+   * with a non-zero quality, and that quality must be no less than the quality of "text/html", as determined by the
+   * most specific media range matching it (which may be a <code>text/*</code> or <code>*&#47;*</code> wildcard). A
+   * <code>*&#47;*</code> wildcard on its own is not considered an indication of XHTML support. Decisions are cached.
+   * </p>
+   * 
+   * @param accept The value of the <code>Accept</code> header.
+   * @return <code>true</code> if the client can accept XHTML content.
+   */
+  public static final boolean acceptsXHTML(final String accept) {
+    if (accept.length() > MAX_CACHED_ACCEPT_LENGTH) return evaluateAccept(accept);
+    final Boolean cached = ACCEPT_CACHE.get(accept);
+    if (cached != null) return cached.booleanValue();
+    final boolean result = evaluateAccept(accept);
+    ACCEPT_CACHE.put(accept, Boolean.valueOf(result));
+    return result;
+  }
+
+  /**
+   * Tokenize the given <code>Accept</code> header value in a single pass, without allocating, and determine if it
+   * indicates the client is capable of accepting an XHTML response.
+   * 
+   * @param accept The value of the <code>Accept</code> header.
+   * @return <code>true</code> if the client can accept XHTML content.
+   * @see #acceptsXHTML(String)
+   */
+  protected static boolean evaluateAccept(final String accept) {
+    return acceptsXHTML(scanAccept(accept, HeaderValues.NO_QUALITIES));
+  }
+
+  /**
+   * Tokenize one value of the <code>Accept</code> header, without allocating, folding the qualities it gives into
+   * those {@linkplain HeaderValues#setQuality(long, int, int) packed} from any earlier values, being those of XML, of
+   * the media range most specifically matching HTML, and that range's specificity.
+   * 
+   * @param accept The value of the <code>Accept</code> header.
+   * @param qualities The qualities from earlier values, or {@link HeaderValues#NO_QUALITIES}.
+   * @return The combined qualities.
+   * @see #acceptsXHTML(long)
+   */
+  protected static long scanAccept(final String accept, final long qualities) {
+    int xmlQuality = HeaderValues.getQuality(qualities, 0);
+    int htmlQuality = HeaderValues.getQuality(qualities, 1);
+    int htmlSpecificity = HeaderValues.getQuality(qualities, 2);
+    final int length = accept.length();
+    int rangeStart = 0;
+    while (rangeStart < length) {
+      int rangeEnd = accept.indexOf(',', rangeStart);
+      if (rangeEnd < 0) rangeEnd = length;
+      int parametersStart = accept.indexOf(';', rangeStart);
+      if ((parametersStart < 0) || (parametersStart > rangeEnd)) parametersStart = rangeEnd;
+
+      int typeStart = rangeStart;
+      while ((typeStart < parametersStart) && (HeaderValues.isWhitespace(accept.charAt(typeStart)))) typeStart++;
+      int subtypeEnd = parametersStart;
+      while ((subtypeEnd > typeStart) && (HeaderValues.isWhitespace(accept.charAt(subtypeEnd - 1)))) subtypeEnd--;
+      final int slash = accept.indexOf('/', typeStart);
+      if ((slash > typeStart) && (slash < subtypeEnd - 1)) {
+        final int quality = HeaderValues.parseQuality(accept, parametersStart, rangeEnd);
+        if (HeaderValues.regionEquals(accept, typeStart, slash, "*")) {
+          if ((HeaderValues.regionEquals(accept, slash + 1, subtypeEnd, "*")) && (htmlSpecificity <= 0)) {
+            htmlQuality = (htmlSpecificity == 0) ? Math.max(htmlQuality, quality) : quality;
+            htmlSpecificity = 0;
+          }
+        } else if (HeaderValues.regionEquals(accept, typeStart, slash, "text")) {
+          if (HeaderValues.regionEquals(accept, slash + 1, subtypeEnd, "html")) {
+            htmlQuality = (htmlSpecificity == 2) ? Math.max(htmlQuality, quality) : quality;
+            htmlSpecificity = 2;
+          } else if ((HeaderValues.regionEquals(accept, slash + 1, subtypeEnd, "*")) && (htmlSpecificity <= 1)) {
+            htmlQuality = (htmlSpecificity == 1) ? Math.max(htmlQuality, quality) : quality;
+            htmlSpecificity = 1;
+          } else if (HeaderValues.regionEquals(accept, slash + 1, subtypeEnd, "xml")) {
+            xmlQuality = Math.max(xmlQuality, quality);
+          }
+        } else if (HeaderValues.regionEquals(accept, typeStart, slash, "application")) {
+          if ((HeaderValues.regionEquals(accept, slash + 1, subtypeEnd, "xhtml+xml")) || (HeaderValues.regionEquals(accept, slash + 1, subtypeEnd, "xml"))) {
+            xmlQuality = Math.max(xmlQuality, quality);
+          }
+        }
+      }
+      rangeStart = rangeEnd + 1;
+    }
+    return HeaderValues.setQuality(HeaderValues.setQuality(HeaderValues.setQuality(qualities, 0, xmlQuality), 1, htmlQuality), 2, htmlSpecificity);
+  }
+
+  /**
+   * Do the qualities {@linkplain #scanAccept(String, long) tokenized} from the <code>Accept</code> header indicate the
+   * client is capable of accepting an XHTML response?
+   * 
+   * @param qualities The packed qualities.
+   * @return <code>true</code> if the client can accept XHTML content.
+   */
+  protected static boolean acceptsXHTML(final long qualities) {
+    final int xmlQuality = HeaderValues.getQuality(qualities, 0);
+    return (xmlQuality > 0) && (xmlQuality >= HeaderValues.getQuality(qualities, 1));
   }
 
   @Override
   public void doFilter(final ServletRequest servletRequest, ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    if (!acceptsXHTML((HttpServletRequest)servletRequest)) servletResponse = new HTMLResponseWrapper((HttpServletResponse)servletResponse);
-    filterChain.doFilter(servletRequest, servletResponse);
+    final long start = System.nanoTime();
+    HeaderValues.addVary((HttpServletResponse)servletResponse, "Accept");
+    HTMLResponseWrapper responseWrapper = null;
+    if (!acceptsXHTML((HttpServletRequest)servletRequest)) {
+      responseWrapper = new HTMLResponseWrapper((HttpServletResponse)servletResponse, serializer, htmlCounter);
+      servletResponse = responseWrapper;
+    }
+    final long chainNanos;
+    try {
+      chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    } finally {
+      if ((responseWrapper != null) && (!PipelineExchange.deferIfAsync(servletRequest, responseWrapper::finish))) responseWrapper.finish();
+    }
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    HeaderValues.addVary(exchange.getResponse(), "Accept");
+    if (!acceptsXHTML(exchange.getRequest())) {
+      exchange.getResponseWrapper().setTypeRewriter(this::fixType);
+      if (serializer) {
+        final HTMLResponseWrapper responseWrapper = exchange.decorateResponse((response) -> new HTMLResponseWrapper(response, true, htmlCounter));
+        exchange.addCompletion(responseWrapper::finish);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * {@linkplain HTMLResponseWrapper#fixType(String) Fix} the given content <code>type</code>, counting it if it was
+   * rewritten.
+   * 
+   * @param type The content type being set.
+   * @return The fixed type.
+   */
+  protected @Nullable String fixType(final @Nullable String type) {
+    final String fixedType = HTMLResponseWrapper.fixType(type);
+    if (!Objects.equals(fixedType, type)) htmlCounter.increment();
+    return fixedType;
+  }
+
   @Override
   public void destroy() {
+    metrics.unregister();
     return;
   }
 
   /**
    * Wraps an {@link HttpServletResponse} to intercept calls to {@link #setContentType(String)}, changing
-   * "application/xhtml+xml" types to "text/html" ones.
+   * "application/xhtml+xml" types to "text/html" ones, and optionally rewriting the content of such responses to match.
    */
   protected static class HTMLResponseWrapper extends HttpServletResponseWrapper {
+    /**
+     * The maximum number of distinct content types to cache the {@linkplain #fixType(String) fixed} type for.
+     */
+    protected static final int FIXED_TYPE_CACHE_SIZE = 256;
+    /**
+     * Content types longer than this won't be cached.
+     */
+    protected static final int MAX_CACHED_TYPE_LENGTH = 256;
+    /**
+     * The {@linkplain #fixType(String) fixed} type for recently seen XHTML content types.
+     */
+    protected static final BoundedCache<String,String> FIXED_TYPE_CACHE = new BoundedCache<String,String>(FIXED_TYPE_CACHE_SIZE);
+    /**
+     * The size of the buffer used by the {@link HTMLSerializingOutputStream}.
+     */
+    protected static final int SERIALIZER_BUFFER_SIZE = 8192;
+    /**
+     * Should the content of responses whose type was changed be rewritten?
+     */
+    protected final boolean serialize;
+    /**
+     * The counter to increment each time a content type is changed, if any.
+     */
+    protected final @Nullable LongAdder rewriteCounter;
+    /**
+     * Was the current content type changed from an XHTML one?
+     */
+    protected boolean typeFixed = false;
+    /**
+     * The stream rewriting the content, if it's being rewritten.
+     */
+    protected @Nullable HTMLSerializingOutputStream serializingOutputStream = null;
+    /**
+     * The {@link #getOutputStream() output stream}, if it has been requested.
+     */
+    protected @Nullable ServletOutputStream outputStream = null;
+    /**
+     * The {@link #getWriter() writer}, if it has been requested.
+     */
+    protected @Nullable PrintWriter writer = null;
 
     /**
      * Construct a <code>HTMLResponseWrapper</code>.
@@ -76,18 +317,69 @@ public class XHTMLAcceptFilter implements Filter {
      * @param response The response being wrapped.
      */
     public HTMLResponseWrapper(final HttpServletResponse response) {
+      this(response, false);
+      return;
+    }
+
+    /**
+     * Construct a <code>HTMLResponseWrapper</code>.
+     * 
+     * @param response The response being wrapped.
+     * @param serialize Should the content of responses whose type is changed be rewritten to HTML syntax?
+     */
+    public HTMLResponseWrapper(final HttpServletResponse response, final boolean serialize) {
+      this(response, serialize, null);
+      return;
+    }
+
+    /**
+     * Construct a <code>HTMLResponseWrapper</code>.
+     * 
+     * @param response The response being wrapped.
+     * @param serialize Should the content of responses whose type is changed be rewritten to HTML syntax?
+     * @param rewriteCounter The counter to increment each time a content type is changed, if any.
+     */
+    public HTMLResponseWrapper(final HttpServletResponse response, final boolean serialize, final @Nullable LongAdder rewriteCounter) {
       super(response);
+      this.serialize = serialize;
+      this.rewriteCounter = rewriteCounter;
       return;
     }
 
     /**
-     * Convert any "application/xhtml+xml" types to "text/html".
+     * Convert any "application/xhtml+xml" types to "text/html". Types not containing "xhtml" are returned without being
+     * parsed, and the result for any others is cached.
      * 
      * @param type The value being examined.
      * @return The fixed type.
      */
     protected static final @Nullable String fixType(final @Nullable String type) {
       if ((type == null) || (type.isEmpty())) return type;
+      if (!containsXHTML(type)) return type;
+      if (type.length() > MAX_CACHED_TYPE_LENGTH) return rewriteType(type);
+      return FIXED_TYPE_CACHE.get(type, HTMLResponseWrapper::rewriteType);
+    }
+
+    /**
+     * Does the given <code>type</code> contain "xhtml" (ignoring case)?
+     * 
+     * @param type The value being examined.
+     * @return <code>true</code> if the type may be an XHTML one.
+     */
+    protected static final boolean containsXHTML(final String type) {
+      for (int i = type.length() - 5; i >= 0; i--) {
+        if (type.regionMatches(true, i, "xhtml", 0, 5)) return true;
+      }
+      return false;
+    }
+
+    /**
+     * Parse the given <code>type</code>, and if it's "application/xhtml+xml", convert it to "text/html".
+     * 
+     * @param type The value being examined.
+     * @return The fixed type.
+     */
+    protected static final String rewriteType(final String type) {
       final MimeType mimeType;
       try {
         mimeType = new MimeType(type);
@@ -101,26 +393,257 @@ public class XHTMLAcceptFilter implements Filter {
       return "text/html" + ((parameters != null) ? parameters.toString() : "");
     }
 
+    /**
+     * {@linkplain #fixType(String) Fix} the given content <code>type</code>, noting whether it was changed, and if
+     * that means the content will now be rewritten, discarding any <code>Content-Length</code> already set.
+     * 
+     * @param type The content type being set.
+     * @return The fixed type.
+     */
+    protected @Nullable String fixContentType(final @Nullable String type) {
+      final String fixedType = fixType(type);
+      final boolean wasSerializing = isSerializing();
+      typeFixed = !Objects.equals(fixedType, type);
+      final LongAdder rewriteCounter = this.rewriteCounter;
+      if ((typeFixed) && (rewriteCounter != null)) rewriteCounter.increment();
+      if ((!wasSerializing) && (isSerializing()) && (!isCommitted())) super.setContentLengthLong(-1);
+      return fixedType;
+    }
+
+    /**
+     * Is the content being (or to be) rewritten?
+     * 
+     * @return <code>true</code> if rewriting is enabled, and the content type was changed from an XHTML one.
+     */
+    protected boolean isSerializing() {
+      return (serialize) && (typeFixed);
+    }
+
+    /**
+     * Can content be {@linkplain HTMLSerializingOutputStream#isSupported(Charset) rewritten} in the response's
+     * character encoding?
+     * 
+     * @return <code>true</code> if the encoding is supported.
+     */
+    protected boolean isEncodingSupported() {
+      try {
+        return HTMLSerializingOutputStream.isSupported(Charset.forName(getCharacterEncoding()));
+      } catch (IllegalArgumentException iae) {
+        return false;
+      }
+    }
+
+    /**
+     * Create a stream rewriting content to the wrapped response's output stream.
+     * 
+     * @return The stream.
+     * @throws IOException If there was a problem getting the wrapped response's output stream.
+     */
+    protected ServletOutputStream createSerializingOutputStream() throws IOException {
+      final ServletOutputStream outputStream = super.getOutputStream();
+      final HTMLSerializingOutputStream serializingOutputStream = new HTMLSerializingOutputStream(outputStream, SERIALIZER_BUFFER_SIZE);
+      this.serializingOutputStream = serializingOutputStream;
+      return new SerializingServletOutputStream(outputStream, serializingOutputStream);
+    }
+
+    /**
+     * Finish writing any content being rewritten, once servlet processing is done.
+     * 
+     * @throws IOException If there was a problem writing the content.
+     */
+    public void finish() throws IOException {
+      final PrintWriter writer = this.writer;
+      final HTMLSerializingOutputStream serializingOutputStream = this.serializingOutputStream;
+      if (serializingOutputStream == null) return;
+      if (writer != null) writer.flush();
+      serializingOutputStream.finish();
+      return;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (writer != null) throw new IllegalStateException("getWriter() has already been called");
+      ServletOutputStream outputStream = this.outputStream;
+      if (outputStream == null) {
+        outputStream = ((isSerializing()) && (isEncodingSupported())) ? createSerializingOutputStream() : super.getOutputStream();
+        this.outputStream = outputStream;
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (outputStream != null) throw new IllegalStateException("getOutputStream() has already been called");
+      PrintWriter writer = this.writer;
+      if (writer == null) {
+        if ((isSerializing()) && (isEncodingSupported())) {
+          final String characterEncoding = getCharacterEncoding();
+          setCharacterEncoding(characterEncoding); // Make the encoding explicit, since the wrapped response won't see us use a writer.
+          writer = new PrintWriter(new OutputStreamWriter(createSerializingOutputStream(), characterEncoding));
+        } else {
+          writer = super.getWriter();
+        }
+        this.writer = writer;
+      }
+      return writer;
+    }
+
     @Override
     public void setHeader(final String name, @Nullable String value) {
-      if ("Content-Type".equalsIgnoreCase(name)) value = fixType(value);
+      if ("Content-Type".equalsIgnoreCase(name)) {
+        value = fixContentType(value);
+      } else if (("Content-Length".equalsIgnoreCase(name)) && (isSerializing())) {
+        return;
+      }
       super.setHeader(name, value);
       return;
     }
 
     @Override
     public void addHeader(final String name, @Nullable String value) {
-      if ("Content-Type".equalsIgnoreCase(name)) value = fixType(value);
+      if ("Content-Type".equalsIgnoreCase(name)) {
+        value = fixContentType(value);
+      } else if (("Content-Length".equalsIgnoreCase(name)) && (isSerializing())) {
+        return;
+      }
       super.addHeader(name, value);
       return;
     }
 
+    @Override
+    public void setIntHeader(final String name, final int value) {
+      if (("Content-Length".equalsIgnoreCase(name)) && (isSerializing())) return;
+      super.setIntHeader(name, value);
+      return;
+    }
+
+    @Override
+    public void addIntHeader(final String name, final int value) {
+      if (("Content-Length".equalsIgnoreCase(name)) && (isSerializing())) return;
+      super.addIntHeader(name, value);
+      return;
+    }
+
     @Override
     public void setContentType(final @Nullable String type) {
-      super.setContentType(fixType(type));
+      super.setContentType(fixContentType(type));
+      return;
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+      if (isSerializing()) return;
+      super.setContentLength(len);
+      return;
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+      if (isSerializing()) return;
+      super.setContentLengthLong(len);
+      return;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      final PrintWriter writer = this.writer;
+      final HTMLSerializingOutputStream serializingOutputStream = this.serializingOutputStream;
+      if (serializingOutputStream != null) {
+        if (writer != null) writer.flush();
+        serializingOutputStream.flush();
+      }
+      super.flushBuffer();
+      return;
+    }
+
+    @Override
+    public void resetBuffer() {
+      discardSerializedContent();
+      super.resetBuffer();
+      return;
+    }
+
+    @Override
+    public void reset() {
+      discardSerializedContent();
+      super.reset();
+      return;
+    }
+
+    /**
+     * Discard any content held by the {@link #serializingOutputStream}, when the response buffer is reset.
+     */
+    protected void discardSerializedContent() {
+      final PrintWriter writer = this.writer;
+      final HTMLSerializingOutputStream serializingOutputStream = this.serializingOutputStream;
+      if (serializingOutputStream == null) return;
+      if (writer != null) writer.flush(); // Drain anything pending in the writer, so it's discarded along with the rest.
+      serializingOutputStream.discard();
       return;
     }
 
+    /**
+     * The {@link ServletOutputStream} content to be rewritten is written to.
+     */
+    protected static class SerializingServletOutputStream extends ServletOutputStream {
+      /**
+       * The wrapped response's output stream.
+       */
+      protected final ServletOutputStream outputStream;
+      /**
+       * The stream rewriting content to the {@link #outputStream}.
+       */
+      protected final HTMLSerializingOutputStream serializingOutputStream;
+
+      /**
+       * Construct a <code>SerializingServletOutputStream</code>.
+       * 
+       * @param outputStream The wrapped response's output stream.
+       * @param serializingOutputStream The stream rewriting content to the <code>outputStream</code>.
+       */
+      public SerializingServletOutputStream(final ServletOutputStream outputStream, final HTMLSerializingOutputStream serializingOutputStream) {
+        this.outputStream = outputStream;
+        this.serializingOutputStream = serializingOutputStream;
+        return;
+      }
+
+      @Override
+      public void write(final int b) throws IOException {
+        serializingOutputStream.write(b);
+        return;
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        serializingOutputStream.write(b, off, len);
+        return;
+      }
+
+      @Override
+      public void flush() throws IOException {
+        serializingOutputStream.flush();
+        return;
+      }
+
+      @Override
+      public void close() throws IOException {
+        serializingOutputStream.close();
+        return;
+      }
+
+      @Override
+      public boolean isReady() {
+        return outputStream.isReady();
+      }
+
+      @Override
+      public void setWriteListener(final WriteListener writeListener) {
+        outputStream.setWriteListener(writeListener);
+        return;
+      }
+
+    } // SerializingServletOutputStream
+
   } // HTMLResponseWrapper
 
 }
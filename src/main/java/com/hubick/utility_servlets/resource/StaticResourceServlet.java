@@ -0,0 +1,693 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.resource;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.*;
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * A servlet to serve static files from a directory, as an alternative to the container's default servlet.
+ * </p>
+ * 
+ * <p>
+ * File metadata (size, modification time, <code>ETag</code>, and content type) is cached for a
+ * {@linkplain #METADATA_TTL_PROP short time}, so most requests are answered without touching the filesystem until the
+ * content itself is sent. Content is sent using the container's sendfile support where available (Tomcat), or
+ * otherwise {@link FileChannel#transferTo(long, long, WritableByteChannel) transferred} directly from the file.
+ * </p>
+ * 
+ * <p>
+ * If a client accepts <code>gzip</code>, and a precompressed <code>.gz</code> sibling of the file exists, that will be
+ * sent instead (unless a <code>Range</code> was requested, in which case the file itself is always used). Single and
+ * multiple byte <code>Range</code> requests are supported, as are the <code>If-Match</code>,
+ * <code>If-Unmodified-Since</code>, <code>If-None-Match</code>, <code>If-Modified-Since</code>, and
+ * <code>If-Range</code> conditional headers.
+ * </p>
+ * 
+ * <pre>
+ * &lt;servlet&gt;
+ *   &lt;servlet-name&gt;Images&lt;/servlet-name&gt;
+ *   &lt;servlet-class&gt;com.hubick.utility_servlets.resource.StaticResourceServlet&lt;/servlet-class&gt;
+ *   &lt;init-param&gt;
+ *     &lt;param-name&gt;StaticResourceServlet.Images.BaseDirectory&lt;/param-name&gt;
+ *     &lt;param-value&gt;/srv/www/images&lt;/param-value&gt;
+ *   &lt;/init-param&gt;
+ * &lt;/servlet&gt;
+ * &lt;servlet-mapping&gt;
+ *   &lt;servlet-name&gt;Images&lt;/servlet-name&gt;
+ *   &lt;url-pattern&gt;/images/*&lt;/url-pattern&gt;
+ * &lt;/servlet-mapping&gt;
+ * </pre>
+ */
+@NonNullByDefault
+public class StaticResourceServlet extends HttpServlet {
+  /**
+   * The name of the {@linkplain ServletConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>StaticResourceServlet.</code>' + &lt;{@link ServletConfig#getServletName() ServletName}&gt; + '
+   * <code>.</code>') whose value specifies the directory to serve files from. If not set, files are served from the
+   * {@linkplain ServletContext#getRealPath(String) real path} of the web application, excluding
+   * <code>WEB-INF</code> and <code>META-INF</code>.
+   */
+  public static final String BASE_DIRECTORY_PROP = "BaseDirectory";
+  /**
+   * The name of the configuration parameter whose value specifies the number of seconds cached file metadata is
+   * trusted before the file is checked again (default <code>5</code>).
+   */
+  public static final String METADATA_TTL_PROP = "MetadataTTL";
+  /**
+   * The name of the configuration parameter whose value specifies the maximum number of files to cache metadata for
+   * (default <code>10000</code>).
+   */
+  public static final String CACHE_SIZE_PROP = "CacheSize";
+  /**
+   * The name of a boolean configuration parameter which controls whether precompressed <code>.gz</code> siblings will
+   * be served (default <code>true</code>).
+   */
+  public static final String PRECOMPRESSED_ENABLE_PROP = "Precompressed.Enable";
+  /**
+   * The name of the configuration parameter whose value specifies the minimum file size (in bytes) which will be sent
+   * using the container's sendfile support (default <code>49152</code>).
+   */
+  public static final String SENDFILE_THRESHOLD_PROP = "SendfileThreshold";
+  /**
+   * The request attribute the container uses to indicate it supports sendfile.
+   */
+  protected static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+  /**
+   * The request attribute specifying the absolute path of the file to sendfile.
+   */
+  protected static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+  /**
+   * The request attribute specifying the (inclusive) position of the file to start sendfile from.
+   */
+  protected static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+  /**
+   * The request attribute specifying the (exclusive) position of the file to end sendfile at.
+   */
+  protected static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+  /**
+   * The maximum number of ranges a request may ask for before its <code>Range</code> header is ignored.
+   */
+  protected static final int MAX_RANGES = 16;
+  /**
+   * The directory files are served from.
+   */
+  protected @Nullable Path baseDirectory = null;
+  /**
+   * The {@linkplain Path#toRealPath(LinkOption...) real path} of the {@link #baseDirectory}, which the real path of
+   * every file served must be within, so symbolic links can't escape it.
+   */
+  protected @Nullable Path baseRealPath = null;
+  /**
+   * Are files being served from the web application itself?
+   */
+  protected boolean servingWebApplication = false;
+  /**
+   * @see #METADATA_TTL_PROP
+   */
+  protected long metadataTTLNanos = TimeUnit.SECONDS.toNanos(5);
+  /**
+   * @see #PRECOMPRESSED_ENABLE_PROP
+   */
+  protected boolean precompressed = true;
+  /**
+   * @see #SENDFILE_THRESHOLD_PROP
+   */
+  protected long sendfileThreshold = 49152;
+  /**
+   * The cached metadata for recently requested paths.
+   */
+  protected @Nullable BoundedCache<String,ResourceMetadata> metadataCache = null;
+  /**
+   * The boundary separating the parts of <code>multipart/byteranges</code> responses.
+   */
+  protected String boundary = "";
+
+  @Override
+  public void init() throws ServletException {
+    final String prefix = StaticResourceServlet.class.getSimpleName() + '.' + getServletConfig().getServletName() + '.';
+    final String baseDirectoryParam = getServletConfig().getInitParameter(prefix + BASE_DIRECTORY_PROP);
+    final String baseDirectory = (baseDirectoryParam != null) ? baseDirectoryParam : getServletContext().getRealPath("/");
+    if (baseDirectory == null) throw new ServletException("No " + prefix + BASE_DIRECTORY_PROP + " configured, and the web application has no real path");
+    this.baseDirectory = Paths.get(baseDirectory).toAbsolutePath().normalize();
+    try {
+      baseRealPath = this.baseDirectory.toRealPath();
+    } catch (IOException ioe) {
+      throw new ServletException("Failed to resolve " + prefix + BASE_DIRECTORY_PROP + " '" + baseDirectory + '\'', ioe);
+    }
+    servingWebApplication = baseDirectoryParam == null;
+    final String metadataTTLParam = getServletConfig().getInitParameter(prefix + METADATA_TTL_PROP);
+    if (metadataTTLParam != null) metadataTTLNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(metadataTTLParam.trim()));
+    final String cacheSizeParam = getServletConfig().getInitParameter(prefix + CACHE_SIZE_PROP);
+    metadataCache = new BoundedCache<String,ResourceMetadata>((cacheSizeParam != null) ? Integer.parseInt(cacheSizeParam.trim()) : 10000);
+    final String precompressedParam = getServletConfig().getInitParameter(prefix + PRECOMPRESSED_ENABLE_PROP);
+    precompressed = (precompressedParam != null) ? Boolean.parseBoolean(precompressedParam) : true;
+    final String sendfileThresholdParam = getServletConfig().getInitParameter(prefix + SENDFILE_THRESHOLD_PROP);
+    if (sendfileThresholdParam != null) sendfileThreshold = Long.parseLong(sendfileThresholdParam.trim());
+    boundary = "RESOURCE_" + UUID.randomUUID().toString().replace("-", "");
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    final BoundedCache<String,ResourceMetadata> metadataCache = this.metadataCache;
+    if (metadataCache != null) metadataCache.clear();
+    this.metadataCache = null;
+    baseDirectory = null;
+    baseRealPath = null;
+    return;
+  }
+
+  /**
+   * Get the path of the requested resource, relative to the servlet mapping.
+   * 
+   * @param request The request.
+   * @return The requested path, starting with <code>/</code>.
+   */
+  protected static String getRequestPath(final HttpServletRequest request) {
+    final String pathInfo = request.getPathInfo();
+    if (pathInfo != null) return pathInfo;
+    final String servletPath = request.getServletPath();
+    return (!servletPath.isEmpty()) ? servletPath : "/";
+  }
+
+  /**
+   * Resolve the requested path to a file within the {@link #baseDirectory}.
+   * 
+   * @param requestPath The requested path.
+   * @return The file, or <code>null</code> if the path isn't one which may be served.
+   */
+  protected @Nullable Path resolve(final String requestPath) {
+    final Path baseDirectory = this.baseDirectory;
+    if (baseDirectory == null) return null;
+    if ((requestPath.indexOf('\0') >= 0) || (requestPath.indexOf('\\') >= 0)) return null;
+    final Path path;
+    try {
+      path = baseDirectory.resolve(requestPath.substring(requestPath.startsWith("/") ? 1 : 0)).normalize();
+    } catch (InvalidPathException ipe) {
+      return null;
+    }
+    if (!isWithin(path, baseDirectory)) return null; // Checked after normalizing, so "/./WEB-INF" or "/x/../WEB-INF" can't slip past.
+    if (!isContained(path)) return null;
+    return path;
+  }
+
+  /**
+   * Is the given (normalized) <code>path</code> within the supplied <code>directory</code>, and (if serving the web
+   * application) not within its <code>WEB-INF</code> or <code>META-INF</code> directories?
+   * 
+   * @param path The path.
+   * @param directory The directory.
+   * @return <code>true</code> if the path may be served.
+   */
+  protected boolean isWithin(final Path path, final Path directory) {
+    if (!path.startsWith(directory)) return false;
+    if ((servingWebApplication) && (!path.equals(directory))) {
+      final String first = directory.relativize(path).getName(0).toString();
+      if ((first.equalsIgnoreCase("WEB-INF")) || (first.equalsIgnoreCase("META-INF"))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Does the given (existing) file, once any symbolic links are followed, still lie {@linkplain #isWithin(Path, Path)
+   * within} the {@linkplain #baseRealPath base directory}?
+   * 
+   * @param path The file.
+   * @return <code>true</code> if the file exists and may be served.
+   */
+  protected boolean isContained(final Path path) {
+    final Path baseRealPath = this.baseRealPath;
+    if (baseRealPath == null) return false;
+    try {
+      return isWithin(path.toRealPath(), baseRealPath);
+    } catch (IOException ioe) {
+      return false;
+    }
+  }
+
+  /**
+   * Get the metadata for the given requested path, from the cache if it's fresh enough, or otherwise from the
+   * filesystem.
+   * 
+   * @param requestPath The requested path.
+   * @return The metadata, or <code>null</code> if no file exists which may be served.
+   */
+  protected @Nullable ResourceMetadata getMetadata(final String requestPath) {
+    final BoundedCache<String,ResourceMetadata> metadataCache = this.metadataCache;
+    if (metadataCache == null) return null;
+    final long now = System.nanoTime();
+    final ResourceMetadata cached = metadataCache.get(requestPath);
+    if ((cached != null) && (now - cached.checkedAt < metadataTTLNanos)) return cached.exists ? cached : null;
+    final Path path = resolve(requestPath);
+    final ResourceMetadata metadata = (path != null) ? readMetadata(path, now) : new ResourceMetadata(now);
+    metadataCache.put(requestPath, metadata);
+    return metadata.exists ? metadata : null;
+  }
+
+  /**
+   * Read the metadata for the given file (and any precompressed sibling) from the filesystem.
+   * 
+   * @param path The file.
+   * @param now The current {@linkplain System#nanoTime() time}.
+   * @return The metadata, which won't {@linkplain ResourceMetadata#exists exist} if the file doesn't.
+   */
+  protected ResourceMetadata readMetadata(final Path path, final long now) {
+    final BasicFileAttributes attributes = readAttributes(path);
+    if ((attributes == null) || (!attributes.isRegularFile())) return new ResourceMetadata(now);
+    final String fileName = path.getFileName().toString();
+    final String mimeType = getServletContext().getMimeType(fileName);
+    final String contentType = (mimeType != null) ? mimeType : "application/octet-stream";
+    ResourceMetadata gzip = null;
+    if (precompressed) {
+      final Path gzipPath = path.resolveSibling(fileName + ".gz");
+      final BasicFileAttributes gzipAttributes = readAttributes(gzipPath);
+      if ((gzipAttributes != null) && (gzipAttributes.isRegularFile()) && (gzipAttributes.lastModifiedTime().toMillis() >= attributes.lastModifiedTime().toMillis()) && (isContained(gzipPath))) {
+        gzip = new ResourceMetadata(gzipPath, gzipAttributes.size(), gzipAttributes.lastModifiedTime().toMillis(), contentType, "-gz", null, now);
+      }
+    }
+    return new ResourceMetadata(path, attributes.size(), attributes.lastModifiedTime().toMillis(), contentType, "", gzip, now);
+  }
+
+  /**
+   * Read the attributes of the given file.
+   * 
+   * @param path The file.
+   * @return The attributes, or <code>null</code> if they couldn't be read (ie, the file doesn't exist).
+   */
+  protected static @Nullable BasicFileAttributes readAttributes(final Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException ioe) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the value of a date header, ignoring any which are malformed.
+   * 
+   * @param request The request.
+   * @param name The name of the header.
+   * @return The date, or <code>-1</code> if the header is absent or malformed.
+   */
+  protected static long getDateHeader(final HttpServletRequest request, final String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException iae) {
+      return -1;
+    }
+  }
+
+  /**
+   * Does the given <code>If-Match</code> header value match the supplied <code>etag</code>, using the strong comparison
+   * function?
+   * 
+   * @param ifMatch The <code>If-Match</code> header value, a comma separated list of entity tags, or <code>*</code>.
+   * @param etag The (strong) entity tag of the current content.
+   * @return <code>true</code> if a tag in the list matches.
+   */
+  protected static boolean matchesStrong(final String ifMatch, final String etag) {
+    for (String tag : ifMatch.split(",")) {
+      tag = tag.trim();
+      if ((tag.equals("*")) || (tag.equals(etag))) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Evaluate the conditional headers of the request, per RFC 7232 section 6.
+   * 
+   * @param request The request.
+   * @param metadata The metadata of the selected representation.
+   * @return The status code to answer with instead of the content (<code>304</code> or <code>412</code>), or
+   * <code>0</code> if the content should be sent.
+   */
+  protected static int evaluatePreconditions(final HttpServletRequest request, final ResourceMetadata metadata) {
+    final String ifMatch = request.getHeader("If-Match");
+    if (ifMatch != null) {
+      if (!matchesStrong(ifMatch, metadata.etag)) return HttpServletResponse.SC_PRECONDITION_FAILED;
+    } else {
+      final long ifUnmodifiedSince = getDateHeader(request, "If-Unmodified-Since");
+      if ((ifUnmodifiedSince >= 0) && (metadata.lastModifiedSeconds() > ifUnmodifiedSince / 1000)) return HttpServletResponse.SC_PRECONDITION_FAILED;
+    }
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      if (ETagFilter.matches(ifNoneMatch, metadata.etag)) return HttpServletResponse.SC_NOT_MODIFIED;
+    } else {
+      final long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+      if ((ifModifiedSince >= 0) && (metadata.lastModifiedSeconds() <= ifModifiedSince / 1000)) return HttpServletResponse.SC_NOT_MODIFIED;
+    }
+    return 0;
+  }
+
+  /**
+   * Should the <code>Range</code> header of the request be honoured, according to its <code>If-Range</code> header?
+   * 
+   * @param request The request.
+   * @param metadata The metadata of the file.
+   * @return <code>true</code> if there is no <code>If-Range</code> header, or it matches.
+   */
+  protected static boolean evaluateIfRange(final HttpServletRequest request, final ResourceMetadata metadata) {
+    final String ifRange = request.getHeader("If-Range");
+    if (ifRange == null) return true;
+    final String trimmed = ifRange.trim();
+    if ((trimmed.startsWith("\"")) || (trimmed.startsWith("W/"))) return trimmed.equals(metadata.etag);
+    final long date = getDateHeader(request, "If-Range");
+    return (date >= 0) && (metadata.lastModifiedSeconds() == date / 1000);
+  }
+
+  /**
+   * Parse a <code>Range</code> header.
+   * 
+   * @param range The <code>Range</code> header value.
+   * @param size The size of the file.
+   * @return Pairs of (inclusive) first and last byte positions, in ascending order, with any which overlap or are
+   * adjacent coalesced (so a client can't have the same bytes sent repeatedly), an empty array if the ranges are
+   * syntactically valid but none are satisfiable, or <code>null</code> if the header should be ignored.
+   */
+  protected static long @Nullable [] parseRanges(final String range, final long size) {
+    if (!range.regionMatches(true, 0, "bytes=", 0, 6)) return null;
+    final String[] specs = range.substring(6).split(",");
+    if (specs.length > MAX_RANGES) return null;
+    final long[] ranges = new long[specs.length * 2];
+    int count = 0;
+    for (String spec : specs) {
+      spec = spec.trim();
+      final int dash = spec.indexOf('-');
+      if (dash < 0) return null;
+      final long first;
+      final long last;
+      try {
+        if (dash == 0) {
+          final long suffixLength = Long.parseLong(spec.substring(1).trim());
+          if (suffixLength < 0) return null;
+          if (suffixLength == 0) continue;
+          first = Math.max(0, size - suffixLength);
+          last = size - 1;
+        } else {
+          first = Long.parseLong(spec.substring(0, dash).trim());
+          final String lastSpec = spec.substring(dash + 1).trim();
+          final long requestedLast = (!lastSpec.isEmpty()) ? Long.parseLong(lastSpec) : Long.MAX_VALUE;
+          if ((first < 0) || (requestedLast < first)) return null;
+          last = Math.min(requestedLast, size - 1);
+        }
+      } catch (NumberFormatException nfe) {
+        return null;
+      }
+      if ((first >= size) || (last < first)) continue;
+      ranges[count++] = first;
+      ranges[count++] = last;
+    }
+    return coalesceRanges(ranges, count);
+  }
+
+  /**
+   * Sort the given ranges, and coalesce any which overlap or are adjacent, per RFC 7233 section 4.1.
+   * 
+   * @param ranges Pairs of (inclusive) first and last byte positions.
+   * @param count The number of elements of <code>ranges</code> used.
+   * @return The coalesced ranges.
+   */
+  protected static long[] coalesceRanges(final long[] ranges, final int count) {
+    for (int i = 2; i < count; i += 2) { // Insertion sort, since there are at most MAX_RANGES.
+      final long first = ranges[i];
+      final long last = ranges[i + 1];
+      int j = i - 2;
+      while ((j >= 0) && (ranges[j] > first)) {
+        ranges[j + 2] = ranges[j];
+        ranges[j + 3] = ranges[j + 1];
+        j -= 2;
+      }
+      ranges[j + 2] = first;
+      ranges[j + 3] = last;
+    }
+    int coalesced = 0;
+    for (int i = 0; i < count; i += 2) {
+      if ((coalesced > 0) && (ranges[i] <= ranges[coalesced - 1] + 1)) {
+        ranges[coalesced - 1] = Math.max(ranges[coalesced - 1], ranges[i + 1]);
+      } else {
+        ranges[coalesced++] = ranges[i];
+        ranges[coalesced++] = ranges[i + 1];
+      }
+    }
+    return Arrays.copyOf(ranges, coalesced);
+  }
+
+  /**
+   * Set the headers common to every response for the given representation.
+   * 
+   * @param response The response.
+   * @param metadata The metadata of the representation.
+   */
+  protected static void setValidatorHeaders(final HttpServletResponse response, final ResourceMetadata metadata) {
+    response.setHeader("ETag", metadata.etag);
+    response.setDateHeader("Last-Modified", metadata.lastModified);
+    return;
+  }
+
+  @Override
+  protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+    serve(request, response, true);
+    return;
+  }
+
+  @Override
+  protected void doHead(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+    serve(request, response, false);
+    return;
+  }
+
+  /**
+   * Serve the requested resource.
+   * 
+   * @param request The request.
+   * @param response The response.
+   * @param content Should the content be sent (or only the headers, for a <code>HEAD</code> request)?
+   * @throws IOException If there was a problem sending the content.
+   */
+  protected void serve(final HttpServletRequest request, final HttpServletResponse response, final boolean content) throws IOException {
+    final ResourceMetadata file = getMetadata(getRequestPath(request));
+    if (file == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    final String range = request.getHeader("Range");
+    ResourceMetadata selected = file;
+    final ResourceMetadata gzip = file.gzip;
+    if (gzip != null) {
+      response.addHeader("Vary", "Accept-Encoding");
+      final String acceptEncoding = request.getHeader("Accept-Encoding");
+      if ((range == null) && (acceptEncoding != null) && ("gzip".equals(CompressionFilter.negotiate(acceptEncoding)))) selected = gzip;
+    }
+
+    final int preconditionStatus = evaluatePreconditions(request, selected);
+    if (preconditionStatus == HttpServletResponse.SC_NOT_MODIFIED) {
+      setValidatorHeaders(response, selected);
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    } else if (preconditionStatus != 0) {
+      response.sendError(preconditionStatus);
+      return;
+    }
+
+    setValidatorHeaders(response, selected);
+    response.setHeader("Accept-Ranges", "bytes");
+    response.setContentType(selected.contentType);
+    if (selected != file) response.setHeader("Content-Encoding", "gzip");
+
+    final long[] ranges = ((range != null) && (evaluateIfRange(request, file))) ? parseRanges(range, file.size) : null;
+    if (ranges == null) {
+      response.setContentLengthLong(selected.size);
+      if (content) send(request, response, selected, 0, selected.size);
+      return;
+    } else if (ranges.length == 0) {
+      response.setHeader("Content-Range", "bytes */" + file.size);
+      response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+
+    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    if (ranges.length == 2) {
+      response.setHeader("Content-Range", "bytes " + ranges[0] + '-' + ranges[1] + '/' + file.size);
+      response.setContentLengthLong(ranges[1] - ranges[0] + 1);
+      if (content) send(request, response, file, ranges[0], ranges[1] - ranges[0] + 1);
+      return;
+    }
+
+    final byte[][] partHeaders = new byte[ranges.length / 2][];
+    final byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    long contentLength = trailer.length;
+    for (int i = 0; i < partHeaders.length; i++) {
+      final long first = ranges[i * 2];
+      final long last = ranges[i * 2 + 1];
+      partHeaders[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + file.contentType + "\r\nContent-Range: bytes " + first + '-' + last + '/' + file.size + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+      contentLength += partHeaders[i].length + (last - first + 1);
+    }
+    response.setContentType("multipart/byteranges; boundary=" + boundary);
+    response.setContentLengthLong(contentLength);
+    if (!content) return;
+    final ServletOutputStream out = response.getOutputStream();
+    try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ)) {
+      final WritableByteChannel target = Channels.newChannel(out);
+      for (int i = 0; i < partHeaders.length; i++) {
+        out.write(partHeaders[i]);
+        transfer(channel, ranges[i * 2], ranges[i * 2 + 1] - ranges[i * 2] + 1, target);
+      }
+    }
+    out.write(trailer);
+    return;
+  }
+
+  /**
+   * Send a region of the given file as the content of the response, using the container's sendfile support if
+   * possible.
+   * 
+   * @param request The request.
+   * @param response The response.
+   * @param metadata The metadata of the file.
+   * @param position The position of the region within the file.
+   * @param length The length of the region.
+   * @throws IOException If there was a problem sending the content.
+   */
+  protected void send(final HttpServletRequest request, final HttpServletResponse response, final ResourceMetadata metadata, final long position, final long length) throws IOException {
+    if ((length >= sendfileThreshold) && (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) && (!(response instanceof ServletResponseWrapper))) {
+      request.setAttribute(SENDFILE_FILENAME_ATTR, metadata.path.toString());
+      request.setAttribute(SENDFILE_START_ATTR, Long.valueOf(position));
+      request.setAttribute(SENDFILE_END_ATTR, Long.valueOf(position + length));
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(metadata.path, StandardOpenOption.READ)) {
+      transfer(channel, position, length, Channels.newChannel(response.getOutputStream()));
+    }
+    return;
+  }
+
+  /**
+   * Transfer a region of the given file to the <code>target</code>.
+   * 
+   * @param channel The file.
+   * @param position The position of the region within the file.
+   * @param length The length of the region.
+   * @param target The channel to transfer the region to.
+   * @throws IOException If there was a problem transferring the content, or the file was truncated.
+   */
+  protected static void transfer(final FileChannel channel, final long position, final long length, final WritableByteChannel target) throws IOException {
+    long transferred = 0;
+    while (transferred < length) {
+      final long count = channel.transferTo(position + transferred, length - transferred, target);
+      if (count <= 0) throw new EOFException("File truncated while being sent");
+      transferred += count;
+    }
+    return;
+  }
+
+  /**
+   * The cached metadata for a file.
+   */
+  protected static class ResourceMetadata {
+    /**
+     * Does the file exist? If not, none of the other fields are meaningful.
+     */
+    protected final boolean exists;
+    /**
+     * The file.
+     */
+    protected final Path path;
+    /**
+     * The size of the file.
+     */
+    protected final long size;
+    /**
+     * The modification time of the file, in milliseconds.
+     */
+    protected final long lastModified;
+    /**
+     * The content type of the file (or, for a precompressed sibling, of the original file).
+     */
+    protected final String contentType;
+    /**
+     * The (strong) entity tag of the file.
+     */
+    protected final String etag;
+    /**
+     * The metadata of the precompressed sibling of the file, if any.
+     */
+    protected final @Nullable ResourceMetadata gzip;
+    /**
+     * When this metadata was read from the filesystem, as a {@linkplain System#nanoTime() nano time}.
+     */
+    protected final long checkedAt;
+
+    /**
+     * Construct metadata for a file which exists.
+     * 
+     * @param path The file.
+     * @param size The size of the file.
+     * @param lastModified The modification time of the file, in milliseconds.
+     * @param contentType The content type of the file.
+     * @param etagSuffix A suffix distinguishing the entity tag of this representation.
+     * @param gzip The metadata of the precompressed sibling of the file, if any.
+     * @param checkedAt When this metadata was read from the filesystem.
+     */
+    protected ResourceMetadata(final Path path, final long size, final long lastModified, final String contentType, final String etagSuffix, final @Nullable ResourceMetadata gzip, final long checkedAt) {
+      exists = true;
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.contentType = contentType;
+      etag = '"' + Long.toHexString(lastModified) + '-' + Long.toHexString(size) + etagSuffix + '"';
+      this.gzip = gzip;
+      this.checkedAt = checkedAt;
+      return;
+    }
+
+    /**
+     * Construct metadata for a file which doesn't exist.
+     * 
+     * @param checkedAt When the filesystem was checked.
+     */
+    protected ResourceMetadata(final long checkedAt) {
+      exists = false;
+      path = Paths.get("");
+      size = 0;
+      lastModified = 0;
+      contentType = "";
+      etag = "";
+      gzip = null;
+      this.checkedAt = checkedAt;
+      return;
+    }
+
+    /**
+     * Get the modification time of the file, truncated to the second precision of HTTP dates.
+     * 
+     * @return The modification time, in seconds.
+     */
+    protected long lastModifiedSeconds() {
+      return lastModified / 1000;
+    }
+
+  } // ResourceMetadata
+
+}
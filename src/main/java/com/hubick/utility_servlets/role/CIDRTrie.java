@@ -0,0 +1,463 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.function.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A path-compressed binary trie mapping IPv4 and IPv6 CIDR blocks to values, supporting longest-prefix-match lookups.
+ * </p>
+ * 
+ * <p>
+ * All addresses are stored as 128 bit IPv6 addresses, with IPv4 addresses (and blocks) being mapped into the
+ * <code>::ffff:0:0/96</code> range, so an IPv4-mapped IPv6 address will match the corresponding IPv4 block. Lookups
+ * parse the textual address directly into a reusable per-thread buffer, allocate nothing, and cost at most
+ * <code>O(prefix length)</code> regardless of the number of blocks stored.
+ * </p>
+ * 
+ * <p>
+ * Instances are <em>not</em> thread safe for modification, and are intended to be populated once (ie, during
+ * <code>init</code>) and then only {@linkplain #get(CharSequence) read}.
+ * </p>
+ * 
+ * @param <V> The type of value mapped.
+ */
+@NonNullByDefault
+public class CIDRTrie<V> {
+  /**
+   * The number of bytes in a (normalized) address.
+   */
+  public static final int ADDRESS_LENGTH = 16;
+  /**
+   * The number of bits in a (normalized) address.
+   */
+  protected static final int ADDRESS_BITS = ADDRESS_LENGTH * 8;
+  /**
+   * The number of leading bits in a normalized address which precede an IPv4 address.
+   */
+  protected static final int IPV4_PREFIX_BITS = 96;
+  /**
+   * A per-thread buffer to {@linkplain #parseAddress(CharSequence, byte[]) parse} addresses into during lookups.
+   */
+  protected static final ThreadLocal<byte[]> ADDRESS_BUFFER = ThreadLocal.withInitial(() -> new byte[ADDRESS_LENGTH]);
+  /**
+   * The root node of the trie.
+   */
+  protected @Nullable Node<V> root = null;
+  /**
+   * The number of blocks stored.
+   */
+  protected int size = 0;
+
+  /**
+   * Map the given <code>cidr</code> block to the supplied <code>value</code>, replacing any existing value for that
+   * block.
+   * 
+   * @param cidr An IPv4 (ie, <code>"10.0.0.0/8"</code>) or IPv6 (ie, <code>"fd00::/8"</code>) block. If the prefix
+   * length is omitted, the block will contain only the single address given.
+   * @param value The value to map the block to.
+   * @throws IllegalArgumentException If the <code>cidr</code> block could not be parsed.
+   */
+  public void put(final CharSequence cidr, final V value) throws IllegalArgumentException {
+    final String cidrString = cidr.toString().trim();
+    final int slash = cidrString.indexOf('/');
+    final String addressString = (slash >= 0) ? cidrString.substring(0, slash) : cidrString;
+    final byte[] address = new byte[ADDRESS_LENGTH];
+    if (!parseAddress(addressString, address)) throw new IllegalArgumentException("Invalid address: '" + cidr + '\'');
+    final boolean ipv4 = addressString.indexOf(':') < 0;
+    int prefixLength = ipv4 ? 32 : ADDRESS_BITS;
+    if (slash >= 0) {
+      try {
+        prefixLength = Integer.parseInt(cidrString.substring(slash + 1).trim());
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Invalid prefix length: '" + cidr + '\'', nfe);
+      }
+      if ((prefixLength < 0) || (prefixLength > (ipv4 ? 32 : ADDRESS_BITS))) throw new IllegalArgumentException("Invalid prefix length: '" + cidr + '\'');
+    }
+    put(address, ipv4 ? prefixLength + IPV4_PREFIX_BITS : prefixLength, value);
+    return;
+  }
+
+  /**
+   * Map the block with the given (normalized) <code>address</code> and <code>prefixLength</code> to the supplied
+   * <code>value</code>, replacing any existing value for that block.
+   * 
+   * @param address A {@linkplain #parseAddress(CharSequence, byte[]) normalized} address, which will be copied.
+   * @param prefixLength The number of leading bits of the <code>address</code> which are significant.
+   * @param value The value to map the block to.
+   * @throws IllegalArgumentException If the <code>address</code> or <code>prefixLength</code> are invalid.
+   */
+  public void put(final byte[] address, final int prefixLength, final V value) throws IllegalArgumentException {
+    if (address.length != ADDRESS_LENGTH) throw new IllegalArgumentException("Invalid address length: " + address.length);
+    if ((prefixLength < 0) || (prefixLength > ADDRESS_BITS)) throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+    final byte[] key = mask(address, prefixLength);
+
+    @Nullable Node<V> parent = null;
+    Node<V> node = root;
+    if (node == null) {
+      root = new Node<V>(key, prefixLength, value);
+      size++;
+      return;
+    }
+    while (true) {
+      final int common = commonPrefixLength(key, node.key, Math.min(prefixLength, node.prefixLength));
+      if (common < node.prefixLength) {
+        final Node<V> replacement;
+        if (common == prefixLength) { // The new block contains the existing node.
+          replacement = new Node<V>(key, prefixLength, value);
+          replacement.setChild(bit(node.key, prefixLength), node);
+        } else { // The new block and the existing node diverge, so join them under a new (valueless) node.
+          replacement = new Node<V>(mask(key, common), common, null);
+          replacement.setChild(bit(key, common), new Node<V>(key, prefixLength, value));
+          replacement.setChild(bit(node.key, common), node);
+        }
+        if (parent == null) {
+          root = replacement;
+        } else {
+          parent.setChild(bit(key, parent.prefixLength), replacement);
+        }
+        size++;
+        return;
+      }
+      if (prefixLength == node.prefixLength) { // An existing node for the same block.
+        if (node.value == null) size++;
+        node.value = value;
+        return;
+      }
+      final int nextBit = bit(key, node.prefixLength);
+      final Node<V> child = node.getChild(nextBit);
+      if (child == null) {
+        node.setChild(nextBit, new Node<V>(key, prefixLength, value));
+        size++;
+        return;
+      }
+      parent = node;
+      node = child;
+    }
+  }
+
+  /**
+   * Replace the value of each block with the result of combining it with the value of its nearest enclosing block, so
+   * that a lookup will return a value representing <em>every</em> block containing the address.
+   * 
+   * @param combiner A function accepting the (already combined) enclosing value and the value of the contained block,
+   * and returning the combination of the two.
+   */
+  public void inherit(final BinaryOperator<V> combiner) {
+    inherit(root, null, combiner);
+    return;
+  }
+
+  /**
+   * @param node The node to process.
+   * @param inherited The value inherited from the enclosing block.
+   * @param combiner The combining function.
+   * @see #inherit(BinaryOperator)
+   */
+  protected static <V> void inherit(final @Nullable Node<V> node, final @Nullable V inherited, final BinaryOperator<V> combiner) {
+    if (node == null) return;
+    final V own = node.value;
+    final V effective = (own == null) ? inherited : (inherited == null) ? own : combiner.apply(inherited, own);
+    node.value = effective;
+    inherit(node.zero, effective, combiner);
+    inherit(node.one, effective, combiner);
+    return;
+  }
+
+  /**
+   * Get the value of the most specific block containing the given textual <code>address</code>.
+   * 
+   * @param address The IPv4 or IPv6 address to look up.
+   * @return The value of the longest matching block, or <code>null</code> if none matches, or the
+   * <code>address</code> could not be parsed.
+   */
+  public @Nullable V get(final CharSequence address) {
+    final byte[] buffer = ADDRESS_BUFFER.get();
+    if (!parseAddress(address, buffer)) return null;
+    return get(buffer);
+  }
+
+  /**
+   * Get the value of the most specific block containing the given normalized <code>address</code>.
+   * 
+   * @param address A {@linkplain #parseAddress(CharSequence, byte[]) normalized} address.
+   * @return The value of the longest matching block, or <code>null</code> if none matches.
+   */
+  public @Nullable V get(final byte[] address) {
+    @Nullable V best = null;
+    int checkedBits = 0;
+    Node<V> node = root;
+    while (node != null) {
+      if (!matches(address, node.key, checkedBits, node.prefixLength)) break;
+      if (node.value != null) best = node.value;
+      if (node.prefixLength >= ADDRESS_BITS) break;
+      checkedBits = node.prefixLength;
+      node = node.getChild(bit(address, checkedBits));
+    }
+    return best;
+  }
+
+  /**
+   * Get the number of blocks stored.
+   * 
+   * @return The number of blocks which have been {@linkplain #put(CharSequence, Object) mapped}.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Parse the given textual IPv4 or IPv6 <code>address</code> into a normalized 16 byte form, where IPv4 addresses
+   * are mapped into the <code>::ffff:0:0/96</code> range. Surrounding square brackets and any IPv6 zone ID are
+   * ignored. This method allocates nothing.
+   * 
+   * @param address The textual address.
+   * @param result The 16 byte array to write the normalized address into.
+   * @return <code>true</code> if the <code>address</code> was successfully parsed, else <code>false</code>, in which
+   * case the content of <code>result</code> is undefined.
+   */
+  public static boolean parseAddress(final CharSequence address, final byte[] result) {
+    int start = 0;
+    int end = address.length();
+    if ((end >= 2) && (address.charAt(0) == '[') && (address.charAt(end - 1) == ']')) {
+      start++;
+      end--;
+    }
+    boolean ipv6 = false;
+    for (int i = start; i < end; i++) {
+      final char c = address.charAt(i);
+      if (c == ':') {
+        ipv6 = true;
+      } else if ((c == '%') && (ipv6)) {
+        end = i;
+        break;
+      }
+    }
+    if (!ipv6) {
+      for (int i = 0; i < 10; i++) {
+        result[i] = 0;
+      }
+      result[10] = (byte)0xFF;
+      result[11] = (byte)0xFF;
+      return parseIPv4(address, start, end, result, 12);
+    }
+
+    int groupCount = 0;
+    int compressedGroup = -1;
+    int i = start;
+    if ((i + 1 < end) && (address.charAt(i) == ':') && (address.charAt(i + 1) == ':')) {
+      compressedGroup = 0;
+      i += 2;
+    } else if ((i < end) && (address.charAt(i) == ':')) {
+      return false;
+    }
+    while (i < end) {
+      final int groupStart = i;
+      int value = 0;
+      while (i < end) {
+        final int digit = Character.digit(address.charAt(i), 16);
+        if (digit < 0) break;
+        value = (value << 4) | digit;
+        i++;
+      }
+      if ((i < end) && (address.charAt(i) == '.')) { // An IPv4 suffix.
+        if (groupCount > 6) return false;
+        if (!parseIPv4(address, groupStart, end, result, groupCount * 2)) return false;
+        groupCount += 2;
+        break;
+      }
+      final int digits = i - groupStart;
+      if ((digits == 0) || (digits > 4) || (groupCount >= 8)) return false;
+      result[groupCount * 2] = (byte)(value >>> 8);
+      result[groupCount * 2 + 1] = (byte)value;
+      groupCount++;
+      if (i == end) break;
+      if (address.charAt(i++) != ':') return false;
+      if ((i < end) && (address.charAt(i) == ':')) {
+        if (compressedGroup >= 0) return false;
+        compressedGroup = groupCount;
+        i++;
+      } else if (i == end) {
+        return false;
+      }
+    }
+    if (compressedGroup < 0) return groupCount == 8;
+    if (groupCount >= 8) return false;
+    final int shift = (8 - groupCount) * 2;
+    for (int b = groupCount * 2 - 1; b >= compressedGroup * 2; b--) {
+      result[b + shift] = result[b];
+    }
+    for (int b = compressedGroup * 2; b < compressedGroup * 2 + shift; b++) {
+      result[b] = 0;
+    }
+    return true;
+  }
+
+  /**
+   * Parse a dotted-quad IPv4 address.
+   * 
+   * @param address The text containing the address.
+   * @param start The index of the first character of the address.
+   * @param end The index following the last character of the address.
+   * @param result The array to write the address into.
+   * @param offset The index within <code>result</code> to write the first byte of the address.
+   * @return <code>true</code> if the address was successfully parsed.
+   */
+  protected static boolean parseIPv4(final CharSequence address, final int start, final int end, final byte[] result, final int offset) {
+    int octet = 0;
+    int i = start;
+    while (octet < 4) {
+      final int octetStart = i;
+      int value = 0;
+      while ((i < end) && (i - octetStart < 3)) {
+        final char c = address.charAt(i);
+        if ((c < '0') || (c > '9')) break;
+        value = value * 10 + (c - '0');
+        i++;
+      }
+      if ((i == octetStart) || (value > 255)) return false;
+      result[offset + octet++] = (byte)value;
+      if (octet < 4) {
+        if ((i >= end) || (address.charAt(i) != '.')) return false;
+        i++;
+      }
+    }
+    return i == end;
+  }
+
+  /**
+   * Get a copy of <code>address</code> with all bits following the first <code>prefixLength</code> cleared.
+   * 
+   * @param address The address to mask.
+   * @param prefixLength The number of leading bits to retain.
+   * @return The masked copy.
+   */
+  protected static byte[] mask(final byte[] address, final int prefixLength) {
+    final byte[] masked = new byte[ADDRESS_LENGTH];
+    final int fullBytes = prefixLength >>> 3;
+    System.arraycopy(address, 0, masked, 0, fullBytes);
+    final int remainingBits = prefixLength & 7;
+    if (remainingBits != 0) masked[fullBytes] = (byte)(address[fullBytes] & (0xFF00 >>> remainingBits));
+    return masked;
+  }
+
+  /**
+   * Get the value of the given <code>bit</code> within the <code>address</code>.
+   * 
+   * @param address The address.
+   * @param bit The index of the bit, counting from the most significant.
+   * @return <code>0</code> or <code>1</code>.
+   */
+  protected static int bit(final byte[] address, final int bit) {
+    return (address[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+  }
+
+  /**
+   * Count the number of leading bits shared by two addresses.
+   * 
+   * @param a The first address.
+   * @param b The second address.
+   * @param limit The maximum number of bits to compare.
+   * @return The number of leading bits which are equal, no greater than <code>limit</code>.
+   */
+  protected static int commonPrefixLength(final byte[] a, final byte[] b, final int limit) {
+    for (int byteIndex = 0; byteIndex << 3 < limit; byteIndex++) {
+      final int diff = (a[byteIndex] ^ b[byteIndex]) & 0xFF;
+      if (diff != 0) return Math.min(limit, (byteIndex << 3) + Integer.numberOfLeadingZeros(diff) - 24);
+    }
+    return limit;
+  }
+
+  /**
+   * Does the <code>address</code> match the <code>key</code> over the bits from <code>fromBit</code> (rounded down to
+   * a byte boundary) up to <code>prefixLength</code>?
+   * 
+   * @param address The address being looked up.
+   * @param key The (masked) key of a node.
+   * @param fromBit The number of leading bits already known to match.
+   * @param prefixLength The prefix length of the node.
+   * @return <code>true</code> if the address falls within the block.
+   */
+  protected static boolean matches(final byte[] address, final byte[] key, final int fromBit, final int prefixLength) {
+    for (int byteIndex = fromBit >>> 3; byteIndex << 3 < prefixLength; byteIndex++) {
+      final int diff = (address[byteIndex] ^ key[byteIndex]) & 0xFF;
+      if (diff != 0) return (byteIndex << 3) + Integer.numberOfLeadingZeros(diff) - 24 >= prefixLength;
+    }
+    return true;
+  }
+
+  /**
+   * A node within the trie, representing a block, which may or may not have a value.
+   * 
+   * @param <V> The type of value mapped.
+   */
+  protected static final class Node<V> {
+    /**
+     * The (masked) address of this block.
+     */
+    final byte[] key;
+    /**
+     * The number of significant leading bits in the {@link #key}.
+     */
+    final int prefixLength;
+    /**
+     * The value for this block, or <code>null</code> if this node only exists to join its children.
+     */
+    @Nullable V value;
+    /**
+     * The child for blocks where the bit following our prefix is zero.
+     */
+    @Nullable Node<V> zero = null;
+    /**
+     * The child for blocks where the bit following our prefix is one.
+     */
+    @Nullable Node<V> one = null;
+
+    /**
+     * Construct a <code>Node</code>.
+     * 
+     * @param key The (masked) address of this block.
+     * @param prefixLength The number of significant leading bits in the <code>key</code>.
+     * @param value The value for this block.
+     */
+    Node(final byte[] key, final int prefixLength, final @Nullable V value) {
+      this.key = key;
+      this.prefixLength = prefixLength;
+      this.value = value;
+      return;
+    }
+
+    /**
+     * @param bit The value of the bit following our prefix.
+     * @return The child on that side.
+     */
+    @Nullable
+    Node<V> getChild(final int bit) {
+      return (bit == 0) ? zero : one;
+    }
+
+    /**
+     * @param bit The value of the bit following our prefix.
+     * @param child The child for that side.
+     */
+    void setChild(final int bit, final Node<V> child) {
+      if (bit == 0) {
+        zero = child;
+      } else {
+        one = child;
+      }
+      return;
+    }
+
+  } // Node
+
+}
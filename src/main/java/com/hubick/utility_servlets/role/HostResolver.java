@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.net.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * Resolves a client address to a host name, as used by a {@link HostResolverCache}.
+ * 
+ * @see RemoteHostUserRoleFilter#RESOLVER_PROP
+ */
+@NonNullByDefault
+@FunctionalInterface
+public interface HostResolver {
+  /**
+   * A <code>HostResolver</code> performing a (blocking) reverse DNS lookup using
+   * {@link InetAddress#getCanonicalHostName()}.
+   */
+  public static final HostResolver INET_ADDRESS = (address) -> {
+    final String hostName = InetAddress.getByName(address).getCanonicalHostName();
+    return ((hostName == null) || (hostName.equals(address))) ? null : hostName;
+  };
+
+  /**
+   * Resolve the host name for the given <code>address</code>. This method may block.
+   * 
+   * @param address The textual IP address of the client.
+   * @return The host name, or <code>null</code> if the address has none.
+   * @throws Exception If there was a problem resolving the address, which will be treated as if it had no host name.
+   */
+  public @Nullable String resolve(String address) throws Exception;
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.util.*;
+
+
+/**
+ * <p>
+ * A bounded cache of {@linkplain HostResolver resolved} host names, which never blocks the caller.
+ * </p>
+ * 
+ * <p>
+ * Resolution is performed asynchronously using the supplied {@link Executor}, and until it completes a
+ * {@linkplain #lookup(String) lookup} will return <code>null</code>. Successful and failed resolutions are cached for
+ * separate durations, after which the stale result continues to be returned while it is refreshed in the background.
+ * </p>
+ */
+@NonNullByDefault
+public class HostResolverCache {
+  /**
+   * The resolver performing the actual lookups.
+   */
+  protected final HostResolver resolver;
+  /**
+   * The executor to perform resolutions with.
+   */
+  protected final Executor executor;
+  /**
+   * The number of nanoseconds to cache a successful resolution.
+   */
+  protected final long positiveTTLNanos;
+  /**
+   * The number of nanoseconds to cache a failed resolution.
+   */
+  protected final long negativeTTLNanos;
+  /**
+   * The cached resolutions, keyed by address.
+   */
+  protected final BoundedCache<String,HostEntry> entries;
+
+  /**
+   * Construct a <code>HostResolverCache</code>.
+   * 
+   * @param resolver The resolver performing the actual lookups.
+   * @param executor The executor to perform resolutions with.
+   * @param positiveTTL The duration to cache a successful resolution.
+   * @param negativeTTL The duration to cache a failed resolution.
+   * @param unit The unit of <code>positiveTTL</code> and <code>negativeTTL</code>.
+   * @param maximumSize The maximum number of addresses to cache.
+   */
+  public HostResolverCache(final HostResolver resolver, final Executor executor, final long positiveTTL, final long negativeTTL, final TimeUnit unit, final int maximumSize) {
+    this.resolver = resolver;
+    this.executor = executor;
+    this.positiveTTLNanos = unit.toNanos(positiveTTL);
+    this.negativeTTLNanos = unit.toNanos(negativeTTL);
+    this.entries = new BoundedCache<String,HostEntry>(maximumSize);
+    return;
+  }
+
+  /**
+   * Get the host name for the given <code>address</code>, without blocking. If the address hasn't been resolved yet,
+   * or the cached result has expired, a background resolution will be scheduled.
+   * 
+   * @param address The textual IP address of the client.
+   * @return The host name, the <code>address</code> itself if it has no host name, or <code>null</code> if resolution
+   * of the <code>address</code> hasn't yet completed.
+   */
+  public @Nullable String lookup(final String address) {
+    HostEntry entry = entries.get(address);
+    if (entry == null) {
+      final HostEntry created = new HostEntry();
+      entry = entries.putIfAbsent(address, created);
+      if (entry == null) {
+        refresh(address, created);
+        return null;
+      }
+    }
+    final String hostName = entry.hostName;
+    if ((entry.resolved) && (System.nanoTime() - entry.expiresAt > 0)) refresh(address, entry);
+    return hostName;
+  }
+
+  /**
+   * Schedule a resolution of the <code>address</code>, unless one is already in progress for the <code>entry</code>.
+   * 
+   * @param address The address to resolve.
+   * @param entry The entry to store the result in.
+   */
+  protected void refresh(final String address, final HostEntry entry) {
+    if (!entry.refreshing.compareAndSet(false, true)) return;
+    try {
+      executor.execute(() -> resolve(address, entry));
+    } catch (RejectedExecutionException ree) {
+      entry.refreshing.set(false);
+      if (!entry.resolved) entries.remove(address);
+    }
+    return;
+  }
+
+  /**
+   * Resolve the <code>address</code>, and store the result in the <code>entry</code>.
+   * 
+   * @param address The address to resolve.
+   * @param entry The entry to store the result in.
+   */
+  protected void resolve(final String address, final HostEntry entry) {
+    @Nullable String hostName;
+    try {
+      hostName = resolver.resolve(address);
+    } catch (Exception e) {
+      hostName = null;
+    }
+    entry.expiresAt = System.nanoTime() + ((hostName != null) ? positiveTTLNanos : negativeTTLNanos);
+    entry.hostName = (hostName != null) ? hostName : address;
+    entry.resolved = true;
+    entry.refreshing.set(false);
+    return;
+  }
+
+  /**
+   * Get the number of addresses currently cached.
+   * 
+   * @return The number of cached addresses.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Remove all cached resolutions.
+   */
+  public void clear() {
+    entries.clear();
+    return;
+  }
+
+  /**
+   * The cached resolution of an address.
+   */
+  protected static final class HostEntry {
+    /**
+     * The resolved host name (or address, if it had none), or <code>null</code> if not yet resolved.
+     */
+    volatile @Nullable String hostName = null;
+    /**
+     * The {@link System#nanoTime()} at which this entry should be refreshed.
+     */
+    volatile long expiresAt = 0;
+    /**
+     * Has a resolution ever completed for this entry?
+     */
+    volatile boolean resolved = false;
+    /**
+     * Is a resolution currently scheduled for this entry?
+     */
+    final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+  } // HostEntry
+
+}
@@ -11,6 +11,8 @@ import java.io.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
@@ -23,7 +25,7 @@ import javax.servlet.http.*;
  * @see HttpServletRequest#isUserInRole(String)
  */
 @NonNullByDefault
-public class KnownUnknownUserRoleFilter implements Filter {
+public class KnownUnknownUserRoleFilter implements Filter, PipelineStage {
   /**
    * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
    * the {@linkplain HttpServletRequest#isUserInRole(String) role} to populate clients into if their
@@ -46,31 +48,111 @@ public class KnownUnknownUserRoleFilter implements Filter {
    * @see #UNKNOWN_USER_ROLE_PROP
    */
   protected String unknownUserRole = "unknown-user";
+  /**
+   * The {@linkplain RoleRegistry#intern(String) interned} ID of the {@link #knownUserRole}.
+   */
+  protected int knownUserRoleID = -1;
+  /**
+   * The {@linkplain RoleRegistry#intern(String) interned} ID of the {@link #unknownUserRole}.
+   */
+  protected int unknownUserRoleID = -1;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
     final String knownUserRoleProp = filterConfig.getInitParameter(KNOWN_USER_ROLE_PROP);
     if (knownUserRoleProp != null) knownUserRole = knownUserRoleProp;
     final String unknownUserRoleProp = filterConfig.getInitParameter(UNKNOWN_USER_ROLE_PROP);
     if (unknownUserRoleProp != null) unknownUserRole = unknownUserRoleProp;
+    knownUserRoleID = RoleRegistry.intern(knownUserRole);
+    unknownUserRoleID = RoleRegistry.intern(unknownUserRole);
     return;
   }
 
+  /**
+   * Grant the roles {@linkplain #doFilter(ServletRequest, ServletResponse, FilterChain) this filter} determines for the
+   * given <code>request</code>, which won't be evaluated until they're first {@linkplain KnownUnknownRoleSource
+   * queried}.
+   * 
+   * @param request The request.
+   * @return The request to pass down the filter chain.
+   */
+  protected HttpServletRequest grantRoles(final HttpServletRequest request) {
+    return UserRoleRequestWrapper.addRoleSource(request, new KnownUnknownRoleSource());
+  }
+
   @Override
-  public void doFilter(ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    final String remoteUser = ((HttpServletRequest)servletRequest).getRemoteUser();
-    if (remoteUser != null) {
-      servletRequest = new UserRoleRequestWrapper((HttpServletRequest)servletRequest, knownUserRole);
-    } else {
-      servletRequest = new UserRoleRequestWrapper((HttpServletRequest)servletRequest, unknownUserRole);
-    }
-    filterChain.doFilter(servletRequest, servletResponse);
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = grantRoles((HttpServletRequest)servletRequest);
+    final long chainNanos = metrics.doChain(filterChain, httpServletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    exchange.setRequest(grantRoles(exchange.getRequest()));
+    return true;
+  }
+
   @Override
   public void destroy() {
+    metrics.unregister();
     return;
   }
 
+  /**
+   * Populate the client into the known or unknown user role, determining which upon the first query for either.
+   */
+  protected class KnownUnknownRoleSource implements RoleSource {
+    /**
+     * The ID of the role the client is in, or <code>-1</code> if that hasn't been determined yet.
+     */
+    protected int roleID = -1;
+
+    /**
+     * Construct a <code>KnownUnknownRoleSource</code>.
+     */
+    public KnownUnknownRoleSource() {
+      return;
+    }
+
+    /**
+     * Get the ID of the role the client is in, determining it if necessary.
+     * 
+     * @param request The request.
+     * @return The ID of the {@link #knownUserRole} or {@link #unknownUserRole}.
+     */
+    protected int getRoleID(final HttpServletRequest request) {
+      if (roleID < 0) {
+        roleID = (request.getRemoteUser() != null) ? knownUserRoleID : unknownUserRoleID;
+        metrics.countRole(roleID);
+      }
+      return roleID;
+    }
+
+    @Override
+    public boolean isUserInRole(final HttpServletRequest request, final String role, final int id) {
+      if ((id < 0) || ((id != knownUserRoleID) && (id != unknownUserRoleID))) return false;
+      return getRoleID(request) == id;
+    }
+
+    @Override
+    public void resolveRoles(final HttpServletRequest request, final RoleSet roles) {
+      roles.add(getRoleID(request));
+      return;
+    }
+
+    @Override
+    public boolean isEnumerable() {
+      return true;
+    }
+
+  } // KnownUnknownRoleSource
+
 }
@@ -12,19 +12,30 @@ import java.util.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
 
 /**
+ * <p>
  * Populate clients into {@linkplain HttpServletRequest#isUserInRole(String) roles} based on their
  * {@linkplain ServletRequest#getLocales() locales}.
+ * </p>
+ * 
+ * <p>
+ * A client is in a {@linkplain #ROLE_PREFIX_PROP prefixed} role if the remainder of the role name, treated as an RFC
+ * 4647 language range, matches any language tag with a non-zero quality in their <code>Accept-Language</code> header,
+ * according to RFC 4647 basic filtering. For example, a client sending <code>en-US</code> is in both the
+ * <code>locale-en</code> and <code>locale-en-US</code> roles, but not <code>locale-en-GB</code>.
+ * </p>
  * 
  * @see HttpServletRequest#isUserInRole(String)
  * @see ServletRequest#getLocales()
  */
 @NonNullByDefault
-public class LocaleUserRoleFilter implements Filter {
+public class LocaleUserRoleFilter implements Filter, PipelineStage {
   /**
    * @see #ROLE_PREFIX_PROP
    */
@@ -38,63 +49,209 @@ public class LocaleUserRoleFilter implements Filter {
    * @see #ROLE_PREFIX_PROP
    */
   protected String rolePrefix = ROLE_PREFIX_DEFAULT;
+  /**
+   * The maximum number of distinct role names to cache the parsed language range for.
+   */
+  protected static final int ROLE_RANGE_CACHE_SIZE = 1024;
+  /**
+   * The (normalized) language range for each prefixed role name seen.
+   */
+  protected final BoundedCache<String,String> roleRanges = new BoundedCache<String,String>(ROLE_RANGE_CACHE_SIZE);
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
     final String rolePrefixProp = filterConfig.getInitParameter(ROLE_PREFIX_PROP);
     if (rolePrefixProp != null) rolePrefix = rolePrefixProp;
     return;
   }
 
+  /**
+   * Grant the roles {@linkplain #doFilter(ServletRequest, ServletResponse, FilterChain) this filter} determines for the
+   * given <code>request</code>, which won't be evaluated until they're first {@linkplain LocaleRoleSource queried}.
+   * 
+   * @param request The request.
+   * @return The request to pass down the filter chain.
+   */
+  protected HttpServletRequest grantRoles(final HttpServletRequest request) {
+    if (request.getHeader("Accept-Language") == null) return request;
+    return UserRoleRequestWrapper.addRoleSource(request, new LocaleRoleSource());
+  }
+
   @Override
-  public void doFilter(ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
-    if (httpServletRequest.getHeader("Accept-Language") != null) {
-      servletRequest = new LocaleUserRoleRequestWrapper(httpServletRequest);
-    }
-    filterChain.doFilter(servletRequest, servletResponse);
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = grantRoles((HttpServletRequest)servletRequest);
+    final long chainNanos = metrics.doChain(filterChain, httpServletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    exchange.setRequest(grantRoles(exchange.getRequest()));
+    return true;
+  }
+
   @Override
   public void destroy() {
+    roleRanges.clear();
+    metrics.unregister();
     return;
   }
 
   /**
-   * Wrap the <code>request</code> and populate clients into {@linkplain HttpServletRequest#isUserInRole(String) roles}
-   * based on their {@linkplain ServletRequest#getLocales() locales}.
+   * Get the normalized language range represented by a {@linkplain #ROLE_PREFIX_PROP prefixed} role name.
+   * 
+   * @param role The role name, which must start with the {@link #rolePrefix}.
+   * @return The lower-case language range.
+   */
+  protected String getRoleRange(final String role) {
+    return roleRanges.get(role, (r) -> r.substring(rolePrefix.length()).trim().replace('_', '-').toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Does the given language <code>range</code> match the language <code>tag</code>, according to RFC 4647 basic
+   * filtering?
+   * 
+   * @param range The (lower-case) language range.
+   * @param tag The (lower-case) language tag.
+   * @return <code>true</code> if the range is <code>*</code>, equal to the tag, or a prefix of the tag followed by a
+   * <code>-</code>.
+   */
+  protected static boolean matches(final String range, final String tag) {
+    if ((range.length() == 1) && (range.charAt(0) == '*')) return true;
+    if (!tag.startsWith(range)) return false;
+    return (tag.length() == range.length()) || (tag.charAt(range.length()) == '-');
+  }
+
+  /**
+   * The language tags from an <code>Accept-Language</code> header having a non-zero quality.
    */
-  protected class LocaleUserRoleRequestWrapper extends HttpServletRequestWrapper {
+  protected static final class AcceptLanguage {
+    /**
+     * The (lower-case) language tags, in order of descending quality.
+     */
+    final String[] tags;
+    /**
+     * The quality (in thousandths) of each of the {@link #tags}.
+     */
+    final int[] qualities;
 
     /**
-     * Construct a <code>LocaleUserRoleRequestWrapper</code>.
+     * Parse the given <code>Accept-Language</code> header values.
      * 
-     * @param request The {@linkplain HttpServletRequest} to wrap.
+     * @param headerValues The header values.
      */
-    public LocaleUserRoleRequestWrapper(final HttpServletRequest request) {
-      super(request);
+    AcceptLanguage(final Enumeration<String> headerValues) {
+      final List<String> parsedTags = new ArrayList<String>();
+      final List<Integer> parsedQualities = new ArrayList<Integer>();
+      while (headerValues.hasMoreElements()) {
+        for (String languageRange : headerValues.nextElement().split(",")) {
+          final int semicolon = languageRange.indexOf(';');
+          final String tag = ((semicolon >= 0) ? languageRange.substring(0, semicolon) : languageRange).trim().replace('_', '-').toLowerCase(Locale.ROOT);
+          if (tag.isEmpty()) continue;
+          final int quality = (semicolon >= 0) ? parseQuality(languageRange.substring(semicolon + 1)) : 1000;
+          if (quality <= 0) continue;
+          int insertion = parsedQualities.size();
+          while ((insertion > 0) && (parsedQualities.get(insertion - 1).intValue() < quality)) insertion--;
+          parsedTags.add(insertion, tag);
+          parsedQualities.add(insertion, Integer.valueOf(quality));
+        }
+      }
+      tags = parsedTags.toArray(new String[parsedTags.size()]);
+      qualities = parsedQualities.stream().mapToInt(Integer::intValue).toArray();
       return;
     }
 
-    @Override
-    public boolean isUserInRole(final String role) {
-      if (role.startsWith(rolePrefix)) {
-        final Locale roleLocale;
+    /**
+     * Parse the quality from the parameters of a language range.
+     * 
+     * @param parameters The parameters following the range (ie, <code>q=0.8</code>).
+     * @return The quality in thousandths, or <code>1000</code> if there is no valid quality parameter.
+     */
+    static int parseQuality(final String parameters) {
+      for (String parameter : parameters.split(";")) {
+        final String trimmed = parameter.trim();
+        if ((trimmed.length() < 3) || (Character.toLowerCase(trimmed.charAt(0)) != 'q') || (trimmed.charAt(1) != '=')) continue;
         try {
-          roleLocale = Locale.forLanguageTag(role.substring(rolePrefix.length()));
-        } catch (Exception e) {
-          return super.isUserInRole(role);
+          return (int)Math.round(Math.min(1, Double.parseDouble(trimmed.substring(2).trim())) * 1000);
+        } catch (NumberFormatException nfe) {
+          return 1000;
         }
-        final Enumeration<Locale> requestLocales = getLocales();
-        while (requestLocales.hasMoreElements()) {
-          final Locale requestLocale = requestLocales.nextElement();
-          if ((roleLocale.getLanguage().equals(requestLocale.getLanguage())) && ((roleLocale.getCountry().isEmpty()) || (roleLocale.getCountry().equals(requestLocale.getCountry())))) return true;
+      }
+      return 1000;
+    }
+
+  } // AcceptLanguage
+
+  /**
+   * Populate clients into {@linkplain HttpServletRequest#isUserInRole(String) roles} based on their
+   * {@linkplain ServletRequest#getLocales() locales}. The <code>Accept-Language</code> header is parsed at most once,
+   * and the result for each role is memoized for the lifetime of the request.
+   */
+  protected class LocaleRoleSource implements RoleSource {
+    /**
+     * The parsed <code>Accept-Language</code> header, or <code>null</code> if it hasn't been needed yet.
+     */
+    protected @Nullable AcceptLanguage acceptLanguage = null;
+    /**
+     * The result for each {@linkplain #ROLE_PREFIX_PROP prefixed} role queried so far, or <code>null</code> if none
+     * have been.
+     */
+    protected @Nullable Map<String,Boolean> roleResults = null;
+
+    /**
+     * Construct a <code>LocaleRoleSource</code>.
+     */
+    public LocaleRoleSource() {
+      return;
+    }
+
+    /**
+     * Does the client accept a language matching that of the given {@linkplain #ROLE_PREFIX_PROP prefixed}
+     * <code>role</code>?
+     * 
+     * @param request The request being queried.
+     * @param role The role name.
+     * @return <code>true</code> if the client is in the role.
+     */
+    protected boolean isUserInLocaleRole(final HttpServletRequest request, final String role) {
+      Map<String,Boolean> results = roleResults;
+      if (results == null) {
+        results = new HashMap<String,Boolean>();
+        roleResults = results;
+      } else {
+        final Boolean result = results.get(role);
+        if (result != null) return result.booleanValue();
+      }
+      AcceptLanguage acceptLanguage = this.acceptLanguage;
+      if (acceptLanguage == null) {
+        final Enumeration<String> headerValues = request.getHeaders("Accept-Language");
+        acceptLanguage = new AcceptLanguage((headerValues != null) ? headerValues : Collections.emptyEnumeration());
+        this.acceptLanguage = acceptLanguage;
+      }
+      final String range = getRoleRange(role);
+      boolean result = false;
+      for (String tag : acceptLanguage.tags) {
+        if (matches(range, tag)) {
+          result = true;
+          break;
         }
       }
-      return super.isUserInRole(role);
+      results.put(role, Boolean.valueOf(result));
+      return result;
+    }
+
+    @Override
+    public boolean isUserInRole(final HttpServletRequest request, final String role, final int id) {
+      return (role.startsWith(rolePrefix)) && (isUserInLocaleRole(request, role));
     }
 
-  } // LocaleUserRoleRequestWrapper
+  } // LocaleRoleSource
 
 }
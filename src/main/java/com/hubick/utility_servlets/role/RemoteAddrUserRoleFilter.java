@@ -8,22 +8,41 @@
 package com.hubick.utility_servlets.role;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
 
 /**
+ * <p>
  * Populate clients into a {@linkplain HttpServletRequest#isUserInRole(String) role} based on their
  * {@linkplain ServletRequest#getRemoteAddr() remote address}.
+ * </p>
+ * 
+ * <p>
+ * Clients may additionally be populated into roles based on which {@linkplain #RANGE_PROP_PREFIX address ranges} their
+ * address falls within, such as mapping <code>10.0.0.0/8</code> to an <code>internal</code> role, using the following
+ * configuration:
+ * </p>
+ * 
+ * <pre>
+ * &lt;init-param&gt;
+ *   &lt;param-name&gt;RemoteAddrUserRoleFilter.Range.10.0.0.0/8&lt;/param-name&gt;
+ *   &lt;param-value&gt;internal&lt;/param-value&gt;
+ * &lt;/init-param&gt;
+ * </pre>
  * 
  * @see ServletRequest#getRemoteAddr()
  * @see HttpServletRequest#isUserInRole(String)
  */
 @NonNullByDefault
-public class RemoteAddrUserRoleFilter implements Filter {
+public class RemoteAddrUserRoleFilter implements Filter, PipelineStage {
   /**
    * @see #ROLE_PREFIX_PROP
    */
@@ -33,27 +52,179 @@ public class RemoteAddrUserRoleFilter implements Filter {
    * the created roles.
    */
   public static final String ROLE_PREFIX_PROP = RemoteAddrUserRoleFilter.class.getSimpleName() + ".Prefix";
+  /**
+   * The prefix for the names of {@linkplain FilterConfig#getInitParameter(String) configuration parameters} whose
+   * suffix is an IPv4 or IPv6 CIDR block (ie, <code>10.0.0.0/8</code> or <code>fd00::/8</code>), and whose value is a
+   * comma separated list of roles clients with an address in that block will be populated into. Where blocks are
+   * nested, clients will be populated into the roles for every block containing their address.
+   */
+  public static final String RANGE_PROP_PREFIX = RemoteAddrUserRoleFilter.class.getSimpleName() + ".Range.";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose boolean value
+   * specifies if clients should be populated into a role named by their {@linkplain #ROLE_PREFIX_PROP prefixed}
+   * address. If not set, defaults to <code>true</code>.
+   */
+  public static final String ADDRESS_ROLE_ENABLE_PROP = RemoteAddrUserRoleFilter.class.getSimpleName() + ".AddressRole.Enable";
   /**
    * @see #ROLE_PREFIX_PROP
    */
   protected String rolePrefix = ROLE_PREFIX_DEFAULT;
+  /**
+   * @see #ADDRESS_ROLE_ENABLE_PROP
+   */
+  protected boolean addressRoleEnabled = true;
+  /**
+   * The {@linkplain #RANGE_PROP_PREFIX configured} address ranges, mapped to the (combined) roles for each, or
+   * <code>null</code> if there are none.
+   */
+  protected @Nullable CIDRTrie<RoleSet> ranges = null;
+  /**
+   * All the roles granted by any of the {@link #ranges}.
+   */
+  protected RoleSet rangeRoles = new RoleSet();
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of {@linkplain #ADDRESS_ROLE_ENABLE_PROP address roles}
+   * granted (which are too numerous to count individually).
+   */
+  protected LongAdder addressRoleCounter = new LongAdder();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
     final String rolePrefixProp = filterConfig.getInitParameter(ROLE_PREFIX_PROP);
     if (rolePrefixProp != null) rolePrefix = rolePrefixProp;
+    addressRoleCounter = metrics.counter("role:" + rolePrefix + '*');
+    final String addressRoleEnableProp = filterConfig.getInitParameter(ADDRESS_ROLE_ENABLE_PROP);
+    addressRoleEnabled = (addressRoleEnableProp == null) || (Boolean.parseBoolean(addressRoleEnableProp));
+    final CIDRTrie<RoleSet> ranges = new CIDRTrie<RoleSet>();
+    final RoleSet rangeRoles = new RoleSet();
+    Collections.list(filterConfig.getInitParameterNames()).stream().filter((name) -> name.startsWith(RANGE_PROP_PREFIX)).forEach((name) -> {
+      final RoleSet roles = RoleSet.of(Arrays.asList(Objects.requireNonNull(filterConfig.getInitParameter(name)).trim().split("[\\s]*,[\\s]*")));
+      ranges.put(name.substring(RANGE_PROP_PREFIX.length()), roles);
+      rangeRoles.addAll(roles);
+    });
+    ranges.inherit((enclosing, contained) -> {
+      final RoleSet combined = new RoleSet(enclosing);
+      combined.addAll(contained);
+      return combined;
+    });
+    this.ranges = (ranges.size() > 0) ? ranges : null;
+    this.rangeRoles = rangeRoles;
     return;
   }
 
+  /**
+   * Grant the roles {@linkplain #doFilter(ServletRequest, ServletResponse, FilterChain) this filter} determines for the
+   * given <code>request</code>, which won't be evaluated until they're first {@linkplain RemoteAddrRoleSource queried}.
+   * 
+   * @param request The request.
+   * @return The request to pass down the filter chain.
+   */
+  protected HttpServletRequest grantRoles(final HttpServletRequest request) {
+    if ((ranges == null) && (!addressRoleEnabled)) return request;
+    return UserRoleRequestWrapper.addRoleSource(request, new RemoteAddrRoleSource());
+  }
+
   @Override
   public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    filterChain.doFilter(new UserRoleRequestWrapper((HttpServletRequest)servletRequest, rolePrefix + servletRequest.getRemoteAddr()), servletResponse);
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = grantRoles((HttpServletRequest)servletRequest);
+    final long chainNanos = metrics.doChain(filterChain, httpServletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    exchange.setRequest(grantRoles(exchange.getRequest()));
+    return true;
+  }
+
   @Override
   public void destroy() {
+    ranges = null;
+    metrics.unregister();
     return;
   }
 
+  /**
+   * Populate the client into the roles for their address, looking up the {@linkplain #RANGE_PROP_PREFIX ranges} it
+   * falls within upon the first query for any range role, and comparing queries for {@linkplain
+   * #ADDRESS_ROLE_ENABLE_PROP address roles} against the address without building the prefixed role name.
+   */
+  protected class RemoteAddrRoleSource implements RoleSource {
+    /**
+     * The roles for the ranges containing the client's address, or <code>null</code> if they haven't been looked up
+     * yet.
+     */
+    protected @Nullable RoleSet addressRangeRoles = null;
+    /**
+     * Has the address role been {@linkplain FilterMetrics#counter(String) counted}?
+     */
+    protected boolean addressRoleCounted = false;
+
+    /**
+     * Construct a <code>RemoteAddrRoleSource</code>.
+     */
+    public RemoteAddrRoleSource() {
+      return;
+    }
+
+    /**
+     * Get the roles for the ranges containing the client's address, looking them up if necessary.
+     * 
+     * @param request The request.
+     * @return The roles.
+     */
+    protected RoleSet getAddressRangeRoles(final HttpServletRequest request) {
+      RoleSet addressRangeRoles = this.addressRangeRoles;
+      if (addressRangeRoles == null) {
+        final CIDRTrie<RoleSet> ranges = RemoteAddrUserRoleFilter.this.ranges;
+        final String remoteAddr = request.getRemoteAddr();
+        addressRangeRoles = ((ranges != null) && (remoteAddr != null)) ? ranges.get(remoteAddr) : null;
+        if (addressRangeRoles != null) {
+          metrics.countRoles(addressRangeRoles);
+        } else {
+          addressRangeRoles = RolePatternMatcher.NO_ROLES;
+        }
+        this.addressRangeRoles = addressRangeRoles;
+      }
+      return addressRangeRoles;
+    }
+
+    @Override
+    public boolean isUserInRole(final HttpServletRequest request, final String role, final int id) {
+      if ((id >= 0) && (rangeRoles.contains(id)) && (getAddressRangeRoles(request).contains(id))) return true;
+      if ((!addressRoleEnabled) || (!role.startsWith(rolePrefix))) return false;
+      final String remoteAddr = request.getRemoteAddr();
+      if ((remoteAddr == null) || (!RoleRegistry.isPrefixed(role, rolePrefix, remoteAddr))) return false;
+      if (!addressRoleCounted) {
+        addressRoleCounted = true;
+        addressRoleCounter.increment();
+      }
+      return true;
+    }
+
+    @Override
+    public void resolveRoles(final HttpServletRequest request, final RoleSet roles) {
+      if (!rangeRoles.isEmpty()) roles.addAll(getAddressRangeRoles(request));
+      if (!addressRoleEnabled) return;
+      final String remoteAddr = request.getRemoteAddr();
+      if (remoteAddr == null) return;
+      final int id = RoleRegistry.lookup(rolePrefix + remoteAddr);
+      if (id >= 0) roles.add(id);
+      return;
+    }
+
+    @Override
+    public boolean isEnumerable() {
+      return !addressRoleEnabled; // Address roles are generally uninterned.
+    }
+
+  } // RemoteAddrRoleSource
+
 }
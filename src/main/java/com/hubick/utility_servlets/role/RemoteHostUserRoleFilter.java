@@ -8,22 +8,37 @@
 package com.hubick.utility_servlets.role;
 
 import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
 
 /**
+ * <p>
  * Populate clients into a {@linkplain HttpServletRequest#isUserInRole(String) role} based on their
  * {@linkplain ServletRequest#getRemoteHost() remote host}.
+ * </p>
+ * 
+ * <p>
+ * By default, the host name is obtained from the container, which (if host name lookups are enabled) may perform a
+ * blocking reverse DNS lookup on the request thread. If {@linkplain #ASYNC_ENABLE_PROP asynchronous} resolution is
+ * enabled, the {@linkplain ServletRequest#getRemoteAddr() remote address} will instead be resolved in the background
+ * using a {@link HostResolverCache}, and until that completes the client will be populated into an
+ * {@linkplain #UNRESOLVED_ROLE_PROP unresolved} role. Either way, the host isn't determined until a role this filter
+ * could grant is first queried for a request.
+ * </p>
  * 
  * @see ServletRequest#getRemoteHost()
  * @see HttpServletRequest#isUserInRole(String)
  */
 @NonNullByDefault
-public class RemoteHostUserRoleFilter implements Filter {
+public class RemoteHostUserRoleFilter implements Filter, PipelineStage {
   /**
    * @see #ROLE_PREFIX_PROP
    */
@@ -33,27 +48,243 @@ public class RemoteHostUserRoleFilter implements Filter {
    * the created roles.
    */
   public static final String ROLE_PREFIX_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".Prefix";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose boolean value
+   * specifies if host names should be resolved asynchronously, instead of using {@link ServletRequest#getRemoteHost()}.
+   * If not set, defaults to <code>false</code>.
+   */
+  public static final String ASYNC_ENABLE_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".Async.Enable";
+  /**
+   * @see #UNRESOLVED_ROLE_PROP
+   */
+  public static final String UNRESOLVED_ROLE_DEFAULT = "remote-host-unresolved";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
+   * the role to populate clients into while their host name is being {@linkplain #ASYNC_ENABLE_PROP asynchronously}
+   * resolved.
+   */
+  public static final String UNRESOLVED_ROLE_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".UnresolvedRole";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
+   * the number of seconds to cache a successfully resolved host name. If not set, defaults to <code>3600</code>.
+   */
+  public static final String POSITIVE_TTL_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".PositiveTTL";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
+   * the number of seconds to cache an address with no host name. If not set, defaults to <code>300</code>.
+   */
+  public static final String NEGATIVE_TTL_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".NegativeTTL";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
+   * the maximum number of addresses to cache. If not set, defaults to <code>10000</code>.
+   */
+  public static final String CACHE_SIZE_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".CacheSize";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
+   * the number of background threads performing resolutions. If not set, defaults to <code>2</code>.
+   */
+  public static final String RESOLVER_THREADS_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".ResolverThreads";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} whose value specifies
+   * the name of a {@link HostResolver} implementation class (having a public no-argument constructor) to use. If not
+   * set, defaults to {@link HostResolver#INET_ADDRESS}.
+   */
+  public static final String RESOLVER_PROP = RemoteHostUserRoleFilter.class.getSimpleName() + ".Resolver";
+  /**
+   * The maximum number of resolutions which may be waiting for a background thread.
+   */
+  protected static final int RESOLVER_QUEUE_CAPACITY = 1024;
   /**
    * @see #ROLE_PREFIX_PROP
    */
   protected String rolePrefix = ROLE_PREFIX_DEFAULT;
+  /**
+   * @see #UNRESOLVED_ROLE_PROP
+   */
+  protected String unresolvedRole = UNRESOLVED_ROLE_DEFAULT;
+  /**
+   * The {@linkplain RoleRegistry#intern(String) interned} ID of the {@link #unresolvedRole}, or <code>-1</code> if
+   * {@linkplain #ASYNC_ENABLE_PROP asynchronous} resolution (and so the unresolved role) isn't enabled.
+   */
+  protected int unresolvedRoleID = -1;
+  /**
+   * The executor performing background resolutions, or <code>null</code> if {@linkplain #ASYNC_ENABLE_PROP
+   * asynchronous} resolution isn't enabled.
+   */
+  protected @Nullable ExecutorService resolverExecutor = null;
+  /**
+   * The cache of resolved host names, or <code>null</code> if {@linkplain #ASYNC_ENABLE_PROP asynchronous} resolution
+   * isn't enabled.
+   */
+  protected @Nullable HostResolverCache hostResolverCache = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of host roles granted (which are too numerous to count
+   * individually).
+   */
+  protected LongAdder hostRoleCounter = new LongAdder();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
     final String rolePrefixProp = filterConfig.getInitParameter(ROLE_PREFIX_PROP);
     if (rolePrefixProp != null) rolePrefix = rolePrefixProp;
+    hostRoleCounter = metrics.counter("role:" + rolePrefix + '*');
+    if (!Boolean.parseBoolean(filterConfig.getInitParameter(ASYNC_ENABLE_PROP))) return;
+
+    final String unresolvedRoleProp = filterConfig.getInitParameter(UNRESOLVED_ROLE_PROP);
+    if (unresolvedRoleProp != null) unresolvedRole = unresolvedRoleProp;
+    unresolvedRoleID = RoleRegistry.intern(unresolvedRole);
+    final long positiveTTL = getLongInitParameter(filterConfig, POSITIVE_TTL_PROP, 3600);
+    final long negativeTTL = getLongInitParameter(filterConfig, NEGATIVE_TTL_PROP, 300);
+    final int cacheSize = (int)getLongInitParameter(filterConfig, CACHE_SIZE_PROP, 10000);
+    final int resolverThreads = (int)getLongInitParameter(filterConfig, RESOLVER_THREADS_PROP, 2);
+
+    final HostResolver resolver;
+    final String resolverProp = filterConfig.getInitParameter(RESOLVER_PROP);
+    if (resolverProp != null) {
+      try {
+        resolver = Class.forName(resolverProp.trim(), true, Thread.currentThread().getContextClassLoader()).asSubclass(HostResolver.class).getConstructor().newInstance();
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        throw new IllegalArgumentException("Invalid " + RESOLVER_PROP + ": '" + resolverProp + '\'', e);
+      }
+    } else {
+      resolver = HostResolver.INET_ADDRESS;
+    }
+
+    final AtomicInteger threadCount = new AtomicInteger();
+    final String threadNamePrefix = RemoteHostUserRoleFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + "-resolver-";
+    final ExecutorService resolverExecutor = new ThreadPoolExecutor(resolverThreads, resolverThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(RESOLVER_QUEUE_CAPACITY), (runnable) -> {
+      final Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.resolverExecutor = resolverExecutor;
+    hostResolverCache = new HostResolverCache(resolver, resolverExecutor, positiveTTL, negativeTTL, TimeUnit.SECONDS, cacheSize);
     return;
   }
 
+  /**
+   * Get the value of a numeric {@linkplain FilterConfig#getInitParameter(String) configuration parameter}.
+   * 
+   * @param filterConfig The filter configuration.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to return if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws IllegalArgumentException If the parameter value is not a valid number.
+   */
+  protected static long getLongInitParameter(final FilterConfig filterConfig, final String name, final long defaultValue) throws IllegalArgumentException {
+    final String value = filterConfig.getInitParameter(name);
+    if (value == null) return defaultValue;
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid " + name + ": '" + value + '\'', nfe);
+    }
+  }
+
+  /**
+   * Grant the roles {@linkplain #doFilter(ServletRequest, ServletResponse, FilterChain) this filter} determines for the
+   * given <code>request</code>, which won't be evaluated until they're first {@linkplain RemoteHostRoleSource queried}.
+   * 
+   * @param request The request.
+   * @return The request to pass down the filter chain.
+   */
+  protected HttpServletRequest grantRoles(final HttpServletRequest request) {
+    return UserRoleRequestWrapper.addRoleSource(request, new RemoteHostRoleSource());
+  }
+
   @Override
   public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    filterChain.doFilter(new UserRoleRequestWrapper((HttpServletRequest)servletRequest, rolePrefix + servletRequest.getRemoteHost()), servletResponse);
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = grantRoles((HttpServletRequest)servletRequest);
+    final long chainNanos = metrics.doChain(filterChain, httpServletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    exchange.setRequest(grantRoles(exchange.getRequest()));
+    return true;
+  }
+
   @Override
   public void destroy() {
+    final ExecutorService resolverExecutor = this.resolverExecutor;
+    if (resolverExecutor != null) resolverExecutor.shutdownNow();
+    this.resolverExecutor = null;
+    final HostResolverCache hostResolverCache = this.hostResolverCache;
+    if (hostResolverCache != null) hostResolverCache.clear();
+    this.hostResolverCache = null;
+    metrics.unregister();
     return;
   }
 
+  /**
+   * Populate the client into the role for their host, which is only determined upon the first query for a role this
+   * filter could grant, and compared without building the prefixed role name.
+   */
+  protected class RemoteHostRoleSource implements RoleSource {
+    /**
+     * Has the {@link #remoteHost} been determined yet?
+     */
+    protected boolean resolved = false;
+    /**
+     * The client's host, or <code>null</code> if it's {@linkplain #UNRESOLVED_ROLE_PROP unresolved}.
+     */
+    protected @Nullable String remoteHost = null;
+
+    /**
+     * Construct a <code>RemoteHostRoleSource</code>.
+     */
+    public RemoteHostRoleSource() {
+      return;
+    }
+
+    /**
+     * Get the client's host, determining it if necessary.
+     * 
+     * @param request The request.
+     * @return The host, or <code>null</code> if it's {@linkplain #UNRESOLVED_ROLE_PROP unresolved}.
+     */
+    protected @Nullable String getRemoteHost(final HttpServletRequest request) {
+      if (!resolved) {
+        final HostResolverCache hostResolverCache = RemoteHostUserRoleFilter.this.hostResolverCache;
+        remoteHost = (hostResolverCache != null) ? hostResolverCache.lookup(request.getRemoteAddr()) : request.getRemoteHost();
+        resolved = true;
+        if (remoteHost != null) {
+          hostRoleCounter.increment();
+        } else if (unresolvedRoleID >= 0) {
+          metrics.countRole(unresolvedRoleID);
+        }
+      }
+      return remoteHost;
+    }
+
+    @Override
+    public boolean isUserInRole(final HttpServletRequest request, final String role, final int id) {
+      if ((id >= 0) && (id == unresolvedRoleID)) return getRemoteHost(request) == null;
+      if (!role.startsWith(rolePrefix)) return false;
+      final String remoteHost = getRemoteHost(request);
+      return (remoteHost != null) && (RoleRegistry.isPrefixed(role, rolePrefix, remoteHost));
+    }
+
+    @Override
+    public void resolveRoles(final HttpServletRequest request, final RoleSet roles) {
+      final String remoteHost = getRemoteHost(request);
+      if (remoteHost == null) {
+        if (unresolvedRoleID >= 0) roles.add(unresolvedRoleID);
+        return;
+      }
+      final int id = RoleRegistry.lookup(rolePrefix + remoteHost);
+      if (id >= 0) roles.add(id);
+      return;
+    }
+
+  } // RemoteHostRoleSource
+
 }
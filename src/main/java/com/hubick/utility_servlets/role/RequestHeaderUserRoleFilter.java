@@ -9,10 +9,13 @@ package com.hubick.utility_servlets.role;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.regex.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
@@ -40,10 +43,16 @@ import javax.servlet.http.*;
  * or perform {@linkplain UserRoleRedirectionFilter redirects}.
  * </p>
  * 
+ * <p>
+ * All the patterns are compiled into a single {@link RolePatternMatcher}, and since header values tend to repeat
+ * heavily, the resulting roles for each value are {@linkplain #CACHE_SIZE_PROP cached}. The header isn't examined at
+ * all until a role this filter could grant is first queried for a request.
+ * </p>
+ * 
  * @see HttpServletRequest#isUserInRole(String)
  */
 @NonNullByDefault
-public class RequestHeaderUserRoleFilter implements Filter {
+public class RequestHeaderUserRoleFilter implements Filter, PipelineStage {
   /**
    * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
    * <code>RequestHeaderUserRoleFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
@@ -59,6 +68,17 @@ public class RequestHeaderUserRoleFilter implements Filter {
    * before comparison?
    */
   public static final String LOWER_CASE_VALUE_PROP = "LOWER_CASE_VALUE";
+  /**
+   * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>RequestHeaderUserRoleFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose <code>Integer</code> value specifies the maximum number of distinct header values to cache
+   * the resulting roles for. If not set, defaults to <code>1000</code>, and a value of <code>0</code> disables caching.
+   */
+  public static final String CACHE_SIZE_PROP = "CACHE_SIZE";
+  /**
+   * Header values longer than this won't be {@linkplain #CACHE_SIZE_PROP cached}.
+   */
+  protected static final int MAX_CACHED_VALUE_LENGTH = 1024;
   /**
    * @see #HEADER_NAME_PROP
    */
@@ -74,36 +94,178 @@ public class RequestHeaderUserRoleFilter implements Filter {
    * should be {@linkplain UserRoleRequestWrapper populated} into.
    */
   protected final Map<Pattern,String> regexpToRoleMappings = new HashMap<Pattern,String>();
+  /**
+   * The {@link #regexpToRoleMappings}, as compiled for matching.
+   */
+  protected RolePatternMatcher matcher = new RolePatternMatcher(Collections.emptyMap());
+  /**
+   * All the roles named by the {@link #regexpToRoleMappings}.
+   */
+  protected RoleSet mappedRoles = new RoleSet();
+  /**
+   * The roles for recently seen header values (before any {@linkplain #LOWER_CASE_VALUE_PROP lower-casing}), or
+   * <code>null</code> if caching is disabled.
+   */
+  protected @Nullable BoundedCache<String,RoleSet> roleCache = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of header values whose roles were found in the
+   * {@linkplain #CACHE_SIZE_PROP cache}.
+   */
+  protected LongAdder cacheHitCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of header values whose roles had to be matched, since they
+   * weren't found in the {@linkplain #CACHE_SIZE_PROP cache}.
+   */
+  protected LongAdder cacheMissCounter = new LongAdder();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
+    cacheHitCounter = metrics.counter("cache-hits");
+    cacheMissCounter = metrics.counter("cache-misses");
     final String prefix = RequestHeaderUserRoleFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
     headerName = filterConfig.getInitParameter(prefix + HEADER_NAME_PROP);
     final String lowerCaseValueProp = filterConfig.getInitParameter(prefix + LOWER_CASE_VALUE_PROP);
     lowerCaseValue = (lowerCaseValueProp == null) || (Boolean.valueOf(lowerCaseValueProp).booleanValue());
-    Collections.list(filterConfig.getInitParameterNames()).stream().filter((name) -> name.startsWith(prefix)).filter((name) -> !name.equals(prefix + HEADER_NAME_PROP)).filter((name) -> !name.equals(prefix + LOWER_CASE_VALUE_PROP)).forEach((name) -> regexpToRoleMappings.put(Pattern.compile(name.substring(prefix.length())), Objects.requireNonNull(filterConfig.getInitParameter(name)).intern()));
+    Collections.list(filterConfig.getInitParameterNames()).stream().filter((name) -> name.startsWith(prefix)).filter((name) -> !name.equals(prefix + HEADER_NAME_PROP)).filter((name) -> !name.equals(prefix + LOWER_CASE_VALUE_PROP)).filter((name) -> !name.equals(prefix + CACHE_SIZE_PROP)).forEach((name) -> regexpToRoleMappings.put(Pattern.compile(name.substring(prefix.length())), Objects.requireNonNull(filterConfig.getInitParameter(name)).intern()));
+    matcher = new RolePatternMatcher(regexpToRoleMappings);
+    mappedRoles = RoleSet.of(regexpToRoleMappings.values());
+    final String cacheSizeProp = filterConfig.getInitParameter(prefix + CACHE_SIZE_PROP);
+    final int cacheSize = (cacheSizeProp != null) ? Integer.parseInt(cacheSizeProp.trim()) : 1000;
+    roleCache = (cacheSize > 0) ? new BoundedCache<String,RoleSet>(cacheSize) : null;
     return;
   }
 
-  @Override
-  public void doFilter(ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    String headerValue = ((HttpServletRequest)servletRequest).getHeader(headerName);
-    if (headerValue == null) headerValue = "";
-    if (lowerCaseValue) headerValue = headerValue.toLowerCase();
-
-    for (Map.Entry<Pattern,String> regexp : regexpToRoleMappings.entrySet()) {
-      if (regexp.getKey().matcher(headerValue).matches()) {
-        servletRequest = new UserRoleRequestWrapper((HttpServletRequest)servletRequest, regexp.getValue());
-      }
+  /**
+   * Get the roles for the given header value.
+   * 
+   * @param headerValue The (raw) value of the {@linkplain #HEADER_NAME_PROP specified} header.
+   * @return The roles for every matching pattern.
+   */
+  protected RoleSet getRoles(final String headerValue) {
+    final BoundedCache<String,RoleSet> roleCache = this.roleCache;
+    if ((roleCache == null) || (headerValue.length() > MAX_CACHED_VALUE_LENGTH)) return matcher.match(lowerCaseValue ? headerValue.toLowerCase() : headerValue);
+    final RoleSet cached = roleCache.get(headerValue);
+    if (cached != null) {
+      cacheHitCounter.increment();
+      return cached;
     }
+    cacheMissCounter.increment();
+    final RoleSet roles = matcher.match(lowerCaseValue ? headerValue.toLowerCase() : headerValue);
+    final RoleSet raced = roleCache.putIfAbsent(headerValue, roles);
+    return (raced != null) ? raced : roles;
+  }
+
+  /**
+   * Get the number of requests whose roles were found in the {@linkplain #CACHE_SIZE_PROP cache}.
+   * 
+   * @return The cache hit count.
+   */
+  public long getCacheHitCount() {
+    final BoundedCache<String,RoleSet> roleCache = this.roleCache;
+    return (roleCache != null) ? roleCache.getHitCount() : 0;
+  }
+
+  /**
+   * Get the number of requests whose roles weren't found in the {@linkplain #CACHE_SIZE_PROP cache}.
+   * 
+   * @return The cache miss count.
+   */
+  public long getCacheMissCount() {
+    final BoundedCache<String,RoleSet> roleCache = this.roleCache;
+    return (roleCache != null) ? roleCache.getMissCount() : 0;
+  }
 
-    filterChain.doFilter(servletRequest, servletResponse);
+  /**
+   * Grant the roles {@linkplain #doFilter(ServletRequest, ServletResponse, FilterChain) this filter} determines for the
+   * given <code>request</code>, which won't be evaluated until they're first {@linkplain HeaderRoleSource queried}.
+   * 
+   * @param request The request.
+   * @return The request to pass down the filter chain.
+   */
+  protected HttpServletRequest grantRoles(final HttpServletRequest request) {
+    if (mappedRoles.isEmpty()) return request;
+    return UserRoleRequestWrapper.addRoleSource(request, new HeaderRoleSource());
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = grantRoles((HttpServletRequest)servletRequest);
+    final long chainNanos = metrics.doChain(filterChain, httpServletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    exchange.setRequest(grantRoles(exchange.getRequest()));
+    return true;
+  }
+
   @Override
   public void destroy() {
+    final BoundedCache<String,RoleSet> roleCache = this.roleCache;
+    if (roleCache != null) roleCache.clear();
+    metrics.unregister();
     return;
   }
 
+  /**
+   * Populate the client into the roles matching their header value, which is only examined upon the first query for any
+   * of the {@link #mappedRoles}.
+   */
+  protected class HeaderRoleSource implements RoleSource {
+    /**
+     * The roles matching the client's header value, or <code>null</code> if it hasn't been examined yet.
+     */
+    protected @Nullable RoleSet matchedRoles = null;
+
+    /**
+     * Construct a <code>HeaderRoleSource</code>.
+     */
+    public HeaderRoleSource() {
+      return;
+    }
+
+    /**
+     * Get the roles matching the client's header value, examining it if necessary.
+     * 
+     * @param request The request.
+     * @return The matched roles.
+     */
+    protected RoleSet getMatchedRoles(final HttpServletRequest request) {
+      RoleSet matchedRoles = this.matchedRoles;
+      if (matchedRoles == null) {
+        final String headerValue = request.getHeader(headerName);
+        matchedRoles = getRoles((headerValue != null) ? headerValue : "");
+        if (matchedRoles != RolePatternMatcher.NO_ROLES) metrics.countRoles(matchedRoles);
+        this.matchedRoles = matchedRoles;
+      }
+      return matchedRoles;
+    }
+
+    @Override
+    public boolean isUserInRole(final HttpServletRequest request, final String role, final int id) {
+      if ((id < 0) || (!mappedRoles.contains(id))) return false;
+      return getMatchedRoles(request).contains(id);
+    }
+
+    @Override
+    public void resolveRoles(final HttpServletRequest request, final RoleSet roles) {
+      roles.addAll(getMatchedRoles(request));
+      return;
+    }
+
+    @Override
+    public boolean isEnumerable() {
+      return true;
+    }
+
+  } // HeaderRoleSource
+
 }
@@ -0,0 +1,564 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.*;
+import java.util.regex.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A compiled set of {@link Pattern}'s, each mapped to a role, which determines the combined roles for every pattern a
+ * value {@linkplain Matcher#matches() matches} in a single pass.
+ * </p>
+ * 
+ * <p>
+ * Each pattern is analyzed when compiled. Patterns which are a plain literal are matched using a hash lookup. Patterns
+ * of the form <code>literal.*</code>, <code>.*literal</code>, or <code>.*literal.*</code> are decided entirely by an
+ * Aho-Corasick automaton scan of the value. Any other pattern containing a literal substring which every match must
+ * include is added to that same scan as a prefilter, and its full regular expression is only evaluated if that
+ * literal is found. Only patterns with no such literal (ie, those using top level alternation) are always evaluated.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable and thread safe.
+ * </p>
+ */
+@NonNullByDefault
+public class RolePatternMatcher {
+  /**
+   * The (immutable) result returned when a value matches no patterns.
+   */
+  public static final RoleSet NO_ROLES = new EmptyRoleSet();
+  /**
+   * The minimum length of a literal worth using as a prefilter.
+   */
+  protected static final int MIN_PREFILTER_LITERAL_LENGTH = 2;
+  /**
+   * The characters which have special meaning outside a character class.
+   */
+  protected static final String METACHARACTERS = "\\[](){}.*+?^$|";
+  /**
+   * The roles for patterns which are a plain literal, keyed by that literal.
+   */
+  protected final Map<String,RoleSet> exactLiterals = new HashMap<String,RoleSet>();
+  /**
+   * The patterns whose literal is scanned for by the {@link #automaton}, indexed by their ID within it.
+   */
+  protected final CompiledPattern[] scannedPatterns;
+  /**
+   * The patterns which must always be evaluated.
+   */
+  protected final CompiledPattern[] unfilteredPatterns;
+  /**
+   * An automaton finding every {@linkplain #scannedPatterns scanned literal} within a value.
+   */
+  protected final AhoCorasick automaton;
+
+  /**
+   * Construct a <code>RolePatternMatcher</code>.
+   * 
+   * @param patternToRoleMappings The patterns, each mapped to the name of the role a matching value belongs to.
+   */
+  public RolePatternMatcher(final Map<Pattern,String> patternToRoleMappings) {
+    final List<CompiledPattern> scanned = new ArrayList<CompiledPattern>();
+    final List<CompiledPattern> unfiltered = new ArrayList<CompiledPattern>();
+    for (Map.Entry<Pattern,String> mapping : patternToRoleMappings.entrySet()) {
+      final Pattern pattern = mapping.getKey();
+      final int roleID = RoleRegistry.intern(mapping.getValue());
+      final String source = pattern.pattern();
+      final boolean plain = (pattern.flags() == 0);
+
+      final String exact = plain ? unescapeLiteral(source) : null;
+      if (exact != null) {
+        exactLiterals.computeIfAbsent(exact, (k) -> new RoleSet()).add(roleID);
+        continue;
+      }
+
+      final boolean leadingWildcard = source.startsWith(".*");
+      final boolean trailingWildcard = (source.endsWith(".*")) && (!source.endsWith("\\.*")) && (source.length() >= (leadingWildcard ? 4 : 2));
+      final String affixed = ((plain) && ((leadingWildcard) || (trailingWildcard))) ? unescapeLiteral(source.substring(leadingWildcard ? 2 : 0, source.length() - (trailingWildcard ? 2 : 0))) : null;
+      if ((affixed != null) && (!affixed.isEmpty())) {
+        final MatchKind kind = (leadingWildcard) ? ((trailingWildcard) ? MatchKind.CONTAINS : MatchKind.SUFFIX) : MatchKind.PREFIX;
+        scanned.add(new CompiledPattern(pattern, roleID, kind, affixed));
+        continue;
+      }
+
+      final String required = plain ? requiredLiteral(source) : null;
+      if ((required != null) && (required.length() >= MIN_PREFILTER_LITERAL_LENGTH)) {
+        scanned.add(new CompiledPattern(pattern, roleID, MatchKind.REQUIRED, required));
+      } else {
+        unfiltered.add(new CompiledPattern(pattern, roleID, MatchKind.REGEX, ""));
+      }
+    }
+    scannedPatterns = scanned.toArray(new CompiledPattern[scanned.size()]);
+    unfilteredPatterns = unfiltered.toArray(new CompiledPattern[unfiltered.size()]);
+    final String[] literals = new String[scannedPatterns.length];
+    for (int i = 0; i < literals.length; i++) {
+      literals[i] = scannedPatterns[i].literal;
+    }
+    automaton = new AhoCorasick(literals);
+    return;
+  }
+
+  /**
+   * Get the combined roles for every pattern the <code>value</code> {@linkplain Matcher#matches() matches}.
+   * 
+   * @param value The value to match.
+   * @return The roles, or {@link #NO_ROLES} if there were no matches.
+   */
+  public RoleSet match(final String value) {
+    @Nullable RoleSet roles = null;
+    final RoleSet exactRoles = exactLiterals.get(value);
+    if (exactRoles != null) roles = new RoleSet(exactRoles);
+
+    if (scannedPatterns.length > 0) {
+      final boolean lineTerminated = containsLineTerminator(value);
+      if (scannedPatterns.length <= Long.SIZE) { // The common case, tracked in a single word, without allocating.
+        for (long found = automaton.scanMask(value); found != 0; found &= found - 1) {
+          final CompiledPattern compiledPattern = scannedPatterns[Long.numberOfTrailingZeros(found)];
+          if (!compiledPattern.matches(value, lineTerminated)) continue;
+          if (roles == null) roles = new RoleSet();
+          roles.add(compiledPattern.roleID);
+        }
+      } else {
+        final boolean[] found = automaton.scan(value);
+        for (int i = 0; i < found.length; i++) {
+          if ((!found[i]) || (!scannedPatterns[i].matches(value, lineTerminated))) continue;
+          if (roles == null) roles = new RoleSet();
+          roles.add(scannedPatterns[i].roleID);
+        }
+      }
+    }
+
+    for (CompiledPattern compiledPattern : unfilteredPatterns) {
+      if (compiledPattern.pattern.matcher(value).matches()) {
+        if (roles == null) roles = new RoleSet();
+        roles.add(compiledPattern.roleID);
+      }
+    }
+
+    return (roles != null) ? roles : NO_ROLES;
+  }
+
+  /**
+   * Does the <code>value</code> contain a character which the <code>.</code> metacharacter won't match?
+   * 
+   * @param value The value to examine.
+   * @return <code>true</code> if the value contains a line terminator.
+   */
+  protected static boolean containsLineTerminator(final String value) {
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if ((c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028') || (c == '\u2029')) return true;
+    }
+    return false;
+  }
+
+  /**
+   * If the given regular expression <code>source</code> consists purely of literal characters (possibly escaped), get
+   * the literal string it matches.
+   * 
+   * @param source The regular expression.
+   * @return The literal string, or <code>null</code> if the <code>source</code> contains any metacharacters.
+   */
+  protected static @Nullable String unescapeLiteral(final String source) {
+    final StringBuilder literal = new StringBuilder(source.length());
+    for (int i = 0; i < source.length(); i++) {
+      char c = source.charAt(i);
+      if (c == '\\') {
+        if (++i >= source.length()) return null;
+        c = source.charAt(i);
+        if (Character.isLetterOrDigit(c)) return null;
+      } else if (METACHARACTERS.indexOf(c) >= 0) {
+        return null;
+      }
+      literal.append(c);
+    }
+    return literal.toString();
+  }
+
+  /**
+   * Find the longest literal string which must appear in any value the given regular expression <code>source</code>
+   * matches. This analysis is conservative, only considering literals outside of any group, and giving up entirely on
+   * top level alternation, inline flags, or unusual escapes.
+   * 
+   * @param source The regular expression.
+   * @return The longest required literal, or <code>null</code> if none could be determined.
+   */
+  protected static @Nullable String requiredLiteral(final String source) {
+    String longest = "";
+    final StringBuilder run = new StringBuilder();
+    boolean previousLiteral = false;
+    int depth = 0;
+    int i = 0;
+    while (i < source.length()) {
+      final char c = source.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= source.length()) return null;
+        final char escaped = source.charAt(i + 1);
+        i += 2;
+        if (Character.isLetterOrDigit(escaped)) {
+          if ("dDsSwWbBAGZzhHvVtnrfaeR".indexOf(escaped) < 0) return null; // Multi-character escapes, back references, quoting, etc.
+          longest = endRun(longest, run);
+          previousLiteral = false;
+        } else if (depth == 0) {
+          run.append(escaped);
+          previousLiteral = true;
+        } else {
+          previousLiteral = false;
+        }
+        continue;
+      }
+      if ((c == '?') || (c == '*') || (c == '{')) { // The preceding atom is optional (or may be).
+        boolean optional = (c != '{');
+        if (c == '{') {
+          final int close = source.indexOf('}', i);
+          if (close < 0) return null;
+          optional = source.substring(i + 1, close).trim().startsWith("0");
+          i = close;
+        }
+        if ((optional) && (previousLiteral) && (run.length() > 0)) run.setLength(run.length() - 1);
+        longest = endRun(longest, run);
+        previousLiteral = false;
+        i++;
+        continue;
+      }
+      if (c == '[') {
+        longest = endRun(longest, run);
+        previousLiteral = false;
+        i = skipCharacterClass(source, i);
+        if (i < 0) return null;
+        continue;
+      }
+      if (c == '(') {
+        if ((i + 1 < source.length()) && (source.charAt(i + 1) == '?')) {
+          int j = i + 2;
+          while ((j < source.length()) && ((Character.isLetter(source.charAt(j))) || (source.charAt(j) == '-'))) j++;
+          if ((j < source.length()) && (source.charAt(j) == ')')) return null; // Inline flags affecting what follows.
+        }
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if ((c == '|') && (depth == 0)) {
+        return null;
+      }
+      if ((METACHARACTERS.indexOf(c) >= 0) || (depth > 0)) {
+        longest = endRun(longest, run); // Includes '+', where the preceding atom is required, but may repeat.
+        previousLiteral = false;
+      } else {
+        run.append(c);
+        previousLiteral = true;
+      }
+      i++;
+    }
+    longest = endRun(longest, run);
+    return (longest.isEmpty()) ? null : longest;
+  }
+
+  /**
+   * End the current run of literal characters.
+   * 
+   * @param longest The longest run found so far.
+   * @param run The current run, which will be cleared.
+   * @return The longer of the two runs.
+   */
+  protected static String endRun(final String longest, final StringBuilder run) {
+    final String result = (run.length() > longest.length()) ? run.toString() : longest;
+    run.setLength(0);
+    return result;
+  }
+
+  /**
+   * Find the end of a character class.
+   * 
+   * @param source The regular expression.
+   * @param start The index of the opening <code>[</code>.
+   * @return The index following the closing <code>]</code>, or <code>-1</code> if it couldn't be found.
+   */
+  protected static int skipCharacterClass(final String source, final int start) {
+    int i = start + 1;
+    if ((i < source.length()) && (source.charAt(i) == '^')) i++;
+    if ((i < source.length()) && (source.charAt(i) == ']')) i++;
+    int depth = 1;
+    while (i < source.length()) {
+      final char c = source.charAt(i);
+      if (c == '\\') {
+        i += 2;
+        continue;
+      }
+      if (c == '[') {
+        depth++;
+      } else if ((c == ']') && (--depth == 0)) {
+        return i + 1;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  /**
+   * How a {@link CompiledPattern} is evaluated.
+   */
+  protected static enum MatchKind {
+    /**
+     * The pattern is <code>literal.*</code>.
+     */
+    PREFIX,
+    /**
+     * The pattern is <code>.*literal</code>.
+     */
+    SUFFIX,
+    /**
+     * The pattern is <code>.*literal.*</code>.
+     */
+    CONTAINS,
+    /**
+     * The pattern is only evaluated if its required literal is present.
+     */
+    REQUIRED,
+    /**
+     * The pattern is always evaluated.
+     */
+    REGEX
+  } // MatchKind
+
+  /**
+   * A pattern, as analyzed for evaluation.
+   */
+  protected static final class CompiledPattern {
+    /**
+     * The pattern.
+     */
+    final Pattern pattern;
+    /**
+     * The {@linkplain RoleRegistry#intern(String) ID} of the role for matching values.
+     */
+    final int roleID;
+    /**
+     * How this pattern is evaluated.
+     */
+    final MatchKind kind;
+    /**
+     * The literal scanned for.
+     */
+    final String literal;
+
+    /**
+     * Construct a <code>CompiledPattern</code>.
+     * 
+     * @param pattern The pattern.
+     * @param roleID The ID of the role for matching values.
+     * @param kind How this pattern is evaluated.
+     * @param literal The literal scanned for.
+     */
+    CompiledPattern(final Pattern pattern, final int roleID, final MatchKind kind, final String literal) {
+      this.pattern = pattern;
+      this.roleID = roleID;
+      this.kind = kind;
+      this.literal = literal;
+      return;
+    }
+
+    /**
+     * Does the <code>value</code>, in which the {@link #literal} has been found, match this pattern?
+     * 
+     * @param value The value to match.
+     * @param lineTerminated Does the value {@linkplain #containsLineTerminator(String) contain a line terminator}?
+     * @return <code>true</code> if the value matches.
+     */
+    boolean matches(final String value, final boolean lineTerminated) {
+      if ((kind == MatchKind.REQUIRED) || (lineTerminated)) return pattern.matcher(value).matches();
+      if (kind == MatchKind.PREFIX) return value.startsWith(literal);
+      if (kind == MatchKind.SUFFIX) return value.endsWith(literal);
+      return true;
+    }
+
+  } // CompiledPattern
+
+  /**
+   * An Aho-Corasick automaton, finding every occurrence of a set of literal strings in a single pass over a value.
+   */
+  protected static final class AhoCorasick {
+    /**
+     * The number of literals being searched for.
+     */
+    final int literalCount;
+    /**
+     * The (sorted) characters of each state's outgoing transitions.
+     */
+    final char[][] transitionCharacters;
+    /**
+     * The target states of each state's outgoing transitions, parallel to {@link #transitionCharacters}.
+     */
+    final int[][] transitionTargets;
+    /**
+     * The state to fall back to from each state when no transition matches.
+     */
+    final int[] failures;
+    /**
+     * The IDs of the literals ending at each state (including via failure links).
+     */
+    final int[][] outputs;
+
+    /**
+     * Construct an <code>AhoCorasick</code> automaton.
+     * 
+     * @param literals The literals to search for, each being identified by its index.
+     */
+    AhoCorasick(final String[] literals) {
+      literalCount = literals.length;
+      final List<TreeMap<Character,Integer>> trie = new ArrayList<TreeMap<Character,Integer>>();
+      final List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+      trie.add(new TreeMap<Character,Integer>());
+      trieOutputs.add(new ArrayList<Integer>());
+      for (int id = 0; id < literals.length; id++) {
+        int state = 0;
+        for (int i = 0; i < literals[id].length(); i++) {
+          final Character c = Character.valueOf(literals[id].charAt(i));
+          Integer next = trie.get(state).get(c);
+          if (next == null) {
+            next = Integer.valueOf(trie.size());
+            trie.get(state).put(c, next);
+            trie.add(new TreeMap<Character,Integer>());
+            trieOutputs.add(new ArrayList<Integer>());
+          }
+          state = next.intValue();
+        }
+        trieOutputs.get(state).add(Integer.valueOf(id));
+      }
+
+      final int stateCount = trie.size();
+      transitionCharacters = new char[stateCount][];
+      transitionTargets = new int[stateCount][];
+      for (int state = 0; state < stateCount; state++) {
+        final TreeMap<Character,Integer> transitions = trie.get(state);
+        transitionCharacters[state] = new char[transitions.size()];
+        transitionTargets[state] = new int[transitions.size()];
+        int t = 0;
+        for (Map.Entry<Character,Integer> transition : transitions.entrySet()) {
+          transitionCharacters[state][t] = transition.getKey().charValue();
+          transitionTargets[state][t++] = transition.getValue().intValue();
+        }
+      }
+
+      failures = new int[stateCount];
+      final ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+      for (int target : transitionTargets[0]) {
+        queue.add(Integer.valueOf(target));
+      }
+      while (!queue.isEmpty()) {
+        final int state = queue.remove().intValue();
+        for (int t = 0; t < transitionCharacters[state].length; t++) {
+          final char c = transitionCharacters[state][t];
+          final int target = transitionTargets[state][t];
+          int fallback = failures[state];
+          while ((fallback != 0) && (transition(fallback, c) < 0)) fallback = failures[fallback];
+          final int fallbackTarget = transition(fallback, c);
+          failures[target] = ((fallbackTarget >= 0) && (fallbackTarget != target)) ? fallbackTarget : 0;
+          trieOutputs.get(target).addAll(trieOutputs.get(failures[target]));
+          queue.add(Integer.valueOf(target));
+        }
+      }
+
+      outputs = new int[stateCount][];
+      for (int state = 0; state < stateCount; state++) {
+        outputs[state] = trieOutputs.get(state).stream().mapToInt(Integer::intValue).distinct().toArray();
+      }
+      return;
+    }
+
+    /**
+     * @param state The current state.
+     * @param c The next character.
+     * @return The state reached by following the transition for <code>c</code>, or <code>-1</code> if there is none.
+     */
+    int transition(final int state, final char c) {
+      final int t = Arrays.binarySearch(transitionCharacters[state], c);
+      return (t >= 0) ? transitionTargets[state][t] : -1;
+    }
+
+    /**
+     * Find which literals occur within the <code>value</code>.
+     * 
+     * @param value The value to scan.
+     * @return An array, indexed by literal ID, indicating which were found.
+     */
+    boolean[] scan(final String value) {
+      final boolean[] found = new boolean[literalCount];
+      int state = 0;
+      for (int i = 0; i < value.length(); i++) {
+        state = step(state, value.charAt(i));
+        for (int id : outputs[state]) {
+          found[id] = true;
+        }
+      }
+      return found;
+    }
+
+    /**
+     * Find which literals occur within the <code>value</code>, when there are no more than {@link Long#SIZE} of them.
+     * 
+     * @param value The value to scan.
+     * @return A bitmask, with the bit for each literal ID found set.
+     */
+    long scanMask(final String value) {
+      long found = 0;
+      int state = 0;
+      for (int i = 0; i < value.length(); i++) {
+        state = step(state, value.charAt(i));
+        for (int id : outputs[state]) {
+          found |= 1L << id;
+        }
+      }
+      return found;
+    }
+
+    /**
+     * @param state The current state.
+     * @param c The next character of the value.
+     * @return The state reached by consuming <code>c</code>, following failure links as necessary.
+     */
+    int step(int state, final char c) {
+      int next = transition(state, c);
+      while ((next < 0) && (state != 0)) {
+        state = failures[state];
+        next = transition(state, c);
+      }
+      return (next >= 0) ? next : 0;
+    }
+
+  } // AhoCorasick
+
+  /**
+   * An empty {@link RoleSet} which can't be modified, so it may be safely shared.
+   */
+  protected static final class EmptyRoleSet extends RoleSet {
+
+    /**
+     * Construct an <code>EmptyRoleSet</code>.
+     */
+    EmptyRoleSet() {
+      return;
+    }
+
+    @Override
+    public void add(final int id) throws UnsupportedOperationException {
+      throw new UnsupportedOperationException(EmptyRoleSet.class.getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public void addAll(final RoleSet other) throws UnsupportedOperationException {
+      throw new UnsupportedOperationException(EmptyRoleSet.class.getSimpleName() + " is immutable");
+    }
+
+  } // EmptyRoleSet
+
+}
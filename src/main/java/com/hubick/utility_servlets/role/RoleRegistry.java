@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Interns {@linkplain HttpServletRequest#isUserInRole(String) role} names to small integer IDs, which can then be
+ * tracked using a {@link RoleSet}.
+ * </p>
+ * 
+ * <p>
+ * Roles should only be {@linkplain #intern(String) interned} for a bounded set of names, typically those read from
+ * filter configuration during <code>init</code>, as interned names are never released. Roles derived from client
+ * supplied request data (such as an address or host name) should <em>not</em> be interned.
+ * </p>
+ * 
+ * @see RoleSet
+ */
+@NonNullByDefault
+public final class RoleRegistry {
+  /**
+   * The ID of each interned role name.
+   */
+  private static final ConcurrentMap<String,Integer> ROLE_IDS = new ConcurrentHashMap<String,Integer>();
+  /**
+   * The interned role names, indexed by ID.
+   */
+  private static volatile String[] roleNames = new String[0];
+
+  private RoleRegistry() {}
+
+  /**
+   * Get the ID for the given <code>role</code>, assigning it a new one if it hasn't been seen before.
+   * 
+   * @param role The name of the role to intern.
+   * @return The ID of the <code>role</code>.
+   */
+  public static int intern(final String role) {
+    final Integer existingID = ROLE_IDS.get(role);
+    if (existingID != null) return existingID.intValue();
+    synchronized (ROLE_IDS) {
+      final Integer racedID = ROLE_IDS.get(role);
+      if (racedID != null) return racedID.intValue();
+      final String[] oldNames = roleNames;
+      final String[] newNames = Arrays.copyOf(oldNames, oldNames.length + 1);
+      newNames[oldNames.length] = role;
+      roleNames = newNames;
+      ROLE_IDS.put(role, Integer.valueOf(oldNames.length));
+      return oldNames.length;
+    }
+  }
+
+  /**
+   * Get the ID for the given <code>role</code>, without interning it.
+   * 
+   * @param role The name of the role to look up.
+   * @return The ID of the <code>role</code>, or <code>-1</code> if it has never been {@linkplain #intern(String)
+   * interned}.
+   */
+  public static int lookup(final String role) {
+    final Integer id = ROLE_IDS.get(role);
+    return (id != null) ? id.intValue() : -1;
+  }
+
+  /**
+   * Get the name of the role with the given <code>id</code>.
+   * 
+   * @param id The ID of the role.
+   * @return The name of the role.
+   * @throws IndexOutOfBoundsException If no role has been {@linkplain #intern(String) interned} with that
+   * <code>id</code>.
+   */
+  public static String name(final int id) throws IndexOutOfBoundsException {
+    final String[] names = roleNames;
+    if ((id < 0) || (id >= names.length)) throw new IndexOutOfBoundsException("Unknown role ID: " + id);
+    return names[id];
+  }
+
+  /**
+   * Is the given <code>role</code> name equal to <code>prefix + value</code>? This is tested without building the
+   * concatenated string.
+   * 
+   * @param role The name of the role being queried.
+   * @param prefix The role prefix.
+   * @param value The value following the prefix.
+   * @return <code>true</code> if the role is the prefixed value.
+   */
+  public static boolean isPrefixed(final String role, final String prefix, final String value) {
+    return (role.length() == prefix.length() + value.length()) && (role.startsWith(prefix)) && (role.regionMatches(prefix.length(), value, 0, value.length()));
+  }
+
+}
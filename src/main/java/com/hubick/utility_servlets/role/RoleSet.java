@@ -0,0 +1,193 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A set of {@linkplain RoleRegistry#intern(String) interned} roles, backed by a bitmap of their IDs.
+ * </p>
+ * 
+ * <p>
+ * Instances are <em>not</em> thread safe. A <code>RoleSet</code> compiled by a filter during <code>init</code> should
+ * be treated as immutable and only ever be {@linkplain #addAll(RoleSet) copied into} a per-request set.
+ * </p>
+ * 
+ * @see RoleRegistry
+ */
+@NonNullByDefault
+public class RoleSet {
+  /**
+   * The bitmap of role IDs contained in this set.
+   */
+  protected long[] words;
+
+  /**
+   * Construct an empty <code>RoleSet</code>.
+   */
+  public RoleSet() {
+    words = new long[1];
+    return;
+  }
+
+  /**
+   * Construct a <code>RoleSet</code> containing the same roles as <code>other</code>.
+   * 
+   * @param other The set to copy.
+   */
+  public RoleSet(final RoleSet other) {
+    words = other.words.clone();
+    return;
+  }
+
+  /**
+   * Construct a <code>RoleSet</code> containing the given roles, {@linkplain RoleRegistry#intern(String) interning}
+   * each of them.
+   * 
+   * @param roles The names of the roles to add.
+   * @return The new set.
+   */
+  public static RoleSet of(final Collection<String> roles) {
+    final RoleSet roleSet = new RoleSet();
+    for (String role : roles) {
+      roleSet.add(RoleRegistry.intern(role));
+    }
+    return roleSet;
+  }
+
+  /**
+   * Add the role with the given <code>id</code> to this set.
+   * 
+   * @param id The {@linkplain RoleRegistry#intern(String) ID} of the role to add.
+   * @throws IllegalArgumentException If the <code>id</code> is negative.
+   */
+  public void add(final int id) throws IllegalArgumentException {
+    if (id < 0) throw new IllegalArgumentException("Invalid role ID: " + id);
+    final int wordIndex = id >>> 6;
+    if (wordIndex >= words.length) words = Arrays.copyOf(words, Math.max(wordIndex + 1, words.length * 2));
+    words[wordIndex] |= 1L << id;
+    return;
+  }
+
+  /**
+   * Add all the roles from <code>other</code> to this set.
+   * 
+   * @param other The set of roles to add.
+   */
+  public void addAll(final RoleSet other) {
+    final long[] otherWords = other.words;
+    if (otherWords.length > words.length) words = Arrays.copyOf(words, otherWords.length);
+    for (int i = 0; i < otherWords.length; i++) {
+      words[i] |= otherWords[i];
+    }
+    return;
+  }
+
+  /**
+   * Does this set contain the role with the given <code>id</code>?
+   * 
+   * @param id The {@linkplain RoleRegistry#intern(String) ID} of the role to test for.
+   * @return <code>true</code> if the role is a member of this set.
+   */
+  public boolean contains(final int id) {
+    final int wordIndex = id >>> 6;
+    return (id >= 0) && (wordIndex < words.length) && ((words[wordIndex] & (1L << id)) != 0);
+  }
+
+  /**
+   * Does this set contain the given <code>role</code>?
+   * 
+   * @param role The name of the role to test for.
+   * @return <code>true</code> if the role is a member of this set.
+   */
+  public boolean contains(final String role) {
+    return contains(RoleRegistry.lookup(role));
+  }
+
+  /**
+   * Does this set share any roles with <code>other</code>?
+   * 
+   * @param other The set to compare against.
+   * @return <code>true</code> if the intersection of the two sets is not empty.
+   */
+  public boolean intersects(final RoleSet other) {
+    final long[] otherWords = other.words;
+    final int length = Math.min(words.length, otherWords.length);
+    for (int i = 0; i < length; i++) {
+      if ((words[i] & otherWords[i]) != 0) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Is this set empty?
+   * 
+   * @return <code>true</code> if this set contains no roles.
+   */
+  public boolean isEmpty() {
+    for (long word : words) {
+      if (word != 0) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Get the ID of the first role in this set having an ID greater than or equal to <code>fromID</code>, which can be
+   * used to iterate the members of this set.
+   * 
+   * @param fromID The ID to start searching from (inclusive).
+   * @return The next role ID, or <code>-1</code> if there are none.
+   */
+  public int nextRole(final int fromID) {
+    int wordIndex = fromID >>> 6;
+    if (wordIndex >= words.length) return -1;
+    long word = words[wordIndex] & (-1L << fromID);
+    while (true) {
+      if (word != 0) return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+      if (++wordIndex >= words.length) return -1;
+      word = words[wordIndex];
+    }
+  }
+
+  @Override
+  public boolean equals(final @Nullable Object other) {
+    if (this == other) return true;
+    if (!(other instanceof RoleSet)) return false;
+    final long[] otherWords = ((RoleSet)other).words;
+    final int length = Math.max(words.length, otherWords.length);
+    for (int i = 0; i < length; i++) {
+      final long word = (i < words.length) ? words[i] : 0;
+      final long otherWord = (i < otherWords.length) ? otherWords[i] : 0;
+      if (word != otherWord) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = 1234;
+    for (int i = words.length; --i >= 0;) {
+      hash ^= words[i] * (i + 1);
+    }
+    return (int)((hash >> 32) ^ hash);
+  }
+
+  @Override
+  public String toString() {
+    final StringJoiner joiner = new StringJoiner(", ", "[", "]");
+    for (int id = nextRole(0); id >= 0; id = nextRole(id + 1)) {
+      joiner.add(RoleRegistry.name(id));
+    }
+    return joiner.toString();
+  }
+
+}
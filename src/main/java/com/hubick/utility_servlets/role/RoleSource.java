@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * A source of roles derived from request data, which a {@link UserRoleRequestWrapper} consults (lazily) for any role
+ * it hasn't been explicitly granted.
+ * </p>
+ * 
+ * <p>
+ * A source is created per request, so it can compute whatever it needs on the first query for a role it's responsible
+ * for, and memoize the result for any subsequent queries.
+ * </p>
+ * 
+ * @see UserRoleRequestWrapper#addRoleSource(HttpServletRequest, RoleSource)
+ */
+@NonNullByDefault
+public interface RoleSource {
+  /**
+   * Is the user of the given <code>request</code> in the supplied <code>role</code>?
+   * 
+   * @param request The request being queried.
+   * @param role The name of the role.
+   * @param id The {@linkplain RoleRegistry#lookup(String) ID} of the role, or <code>-1</code> if it isn't interned.
+   * @return <code>true</code> if this source grants the role.
+   */
+  public boolean isUserInRole(HttpServletRequest request, String role, int id);
+
+  /**
+   * Add the {@linkplain RoleRegistry#intern(String) interned} roles this source grants the given <code>request</code>
+   * to the supplied set, for consumers needing them all (rather than querying individual roles). Sources whose roles
+   * can't be enumerated needn't add any.
+   * 
+   * @param request The request.
+   * @param roles The set to add the roles to.
+   */
+  public default void resolveRoles(final HttpServletRequest request, final RoleSet roles) {
+    return;
+  }
+
+  /**
+   * Add those of the roles in the given <code>mask</code> which this source grants the <code>request</code> to the
+   * supplied set, for consumers only interested in particular roles. Unlike
+   * {@link #resolveRoles(HttpServletRequest, RoleSet)}, only what's needed to answer for the masked roles is evaluated
+   * (ie, a host isn't looked up unless a host role is in the mask), and roles which can't be enumerated are included.
+   * The default implementation {@linkplain #isUserInRole(HttpServletRequest, String, int) queries} each masked role in
+   * turn.
+   * 
+   * @param request The request.
+   * @param roles The set to add the roles to.
+   * @param mask The roles of interest.
+   */
+  public default void resolveRoles(final HttpServletRequest request, final RoleSet roles, final RoleSet mask) {
+    for (int id = mask.nextRole(0); id >= 0; id = mask.nextRole(id + 1)) {
+      if ((!roles.contains(id)) && (isUserInRole(request, RoleRegistry.name(id), id))) roles.add(id);
+    }
+    return;
+  }
+
+  /**
+   * Does {@link #resolveRoles(HttpServletRequest, RoleSet) resolveRoles} enumerate <em>every</em> role this source
+   * could grant, such that a consumer can rely on the resolved roles alone (ie, to key a shared cache)?
+   * 
+   * @return <code>true</code> if all the roles this source grants are interned and enumerated.
+   */
+  public default boolean isEnumerable() {
+    return false;
+  }
+
+}
@@ -12,6 +12,8 @@ import java.util.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
@@ -23,7 +25,7 @@ import javax.servlet.http.*;
  * @see HttpServletRequest#isUserInRole(String)
  */
 @NonNullByDefault
-public class StaticUserRoleFilter implements Filter {
+public class StaticUserRoleFilter implements Filter, PipelineStage {
   /**
    * The name of the {@linkplain FilterConfig#getInitParameter(String) configuration parameter} (when prefixed with '
    * <code>StaticUserRoleFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + ' <code>.</code>')
@@ -34,29 +36,59 @@ public class StaticUserRoleFilter implements Filter {
    * @see #ROLES_PROP
    */
   protected @Nullable List<String> roles = null;
+  /**
+   * The {@linkplain RoleRegistry#intern(String) interned} {@link #roles}.
+   */
+  protected @Nullable RoleSet roleSet = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
 
   @Override
   public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
     final String prefix = StaticUserRoleFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
     final String rolesProp = filterConfig.getInitParameter(prefix + ROLES_PROP);
-    if (rolesProp != null) roles = Arrays.asList(rolesProp.trim().split("[\\s]*,[\\s]*"));
+    if (rolesProp != null) {
+      roles = Arrays.asList(rolesProp.trim().split("[\\s]*,[\\s]*"));
+      roleSet = RoleSet.of(roles);
+    }
     return;
   }
 
+  /**
+   * Grant the roles {@linkplain #doFilter(ServletRequest, ServletResponse, FilterChain) this filter} determines for the
+   * given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The request to pass down the filter chain.
+   */
+  protected HttpServletRequest grantRoles(final HttpServletRequest request) {
+    final RoleSet roleSet = this.roleSet;
+    if (roleSet == null) return request;
+    metrics.countRoles(roleSet);
+    return UserRoleRequestWrapper.addRoles(request, roleSet);
+  }
+
   @Override
-  public void doFilter(ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
-    if (roles != null) {
-      for (String role : roles) {
-        httpServletRequest = new UserRoleRequestWrapper(httpServletRequest, role);
-      }
-    }
-    filterChain.doFilter(httpServletRequest, servletResponse);
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final HttpServletRequest httpServletRequest = grantRoles((HttpServletRequest)servletRequest);
+    final long chainNanos = metrics.doChain(filterChain, httpServletRequest, servletResponse);
+    metrics.record(start, chainNanos);
     return;
   }
 
+  @Override
+  public boolean apply(final PipelineExchange exchange) {
+    exchange.setRequest(grantRoles(exchange.getRequest()));
+    return true;
+  }
+
   @Override
   public void destroy() {
+    metrics.unregister();
     return;
   }
 
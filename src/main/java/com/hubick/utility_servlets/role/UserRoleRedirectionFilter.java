@@ -8,10 +8,14 @@
 package com.hubick.utility_servlets.role;
 
 import java.io.*;
+import java.net.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.eclipse.jdt.annotation.*;
 
+import com.hubick.utility_servlets.util.*;
+
 import javax.servlet.*;
 import javax.servlet.http.*;
 
@@ -26,15 +30,29 @@ import javax.servlet.http.*;
  * The name of each {@linkplain ServletConfig#getInitParameterNames() configuration parameter} (having the prefix '
  * <code>UserRoleRedirectionFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + ' <code>.</code>
  * ') represents a {@linkplain HttpServletRequest#isUserInRole(String) role}, and the value represents a
- * {@linkplain HttpServletResponse#sendRedirect(String) redirect location} to send users in that role. Users will be
- * sent to the location for the first {@linkplain String#equals(Object) matching} role.
+ * {@linkplain HttpServletResponse#sendRedirect(String) redirect location} to send users in that role. The value may
+ * optionally be preceded by a path prefix (separated by whitespace), in which case the rule only applies to requests
+ * whose {@linkplain HttpServletRequest#getRequestURI() URI} (following the {@linkplain
+ * HttpServletRequest#getContextPath() context path}) starts with it. Users will be sent to the location for the first
+ * {@linkplain String#equals(Object) matching} rule, in the {@linkplain #ORDER_PROP specified} order. The parameter
+ * names reserved for the filter's own configuration ({@link #UNAUTHORIZED_LOCATION_PROP},
+ * {@link #DEFAULT_LOCATION_PROP}, {@link #ORDER_PROP}, and {@link #RESOLVED_ROLES_ONLY_PROP}) share this namespace, so
+ * a role with one of those names can't be given a rule.
+ * </p>
+ * 
+ * <p>
+ * The rules are compiled during <code>init</code> into a prioritized array, with their locations validated and
+ * normalized, and their path prefixes indexed by a trie. When the request carries a {@link UserRoleRequestWrapper},
+ * the highest priority rule for any of its {@linkplain UserRoleRequestWrapper#getRoles() interned roles} is found by
+ * intersecting bitsets, and {@link HttpServletRequest#isUserInRole(String) isUserInRole} is only called for the
+ * (higher priority) rules preceding it, if any.
  * </p>
  * 
  * @see HttpServletRequest#isUserInRole(String)
  * @see HttpServletResponse#sendRedirect(String)
  */
 @NonNullByDefault
-public class UserRoleRedirectionFilter implements Filter {
+public class UserRoleRedirectionFilter implements Filter, PipelineStage {
   /**
    * The name of the {@linkplain ServletConfig#getInitParameter(String) configuration parameter} (when prefixed with '
    * <code>UserRoleRedirectionFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
@@ -54,6 +72,22 @@ public class UserRoleRedirectionFilter implements Filter {
    * {@linkplain HttpServletResponse#sendError(int) sent}.
    */
   public static final String DEFAULT_LOCATION_PROP = "DefaultLocation";
+  /**
+   * The name of the {@linkplain ServletConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>UserRoleRedirectionFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose value specifies a comma separated list of roles, giving the priority of their rules. Any
+   * rules for roles not listed follow those which are, ordered by role name.
+   */
+  public static final String ORDER_PROP = "Order";
+  /**
+   * The name of the {@linkplain ServletConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>UserRoleRedirectionFilter.</code>' + &lt;{@link FilterConfig#getFilterName() FilterName}&gt; + '
+   * <code>.</code>') whose boolean value specifies if only the {@linkplain UserRoleRequestWrapper#getRoles(RoleSet)
+   * interned roles} of the request should be considered, so that rules are dispatched purely by bitset, without ever
+   * calling {@link HttpServletRequest#isUserInRole(String) isUserInRole}. Roles granted only by the container will then
+   * be ignored. If not set, defaults to <code>false</code>.
+   */
+  public static final String RESOLVED_ROLES_ONLY_PROP = "ResolvedRolesOnly";
   /**
    * @see #UNAUTHORIZED_LOCATION_PROP
    */
@@ -63,16 +97,123 @@ public class UserRoleRedirectionFilter implements Filter {
    */
   protected @Nullable String defaultLocation = null;
   /**
-   * The locations to redirect roles to.
+   * @see #RESOLVED_ROLES_ONLY_PROP
+   */
+  protected boolean resolvedRolesOnly = false;
+  /**
+   * The (raw) locations to redirect roles to, in priority order.
+   */
+  protected final Map<String,String> roleToLocationMappings = new LinkedHashMap<String,String>();
+  /**
+   * The compiled rules, in priority order.
+   */
+  protected Rule[] rules = new Rule[0];
+  /**
+   * The indexes of the {@link #rules} for each {@linkplain RoleRegistry#intern(String) role ID} (or <code>null</code>
+   * for roles having none).
+   */
+  protected @Nullable BitSet[] roleRules = new BitSet[0];
+  /**
+   * The roles having any {@link #rules}.
+   */
+  protected RoleSet ruleRoles = new RoleSet();
+  /**
+   * The indexes of the {@link #rules} applying to each path prefix.
+   */
+  protected PathTrie pathTrie = new PathTrie();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of redirects to the {@link #unauthorizedLocation}.
    */
-  protected final Map<String,String> roleToLocationMappings = new HashMap<String,String>();
+  protected LongAdder unauthorizedCounter = new LongAdder();
+  /**
+   * The {@linkplain FilterMetrics#counter(String) counter} of redirects to the {@link #defaultLocation}.
+   */
+  protected LongAdder defaultCounter = new LongAdder();
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
 
   @Override
-  public void init(final FilterConfig filterConfig) {
+  public void init(final FilterConfig filterConfig) throws IllegalArgumentException {
+    metrics = FilterMetrics.register(filterConfig);
     final String prefix = UserRoleRedirectionFilter.class.getSimpleName() + '.' + filterConfig.getFilterName() + '.';
-    unauthorizedLocation = filterConfig.getInitParameter(prefix + UNAUTHORIZED_LOCATION_PROP);
-    defaultLocation = filterConfig.getInitParameter(prefix + DEFAULT_LOCATION_PROP);
-    Collections.list(filterConfig.getInitParameterNames()).stream().filter((name) -> name.startsWith(prefix)).filter((name) -> !name.equals(prefix + UNAUTHORIZED_LOCATION_PROP)).filter((name) -> !name.equals(prefix + DEFAULT_LOCATION_PROP)).forEach((name) -> roleToLocationMappings.put(name.substring(prefix.length()), Objects.requireNonNull(filterConfig.getInitParameter(name))));
+    final String unauthorizedLocationProp = filterConfig.getInitParameter(prefix + UNAUTHORIZED_LOCATION_PROP);
+    final String unauthorizedLocation = (unauthorizedLocationProp != null) ? resolveLocation(unauthorizedLocationProp) : null;
+    if (unauthorizedLocation != null) unauthorizedCounter = metrics.counter("redirect:" + unauthorizedLocation);
+    this.unauthorizedLocation = unauthorizedLocation;
+    final String defaultLocationProp = filterConfig.getInitParameter(prefix + DEFAULT_LOCATION_PROP);
+    final String defaultLocation = (defaultLocationProp != null) ? resolveLocation(defaultLocationProp) : null;
+    if (defaultLocation != null) defaultCounter = metrics.counter("redirect:" + defaultLocation);
+    this.defaultLocation = defaultLocation;
+    resolvedRolesOnly = Boolean.parseBoolean(filterConfig.getInitParameter(prefix + RESOLVED_ROLES_ONLY_PROP));
+
+    final Map<String,String> mappings = new TreeMap<String,String>();
+    Collections.list(filterConfig.getInitParameterNames()).stream().filter((name) -> name.startsWith(prefix)).filter((name) -> !name.equals(prefix + UNAUTHORIZED_LOCATION_PROP)).filter((name) -> !name.equals(prefix + DEFAULT_LOCATION_PROP)).filter((name) -> !name.equals(prefix + ORDER_PROP)).filter((name) -> !name.equals(prefix + RESOLVED_ROLES_ONLY_PROP)).forEach((name) -> mappings.put(name.substring(prefix.length()), Objects.requireNonNull(filterConfig.getInitParameter(name))));
+    final String orderProp = filterConfig.getInitParameter(prefix + ORDER_PROP);
+    if ((orderProp != null) && (!orderProp.isBlank())) {
+      for (String role : orderProp.trim().split("[\\s]*,[\\s]*")) {
+        final String location = mappings.remove(role);
+        if (location == null) throw new IllegalArgumentException("Invalid " + prefix + ORDER_PROP + ": No location for role '" + role + '\'');
+        roleToLocationMappings.put(role, location);
+      }
+    }
+    roleToLocationMappings.putAll(mappings);
+    compileRules();
+    return;
+  }
+
+  /**
+   * Validate and normalize the given redirect <code>location</code>, so that the container needn't do any more than
+   * make it absolute for each request.
+   * 
+   * @param location The configured location.
+   * @return The resolved location.
+   * @throws IllegalArgumentException If the <code>location</code> isn't a valid URI reference.
+   */
+  protected static String resolveLocation(final String location) throws IllegalArgumentException {
+    try {
+      return new URI(location.trim()).normalize().toString();
+    } catch (URISyntaxException use) {
+      throw new IllegalArgumentException("Invalid location: '" + location + '\'', use);
+    }
+  }
+
+  /**
+   * Compile the {@link #roleToLocationMappings} into the {@link #rules}, {@link #roleRules}, {@link #ruleRoles}, and
+   * {@link #pathTrie}.
+   * 
+   * @throws IllegalArgumentException If a mapping is invalid.
+   */
+  protected void compileRules() throws IllegalArgumentException {
+    final List<Rule> rules = new ArrayList<Rule>(roleToLocationMappings.size());
+    final RoleSet ruleRoles = new RoleSet();
+    final PathTrie pathTrie = new PathTrie();
+    int maxRoleID = -1;
+    for (Map.Entry<String,String> mapping : roleToLocationMappings.entrySet()) {
+      final String[] tokens = mapping.getValue().trim().split("\\s+");
+      if ((tokens.length > 2) || (tokens[0].isEmpty()) || ((tokens.length == 2) && (!tokens[0].startsWith("/")))) throw new IllegalArgumentException("Invalid location for role '" + mapping.getKey() + "': '" + mapping.getValue() + '\'');
+      final String location = resolveLocation(tokens[tokens.length - 1]);
+      final Rule rule = new Rule(mapping.getKey(), (tokens.length == 2) ? tokens[0] : "", location, metrics.counter("redirect:" + location));
+      pathTrie.add(rule.pathPrefix, rules.size());
+      rules.add(rule);
+      ruleRoles.add(rule.roleID);
+      maxRoleID = Math.max(maxRoleID, rule.roleID);
+    }
+    final @Nullable BitSet[] roleRules = new BitSet[maxRoleID + 1];
+    for (int i = 0; i < rules.size(); i++) {
+      final int roleID = rules.get(i).roleID;
+      BitSet indexes = roleRules[roleID];
+      if (indexes == null) {
+        indexes = new BitSet();
+        roleRules[roleID] = indexes;
+      }
+      indexes.set(i);
+    }
+    this.rules = rules.toArray(new Rule[rules.size()]);
+    this.roleRules = roleRules;
+    this.ruleRoles = ruleRoles;
+    this.pathTrie = pathTrie;
     return;
   }
 
@@ -81,34 +222,270 @@ public class UserRoleRedirectionFilter implements Filter {
     unauthorizedLocation = null;
     defaultLocation = null;
     roleToLocationMappings.clear();
+    rules = new Rule[0];
+    roleRules = new BitSet[0];
+    ruleRoles = new RoleSet();
+    pathTrie = new PathTrie();
+    metrics.unregister();
     return;
   }
 
+  /**
+   * Get the path of the given <code>request</code>, which {@linkplain Rule#pathPrefix path prefixes} are matched
+   * against.
+   * 
+   * @param request The request.
+   * @return The {@linkplain HttpServletRequest#getRequestURI() URI} following the
+   * {@linkplain HttpServletRequest#getContextPath() context path}.
+   */
+  protected static String getPath(final HttpServletRequest request) {
+    final String requestURI = request.getRequestURI();
+    if (requestURI == null) return "";
+    final String contextPath = request.getContextPath();
+    return ((contextPath != null) && (requestURI.startsWith(contextPath))) ? requestURI.substring(contextPath.length()) : requestURI;
+  }
+
+  /**
+   * Get the first of the {@link #rules} matching the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The rule, or <code>null</code> if none match.
+   */
+  protected @Nullable Rule getRule(final HttpServletRequest request) {
+    final Rule[] rules = this.rules;
+    if (rules.length == 0) return null;
+    final BitSet candidates = pathTrie.getRules(getPath(request));
+    int match = rules.length;
+
+    final UserRoleRequestWrapper wrapper = UserRoleRequestWrapper.find(request);
+    if (wrapper != null) {
+      final RoleSet roles = wrapper.getRoles(ruleRoles); // Only evaluate the sources for roles which could match a rule.
+      final @Nullable BitSet[] roleRules = this.roleRules;
+      for (int id = (roles.intersects(ruleRoles)) ? roles.nextRole(0) : -1; (id >= 0) && (id < roleRules.length); id = roles.nextRole(id + 1)) {
+        final BitSet indexes = roleRules[id];
+        if (indexes == null) continue;
+        for (int i = indexes.nextSetBit(0); (i >= 0) && (i < match); i = indexes.nextSetBit(i + 1)) {
+          if (candidates.get(i)) {
+            match = i;
+            break;
+          }
+        }
+      }
+      if (resolvedRolesOnly) return (match < rules.length) ? rules[match] : null;
+    }
+
+    for (int i = candidates.nextSetBit(0); (i >= 0) && (i < match); i = candidates.nextSetBit(i + 1)) {
+      if (request.isUserInRole(rules[i].role)) return rules[i];
+    }
+    return (match < rules.length) ? rules[match] : null;
+  }
+
+  /**
+   * {@linkplain HttpServletResponse#sendRedirect(String) Redirect} the client to the
+   * {@linkplain #UNAUTHORIZED_LOCATION_PROP unauthorized location} if they aren't logged in, otherwise the location of
+   * their {@linkplain #getRule(HttpServletRequest) rule}, or else the {@linkplain #DEFAULT_LOCATION_PROP default
+   * location}, if any.
+   * 
+   * @param request The request.
+   * @param response The response.
+   * @return <code>true</code> if the client was redirected.
+   * @throws IOException If there was a problem sending the redirect.
+   */
+  protected boolean redirect(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    final String unauthorizedLocation = this.unauthorizedLocation;
+    if ((request.getRemoteUser() == null) && (unauthorizedLocation != null)) {
+      response.sendRedirect(unauthorizedLocation);
+      unauthorizedCounter.increment();
+      return true;
+    }
+    final Rule rule = getRule(request);
+    if (rule != null) {
+      response.sendRedirect(rule.location);
+      rule.redirectCounter.increment();
+      return true;
+    }
+    final String defaultLocation = this.defaultLocation;
+    if (defaultLocation == null) return false;
+    response.sendRedirect(defaultLocation);
+    defaultCounter.increment();
+    return true;
+  }
+
   @Override
   public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
-    final HttpServletRequest httpServletRequest = (HttpServletRequest)servletRequest;
-    final HttpServletResponse httpServletResponse = (HttpServletResponse)servletResponse;
+    final long start = System.nanoTime();
+    if (redirect((HttpServletRequest)servletRequest, (HttpServletResponse)servletResponse)) {
+      metrics.record(start, 0);
+      return;
+    }
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public boolean apply(final PipelineExchange exchange) throws IOException {
+    return !redirect(exchange.getRequest(), exchange.getResponse());
+  }
 
-    if ((httpServletRequest.getRemoteUser() == null) && (unauthorizedLocation != null)) {
-      httpServletResponse.sendRedirect(unauthorizedLocation);
+  /**
+   * A compiled redirection rule.
+   */
+  protected static class Rule {
+    /**
+     * The name of the role this rule applies to.
+     */
+    public final String role;
+    /**
+     * The {@linkplain RoleRegistry#intern(String) interned} ID of the {@link #role}.
+     */
+    public final int roleID;
+    /**
+     * The prefix of the {@linkplain UserRoleRedirectionFilter#getPath(HttpServletRequest) path} this rule applies to,
+     * which is empty if it applies to all paths.
+     */
+    public final String pathPrefix;
+    /**
+     * The {@linkplain UserRoleRedirectionFilter#resolveLocation(String) resolved} location to redirect to.
+     */
+    public final String location;
+    /**
+     * The {@linkplain FilterMetrics#counter(String) counter} of redirects to the {@link #location}.
+     */
+    public final LongAdder redirectCounter;
+
+    /**
+     * Construct a <code>Rule</code>.
+     * 
+     * @param role The name of the role this rule applies to.
+     * @param pathPrefix The prefix of the path this rule applies to.
+     * @param location The location to redirect to.
+     * @param redirectCounter The counter of redirects to the location.
+     */
+    public Rule(final String role, final String pathPrefix, final String location, final LongAdder redirectCounter) {
+      this.role = role;
+      this.roleID = RoleRegistry.intern(role);
+      this.pathPrefix = pathPrefix;
+      this.location = location;
+      this.redirectCounter = redirectCounter;
       return;
     }
 
-    for (String role : roleToLocationMappings.keySet()) {
-      if (httpServletRequest.isUserInRole(role)) {
-        final String location = roleToLocationMappings.get(role);
-        httpServletResponse.sendRedirect(location);
-        return;
-      }
+  } // Rule
+
+  /**
+   * A character trie mapping path prefixes to the indexes of the {@link UserRoleRedirectionFilter#rules rules} applying
+   * to them. Instances are populated during <code>init</code> and then only read.
+   */
+  protected static class PathTrie {
+    /**
+     * The root node, holding the rules which apply to all paths.
+     */
+    protected final Node root = new Node();
+    /**
+     * Are there any rules with a non-empty path prefix?
+     */
+    protected boolean hasPrefixes = false;
+
+    /**
+     * Construct a <code>PathTrie</code>.
+     */
+    public PathTrie() {
+      return;
     }
 
-    if (defaultLocation != null) {
-      httpServletResponse.sendRedirect(defaultLocation);
+    /**
+     * Add the rule with the given <code>index</code> for the supplied <code>pathPrefix</code>.
+     * 
+     * @param pathPrefix The path prefix.
+     * @param index The index of the rule.
+     */
+    public void add(final String pathPrefix, final int index) {
+      Node node = root;
+      for (int i = 0; i < pathPrefix.length(); i++) {
+        node = node.getChild(pathPrefix.charAt(i), true);
+      }
+      node.rules.set(index);
+      if (!pathPrefix.isEmpty()) hasPrefixes = true;
       return;
     }
 
-    filterChain.doFilter(servletRequest, servletResponse);
-    return;
-  }
+    /**
+     * Get the indexes of the rules applying to the given <code>path</code>.
+     * 
+     * @param path The request path.
+     * @return The rule indexes, which must not be modified.
+     */
+    public BitSet getRules(final String path) {
+      if (!hasPrefixes) return root.rules;
+      BitSet result = root.rules;
+      boolean copied = false;
+      Node node = root;
+      for (int i = 0; i < path.length(); i++) {
+        node = node.getChild(path.charAt(i), false);
+        if (node == null) break;
+        if (node.rules.isEmpty()) continue;
+        if (!copied) {
+          result = (BitSet)result.clone();
+          copied = true;
+        }
+        result.or(node.rules);
+      }
+      return result;
+    }
+
+    /**
+     * A node of the trie.
+     */
+    protected static class Node {
+      /**
+       * The (sorted) characters having child nodes.
+       */
+      protected char[] keys = new char[0];
+      /**
+       * The child node for each of the {@link #keys}.
+       */
+      protected Node[] children = new Node[0];
+      /**
+       * The indexes of the rules whose path prefix ends at this node.
+       */
+      protected final BitSet rules = new BitSet();
+
+      /**
+       * Construct a <code>Node</code>.
+       */
+      public Node() {
+        return;
+      }
+
+      /**
+       * Get the child node for the given character.
+       * 
+       * @param c The character.
+       * @param create Should the child be created if it doesn't exist?
+       * @return The child node, or <code>null</code> if it doesn't exist and wasn't created.
+       */
+      protected @Nullable Node getChild(final char c, final boolean create) {
+        final int index = Arrays.binarySearch(keys, c);
+        if (index >= 0) return children[index];
+        if (!create) return null;
+        final int insertion = -(index + 1);
+        final char[] keys = new char[this.keys.length + 1];
+        final Node[] children = new Node[this.children.length + 1];
+        System.arraycopy(this.keys, 0, keys, 0, insertion);
+        System.arraycopy(this.children, 0, children, 0, insertion);
+        System.arraycopy(this.keys, insertion, keys, insertion + 1, this.keys.length - insertion);
+        System.arraycopy(this.children, insertion, children, insertion + 1, this.children.length - insertion);
+        final Node child = new Node();
+        keys[insertion] = c;
+        children[insertion] = child;
+        this.keys = keys;
+        this.children = children;
+        return child;
+      }
+
+    } // Node
+
+  } // PathTrie
 
 }
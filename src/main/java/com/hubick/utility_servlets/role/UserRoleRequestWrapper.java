@@ -7,23 +7,60 @@
 
 package com.hubick.utility_servlets.role;
 
+import java.util.*;
+
 import org.eclipse.jdt.annotation.*;
 
+import javax.servlet.*;
 import javax.servlet.http.*;
 
 
 /**
+ * <p>
  * Wrap the <code>request</code> to have {@link #isUserInRole(String) isUserInRole} return <code>true</code> for the
- * supplied <code>role</code>.
+ * supplied roles.
+ * </p>
+ * 
+ * <p>
+ * Filters should grant roles using {@link #addRoles(HttpServletRequest, RoleSet)},
+ * {@link #addRole(HttpServletRequest, String)}, etc, which always wrap the request in a new wrapper (so, as with any
+ * other wrapper, the roles are only visible to those the new wrapper is passed to, never to the filters upstream, nor
+ * to the request which {@linkplain RequestDispatcher dispatched} this one). Where the request being wrapped is itself
+ * directly a <code>UserRoleRequestWrapper</code> (ie, several role filters mapped in a row, or the stages of a
+ * pipeline), the new wrapper copies the roles of that one, rather than nesting, so that
+ * {@link #isUserInRole(String) isUserInRole} costs a single hash lookup and bit test regardless of how many roles have
+ * been granted.
+ * </p>
  * 
  * @see HttpServletRequest#isUserInRole(String)
  */
 @NonNullByDefault
 public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
   /**
-   * The role value to have {@link #isUserInRole(String) isUserInRole} return <code>true</code> for.
+   * The {@linkplain RoleRegistry#intern(String) interned} roles to have {@link #isUserInRole(String) isUserInRole}
+   * return <code>true</code> for.
+   */
+  protected final RoleSet roles;
+  /**
+   * Any additional roles which haven't been {@linkplain RoleRegistry#intern(String) interned}, such as those derived
+   * from request data, to have {@link #isUserInRole(String) isUserInRole} return <code>true</code> for.
+   */
+  protected @Nullable List<String> uninternedRoles = null;
+  /**
+   * Any {@linkplain RoleSource sources} of roles to consult for roles which haven't been explicitly granted.
    */
-  protected final String role;
+  protected @Nullable List<RoleSource> roleSources = null;
+  /**
+   * The request {@link #isUserInRole(String) isUserInRole} falls back to for roles not granted by this wrapper, which
+   * skips any <code>UserRoleRequestWrapper</code> whose roles were copied.
+   */
+  protected final HttpServletRequest fallback;
+  /**
+   * The <code>UserRoleRequestWrapper</code> (if any) found further inside the request this one wraps, whose roles
+   * weren't copied (because another wrapper lies between them), but are included in those
+   * {@linkplain #getRoles() enumerated} by this one.
+   */
+  protected final @Nullable UserRoleRequestWrapper enclosing;
 
   /**
    * Construct a <code>UserRoleRequestWrapper</code> around the given <code>request</code>.
@@ -32,17 +69,235 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
    * @param role The role value to have {@link #isUserInRole(String) isUserInRole} return <code>true</code> for.
    */
   public UserRoleRequestWrapper(final HttpServletRequest request, final String role) {
+    this(request, new RoleSet());
+    addRole(role);
+    return;
+  }
+
+  /**
+   * Construct a <code>UserRoleRequestWrapper</code> around the given <code>request</code>. If the request is itself a
+   * <code>UserRoleRequestWrapper</code>, its roles are copied.
+   * 
+   * @param request The {@link HttpServletRequest} to wrap.
+   * @param roles The roles to have {@link #isUserInRole(String) isUserInRole} return <code>true</code> for, which will
+   * be copied.
+   */
+  public UserRoleRequestWrapper(final HttpServletRequest request, final RoleSet roles) {
     super(request);
-    this.role = role;
+    this.roles = new RoleSet(roles);
+    if (request instanceof UserRoleRequestWrapper) {
+      final UserRoleRequestWrapper wrapped = (UserRoleRequestWrapper)request;
+      this.roles.addAll(wrapped.roles);
+      final List<String> uninterned = wrapped.uninternedRoles;
+      if (uninterned != null) uninternedRoles = new ArrayList<String>(uninterned);
+      final List<RoleSource> sources = wrapped.roleSources;
+      if (sources != null) roleSources = new ArrayList<RoleSource>(sources);
+      fallback = wrapped.fallback;
+      enclosing = wrapped.enclosing;
+    } else {
+      fallback = request;
+      enclosing = find(request);
+    }
+    return;
+  }
+
+  /**
+   * Find the <code>UserRoleRequestWrapper</code> (if any) in the chain of {@linkplain ServletRequestWrapper wrappers}
+   * around the given <code>request</code>.
+   * 
+   * @param request The request to search.
+   * @return The outermost <code>UserRoleRequestWrapper</code>, or <code>null</code> if there is none.
+   */
+  public static @Nullable UserRoleRequestWrapper find(final ServletRequest request) {
+    ServletRequest current = request;
+    while (current instanceof ServletRequestWrapper) {
+      if (current instanceof UserRoleRequestWrapper) return (UserRoleRequestWrapper)current;
+      current = ((ServletRequestWrapper)current).getRequest();
+    }
+    return null;
+  }
+
+  /**
+   * Grant the given <code>roles</code> to the <code>request</code>, by wrapping it in a new
+   * <code>UserRoleRequestWrapper</code>.
+   * 
+   * @param request The request to grant the roles to.
+   * @param roles The roles to grant.
+   * @return The request to pass down the filter chain.
+   */
+  public static HttpServletRequest addRoles(final HttpServletRequest request, final RoleSet roles) {
+    return new UserRoleRequestWrapper(request, roles);
+  }
+
+  /**
+   * Grant the role with the given <code>id</code> to the <code>request</code>, by wrapping it in a new
+   * <code>UserRoleRequestWrapper</code>.
+   * 
+   * @param request The request to grant the role to.
+   * @param id The {@linkplain RoleRegistry#intern(String) ID} of the role to grant.
+   * @return The request to pass down the filter chain.
+   */
+  public static HttpServletRequest addRole(final HttpServletRequest request, final int id) {
+    final UserRoleRequestWrapper wrapper = new UserRoleRequestWrapper(request, new RoleSet());
+    wrapper.roles.add(id);
+    return wrapper;
+  }
+
+  /**
+   * Grant the given <code>role</code> to the <code>request</code>, by wrapping it in a new
+   * <code>UserRoleRequestWrapper</code>.
+   * 
+   * @param request The request to grant the role to.
+   * @param role The name of the role to grant.
+   * @return The request to pass down the filter chain.
+   */
+  public static HttpServletRequest addRole(final HttpServletRequest request, final String role) {
+    return new UserRoleRequestWrapper(request, role);
+  }
+
+  /**
+   * Have the given <code>source</code> consulted for roles by the <code>request</code>, by wrapping it in a new
+   * <code>UserRoleRequestWrapper</code>.
+   * 
+   * @param request The request to add the source to.
+   * @param source The source of roles.
+   * @return The request to pass down the filter chain.
+   */
+  public static HttpServletRequest addRoleSource(final HttpServletRequest request, final RoleSource source) {
+    final UserRoleRequestWrapper wrapper = new UserRoleRequestWrapper(request, new RoleSet());
+    wrapper.addRoleSource(source);
+    return wrapper;
+  }
+
+  /**
+   * Add the given <code>roles</code> to those granted by this wrapper. This should only be done by the creator of the
+   * wrapper, before passing it on.
+   * 
+   * @param roles The roles to grant.
+   */
+  public void addRoles(final RoleSet roles) {
+    this.roles.addAll(roles);
+    return;
+  }
+
+  /**
+   * Add the given <code>role</code> to those granted by this wrapper. This should only be done by the creator of the
+   * wrapper, before passing it on.
+   * 
+   * @param role The name of the role to grant.
+   */
+  public void addRole(final String role) {
+    final int id = RoleRegistry.lookup(role);
+    if (id >= 0) {
+      roles.add(id);
+      return;
+    }
+    List<String> uninterned = uninternedRoles;
+    if (uninterned == null) {
+      uninterned = new ArrayList<String>(2);
+      uninternedRoles = uninterned;
+    }
+    if (!uninterned.contains(role)) uninterned.add(role);
+    return;
+  }
+
+  /**
+   * Add the given <code>source</code> to those consulted by this wrapper. This should only be done by the creator of
+   * the wrapper, before passing it on.
+   * 
+   * @param source The source of roles.
+   */
+  public void addRoleSource(final RoleSource source) {
+    List<RoleSource> sources = roleSources;
+    if (sources == null) {
+      sources = new ArrayList<RoleSource>(2);
+      roleSources = sources;
+    }
+    sources.add(source);
     return;
   }
 
+  /**
+   * Get the {@linkplain RoleRegistry#intern(String) interned} roles granted by this wrapper, including those granted
+   * by any {@linkplain RoleSource#resolveRoles(HttpServletRequest, RoleSet) enumerable} role sources (which are
+   * evaluated as a result), and by any {@link #enclosing} wrapper.
+   * 
+   * @return The set of roles, which must not be modified.
+   */
+  public RoleSet getRoles() {
+    final List<RoleSource> sources = roleSources;
+    if (sources != null) {
+      for (RoleSource source : sources) {
+        source.resolveRoles(this, roles);
+      }
+    }
+    final UserRoleRequestWrapper enclosing = this.enclosing;
+    if (enclosing == null) return roles;
+    final RoleSet result = new RoleSet(roles);
+    result.addAll(enclosing.getRoles());
+    return result;
+  }
+
+  /**
+   * Get the {@linkplain RoleRegistry#intern(String) interned} roles granted by this wrapper, including those of the
+   * given <code>mask</code> granted by any role sources. Only what's needed to answer for the masked roles is
+   * {@linkplain RoleSource#resolveRoles(HttpServletRequest, RoleSet, RoleSet) evaluated}, so this should be preferred
+   * over {@link #getRoles()} by consumers only interested in particular roles.
+   * 
+   * @param mask The roles of interest.
+   * @return The set of roles, which must not be modified, and may also contain roles outside the <code>mask</code>.
+   */
+  public RoleSet getRoles(final RoleSet mask) {
+    final List<RoleSource> sources = roleSources;
+    if (sources != null) {
+      for (RoleSource source : sources) {
+        source.resolveRoles(this, roles, mask);
+      }
+    }
+    final UserRoleRequestWrapper enclosing = this.enclosing;
+    if (enclosing == null) return roles;
+    final RoleSet result = new RoleSet(roles);
+    result.addAll(enclosing.getRoles(mask));
+    return result;
+  }
+
+  /**
+   * Are all the roles granted by this wrapper {@linkplain #getRoles() enumerable}? This is not the case if any
+   * uninterned roles have been granted, or any {@linkplain RoleSource#isEnumerable() non-enumerable} role sources (such
+   * as those for locale, address, or host roles) are being consulted.
+   * 
+   * @return <code>true</code> if {@link #getRoles()} includes every role this wrapper could grant.
+   */
+  public boolean isEnumerable() {
+    final List<String> uninterned = uninternedRoles;
+    if ((uninterned != null) && (!uninterned.isEmpty())) return false;
+    final List<RoleSource> sources = roleSources;
+    if (sources != null) {
+      for (RoleSource source : sources) {
+        if (!source.isEnumerable()) return false;
+      }
+    }
+    final UserRoleRequestWrapper enclosing = this.enclosing;
+    return (enclosing == null) || (enclosing.isEnumerable());
+  }
+
   @Override
   public boolean isUserInRole(final String role) {
-    if (this.role.equals(role)) {
+    final int id = RoleRegistry.lookup(role);
+    if (roles.contains(id)) {
       return true;
     }
-    return super.isUserInRole(role);
+    final List<String> uninterned = uninternedRoles;
+    if ((uninterned != null) && (uninterned.contains(role))) {
+      return true;
+    }
+    final List<RoleSource> sources = roleSources;
+    if (sources != null) {
+      for (RoleSource source : sources) {
+        if (source.isUserInRole(this, role, id)) return true;
+      }
+    }
+    return fallback.isUserInRole(role);
   }
 
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.session;
+
+import java.io.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * An administrative servlet to {@linkplain HttpSession#invalidate() invalidate} the sessions of a list of users and/or
+ * roles, using the {@link SessionRegistry}.
+ * </p>
+ * 
+ * <p>
+ * Send a <code>POST</code> with one or more <code>user</code> and/or <code>role</code> parameters. The number of
+ * sessions invalidated is returned as plain text. A {@linkplain #REQUIRED_ROLE_PROP required role} must be configured
+ * (the servlet will fail to initialize otherwise), and access should also be restricted using a security-constraint.
+ * </p>
+ */
+@NonNullByDefault
+public class SessionAdminServlet extends HttpServlet {
+  /**
+   * The name of the {@linkplain ServletConfig#getInitParameter(String) configuration parameter} (when prefixed with '
+   * <code>SessionAdminServlet.</code>' + &lt;{@link ServletConfig#getServletName() ServletName}&gt; + '
+   * <code>.</code>') whose value specifies a role the client must be {@linkplain HttpServletRequest#isUserInRole(String)
+   * in} to use this servlet. Required.
+   */
+  public static final String REQUIRED_ROLE_PROP = "RequiredRole";
+  /**
+   * @see #REQUIRED_ROLE_PROP
+   */
+  protected @Nullable String requiredRole = null;
+
+  @Override
+  public void init() throws ServletException {
+    final String prefix = SessionAdminServlet.class.getSimpleName() + '.' + getServletConfig().getServletName() + '.';
+    final String requiredRoleProp = getServletConfig().getInitParameter(prefix + REQUIRED_ROLE_PROP);
+    if ((requiredRoleProp == null) || (requiredRoleProp.trim().isEmpty())) throw new ServletException("No " + prefix + REQUIRED_ROLE_PROP + " configured");
+    requiredRole = requiredRoleProp.trim();
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    requiredRole = null;
+    return;
+  }
+
+  @Override
+  public void doPost(final HttpServletRequest servletRequest, final HttpServletResponse servletResponse) throws ServletException, IOException {
+    final String requiredRole = this.requiredRole;
+    if ((requiredRole == null) || (!servletRequest.isUserInRole(requiredRole))) { // Fail closed.
+      servletResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    final SessionRegistry registry = SessionRegistry.get(getServletContext());
+    if (registry == null) {
+      servletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, SessionRegistry.class.getSimpleName() + " not configured");
+      return;
+    }
+
+    int count = 0;
+    final String[] users = servletRequest.getParameterValues("user");
+    if (users != null) {
+      for (String user : users) {
+        count += registry.invalidateUser(user);
+      }
+    }
+    final String[] roles = servletRequest.getParameterValues("role");
+    if (roles != null) {
+      for (String role : roles) {
+        count += registry.invalidateRole(role);
+      }
+    }
+
+    servletResponse.setContentType("text/plain; charset=UTF-8");
+    servletResponse.getWriter().println(count);
+    return;
+  }
+
+}
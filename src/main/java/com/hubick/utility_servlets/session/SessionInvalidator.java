@@ -16,8 +16,15 @@ import javax.servlet.http.*;
 
 
 /**
+ * <p>
  * A servlet to {@linkplain HttpSession#invalidate() invalidate} the client session and then do a
  * {@linkplain HttpServletResponse#sendRedirect(String) redirect}.
+ * </p>
+ * 
+ * <p>
+ * If {@linkplain #ALL_SESSIONS_ENABLE_PROP enabled}, and a {@link SessionRegistry} is configured, every session of
+ * the authenticated user (ie, on all their devices) will be invalidated.
+ * </p>
  * 
  * @see HttpSession#invalidate()
  * @see HttpServletResponse#sendRedirect(String)
@@ -33,15 +40,26 @@ public class SessionInvalidator extends HttpServlet {
    * {@linkplain HttpServletResponse#sendError(int) sent}.
    */
   public static final String REDIRECT_LOCATION_PROP = "RedirectLocation";
+  /**
+   * The name of a boolean configuration parameter (prefixed as for {@link #REDIRECT_LOCATION_PROP}) which will cause
+   * every session of the {@linkplain HttpServletRequest#getRemoteUser() remote user} to be invalidated, using the
+   * {@link SessionRegistry}, rather than only the current one.
+   */
+  public static final String ALL_SESSIONS_ENABLE_PROP = "AllSessions.Enable";
   /**
    * @see #REDIRECT_LOCATION_PROP
    */
   protected @Nullable String redirectLocation = null;
+  /**
+   * @see #ALL_SESSIONS_ENABLE_PROP
+   */
+  protected boolean allSessions = false;
 
   @Override
   public void init() throws ServletException {
     final String prefix = SessionInvalidator.class.getSimpleName() + '.' + getServletConfig().getServletName() + '.';
     redirectLocation = getServletConfig().getInitParameter(prefix + REDIRECT_LOCATION_PROP);
+    allSessions = Boolean.parseBoolean(getServletConfig().getInitParameter(prefix + ALL_SESSIONS_ENABLE_PROP));
     return;
   }
 
@@ -53,6 +71,12 @@ public class SessionInvalidator extends HttpServlet {
 
   @Override
   public void doGet(final HttpServletRequest servletRequest, final HttpServletResponse servletResponse) throws ServletException, IOException {
+    final String remoteUser = servletRequest.getRemoteUser();
+    if ((allSessions) && (remoteUser != null)) {
+      final SessionRegistry registry = SessionRegistry.get(getServletContext());
+      if (registry != null) registry.invalidateUser(remoteUser);
+    }
+
     final HttpSession session = servletRequest.getSession(false);
     if (session != null) {
       try {
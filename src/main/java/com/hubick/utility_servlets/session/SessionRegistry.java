@@ -0,0 +1,358 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.session;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.role.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * A listener maintaining an index from each {@linkplain HttpServletRequest#getRemoteUser() remote user} to their live
+ * sessions, so that all the sessions of a user (ie, across all their devices) can be
+ * {@linkplain #invalidateUser(String) invalidated} in time proportional to the number of sessions they have.
+ * </p>
+ * 
+ * <p>
+ * Sessions are indexed at the end of the first request made within them by an authenticated user, and removed from the
+ * index when they are destroyed (or re-indexed when their ID changes), so nothing is retained for dead sessions. Any
+ * of the {@linkplain #TRACKED_ROLES_PARAM tracked roles} the user is in are recorded at the same time, allowing
+ * sessions to also be {@linkplain #invalidateRole(String) invalidated by role}.
+ * </p>
+ * 
+ * <p>
+ * The request seen by this listener is the container's own, so it only sees container roles. To also record the
+ * {@linkplain RoleSet roles} granted by the role filters (via a {@link UserRoleRequestWrapper}), map a
+ * {@link SessionRegistryFilter} after them, which indexes the (wrapped) request once the filter chain returns.
+ * </p>
+ * 
+ * <p>
+ * Place the following in your web.xml, as a child of the web-app element:
+ * </p>
+ * 
+ * <pre>
+ * &lt;listener&gt;
+ *   &lt;listener-class&gt;com.hubick.utility_servlets.session.SessionRegistry&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ * 
+ * @see SessionInvalidator#ALL_SESSIONS_ENABLE_PROP
+ * @see SessionAdminServlet
+ */
+@NonNullByDefault
+public class SessionRegistry implements ServletContextListener, HttpSessionListener, HttpSessionIdListener, ServletRequestListener {
+  /**
+   * The name of the {@linkplain ServletContext#getInitParameter(String) context parameter} whose value specifies a
+   * comma separated list of (container) roles to record for each session, in addition to those granted by a
+   * {@link UserRoleRequestWrapper}.
+   */
+  public static final String TRACKED_ROLES_PARAM = SessionRegistry.class.getSimpleName() + ".TrackedRoles";
+  /**
+   * The name of the {@linkplain ServletContext#getAttribute(String) context attribute} the registry is published
+   * under.
+   */
+  public static final String CONTEXT_ATTRIBUTE = SessionRegistry.class.getName();
+  /**
+   * The indexed sessions, by ID.
+   */
+  protected final ConcurrentHashMap<String,SessionEntry> sessions = new ConcurrentHashMap<String,SessionEntry>();
+  /**
+   * The indexed sessions for each user, by ID.
+   */
+  protected final ConcurrentHashMap<String,ConcurrentHashMap<String,SessionEntry>> userSessions = new ConcurrentHashMap<String,ConcurrentHashMap<String,SessionEntry>>();
+  /**
+   * The {@linkplain #TRACKED_ROLES_PARAM tracked roles}.
+   */
+  protected String[] trackedRoles = new String[0];
+
+  /**
+   * Get the registry for the given context.
+   * 
+   * @param servletContext The context.
+   * @return The registry, or <code>null</code> if none has been configured.
+   */
+  public static @Nullable SessionRegistry get(final ServletContext servletContext) {
+    final Object registry = servletContext.getAttribute(CONTEXT_ATTRIBUTE);
+    return (registry instanceof SessionRegistry) ? (SessionRegistry)registry : null;
+  }
+
+  @Override
+  public void contextInitialized(final ServletContextEvent event) {
+    final String trackedRolesParam = event.getServletContext().getInitParameter(TRACKED_ROLES_PARAM);
+    if (trackedRolesParam != null) {
+      trackedRoles = Arrays.stream(trackedRolesParam.split(",")).map(String::trim).filter((role) -> !role.isEmpty()).toArray(String[]::new);
+      for (String trackedRole : trackedRoles) {
+        RoleRegistry.intern(trackedRole);
+      }
+    }
+    event.getServletContext().setAttribute(CONTEXT_ATTRIBUTE, this);
+    return;
+  }
+
+  @Override
+  public void contextDestroyed(final ServletContextEvent event) {
+    event.getServletContext().removeAttribute(CONTEXT_ATTRIBUTE);
+    sessions.clear();
+    userSessions.clear();
+    return;
+  }
+
+  @Override
+  public void requestInitialized(final ServletRequestEvent event) {
+    return;
+  }
+
+  @Override
+  public void requestDestroyed(final ServletRequestEvent event) {
+    if (!(event.getServletRequest() instanceof HttpServletRequest)) return;
+    index((HttpServletRequest)event.getServletRequest());
+    return;
+  }
+
+  /**
+   * Index the session of the given <code>request</code>, if it belongs to an authenticated user, and hasn't already
+   * been indexed for them.
+   * 
+   * @param request The request, which (if it's been wrapped by a {@link UserRoleRequestWrapper}) determines the roles
+   * recorded.
+   */
+  public void index(final HttpServletRequest request) {
+    final String user = request.getRemoteUser();
+    if (user == null) return;
+    final HttpSession session;
+    try {
+      session = request.getSession(false);
+      if (session == null) return;
+      final SessionEntry entry = sessions.get(session.getId());
+      if ((entry != null) && (entry.user.equals(user))) return; // Already indexed, the common case.
+    } catch (IllegalStateException ise) {
+      return; // The session was invalidated.
+    }
+    index(user, session, getRoles(request));
+    return;
+  }
+
+  /**
+   * Get the roles to record for the session of the given <code>request</code>.
+   * 
+   * @param request The request.
+   * @return The roles.
+   */
+  protected RoleSet getRoles(final HttpServletRequest request) {
+    final UserRoleRequestWrapper wrapper = UserRoleRequestWrapper.find(request);
+    final RoleSet roles = (wrapper != null) ? new RoleSet(wrapper.getRoles()) : new RoleSet();
+    for (String trackedRole : trackedRoles) {
+      if (request.isUserInRole(trackedRole)) roles.add(RoleRegistry.intern(trackedRole));
+    }
+    return roles;
+  }
+
+  /**
+   * Index the given <code>session</code> as belonging to the supplied <code>user</code>.
+   * 
+   * @param user The user the session belongs to.
+   * @param session The session.
+   * @param roles The roles of the user.
+   */
+  public void index(final String user, final HttpSession session, final RoleSet roles) {
+    final String id;
+    try {
+      id = session.getId();
+    } catch (IllegalStateException ise) {
+      return; // The session was invalidated.
+    }
+    final SessionEntry entry = new SessionEntry(session, user, roles);
+    final SessionEntry previous = sessions.put(id, entry);
+    if ((previous != null) && (!previous.user.equals(user))) unindexUser(previous.user, id);
+    userSessions.compute(user, (key, userMap) -> {
+      final ConcurrentHashMap<String,SessionEntry> result = (userMap != null) ? userMap : new ConcurrentHashMap<String,SessionEntry>(4);
+      result.put(id, entry);
+      return result;
+    });
+    // If the session was destroyed while we were indexing it, sessionDestroyed() may have run before our entry was
+    // added, in which case nothing else will ever remove it.
+    if ((!isValid(session)) && (sessions.remove(id, entry))) unindexUser(user, id);
+    return;
+  }
+
+  /**
+   * Is the given <code>session</code> still valid?
+   * 
+   * @param session The session.
+   * @return <code>false</code> if the session has been invalidated.
+   */
+  protected static boolean isValid(final HttpSession session) {
+    try {
+      session.getCreationTime();
+      return true;
+    } catch (IllegalStateException ise) {
+      return false;
+    }
+  }
+
+  /**
+   * Remove the session with the given <code>id</code> from the sessions of the supplied <code>user</code>.
+   * 
+   * @param user The user the session belonged to.
+   * @param id The ID of the session.
+   */
+  protected void unindexUser(final String user, final String id) {
+    userSessions.computeIfPresent(user, (key, userMap) -> {
+      userMap.remove(id);
+      return userMap.isEmpty() ? null : userMap;
+    });
+    return;
+  }
+
+  @Override
+  public void sessionCreated(final HttpSessionEvent event) {
+    return;
+  }
+
+  @Override
+  public void sessionDestroyed(final HttpSessionEvent event) {
+    final String id = event.getSession().getId();
+    final SessionEntry entry = sessions.remove(id);
+    if (entry != null) unindexUser(entry.user, id);
+    return;
+  }
+
+  @Override
+  public void sessionIdChanged(final HttpSessionEvent event, final String oldSessionId) {
+    final SessionEntry entry = sessions.remove(oldSessionId);
+    if (entry == null) return;
+    unindexUser(entry.user, oldSessionId);
+    index(entry.user, event.getSession(), entry.roles);
+    return;
+  }
+
+  /**
+   * Get the live sessions of the given <code>user</code>.
+   * 
+   * @param user The user.
+   * @return A snapshot of the user's sessions.
+   */
+  public Collection<HttpSession> getSessions(final String user) {
+    final ConcurrentHashMap<String,SessionEntry> userMap = userSessions.get(user);
+    if (userMap == null) return Collections.emptyList();
+    final List<HttpSession> result = new ArrayList<HttpSession>(userMap.size());
+    userMap.values().forEach((entry) -> result.add(entry.session));
+    return result;
+  }
+
+  /**
+   * Get the users with live sessions.
+   * 
+   * @return A snapshot of the users.
+   */
+  public Set<String> getUsers() {
+    return new HashSet<String>(userSessions.keySet());
+  }
+
+  /**
+   * Get the number of indexed sessions.
+   * 
+   * @return The number of sessions.
+   */
+  public int size() {
+    return sessions.size();
+  }
+
+  /**
+   * {@linkplain HttpSession#invalidate() Invalidate} the given session, removing it from the index.
+   * 
+   * @param entry The session.
+   * @return <code>true</code> if the session was invalidated, or <code>false</code> if it had already been.
+   */
+  protected boolean invalidate(final SessionEntry entry) {
+    final String id = entry.session.getId();
+    sessions.remove(id, entry);
+    try {
+      entry.session.invalidate();
+      return true;
+    } catch (IllegalStateException ise) {
+      return false;
+    }
+  }
+
+  /**
+   * {@linkplain HttpSession#invalidate() Invalidate} every session of the given <code>user</code>.
+   * 
+   * @param user The user.
+   * @return The number of sessions invalidated.
+   */
+  public int invalidateUser(final String user) {
+    final ConcurrentHashMap<String,SessionEntry> userMap = userSessions.remove(user);
+    if (userMap == null) return 0;
+    int count = 0;
+    for (SessionEntry entry : userMap.values()) {
+      if (invalidate(entry)) count++;
+    }
+    return count;
+  }
+
+  /**
+   * {@linkplain HttpSession#invalidate() Invalidate} every session recorded as having the given <code>role</code>. This
+   * requires examining every indexed session.
+   * 
+   * @param role The role.
+   * @return The number of sessions invalidated.
+   */
+  public int invalidateRole(final String role) {
+    final int id = RoleRegistry.lookup(role);
+    if (id < 0) return 0;
+    int count = 0;
+    for (SessionEntry entry : sessions.values()) {
+      if (!entry.roles.contains(id)) continue;
+      unindexUser(entry.user, entry.session.getId());
+      if (invalidate(entry)) count++;
+    }
+    return count;
+  }
+
+  /**
+   * An indexed session.
+   */
+  protected static final class SessionEntry {
+    /**
+     * The session.
+     */
+    protected final HttpSession session;
+    /**
+     * The user the session belongs to.
+     */
+    protected final String user;
+    /**
+     * The roles recorded for the session.
+     */
+    protected final RoleSet roles;
+
+    /**
+     * Construct a <code>SessionEntry</code>.
+     * 
+     * @param session The session.
+     * @param user The user the session belongs to.
+     * @param roles The roles recorded for the session.
+     */
+    protected SessionEntry(final HttpSession session, final String user, final RoleSet roles) {
+      this.session = session;
+      this.user = user;
+      this.roles = roles;
+      return;
+    }
+
+  } // SessionEntry
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.session;
+
+import java.io.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.role.*;
+import com.hubick.utility_servlets.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * {@linkplain SessionRegistry#index(HttpServletRequest) Index} the session of each request with the
+ * {@link SessionRegistry}, once the filter chain returns, so that the roles granted by any role filters mapped before
+ * this one (which the registry's listener can't see) are recorded, and can be
+ * {@linkplain SessionRegistry#invalidateRole(String) invalidated by role}.
+ * </p>
+ * 
+ * <p>
+ * If no {@link SessionRegistry} is configured, requests are passed through unchanged.
+ * </p>
+ * 
+ * @see UserRoleRequestWrapper
+ */
+@NonNullByDefault
+public class SessionRegistryFilter implements Filter {
+  /**
+   * The registry, or <code>null</code> if none is configured.
+   */
+  protected @Nullable SessionRegistry registry = null;
+  /**
+   * The runtime metrics of this filter.
+   */
+  protected FilterMetrics metrics = new FilterMetrics();
+
+  @Override
+  public void init(final FilterConfig filterConfig) {
+    metrics = FilterMetrics.register(filterConfig);
+    registry = SessionRegistry.get(filterConfig.getServletContext());
+    return;
+  }
+
+  @Override
+  public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain filterChain) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    final long chainNanos = metrics.doChain(filterChain, servletRequest, servletResponse);
+    final SessionRegistry registry = this.registry;
+    if ((registry != null) && (servletRequest instanceof HttpServletRequest)) registry.index((HttpServletRequest)servletRequest);
+    metrics.record(start, chainNanos);
+    return;
+  }
+
+  @Override
+  public void destroy() {
+    registry = null;
+    metrics.unregister();
+    return;
+  }
+
+}
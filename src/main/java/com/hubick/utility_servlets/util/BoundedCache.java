@@ -0,0 +1,349 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A size-bounded concurrent cache, using a CLOCK (second chance) eviction policy.
+ * </p>
+ * 
+ * <p>
+ * Reads never lock and allocate nothing, so this is suitable for memoizing results on the request path. Once the
+ * cache grows beyond its {@linkplain #getMaximumSize() maximum size}, the thread adding an entry will sweep the clock
+ * hand over existing entries, evicting those which haven't been read since the last sweep.
+ * </p>
+ * 
+ * <p>
+ * A cache may instead be bounded by the total {@linkplain #BoundedCache(long, ToLongFunction) weight} of its values (ie,
+ * their size in bytes).
+ * </p>
+ * 
+ * @param <K> The type of key.
+ * @param <V> The type of value.
+ */
+@NonNullByDefault
+public class BoundedCache<K,V> {
+  /**
+   * The cached entries.
+   */
+  protected final ConcurrentHashMap<K,Entry<V>> entries;
+  /**
+   * The maximum number of entries to retain.
+   */
+  protected final int maximumSize;
+  /**
+   * The maximum total weight of the entries to retain.
+   */
+  protected final long maximumWeight;
+  /**
+   * The function computing the weight of a value, or <code>null</code> if this cache is bounded by size alone.
+   */
+  protected final @Nullable ToLongFunction<? super V> weigher;
+  /**
+   * The total weight of the cached entries.
+   */
+  protected final AtomicLong weight = new AtomicLong();
+  /**
+   * Guards the {@link #clockHand}.
+   */
+  protected final ReentrantLock evictionLock = new ReentrantLock();
+  /**
+   * The current position of the clock hand within the {@link #entries}.
+   */
+  protected @Nullable Iterator<Map.Entry<K,Entry<V>>> clockHand = null;
+  /**
+   * The number of reads which found an entry.
+   */
+  protected final LongAdder hitCount = new LongAdder();
+  /**
+   * The number of reads which found no entry.
+   */
+  protected final LongAdder missCount = new LongAdder();
+  /**
+   * The number of entries evicted.
+   */
+  protected final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Construct a <code>BoundedCache</code>.
+   * 
+   * @param maximumSize The maximum number of entries to retain.
+   * @throws IllegalArgumentException If <code>maximumSize</code> is less than one.
+   */
+  public BoundedCache(final int maximumSize) throws IllegalArgumentException {
+    if (maximumSize < 1) throw new IllegalArgumentException("Invalid maximum size: " + maximumSize);
+    this.maximumSize = maximumSize;
+    maximumWeight = Long.MAX_VALUE;
+    weigher = null;
+    entries = new ConcurrentHashMap<K,Entry<V>>(Math.min(maximumSize, 1024));
+    return;
+  }
+
+  /**
+   * Construct a <code>BoundedCache</code> bounded by the total weight of its values.
+   * 
+   * @param maximumWeight The maximum total weight of the entries to retain.
+   * @param weigher The function computing the (non-negative) weight of a value.
+   * @throws IllegalArgumentException If <code>maximumWeight</code> is less than one.
+   */
+  public BoundedCache(final long maximumWeight, final ToLongFunction<? super V> weigher) throws IllegalArgumentException {
+    if (maximumWeight < 1) throw new IllegalArgumentException("Invalid maximum weight: " + maximumWeight);
+    maximumSize = Integer.MAX_VALUE;
+    this.maximumWeight = maximumWeight;
+    this.weigher = weigher;
+    entries = new ConcurrentHashMap<K,Entry<V>>(1024);
+    return;
+  }
+
+  /**
+   * Create an entry for the given <code>value</code>.
+   * 
+   * @param value The value.
+   * @return The entry.
+   */
+  protected Entry<V> newEntry(final V value) {
+    final ToLongFunction<? super V> weigher = this.weigher;
+    return new Entry<V>(value, (weigher != null) ? weigher.applyAsLong(value) : 0);
+  }
+
+  /**
+   * Get the value cached for the given <code>key</code>.
+   * 
+   * @param key The key to look up.
+   * @return The cached value, or <code>null</code> if there is none.
+   */
+  public @Nullable V get(final K key) {
+    final Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      missCount.increment();
+      return null;
+    }
+    if (!entry.referenced) entry.referenced = true;
+    hitCount.increment();
+    return entry.value;
+  }
+
+  /**
+   * Get the value cached for the given <code>key</code>, computing and caching it if there is none. The
+   * <code>loader</code> is not run under any lock, so concurrent misses for the same key may each compute a value, in
+   * which case the first one cached wins.
+   * 
+   * @param key The key to look up.
+   * @param loader The function to compute a missing value.
+   * @return The cached value.
+   */
+  public V get(final K key, final Function<? super K,? extends V> loader) {
+    final V cached = get(key);
+    if (cached != null) return cached;
+    final V loaded = loader.apply(key);
+    final V raced = putIfAbsent(key, loaded);
+    return (raced != null) ? raced : loaded;
+  }
+
+  /**
+   * Cache the given <code>value</code> for the <code>key</code>, replacing any existing value.
+   * 
+   * @param key The key to cache the value under.
+   * @param value The value to cache.
+   */
+  public void put(final K key, final V value) {
+    final Entry<V> entry = newEntry(value);
+    final Entry<V> replaced = entries.put(key, entry);
+    weight.addAndGet(entry.weight - ((replaced != null) ? replaced.weight : 0));
+    evictIfNecessary();
+    return;
+  }
+
+  /**
+   * Cache the given <code>value</code> for the <code>key</code>, unless a value is already cached for it.
+   * 
+   * @param key The key to cache the value under.
+   * @param value The value to cache.
+   * @return The existing value, or <code>null</code> if the supplied <code>value</code> was cached.
+   */
+  public @Nullable V putIfAbsent(final K key, final V value) {
+    final Entry<V> entry = newEntry(value);
+    final Entry<V> existing = entries.putIfAbsent(key, entry);
+    if (existing != null) return existing.value;
+    weight.addAndGet(entry.weight);
+    evictIfNecessary();
+    return null;
+  }
+
+  /**
+   * Remove any value cached for the given <code>key</code>.
+   * 
+   * @param key The key to remove.
+   */
+  public void remove(final K key) {
+    final Entry<V> removed = entries.remove(key);
+    if (removed != null) weight.addAndGet(-removed.weight);
+    return;
+  }
+
+  /**
+   * Remove the given <code>key</code>, only if it's currently cached with the supplied <code>value</code>.
+   * 
+   * @param key The key to remove.
+   * @param value The value expected to be cached.
+   * @return <code>true</code> if the entry was removed.
+   */
+  public boolean remove(final K key, final V value) {
+    final Entry<V> entry = entries.get(key);
+    if ((entry == null) || (entry.value != value) || (!entries.remove(key, entry))) return false;
+    weight.addAndGet(-entry.weight);
+    return true;
+  }
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    for (K key : entries.keySet()) {
+      remove(key);
+    }
+    return;
+  }
+
+  /**
+   * Get the number of entries currently cached.
+   * 
+   * @return The number of entries.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Get the total weight of the cached entries.
+   * 
+   * @return The total weight, which is always zero for a cache not bounded by weight.
+   */
+  public long getWeight() {
+    return weight.get();
+  }
+
+  /**
+   * Get the maximum number of entries which will be retained.
+   * 
+   * @return The maximum size of this cache.
+   */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Get the number of reads which found a cached value.
+   * 
+   * @return The hit count.
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Get the number of reads which didn't find a cached value.
+   * 
+   * @return The miss count.
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Get the number of entries which have been evicted to keep this cache within its maximum size.
+   * 
+   * @return The eviction count.
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Does this cache currently exceed its maximum size or weight?
+   * 
+   * @return <code>true</code> if entries need to be evicted.
+   */
+  protected boolean isOverLimit() {
+    return (entries.size() > maximumSize) || (weight.get() > maximumWeight);
+  }
+
+  /**
+   * Sweep the clock hand, evicting unreferenced entries, until this cache is within its maximum size. If another
+   * thread is already sweeping, this method returns immediately.
+   */
+  protected void evictIfNecessary() {
+    if (!isOverLimit()) return;
+    if (!evictionLock.tryLock()) return;
+    try {
+      int remainingSteps = entries.size() * 2 + 1;
+      while ((isOverLimit()) && (remainingSteps-- > 0)) {
+        Iterator<Map.Entry<K,Entry<V>>> hand = clockHand;
+        if ((hand == null) || (!hand.hasNext())) {
+          hand = entries.entrySet().iterator();
+          clockHand = hand;
+          if (!hand.hasNext()) break;
+        }
+        final Map.Entry<K,Entry<V>> candidate = hand.next();
+        final Entry<V> entry = candidate.getValue();
+        if (entry.referenced) {
+          entry.referenced = false;
+        } else if (entries.remove(candidate.getKey(), entry)) {
+          weight.addAndGet(-entry.weight);
+          evictionCount.increment();
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+    return;
+  }
+
+  /**
+   * A cached value.
+   * 
+   * @param <V> The type of value.
+   */
+  protected static final class Entry<V> {
+    /**
+     * The cached value.
+     */
+    final V value;
+    /**
+     * Has this entry been read since the clock hand last passed it?
+     */
+    volatile boolean referenced = false;
+    /**
+     * The weight of the cached value.
+     */
+    final long weight;
+
+    /**
+     * Construct an <code>Entry</code>.
+     * 
+     * @param value The cached value.
+     * @param weight The weight of the cached value.
+     */
+    Entry(final V value, final long weight) {
+      this.value = value;
+      this.weight = weight;
+      return;
+    }
+
+  } // Entry
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A bounded pool of <code>byte[]</code> buffers, arranged into power of two size classes.
+ * </p>
+ * 
+ * <p>
+ * Response buffers are large, short-lived, and allocated on every request, so allocating fresh ones causes needless
+ * garbage collection churn under load. This pool rounds each request up to its size class (from
+ * {@link #MINIMUM_CLASS_SIZE} up to the {@linkplain #getMaximumBufferSize() maximum}), and retains released buffers
+ * for reuse, up to a bounded number in each class. Requests larger than the maximum class are simply allocated, and
+ * never retained. Pooled buffers aren't cleared, so the caller must track how much of one it has filled.
+ * </p>
+ */
+@NonNullByDefault
+public class BufferPool {
+  /**
+   * The size of the smallest size class.
+   */
+  public static final int MINIMUM_CLASS_SIZE = 1024;
+  /**
+   * The size of the largest size class.
+   */
+  protected final int maximumBufferSize;
+  /**
+   * The idle buffers of each size class, indexed by class.
+   */
+  protected final BlockingQueue<byte[]>[] idle;
+
+  /**
+   * Construct a <code>BufferPool</code>.
+   * 
+   * @param maximumBufferSize The size of the largest buffer to pool, which will be rounded up to a power of two.
+   * @param maximumIdleBytes The (approximate) maximum total size of idle buffers to retain, which is divided evenly
+   * between the size classes, though at least one buffer of each size is always retained.
+   * @throws IllegalArgumentException If <code>maximumBufferSize</code> or <code>maximumIdleBytes</code> is invalid.
+   */
+  public BufferPool(final int maximumBufferSize, final long maximumIdleBytes) throws IllegalArgumentException {
+    if ((maximumBufferSize < 1) || (maximumBufferSize > (1 << 30))) throw new IllegalArgumentException("Invalid maximum buffer size: " + maximumBufferSize);
+    if (maximumIdleBytes < 0) throw new IllegalArgumentException("Invalid maximum idle bytes: " + maximumIdleBytes);
+    this.maximumBufferSize = getClassSize(getSizeClass(maximumBufferSize));
+    idle = newQueueArray(getSizeClass(this.maximumBufferSize) + 1);
+    for (int sizeClass = 0; sizeClass < idle.length; sizeClass++) {
+      idle[sizeClass] = new ArrayBlockingQueue<byte[]>((int)Math.max(1, Math.min(Integer.MAX_VALUE, maximumIdleBytes / idle.length / getClassSize(sizeClass))));
+    }
+    return;
+  }
+
+  /**
+   * Create an array of queues (which Java can't do directly for a parameterized type).
+   * 
+   * @param <T> The type of the queue elements.
+   * @param length The length of the array.
+   * @return The new array.
+   */
+  @SuppressWarnings("unchecked")
+  protected static <T> BlockingQueue<T>[] newQueueArray(final int length) {
+    return (BlockingQueue<T>[])new BlockingQueue<?>[length];
+  }
+
+  /**
+   * Get the size class holding buffers of at least the given <code>capacity</code>.
+   * 
+   * @param capacity The required capacity.
+   * @return The index of the size class.
+   */
+  protected static int getSizeClass(final int capacity) {
+    if (capacity <= MINIMUM_CLASS_SIZE) return 0;
+    return (Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1)) - (Integer.SIZE - Integer.numberOfLeadingZeros(MINIMUM_CLASS_SIZE - 1));
+  }
+
+  /**
+   * Get the size of the buffers in the given size class.
+   * 
+   * @param sizeClass The index of the size class.
+   * @return The size of its buffers.
+   */
+  protected static int getClassSize(final int sizeClass) {
+    return MINIMUM_CLASS_SIZE << sizeClass;
+  }
+
+  /**
+   * Get the size of the largest buffers this pool retains.
+   * 
+   * @return The maximum buffer size.
+   */
+  public int getMaximumBufferSize() {
+    return maximumBufferSize;
+  }
+
+  /**
+   * Acquire a buffer from this pool, allocating one if none of the required size are idle. The caller should
+   * {@linkplain #release(byte[]) release} it when done (though it's harmless to drop it instead).
+   * 
+   * @param minimumCapacity The minimum size of the buffer required.
+   * @return The buffer, which may be larger than requested, and contain stale data.
+   */
+  public byte[] acquire(final int minimumCapacity) {
+    if (minimumCapacity > maximumBufferSize) return new byte[minimumCapacity];
+    final int sizeClass = getSizeClass(minimumCapacity);
+    final byte[] buffer = idle[sizeClass].poll();
+    return (buffer != null) ? buffer : new byte[getClassSize(sizeClass)];
+  }
+
+  /**
+   * Return the given <code>buffer</code> to this pool, if it's of a pooled size, and the pool isn't full.
+   * 
+   * @param buffer The buffer being released, which mustn't be used afterwards.
+   */
+  public void release(final byte[] buffer) {
+    final int length = buffer.length;
+    if ((length < MINIMUM_CLASS_SIZE) || (length > maximumBufferSize) || (Integer.bitCount(length) != 1)) return;
+    idle[getSizeClass(length)].offer(buffer);
+    return;
+  }
+
+  /**
+   * Get the total size of the idle buffers retained by this pool.
+   * 
+   * @return The number of idle bytes.
+   */
+  public long getIdleBytes() {
+    long idleBytes = 0;
+    for (int sizeClass = 0; sizeClass < idle.length; sizeClass++) {
+      idleBytes += (long)idle[sizeClass].size() * getClassSize(sizeClass);
+    }
+    return idleBytes;
+  }
+
+  /**
+   * Discard all idle buffers.
+   */
+  public void clear() {
+    for (BlockingQueue<byte[]> queue : idle) {
+      queue.clear();
+    }
+    return;
+  }
+
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * Wraps an {@link HttpServletResponse} to buffer the content written to its {@linkplain #getOutputStream() output
+ * stream} or {@linkplain #getWriter() writer}, up to a threshold, so a filter can examine (or replace) it before
+ * anything is committed.
+ * </p>
+ * 
+ * <p>
+ * If the content exceeds the threshold, the wrapper <em>overflows</em>: it {@linkplain #openSink() opens} a sink
+ * (which by default is the wrapped response's output stream), writes the buffered content to it, and then streams all
+ * further content straight through. Subclasses can observe content as it's buffered, and substitute their own sink
+ * (ie, a compressing one).
+ * </p>
+ * 
+ * <p>
+ * Once servlet processing is done, the filter <em>must</em> call {@link #complete()} (or, if it decides to send no
+ * content at all, at least {@link #finishOutput()}). If processing continues {@linkplain ServletRequest#startAsync()
+ * asynchronously}, the filter must instead {@linkplain #deferIfAsync(ServletRequest, Runnable) defer} completion
+ * until the asynchronous processing completes, since the content hasn't all been written when the chain returns.
+ * </p>
+ * 
+ * <p>
+ * An explicit {@link #flushBuffer()} by the servlet also overflows the wrapper (since the servlet wants the content
+ * sent now), whereas flushing the output stream or writer only passes the flush on once the content has overflowed,
+ * since many servlets (and JSPs) flush at the end of every response.
+ * </p>
+ */
+@NonNullByDefault
+public class BufferingResponseWrapper extends HttpServletResponseWrapper {
+  /**
+   * The maximum number of bytes to buffer before overflowing.
+   */
+  protected final int threshold;
+  /**
+   * The buffered content, or <code>null</code> if nothing has been buffered yet.
+   */
+  protected byte @Nullable [] buffer = null;
+  /**
+   * The number of bytes in the {@link #buffer}.
+   */
+  protected int count = 0;
+  /**
+   * The sink content is being streamed to, or <code>null</code> if the content hasn't overflowed.
+   */
+  protected @Nullable OutputStream sink = null;
+  /**
+   * Has an error or redirect been sent, meaning any content should be discarded?
+   */
+  protected boolean bypassed = false;
+  /**
+   * The content length set by the servlet, or <code>-1</code> if none has been.
+   */
+  protected long contentLength = -1;
+  /**
+   * The {@link #getOutputStream() output stream}, if it has been requested.
+   */
+  protected @Nullable ServletOutputStream outputStream = null;
+  /**
+   * The {@link #getWriter() writer}, if it has been requested.
+   */
+  protected @Nullable PrintWriter writer = null;
+
+  /**
+   * Construct a <code>BufferingResponseWrapper</code>.
+   * 
+   * @param response The response being wrapped.
+   * @param threshold The maximum number of bytes to buffer before overflowing.
+   */
+  public BufferingResponseWrapper(final HttpServletResponse response, final int threshold) {
+    super(response);
+    this.threshold = threshold;
+    return;
+  }
+
+  /**
+   * Called as content is added to the buffer, allowing subclasses to observe it.
+   * 
+   * @param b The content.
+   * @param off The offset of the content within <code>b</code>.
+   * @param len The length of the content.
+   */
+  protected void buffered(final byte[] b, final int off, final int len) {
+    return;
+  }
+
+  /**
+   * Called when the buffered content is discarded due to a {@linkplain #reset() reset}.
+   */
+  protected void bufferReset() {
+    return;
+  }
+
+  /**
+   * Open the sink content will be streamed to once it overflows the buffer. The default implementation passes on any
+   * content length set by the servlet, and returns the wrapped response's output stream.
+   * 
+   * @return The sink.
+   * @throws IOException If there was a problem opening the sink.
+   */
+  protected OutputStream openSink() throws IOException {
+    if (contentLength >= 0) super.setContentLengthLong(contentLength);
+    return getResponse().getOutputStream();
+  }
+
+  /**
+   * Allocate a buffer.
+   * 
+   * @param minimumCapacity The minimum size of the buffer required.
+   * @return The new buffer.
+   */
+  protected byte[] allocateBuffer(final int minimumCapacity) {
+    return new byte[minimumCapacity];
+  }
+
+  /**
+   * Release a buffer which is no longer needed.
+   * 
+   * @param buffer The buffer being released.
+   */
+  protected void releaseBuffer(final byte[] buffer) {
+    return;
+  }
+
+  /**
+   * Has the content overflowed the buffer?
+   * 
+   * @return <code>true</code> if content is being streamed to the {@linkplain #openSink() sink}.
+   */
+  public boolean isOverflowed() {
+    return sink != null;
+  }
+
+  /**
+   * Has an error or redirect been sent?
+   * 
+   * @return <code>true</code> if the content should be discarded.
+   */
+  public boolean isBypassed() {
+    return bypassed;
+  }
+
+  /**
+   * Get the buffered content.
+   * 
+   * @return The buffer, of which the first {@link #getBufferedLength()} bytes are content.
+   */
+  public byte[] getBuffer() {
+    final byte[] buffer = this.buffer;
+    return (buffer != null) ? buffer : new byte[0];
+  }
+
+  /**
+   * Get the number of bytes buffered.
+   * 
+   * @return The length of the buffered content.
+   */
+  public int getBufferedLength() {
+    return count;
+  }
+
+  /**
+   * Get the content length set by the servlet.
+   * 
+   * @return The content length, or <code>-1</code> if none has been set.
+   */
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Write content.
+   * 
+   * @param b The content.
+   * @param off The offset of the content within <code>b</code>.
+   * @param len The length of the content.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void write(final byte[] b, final int off, final int len) throws IOException {
+    if (bypassed) return;
+    final OutputStream sink = this.sink;
+    if (sink != null) {
+      sink.write(b, off, len);
+      return;
+    }
+    if (count + len > threshold) {
+      overflow().write(b, off, len);
+      return;
+    }
+    byte[] buffer = this.buffer;
+    if ((buffer == null) || (count + len > buffer.length)) {
+      final byte[] newBuffer = allocateBuffer(Math.min(threshold, Math.max(count + len, (buffer != null) ? buffer.length * 2 : 1024)));
+      if (buffer != null) {
+        System.arraycopy(buffer, 0, newBuffer, 0, count);
+        releaseBuffer(buffer);
+      }
+      buffer = newBuffer;
+      this.buffer = buffer;
+    }
+    System.arraycopy(b, off, buffer, count, len);
+    count += len;
+    buffered(b, off, len);
+    return;
+  }
+
+  /**
+   * Open the {@linkplain #openSink() sink}, and write any buffered content to it.
+   * 
+   * @return The sink.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected OutputStream overflow() throws IOException {
+    final OutputStream sink = openSink();
+    this.sink = sink;
+    final byte[] buffer = this.buffer;
+    if (buffer != null) {
+      if (count > 0) sink.write(buffer, 0, count);
+      releaseBuffer(buffer);
+      this.buffer = null;
+    }
+    count = 0;
+    return sink;
+  }
+
+  /**
+   * Stop buffering, by writing any buffered content to the {@linkplain #openSink() sink}, so that all further content
+   * streams straight through to it.
+   * 
+   * @throws IOException If there was a problem writing the content.
+   */
+  public void passThrough() throws IOException {
+    finishOutput();
+    if ((!bypassed) && (sink == null)) overflow();
+    return;
+  }
+
+  /**
+   * If processing of the given <code>request</code> has continued {@linkplain ServletRequest#isAsyncStarted()
+   * asynchronously}, {@linkplain #passThrough() stop buffering}, and instead {@linkplain #complete() complete} the
+   * response once the asynchronous processing {@linkplain AsyncListener#onComplete(AsyncEvent) completes}.
+   * 
+   * @param request The request being processed.
+   * @param completion Run after the response has been completed (ie, to release resources), or <code>null</code>.
+   * @return <code>true</code> if completion has been deferred, in which case the caller must neither examine nor
+   * complete the response itself, or <code>false</code> if the request isn't asynchronous.
+   * @throws IOException If there was a problem writing the content.
+   */
+  public boolean deferIfAsync(final ServletRequest request, final @Nullable Runnable completion) throws IOException {
+    if (!request.isAsyncStarted()) return false;
+    passThrough();
+    try {
+      request.getAsyncContext().addListener(new AsyncListener() {
+
+        @Override
+        public void onComplete(final AsyncEvent event) throws IOException {
+          try {
+            complete();
+          } finally {
+            if (completion != null) completion.run();
+          }
+          return;
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+          return;
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+          return;
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+          final AsyncContext asyncContext = event.getAsyncContext();
+          if (asyncContext != null) asyncContext.addListener(this); // Listeners are cleared when async is restarted.
+          return;
+        }
+
+      });
+    } catch (IllegalStateException ise) {
+      return false; // Already completed, so the container will finish the response once we return.
+    }
+    return true;
+  }
+
+  /**
+   * Flush any content from the {@linkplain #getWriter() writer} into the buffer (or sink).
+   * 
+   * @throws IOException If there was a problem flushing the content.
+   */
+  public void finishOutput() throws IOException {
+    final PrintWriter writer = this.writer;
+    if (writer != null) writer.flush();
+    return;
+  }
+
+  /**
+   * Finish the response, by writing the buffered content (with an exact <code>Content-Length</code>) to the wrapped
+   * response, or flushing the sink if the content overflowed.
+   * 
+   * @throws IOException If there was a problem writing the content.
+   */
+  public void complete() throws IOException {
+    finishOutput();
+    if (bypassed) return;
+    final OutputStream sink = this.sink;
+    if (sink != null) {
+      sink.flush();
+      return;
+    }
+    writeBuffer(getResponse());
+    return;
+  }
+
+  /**
+   * Write the buffered content (with an exact <code>Content-Length</code>) to the given <code>response</code>, and
+   * release the buffer.
+   * 
+   * @param response The response to write the content to.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void writeBuffer(final ServletResponse response) throws IOException {
+    final byte[] buffer = this.buffer;
+    response.setContentLength(count);
+    if (buffer != null) {
+      if (count > 0) response.getOutputStream().write(buffer, 0, count);
+      releaseBuffer(buffer);
+      this.buffer = null;
+    }
+    count = 0;
+    return;
+  }
+
+  /**
+   * Discard the buffered content.
+   */
+  protected void discardBuffer() {
+    final PrintWriter writer = this.writer;
+    if (writer != null) writer.flush(); // Drain anything pending in the writer, so it's discarded along with the buffer.
+    count = 0;
+    bufferReset();
+    return;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (writer != null) throw new IllegalStateException("getWriter() has already been called");
+    ServletOutputStream outputStream = this.outputStream;
+    if (outputStream == null) {
+      outputStream = new BufferingServletOutputStream();
+      this.outputStream = outputStream;
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (outputStream != null) throw new IllegalStateException("getOutputStream() has already been called");
+    PrintWriter writer = this.writer;
+    if (writer == null) {
+      final String characterEncoding = getCharacterEncoding();
+      setCharacterEncoding(characterEncoding); // Make the encoding explicit, since the wrapped response won't see us use a writer.
+      writer = new PrintWriter(new OutputStreamWriter(new BufferingServletOutputStream(), characterEncoding));
+      this.writer = writer;
+    }
+    return writer;
+  }
+
+  @Override
+  public void setContentLength(final int len) {
+    setContentLengthLong(len);
+    return;
+  }
+
+  @Override
+  public void setContentLengthLong(final long len) {
+    if (isOverflowed()) {
+      super.setContentLengthLong(len);
+    } else {
+      contentLength = len;
+    }
+    return;
+  }
+
+  @Override
+  public void setHeader(final String name, final @Nullable String value) {
+    if ("Content-Length".equalsIgnoreCase(name)) {
+      setContentLengthLong((value != null) ? Long.parseLong(value.trim()) : -1);
+      return;
+    }
+    super.setHeader(name, value);
+    return;
+  }
+
+  @Override
+  public void addHeader(final String name, final @Nullable String value) {
+    if ("Content-Length".equalsIgnoreCase(name)) {
+      setContentLengthLong((value != null) ? Long.parseLong(value.trim()) : -1);
+      return;
+    }
+    super.addHeader(name, value);
+    return;
+  }
+
+  @Override
+  public void setIntHeader(final String name, final int value) {
+    if ("Content-Length".equalsIgnoreCase(name)) {
+      setContentLengthLong(value);
+      return;
+    }
+    super.setIntHeader(name, value);
+    return;
+  }
+
+  @Override
+  public void addIntHeader(final String name, final int value) {
+    if ("Content-Length".equalsIgnoreCase(name)) {
+      setContentLengthLong(value);
+      return;
+    }
+    super.addIntHeader(name, value);
+    return;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    passThrough(); // The servlet wants its content sent now, so stop buffering it.
+    final OutputStream sink = this.sink;
+    if (sink != null) sink.flush();
+    super.flushBuffer();
+    return;
+  }
+
+  @Override
+  public void resetBuffer() {
+    super.resetBuffer();
+    if (!isOverflowed()) discardBuffer();
+    return;
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    if (!isOverflowed()) {
+      discardBuffer();
+      contentLength = -1;
+    }
+    return;
+  }
+
+  @Override
+  public void sendError(final int sc, final String msg) throws IOException {
+    bypassed = true;
+    super.sendError(sc, msg);
+    return;
+  }
+
+  @Override
+  public void sendError(final int sc) throws IOException {
+    bypassed = true;
+    super.sendError(sc);
+    return;
+  }
+
+  @Override
+  public void sendRedirect(final String location) throws IOException {
+    bypassed = true;
+    super.sendRedirect(location);
+    return;
+  }
+
+  /**
+   * The {@link ServletOutputStream} content is written to.
+   */
+  protected class BufferingServletOutputStream extends ServletOutputStream {
+    /**
+     * A buffer for single byte writes.
+     */
+    protected final byte[] single = new byte[1];
+
+    @Override
+    public void write(final int b) throws IOException {
+      single[0] = (byte)b;
+      BufferingResponseWrapper.this.write(single, 0, 1);
+      return;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      Objects.checkFromIndexSize(off, len, b.length);
+      BufferingResponseWrapper.this.write(b, off, len);
+      return;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      final OutputStream sink = BufferingResponseWrapper.this.sink;
+      if (sink != null) sink.flush();
+      return;
+    }
+
+    @Override
+    public boolean isReady() {
+      final OutputStream sink = BufferingResponseWrapper.this.sink;
+      return (!(sink instanceof ServletOutputStream)) || (((ServletOutputStream)sink).isReady());
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      try {
+        getResponse().getOutputStream().setWriteListener(writeListener);
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+      return;
+    }
+
+  } // BufferingServletOutputStream
+
+}
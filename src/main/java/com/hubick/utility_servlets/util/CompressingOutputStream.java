@@ -0,0 +1,213 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.util.zip.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * An {@link OutputStream} compressing content written to it using a {@link Deflater} borrowed from a
+ * {@link DeflaterPool}, framed in either GZIP or ZLIB (HTTP <code>deflate</code>) format.
+ * </p>
+ * 
+ * <p>
+ * Unlike {@link GZIPOutputStream}, a {@link #flush()} performs a {@linkplain Deflater#SYNC_FLUSH sync flush}, so
+ * streamed content reaches the client promptly. The <code>Deflater</code> is returned to the pool by {@link #finish()}
+ * or {@link #release()}, and the underlying stream is never closed.
+ * </p>
+ */
+@NonNullByDefault
+public class CompressingOutputStream extends OutputStream {
+  /**
+   * The GZIP header: magic, CM=deflate, no flags, no mtime, no extra flags, OS=unknown.
+   */
+  protected static final byte[] GZIP_HEADER = { (byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte)0xff };
+  /**
+   * The stream compressed content is written to.
+   */
+  protected final OutputStream out;
+  /**
+   * The pool the {@link #deflater} was borrowed from.
+   */
+  protected final DeflaterPool pool;
+  /**
+   * The <code>Deflater</code>, or <code>null</code> once it has been released.
+   */
+  protected @Nullable Deflater deflater;
+  /**
+   * The checksum of the uncompressed content when using GZIP framing, or <code>null</code> for ZLIB.
+   */
+  protected final @Nullable CRC32 crc;
+  /**
+   * The buffer compressed content is drained into.
+   */
+  protected final byte[] buffer;
+  /**
+   * A buffer for single byte writes.
+   */
+  protected final byte[] single = new byte[1];
+  /**
+   * Has the GZIP header been written?
+   */
+  protected boolean headerWritten = false;
+
+  /**
+   * Construct a <code>CompressingOutputStream</code>.
+   * 
+   * @param out The stream to write compressed content to.
+   * @param pool The pool to borrow a <code>Deflater</code> from, which must be
+   * {@linkplain DeflaterPool#DeflaterPool(int, boolean, int) nowrap} for GZIP framing, and not for ZLIB.
+   * @param gzip Use GZIP framing (otherwise ZLIB)?
+   * @param bufferSize The size of the buffer compressed content is drained into.
+   */
+  public CompressingOutputStream(final OutputStream out, final DeflaterPool pool, final boolean gzip, final int bufferSize) {
+    this.out = out;
+    this.pool = pool;
+    deflater = pool.acquire();
+    crc = gzip ? new CRC32() : null;
+    buffer = new byte[bufferSize];
+    return;
+  }
+
+  /**
+   * Get the <code>Deflater</code>.
+   * 
+   * @return The <code>Deflater</code>.
+   * @throws IOException If the stream has been {@linkplain #finish() finished}.
+   */
+  protected Deflater deflater() throws IOException {
+    final Deflater deflater = this.deflater;
+    if (deflater == null) throw new IOException("Stream finished");
+    return deflater;
+  }
+
+  /**
+   * Write the GZIP header, if required and not yet written.
+   * 
+   * @throws IOException If there was a problem writing the header.
+   */
+  protected void writeHeader() throws IOException {
+    if ((crc == null) || (headerWritten)) return;
+    out.write(GZIP_HEADER);
+    headerWritten = true;
+    return;
+  }
+
+  /**
+   * Drain compressed output from the <code>Deflater</code> until it needs more input.
+   * 
+   * @param deflater The <code>Deflater</code>.
+   * @param flush The {@linkplain Deflater#deflate(byte[], int, int, int) flush mode}.
+   * @throws IOException If there was a problem writing the compressed content.
+   */
+  protected void drain(final Deflater deflater, final int flush) throws IOException {
+    int length;
+    do {
+      length = deflater.deflate(buffer, 0, buffer.length, flush);
+      if (length > 0) out.write(buffer, 0, length);
+    } while ((length == buffer.length) || ((flush == Deflater.NO_FLUSH) && (!deflater.needsInput())));
+    return;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    single[0] = (byte)b;
+    write(single, 0, 1);
+    return;
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) return;
+    final Deflater deflater = deflater();
+    writeHeader();
+    final CRC32 crc = this.crc;
+    if (crc != null) crc.update(b, off, len);
+    deflater.setInput(b, off, len);
+    drain(deflater, Deflater.NO_FLUSH);
+    return;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    final Deflater deflater = this.deflater;
+    if (deflater != null) {
+      writeHeader();
+      drain(deflater, Deflater.SYNC_FLUSH);
+    }
+    out.flush();
+    return;
+  }
+
+  /**
+   * Write any remaining compressed content and the GZIP trailer, and {@linkplain #release() release} the
+   * <code>Deflater</code>. Further writes will fail.
+   * 
+   * @throws IOException If there was a problem writing the compressed content.
+   */
+  public void finish() throws IOException {
+    final Deflater deflater = this.deflater;
+    if (deflater == null) return;
+    try {
+      writeHeader();
+      deflater.finish();
+      while (!deflater.finished()) {
+        final int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) out.write(buffer, 0, length);
+      }
+      final CRC32 crc = this.crc;
+      if (crc != null) {
+        writeIntLE((int)crc.getValue());
+        writeIntLE((int)deflater.getBytesRead());
+      }
+    } finally {
+      release();
+    }
+    return;
+  }
+
+  /**
+   * Write a little-endian 32 bit integer, as used by the GZIP trailer.
+   * 
+   * @param value The value to write.
+   * @throws IOException If there was a problem writing the value.
+   */
+  protected void writeIntLE(final int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >>> 8) & 0xff);
+    out.write((value >>> 16) & 0xff);
+    out.write((value >>> 24) & 0xff);
+    return;
+  }
+
+  /**
+   * Return the <code>Deflater</code> to the pool, without writing anything further (ie, when abandoning the stream due
+   * to an error). This method is idempotent.
+   */
+  public void release() {
+    final Deflater deflater = this.deflater;
+    if (deflater == null) return;
+    this.deflater = null;
+    pool.release(deflater);
+    return;
+  }
+
+  /**
+   * {@linkplain #finish() Finish} the stream, leaving the underlying stream open.
+   */
+  @Override
+  public void close() throws IOException {
+    finish();
+    return;
+  }
+
+}
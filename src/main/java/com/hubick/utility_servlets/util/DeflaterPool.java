@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A bounded pool of {@link Deflater} instances sharing the same configuration.
+ * </p>
+ * 
+ * <p>
+ * Each <code>Deflater</code> holds native memory which is only reclaimed when it's {@linkplain Deflater#end() ended}
+ * (or eventually, by the cleaner), so allocating one per response causes native memory churn under load. This pool
+ * {@linkplain Deflater#reset() resets} and retains released instances, up to its maximum size, ending any beyond that.
+ * </p>
+ */
+@NonNullByDefault
+public class DeflaterPool {
+  /**
+   * The compression level of pooled instances.
+   */
+  protected final int level;
+  /**
+   * Do pooled instances omit the ZLIB header and checksum (ie, for GZIP framing)?
+   */
+  protected final boolean nowrap;
+  /**
+   * The idle instances.
+   */
+  protected final BlockingQueue<Deflater> idle;
+
+  /**
+   * Construct a <code>DeflaterPool</code>.
+   * 
+   * @param level The compression level of pooled instances (0-9, or {@link Deflater#DEFAULT_COMPRESSION}).
+   * @param nowrap Should pooled instances omit the ZLIB header and checksum?
+   * @param maximumSize The maximum number of idle instances to retain.
+   * @throws IllegalArgumentException If <code>level</code> or <code>maximumSize</code> is invalid.
+   */
+  public DeflaterPool(final int level, final boolean nowrap, final int maximumSize) throws IllegalArgumentException {
+    if ((level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION)) throw new IllegalArgumentException("Invalid compression level: " + level);
+    if (maximumSize < 1) throw new IllegalArgumentException("Invalid maximum size: " + maximumSize);
+    this.level = level;
+    this.nowrap = nowrap;
+    idle = new ArrayBlockingQueue<Deflater>(maximumSize);
+    return;
+  }
+
+  /**
+   * Acquire a <code>Deflater</code> from this pool, creating one if none are idle. The caller must
+   * {@linkplain #release(Deflater) release} it when done.
+   * 
+   * @return The <code>Deflater</code>.
+   */
+  public Deflater acquire() {
+    final Deflater deflater = idle.poll();
+    return (deflater != null) ? deflater : new Deflater(level, nowrap);
+  }
+
+  /**
+   * Return the given <code>deflater</code> to this pool, or {@linkplain Deflater#end() end} it if the pool is full.
+   * 
+   * @param deflater The <code>Deflater</code> being released, which must have been {@linkplain #acquire() acquired}
+   * from this pool.
+   */
+  public void release(final Deflater deflater) {
+    deflater.reset();
+    if (!idle.offer(deflater)) deflater.end();
+    return;
+  }
+
+  /**
+   * Get the number of idle instances retained by this pool.
+   * 
+   * @return The number of idle instances.
+   */
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  /**
+   * {@linkplain Deflater#end() End} all idle instances.
+   */
+  public void clear() {
+    Deflater deflater;
+    while ((deflater = idle.poll()) != null) {
+      deflater.end();
+    }
+    return;
+  }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.management.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import com.hubick.utility_servlets.role.*;
+
+import javax.servlet.*;
+
+
+/**
+ * <p>
+ * Runtime metrics for a filter instance, published as a JMX MBean.
+ * </p>
+ * 
+ * <p>
+ * Each filter {@linkplain #register(FilterConfig) registers} its metrics during <code>init</code>, under the name
+ * <code>com.hubick.utility_servlets:type=FilterMetrics,host=&lt;VirtualServerName&gt;,context=&lt;ContextPath&gt;,filter=&lt;FilterName&gt;</code>
+ * (with an <code>instance=&lt;N&gt;</code> key appended if that name is still held by another instance, such as one
+ * being reloaded), and {@linkplain #unregister() unregisters} them during <code>destroy</code>. While processing a request, a filter
+ * calls {@link #doChain(FilterChain, ServletRequest, ServletResponse)} to invoke the rest of the chain (which times
+ * it), and finally {@link #record(long, long)}, so that the {@linkplain LatencyHistogram histogram} reflects the time
+ * spent in the filter itself. Filters may also {@linkplain #countRole(int) count the roles} they grant, and other
+ * {@linkplain #counter(String) named events}.
+ * </p>
+ * 
+ * <p>
+ * Everything here is lock-free on the request path (using {@link LongAdder}s), costing a few
+ * {@link System#nanoTime()} calls per request, so it can be left enabled in production. Registration with JMX can be
+ * disabled by setting the {@linkplain #JMX_ENABLE_PARAM context parameter} to <code>false</code>.
+ * </p>
+ */
+@NonNullByDefault
+public class FilterMetrics implements FilterMetricsMXBean {
+  /**
+   * The name of the boolean {@linkplain ServletContext#getInitParameter(String) context parameter} controlling whether
+   * filter metrics are registered with JMX (default <code>true</code>). A
+   * {@linkplain FilterConfig#getInitParameter(String) filter parameter} of the same name overrides it for that filter.
+   */
+  public static final String JMX_ENABLE_PARAM = FilterMetrics.class.getSimpleName() + ".JMX.Enable";
+  /**
+   * The JMX domain metrics are registered under.
+   */
+  public static final String DOMAIN = "com.hubick.utility_servlets";
+  /**
+   * The maximum number of distinct named counters, beyond which further names are counted as {@link #OTHER_COUNTER}.
+   */
+  protected static final int MAX_COUNTERS = 1024;
+  /**
+   * The name of the counter used once there are too many distinct names.
+   */
+  protected static final String OTHER_COUNTER = "other";
+  /**
+   * The number of requests processed.
+   */
+  protected final LongAdder requests = new LongAdder();
+  /**
+   * The time spent in the filter itself.
+   */
+  protected final LatencyHistogram selfTime = new LatencyHistogram();
+  /**
+   * The named counters.
+   */
+  protected final ConcurrentHashMap<String,LongAdder> counters = new ConcurrentHashMap<String,LongAdder>();
+  /**
+   * The named latency histograms.
+   */
+  protected final ConcurrentHashMap<String,LatencyHistogram> histograms = new ConcurrentHashMap<String,LatencyHistogram>();
+  /**
+   * The number of times each role was granted, indexed by {@linkplain RoleRegistry#intern(String) role ID}.
+   */
+  protected volatile LongAdder[] roleCounters = new LongAdder[0];
+  /**
+   * The name this instance is registered under, if it is.
+   */
+  private @Nullable ObjectName objectName = null;
+
+  /**
+   * Construct an unregistered <code>FilterMetrics</code>.
+   */
+  public FilterMetrics() {
+    return;
+  }
+
+  /**
+   * Create the metrics for the filter with the given configuration, and register them with the platform MBean server.
+   * Metrics already registered under the same name (ie, by a previous instance of the filter which hasn't been
+   * destroyed yet) are left alone, and these are registered under the first free <code>instance</code> number instead.
+   * If registration fails, the failure is {@linkplain ServletContext#log(String, Throwable) logged}, and the
+   * (unregistered) metrics are still returned.
+   * 
+   * @param filterConfig The configuration of the filter.
+   * @return The metrics.
+   */
+  public static FilterMetrics register(final FilterConfig filterConfig) {
+    final FilterMetrics metrics = new FilterMetrics();
+    final ServletContext servletContext = filterConfig.getServletContext();
+    final String filterJMXEnable = filterConfig.getInitParameter(JMX_ENABLE_PARAM);
+    final String jmxEnable = (filterJMXEnable != null) ? filterJMXEnable : servletContext.getInitParameter(JMX_ENABLE_PARAM);
+    if ((jmxEnable != null) && (!Boolean.parseBoolean(jmxEnable))) return metrics;
+    final String contextPath = servletContext.getContextPath();
+    try {
+      final String name = DOMAIN + ":type=FilterMetrics,host=" + ObjectName.quote(servletContext.getVirtualServerName()) + ",context=" + ObjectName.quote(contextPath.isEmpty() ? "/" : contextPath) + ",filter=" + ObjectName.quote(filterConfig.getFilterName());
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      for (int instance = 1; metrics.objectName == null; instance++) {
+        final ObjectName objectName = new ObjectName((instance == 1) ? name : name + ",instance=" + instance);
+        try {
+          server.registerMBean(metrics, objectName);
+          metrics.objectName = objectName;
+        } catch (InstanceAlreadyExistsException iaee) {} // Held by another instance, try the next.
+      }
+    } catch (JMException | SecurityException e) {
+      servletContext.log("Failed to register metrics for filter '" + filterConfig.getFilterName() + "'", e);
+    }
+    return metrics;
+  }
+
+  /**
+   * Unregister these metrics from the platform MBean server, if they were registered. Since metrics never replace
+   * others registered under the same name, the name registered always still belongs to this instance.
+   */
+  public void unregister() {
+    final ObjectName objectName = this.objectName;
+    if (objectName == null) return;
+    this.objectName = null;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException | SecurityException e) {}
+    return;
+  }
+
+  /**
+   * Invoke the rest of the filter chain, timing it.
+   * 
+   * @param filterChain The filter chain.
+   * @param servletRequest The request to pass down the chain.
+   * @param servletResponse The response to pass down the chain.
+   * @return The time spent in the rest of the chain, in nanoseconds.
+   * @throws ServletException If thrown by the chain.
+   * @throws IOException If thrown by the chain.
+   */
+  public long doChain(final FilterChain filterChain, final ServletRequest servletRequest, final ServletResponse servletResponse) throws ServletException, IOException {
+    final long start = System.nanoTime();
+    filterChain.doFilter(servletRequest, servletResponse);
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Record the processing of a request.
+   * 
+   * @param start The {@linkplain System#nanoTime() time} the filter began processing the request.
+   * @param chainNanos The time spent in the rest of the chain, as returned by
+   * {@link #doChain(FilterChain, ServletRequest, ServletResponse)}, or <code>0</code> if it wasn't invoked.
+   */
+  public void record(final long start, final long chainNanos) {
+    requests.increment();
+    selfTime.record(System.nanoTime() - start - chainNanos);
+    return;
+  }
+
+  /**
+   * Get the counter with the given name, creating it if necessary. Filters should look up counters for fixed names
+   * once, during <code>init</code>.
+   * 
+   * @param name The name of the counter.
+   * @return The counter.
+   */
+  public LongAdder counter(final String name) {
+    final LongAdder counter = counters.get(name);
+    if (counter != null) return counter;
+    if (counters.size() >= MAX_COUNTERS) return counters.computeIfAbsent(OTHER_COUNTER, (key) -> new LongAdder());
+    return counters.computeIfAbsent(name, (key) -> new LongAdder());
+  }
+
+  /**
+   * Get the latency histogram with the given name, creating it if necessary. Filters should look up histograms once,
+   * during <code>init</code>.
+   * 
+   * @param name The name of the histogram.
+   * @return The histogram.
+   */
+  public LatencyHistogram histogram(final String name) {
+    return histograms.computeIfAbsent(name, (key) -> new LatencyHistogram());
+  }
+
+  /**
+   * Count the granting of the role with the given ID.
+   * 
+   * @param id The {@linkplain RoleRegistry#intern(String) ID} of the role.
+   * @throws IllegalArgumentException If the <code>id</code> is negative.
+   */
+  public void countRole(final int id) throws IllegalArgumentException {
+    if (id < 0) throw new IllegalArgumentException("Invalid role ID: " + id);
+    LongAdder[] roleCounters = this.roleCounters;
+    if (id >= roleCounters.length) roleCounters = growRoleCounters(id);
+    roleCounters[id].increment();
+    return;
+  }
+
+  /**
+   * Count the granting of each of the given roles.
+   * 
+   * @param roles The roles.
+   */
+  public void countRoles(final RoleSet roles) {
+    for (int id = roles.nextRole(0); id >= 0; id = roles.nextRole(id + 1)) {
+      countRole(id);
+    }
+    return;
+  }
+
+  /**
+   * Grow the {@link #roleCounters} to include the given role ID.
+   * 
+   * @param id The role ID.
+   * @return The new counters.
+   */
+  protected synchronized LongAdder[] growRoleCounters(final int id) {
+    final LongAdder[] oldCounters = roleCounters;
+    if (id < oldCounters.length) return oldCounters;
+    final LongAdder[] newCounters = Arrays.copyOf(oldCounters, Math.max(id + 1, oldCounters.length * 2));
+    for (int i = oldCounters.length; i < newCounters.length; i++) {
+      newCounters[i] = new LongAdder();
+    }
+    roleCounters = newCounters;
+    return newCounters;
+  }
+
+  @Override
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  @Override
+  public double getMeanSelfTimeNanos() {
+    return selfTime.getMean();
+  }
+
+  @Override
+  public long getMedianSelfTimeNanos() {
+    return selfTime.getPercentile(50);
+  }
+
+  @Override
+  public long getNinetyNinthPercentileSelfTimeNanos() {
+    return selfTime.getPercentile(99);
+  }
+
+  @Override
+  public long[] getSelfTimeHistogram() {
+    return selfTime.getBuckets();
+  }
+
+  @Override
+  public Map<String,Long> getCounters() {
+    final Map<String,Long> result = new TreeMap<String,Long>();
+    counters.forEach((name, counter) -> result.put(name, Long.valueOf(counter.sum())));
+    final LongAdder[] roleCounters = this.roleCounters;
+    for (int id = 0; id < roleCounters.length; id++) {
+      final long count = roleCounters[id].sum();
+      if (count > 0) result.put("role:" + RoleRegistry.name(id), Long.valueOf(count));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String,Long> getMedianLatencyNanos() {
+    final Map<String,Long> result = new TreeMap<String,Long>();
+    histograms.forEach((name, histogram) -> result.put(name, Long.valueOf(histogram.getPercentile(50))));
+    return result;
+  }
+
+  @Override
+  public Map<String,Long> getNinetyNinthPercentileLatencyNanos() {
+    final Map<String,Long> result = new TreeMap<String,Long>();
+    histograms.forEach((name, histogram) -> result.put(name, Long.valueOf(histogram.getPercentile(99))));
+    return result;
+  }
+
+  @Override
+  public void reset() {
+    requests.reset();
+    selfTime.reset();
+    counters.values().forEach(LongAdder::reset);
+    histograms.values().forEach(LatencyHistogram::reset);
+    for (LongAdder roleCounter : roleCounters) {
+      roleCounter.reset();
+    }
+    return;
+  }
+
+}
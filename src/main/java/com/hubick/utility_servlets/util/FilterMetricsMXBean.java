@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * The JMX management interface of {@link FilterMetrics}.
+ */
+@NonNullByDefault
+public interface FilterMetricsMXBean {
+  /**
+   * Get the number of requests processed by the filter.
+   * 
+   * @return The request count.
+   */
+  public long getRequestCount();
+
+  /**
+   * Get the mean time spent in the filter itself, excluding the rest of the filter chain.
+   * 
+   * @return The mean self time, in nanoseconds.
+   */
+  public double getMeanSelfTimeNanos();
+
+  /**
+   * Get the (approximate) median time spent in the filter itself.
+   * 
+   * @return The median self time, in nanoseconds.
+   */
+  public long getMedianSelfTimeNanos();
+
+  /**
+   * Get the (approximate) 99th percentile of the time spent in the filter itself.
+   * 
+   * @return The 99th percentile self time, in nanoseconds.
+   */
+  public long getNinetyNinthPercentileSelfTimeNanos();
+
+  /**
+   * Get the histogram of the time spent in the filter itself.
+   * 
+   * @return The count for each {@linkplain LatencyHistogram power-of-two bucket}.
+   */
+  public long[] getSelfTimeHistogram();
+
+  /**
+   * Get the filter specific counters, such as the number of times each role was granted.
+   * 
+   * @return The counter values, by name.
+   */
+  public Map<String,Long> getCounters();
+
+  /**
+   * Get the (approximate) median of each of the filter specific latencies, such as the time requests spend queued.
+   * 
+   * @return The median latencies, in nanoseconds, by name.
+   */
+  public Map<String,Long> getMedianLatencyNanos();
+
+  /**
+   * Get the (approximate) 99th percentile of each of the filter specific latencies.
+   * 
+   * @return The 99th percentile latencies, in nanoseconds, by name.
+   */
+  public Map<String,Long> getNinetyNinthPercentileLatencyNanos();
+
+  /**
+   * Reset all metrics.
+   */
+  public void reset();
+
+}
@@ -0,0 +1,742 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * An {@link OutputStream} rewriting XHTML content written to it into a form which browsers will parse the same way as
+ * HTML, without ever holding the document, by tokenizing it as it streams through.
+ * </p>
+ * 
+ * <p>
+ * The following XML-only constructs are rewritten:
+ * </p>
+ * <ul>
+ * <li>Processing instructions, including the XML declaration (<code>&lt;?xml version="1.0"?&gt;</code>), are removed.
+ * </li>
+ * <li>Self-closed non-void elements (ie, <code>&lt;div/&gt;</code> or <code>&lt;script src="a.js"/&gt;</code>) are
+ * given an explicit end tag (<code>&lt;div&gt;&lt;/div&gt;</code>), since HTML ignores the <code>/</code>. Void
+ * elements (ie, <code>&lt;br/&gt;</code>) are left as is.</li>
+ * <li>CDATA sections in content are unwrapped, with their content escaped, since HTML treats them as comments. Within a
+ * <code>script</code> or <code>style</code> element (whose content HTML doesn't parse) only the
+ * <code>&lt;![CDATA[</code> and <code>]]&gt;</code> markers are removed.</li>
+ * </ul>
+ * 
+ * <p>
+ * Content within <code>svg</code> and <code>math</code> elements is left as is, since HTML parses those as XML.
+ * Since the constructs being rewritten are all ASCII, the content is processed as bytes, and so must be in a
+ * {@linkplain #isSupported(Charset) supported} encoding. Memory use is bounded by a small lookahead and output buffer,
+ * regardless of the size of the document. Entity references are left as is.
+ * </p>
+ */
+@NonNullByDefault
+public class HTMLSerializingOutputStream extends OutputStream {
+  /**
+   * The names of the HTML void elements, which never have content or an end tag.
+   */
+  protected static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr");
+  /**
+   * The maximum length of element names tracked, beyond which a self-closed element is left as is.
+   */
+  protected static final int MAX_NAME_LENGTH = 64;
+  /**
+   * The opening of a CDATA section.
+   */
+  protected static final byte[] CDATA_OPEN = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+  /**
+   * The opening of a comment.
+   */
+  protected static final byte[] COMMENT_OPEN = "<!--".getBytes(StandardCharsets.US_ASCII);
+  /**
+   * The closing of a CDATA section.
+   */
+  protected static final byte[] CDATA_CLOSE = "]]>".getBytes(StandardCharsets.US_ASCII);
+  /**
+   * The state of character data.
+   */
+  protected static final int TEXT = 0;
+  /**
+   * The state after a <code>&lt;</code>, until the kind of markup is known.
+   */
+  protected static final int MARKUP = 1;
+  /**
+   * The state within the name of a start tag.
+   */
+  protected static final int START_TAG_NAME = 2;
+  /**
+   * The state within the attributes of a start tag.
+   */
+  protected static final int START_TAG = 3;
+  /**
+   * The state after a <code>/</code> within a start tag.
+   */
+  protected static final int START_TAG_SLASH = 4;
+  /**
+   * The state within the name of an end tag.
+   */
+  protected static final int END_TAG_NAME = 5;
+  /**
+   * The state within an end tag, after its name.
+   */
+  protected static final int END_TAG = 6;
+  /**
+   * The state within a comment.
+   */
+  protected static final int COMMENT = 7;
+  /**
+   * The state within a CDATA section.
+   */
+  protected static final int CDATA = 8;
+  /**
+   * The state within a processing instruction.
+   */
+  protected static final int PROCESSING_INSTRUCTION = 9;
+  /**
+   * The state within a declaration (ie, <code>&lt;!DOCTYPE html&gt;</code>).
+   */
+  protected static final int DECLARATION = 10;
+  /**
+   * The state within the content of a <code>script</code> or <code>style</code> element.
+   */
+  protected static final int RAW_TEXT = 11;
+  /**
+   * The stream rewritten content is written to.
+   */
+  protected final OutputStream out;
+  /**
+   * The buffer rewritten content is collected in before being written to {@link #out}.
+   */
+  protected final byte[] buffer;
+  /**
+   * The number of bytes in the {@link #buffer}.
+   */
+  protected int count = 0;
+  /**
+   * The current tokenizer state.
+   */
+  protected int state = TEXT;
+  /**
+   * Bytes held back until it's known whether they form markup to be rewritten.
+   */
+  protected final byte[] pending = new byte[16];
+  /**
+   * The number of bytes in {@link #pending}.
+   */
+  protected int pendingLength = 0;
+  /**
+   * The name of the current tag, as written.
+   */
+  protected final byte[] name = new byte[MAX_NAME_LENGTH];
+  /**
+   * The length of the current tag {@link #name}, which may exceed the size of the array, if it was truncated.
+   */
+  protected int nameLength = 0;
+  /**
+   * The quote character of the current attribute value, or <code>=</code> if awaiting a value, a space if within an
+   * unquoted value, or <code>0</code> if not within one.
+   */
+  protected byte quote = 0;
+  /**
+   * The number of bytes of a closing sequence (ie, <code>--&gt;</code> or <code>]]&gt;</code>) matched.
+   */
+  protected int matched = 0;
+  /**
+   * The depth of nested <code>svg</code> and <code>math</code> elements.
+   */
+  protected int foreignDepth = 0;
+  /**
+   * The end tag (ie, <code>&lt;/script</code>) closing the current {@linkplain #RAW_TEXT raw text} element.
+   */
+  protected byte[] rawTextEnd = new byte[0];
+  /**
+   * Is a CDATA section open within the current {@linkplain #RAW_TEXT raw text} element?
+   */
+  protected boolean rawTextCDATA = false;
+  /**
+   * A buffer for single byte writes.
+   */
+  protected final byte[] single = new byte[1];
+
+  /**
+   * Construct an <code>HTMLSerializingOutputStream</code>.
+   * 
+   * @param out The stream to write rewritten content to, which is only closed if this one is.
+   * @param bufferSize The size of the buffer rewritten content is collected in.
+   */
+  public HTMLSerializingOutputStream(final OutputStream out, final int bufferSize) {
+    this.out = out;
+    buffer = new byte[Math.max(bufferSize, 16)];
+    return;
+  }
+
+  /**
+   * Can content in the given <code>charset</code> be rewritten as bytes? This is the case for UTF-8, and single byte
+   * encodings compatible with ASCII (ie, ISO-8859-1), but not other multi-byte encodings, whose trailing bytes may
+   * collide with markup characters.
+   * 
+   * @param charset The encoding of the content.
+   * @return <code>true</code> if markup can be recognized within content in the given encoding.
+   */
+  public static boolean isSupported(final Charset charset) {
+    if (StandardCharsets.UTF_8.equals(charset)) return true;
+    if ((!charset.canEncode()) || (charset.newEncoder().maxBytesPerChar() > 1)) return false;
+    final String markup = "<>/?![]-\"'=abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 \t\r\n&;:";
+    return Arrays.equals(markup.getBytes(charset), markup.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Append a byte to the {@link #buffer}.
+   * 
+   * @param b The byte.
+   * @throws IOException If there was a problem writing the buffer out.
+   */
+  protected void emit(final int b) throws IOException {
+    if (count == buffer.length) flushBuffer();
+    buffer[count++] = (byte)b;
+    return;
+  }
+
+  /**
+   * Append bytes to the {@link #buffer}.
+   * 
+   * @param b The bytes.
+   * @param off The offset of the bytes within <code>b</code>.
+   * @param len The number of bytes.
+   * @throws IOException If there was a problem writing the buffer out.
+   */
+  protected void emit(final byte[] b, final int off, final int len) throws IOException {
+    if (len > buffer.length - count) {
+      flushBuffer();
+      if (len > buffer.length) {
+        out.write(b, off, len);
+        return;
+      }
+    }
+    System.arraycopy(b, off, buffer, count, len);
+    count += len;
+    return;
+  }
+
+  /**
+   * Append an ASCII string to the {@link #buffer}.
+   * 
+   * @param s The string.
+   * @throws IOException If there was a problem writing the buffer out.
+   */
+  protected void emit(final String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      emit(s.charAt(i));
+    }
+    return;
+  }
+
+  /**
+   * Append a byte of character data to the {@link #buffer}, escaping it if it's markup.
+   * 
+   * @param b The byte.
+   * @throws IOException If there was a problem writing the buffer out.
+   */
+  protected void emitEscaped(final int b) throws IOException {
+    switch (b) {
+      case '<':
+        emit("&lt;");
+        break;
+      case '>':
+        emit("&gt;");
+        break;
+      case '&':
+        emit("&amp;");
+        break;
+      default:
+        emit(b);
+    }
+    return;
+  }
+
+  /**
+   * Write the {@link #buffer} to {@link #out}.
+   * 
+   * @throws IOException If there was a problem writing the buffer.
+   */
+  protected void flushBuffer() throws IOException {
+    if (count > 0) out.write(buffer, 0, count);
+    count = 0;
+    return;
+  }
+
+  /**
+   * Do the {@link #pending} bytes equal the start of the given <code>sequence</code>, ignoring ASCII case?
+   * 
+   * @param sequence The sequence.
+   * @return <code>true</code> if the pending bytes are a prefix of (or equal to) the sequence.
+   */
+  protected boolean pendingStarts(final byte[] sequence) {
+    return (pendingLength <= sequence.length) && (pendingMatches(sequence, pendingLength));
+  }
+
+  /**
+   * Do the first <code>length</code> {@link #pending} bytes equal the start of the given <code>sequence</code>, ignoring
+   * ASCII case?
+   * 
+   * @param sequence The sequence.
+   * @param length The number of bytes to compare, which mustn't exceed the length of either.
+   * @return <code>true</code> if the bytes are equal.
+   */
+  protected boolean pendingMatches(final byte[] sequence, final int length) {
+    for (int i = 0; i < length; i++) {
+      if (toLowerCase(pending[i]) != toLowerCase(sequence[i])) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @param b The byte to convert.
+   * @return The byte, converted to lower case if it's an ASCII upper case letter.
+   */
+  protected static int toLowerCase(final int b) {
+    return ((b >= 'A') && (b <= 'Z')) ? b + ('a' - 'A') : b;
+  }
+
+  /**
+   * @param b The byte to test.
+   * @return <code>true</code> if the byte is whitespace.
+   */
+  protected static boolean isWhitespace(final int b) {
+    return (b == ' ') || (b == '\t') || (b == '\n') || (b == '\r') || (b == '\f');
+  }
+
+  /**
+   * @param b The byte to test.
+   * @return <code>true</code> if the byte may be part of an element name.
+   */
+  protected static boolean isNameByte(final int b) {
+    return ((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z')) || ((b >= '0') && (b <= '9')) || (b == '-') || (b == '_') || (b == ':') || (b == '.') || (b >= 0x80);
+  }
+
+  /**
+   * Does the current tag {@link #name} equal the given (lower case) one, ignoring case?
+   * 
+   * @param expected The name to compare with.
+   * @return <code>true</code> if the name is equal.
+   */
+  protected boolean nameEquals(final String expected) {
+    if (nameLength != expected.length()) return false;
+    for (int i = 0; i < nameLength; i++) {
+      if (toLowerCase(name[i]) != expected.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Get the current tag {@link #name}, in lower case.
+   * 
+   * @return The name, or <code>null</code> if it was too long to track.
+   */
+  protected @Nullable String getName() {
+    if (nameLength > MAX_NAME_LENGTH) return null;
+    final char[] chars = new char[nameLength];
+    for (int i = 0; i < nameLength; i++) {
+      chars[i] = (char)toLowerCase(name[i] & 0xff);
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Is the current tag {@link #name} that of a foreign (XML parsed) element?
+   * 
+   * @return <code>true</code> for an <code>svg</code> or <code>math</code> element.
+   */
+  protected boolean isForeignName() {
+    return (nameEquals("svg")) || (nameEquals("math"));
+  }
+
+  /**
+   * Append a byte to the current tag {@link #name}.
+   * 
+   * @param b The byte.
+   */
+  protected void appendName(final int b) {
+    if (nameLength < MAX_NAME_LENGTH) name[nameLength] = (byte)b;
+    if (nameLength <= MAX_NAME_LENGTH) nameLength++;
+    return;
+  }
+
+  /**
+   * Handle the end of a start tag.
+   * 
+   * @param selfClosed Was the tag self-closed?
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void endStartTag(final boolean selfClosed) throws IOException {
+    state = TEXT;
+    final boolean foreign = isForeignName();
+    if (selfClosed) {
+      final String name = getName();
+      if ((foreignDepth > 0) || (foreign) || (name == null) || (VOID_ELEMENTS.contains(name))) {
+        emit("/>");
+      } else {
+        emit("></");
+        emit(this.name, 0, nameLength);
+        emit('>');
+      }
+      return;
+    }
+    emit('>');
+    if (foreign) {
+      foreignDepth++;
+    } else if ((foreignDepth == 0) && ((nameEquals("script")) || (nameEquals("style")))) {
+      rawTextEnd = ("</" + getName()).getBytes(StandardCharsets.US_ASCII);
+      rawTextCDATA = false;
+      state = RAW_TEXT;
+    }
+    return;
+  }
+
+  /**
+   * Emit the {@link #pending} bytes as is.
+   * 
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void emitPending() throws IOException {
+    emit(pending, 0, pendingLength);
+    pendingLength = 0;
+    return;
+  }
+
+  /**
+   * Process a byte of content.
+   * 
+   * @param b The byte.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void process(final int b) throws IOException {
+    switch (state) {
+      case TEXT:
+        if (b == '<') {
+          pending[0] = (byte)b;
+          pendingLength = 1;
+          state = MARKUP;
+        } else {
+          emit(b);
+        }
+        break;
+      case MARKUP:
+        if (pendingLength == 1) {
+          if (b == '/') {
+            pendingLength = 0;
+            emit("</");
+            nameLength = 0;
+            state = END_TAG_NAME;
+            break;
+          } else if (b == '?') {
+            pendingLength = 0;
+            matched = 0;
+            state = PROCESSING_INSTRUCTION;
+            break;
+          } else if (((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z'))) {
+            pendingLength = 0;
+            emit('<');
+            emit(b);
+            nameLength = 0;
+            appendName(b);
+            state = START_TAG_NAME;
+            break;
+          } else if (b != '!') {
+            emitPending();
+            state = TEXT;
+            process(b);
+            break;
+          }
+        }
+        pending[pendingLength++] = (byte)b;
+        if ((pendingLength == COMMENT_OPEN.length) && (pendingStarts(COMMENT_OPEN))) {
+          emitPending();
+          matched = 0;
+          state = COMMENT;
+        } else if ((!pendingStarts(COMMENT_OPEN)) && (!pendingStarts(CDATA_OPEN))) {
+          emitPending();
+          state = (b == '>') ? TEXT : DECLARATION;
+        } else if (pendingLength == CDATA_OPEN.length) {
+          pendingLength = 0;
+          if (foreignDepth > 0) emit(CDATA_OPEN, 0, CDATA_OPEN.length);
+          matched = 0;
+          state = CDATA;
+        }
+        break;
+      case START_TAG_NAME:
+        if (isNameByte(b)) {
+          appendName(b);
+          emit(b);
+        } else if (b == '/') {
+          state = START_TAG_SLASH;
+        } else if (b == '>') {
+          endStartTag(false);
+        } else {
+          emit(b);
+          quote = 0;
+          state = START_TAG;
+        }
+        break;
+      case START_TAG:
+        if (quote == '=') { // Awaiting an attribute value.
+          if ((b == '"') || (b == '\'')) {
+            quote = (byte)b;
+          } else if (b == '>') {
+            quote = 0;
+            endStartTag(false);
+            break;
+          } else if (!isWhitespace(b)) {
+            quote = ' ';
+          }
+          emit(b);
+        } else if (quote == ' ') { // Within an unquoted attribute value.
+          if (b == '>') {
+            quote = 0;
+            endStartTag(false);
+            break;
+          }
+          if (isWhitespace(b)) quote = 0;
+          emit(b);
+        } else if (quote != 0) {
+          if (b == quote) quote = 0;
+          emit(b);
+        } else if (b == '=') {
+          quote = '=';
+          emit(b);
+        } else if (b == '/') {
+          state = START_TAG_SLASH;
+        } else if (b == '>') {
+          endStartTag(false);
+        } else {
+          emit(b);
+        }
+        break;
+      case START_TAG_SLASH:
+        if (b == '>') {
+          endStartTag(true);
+        } else {
+          emit('/');
+          quote = 0;
+          state = START_TAG;
+          process(b);
+        }
+        break;
+      case END_TAG_NAME:
+        if (isNameByte(b)) {
+          appendName(b);
+          emit(b);
+          break;
+        }
+        if ((foreignDepth > 0) && (isForeignName())) foreignDepth--;
+        state = END_TAG;
+        process(b);
+        break;
+      case END_TAG:
+        emit(b);
+        if (b == '>') state = TEXT;
+        break;
+      case COMMENT:
+        emit(b);
+        if (b == '-') {
+          if (matched < 2) matched++;
+        } else {
+          if ((b == '>') && (matched == 2)) state = TEXT;
+          matched = 0;
+        }
+        break;
+      case CDATA:
+        if (b == ']') {
+          if (matched < 2) {
+            matched++;
+          } else {
+            emit(']');
+          }
+        } else if ((b == '>') && (matched == 2)) {
+          if (foreignDepth > 0) emit(CDATA_CLOSE, 0, CDATA_CLOSE.length);
+          matched = 0;
+          state = TEXT;
+        } else {
+          for (; matched > 0; matched--) {
+            emit(']');
+          }
+          if (foreignDepth > 0) {
+            emit(b);
+          } else {
+            emitEscaped(b);
+          }
+        }
+        break;
+      case PROCESSING_INSTRUCTION:
+        if (b == '?') {
+          matched = 1;
+        } else {
+          if ((b == '>') && (matched == 1)) state = TEXT;
+          matched = 0;
+        }
+        break;
+      case DECLARATION:
+        emit(b);
+        if (b == '>') state = TEXT;
+        break;
+      case RAW_TEXT:
+        processRawText(b);
+        break;
+      default:
+        emit(b);
+    }
+    return;
+  }
+
+  /**
+   * Process a byte of content within a <code>script</code> or <code>style</code> element, removing any CDATA markers,
+   * and watching for the end tag.
+   * 
+   * @param b The byte.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void processRawText(final int b) throws IOException {
+    if (pendingLength == 0) {
+      if ((b == '<') || ((b == ']') && (rawTextCDATA))) {
+        pending[pendingLength++] = (byte)b;
+      } else {
+        emit(b);
+      }
+      return;
+    }
+    pending[pendingLength++] = (byte)b;
+    if (pending[0] == ']') {
+      if (!pendingStarts(CDATA_CLOSE)) {
+        flushRawTextPending();
+      } else if (pendingLength == CDATA_CLOSE.length) {
+        pendingLength = 0;
+        rawTextCDATA = false;
+      }
+      return;
+    }
+    if ((pendingLength == rawTextEnd.length + 1) && (pendingMatches(rawTextEnd, rawTextEnd.length))) {
+      if ((isNameByte(b)) && (b != '>')) { // Some other element, ie "</scripts".
+        flushRawTextPending();
+        return;
+      }
+      pendingLength--;
+      emitPending();
+      nameLength = 0;
+      state = END_TAG;
+      process(b);
+      return;
+    }
+    if ((!rawTextCDATA) && (pendingStarts(CDATA_OPEN))) {
+      if (pendingLength == CDATA_OPEN.length) {
+        pendingLength = 0;
+        rawTextCDATA = true;
+      }
+      return;
+    }
+    if (!pendingStarts(rawTextEnd)) flushRawTextPending();
+    return;
+  }
+
+  /**
+   * Emit the first of the {@link #pending} bytes within a raw text element, and reprocess the rest, since they may
+   * begin another sequence.
+   * 
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected void flushRawTextPending() throws IOException {
+    final byte[] rest = Arrays.copyOfRange(pending, 1, pendingLength);
+    emit(pending[0]);
+    pendingLength = 0;
+    for (byte r : rest) {
+      processRawText(r);
+    }
+    return;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    single[0] = (byte)b;
+    write(single, 0, 1);
+    return;
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    final int end = off + len;
+    int i = off;
+    while (i < end) {
+      if (state == TEXT) { // Copy character data up to the next markup in bulk.
+        int markup = i;
+        while ((markup < end) && (b[markup] != '<')) markup++;
+        emit(b, i, markup - i);
+        i = markup;
+        if (i == end) break;
+      }
+      process(b[i++] & 0xff);
+    }
+    return;
+  }
+
+  /**
+   * Write any buffered content, but not bytes held back pending the rest of a markup sequence.
+   */
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+    return;
+  }
+
+  /**
+   * Finish rewriting, writing out any content held back (as is, since the markup it began was never completed), and
+   * flushing the underlying stream, which is left open.
+   * 
+   * @throws IOException If there was a problem writing the content.
+   */
+  public void finish() throws IOException {
+    emitPending();
+    if (state == START_TAG_SLASH) emit('/');
+    for (; (state == CDATA) && (matched > 0); matched--) {
+      emit(']');
+    }
+    state = TEXT;
+    flush();
+    return;
+  }
+
+  /**
+   * Discard any content not yet written to the underlying stream, and reset the tokenizer (ie, when the response
+   * buffer is reset).
+   */
+  public void discard() {
+    count = 0;
+    pendingLength = 0;
+    nameLength = 0;
+    quote = 0;
+    matched = 0;
+    foreignDepth = 0;
+    rawTextCDATA = false;
+    state = TEXT;
+    return;
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    out.close();
+    return;
+  }
+
+}
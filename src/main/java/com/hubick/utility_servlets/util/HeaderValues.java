@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.http.*;
+
+
+/**
+ * Helpers for tokenizing HTTP header values (ie, <code>Accept</code> and <code>Accept-Encoding</code>) in place, by
+ * index, without allocating. Since a header may be sent as several values, the qualities accumulated while tokenizing
+ * one are {@linkplain #setQuality(long, int, int) packed} into a <code>long</code>, to be carried into the next.
+ */
+@NonNullByDefault
+public final class HeaderValues {
+  /**
+   * The {@linkplain #setQuality(long, int, int) packed} qualities before any have been seen (each being
+   * <code>-1</code>).
+   */
+  public static final long NO_QUALITIES = 0;
+
+  /**
+   * This class only has static methods.
+   */
+  private HeaderValues() {
+    return;
+  }
+
+  /**
+   * Parse the quality from the parameters of a list element (ie, a media range or content coding).
+   * 
+   * @param value The header value.
+   * @param start The index of the first <code>;</code> following the element.
+   * @param end The index following the last character of the parameters.
+   * @return The quality in thousandths, or <code>1000</code> if there is no (valid) quality parameter.
+   */
+  public static int parseQuality(final String value, final int start, final int end) {
+    int i = start;
+    while (i < end) {
+      i++; // Skip the ';'.
+      while ((i < end) && (isWhitespace(value.charAt(i)))) i++;
+      if ((i + 1 < end) && ((value.charAt(i) == 'q') || (value.charAt(i) == 'Q')) && (value.charAt(i + 1) == '=')) {
+        i += 2;
+        int quality = 0;
+        if ((i < end) && ((value.charAt(i) == '0') || (value.charAt(i) == '1'))) {
+          quality = (value.charAt(i++) - '0') * 1000;
+        } else {
+          return 1000;
+        }
+        if ((i < end) && (value.charAt(i) == '.')) {
+          i++;
+          for (int scale = 100; (scale > 0) && (i < end) && (value.charAt(i) >= '0') && (value.charAt(i) <= '9'); scale /= 10) {
+            quality += (value.charAt(i++) - '0') * scale;
+          }
+        }
+        return Math.min(quality, 1000);
+      }
+      while ((i < end) && (value.charAt(i) != ';')) i++;
+    }
+    return 1000;
+  }
+
+  /**
+   * @param c The character to test.
+   * @return <code>true</code> if <code>c</code> is a space or tab.
+   */
+  public static boolean isWhitespace(final char c) {
+    return (c == ' ') || (c == '\t');
+  }
+
+  /**
+   * Does the region of <code>value</code> between <code>start</code> and <code>end</code> equal the
+   * <code>expected</code> (lower-case) string, ignoring case?
+   * 
+   * @param value The string containing the region.
+   * @param start The index of the start of the region.
+   * @param end The index following the end of the region.
+   * @param expected The lower-case string to compare against.
+   * @return <code>true</code> if the region is equal.
+   */
+  public static boolean regionEquals(final String value, final int start, final int end, final String expected) {
+    return (end - start == expected.length()) && (value.regionMatches(true, start, expected, 0, expected.length()));
+  }
+
+  /**
+   * Get a quality from those packed into a <code>long</code>.
+   * 
+   * @param qualities The packed qualities.
+   * @param index The index (<code>0</code> to <code>3</code>) of the quality.
+   * @return The quality in thousandths, or <code>-1</code> if it hasn't been set.
+   * @see #setQuality(long, int, int)
+   */
+  public static int getQuality(final long qualities, final int index) {
+    return (int)((qualities >>> (index * 16)) & 0xFFFF) - 1;
+  }
+
+  /**
+   * Pack a quality into a <code>long</code>, as one of four 16 bit fields.
+   * 
+   * @param qualities The packed qualities.
+   * @param index The index (<code>0</code> to <code>3</code>) of the quality.
+   * @param quality The quality in thousandths, or <code>-1</code>.
+   * @return The updated packed qualities.
+   * @see #getQuality(long, int)
+   */
+  public static long setQuality(final long qualities, final int index, final int quality) {
+    final int shift = index * 16;
+    return (qualities & ~(0xFFFFL << shift)) | ((long)(quality + 1) << shift);
+  }
+
+  /**
+   * Does the given comma separated list contain the supplied token, ignoring case?
+   * 
+   * @param value The list.
+   * @param token The token to look for.
+   * @return <code>true</code> if the list contains the token.
+   */
+  public static boolean containsToken(final String value, final String token) {
+    final int length = value.length();
+    int elementStart = 0;
+    while (elementStart < length) {
+      int elementEnd = value.indexOf(',', elementStart);
+      if (elementEnd < 0) elementEnd = length;
+      int tokenStart = elementStart;
+      while ((tokenStart < elementEnd) && (isWhitespace(value.charAt(tokenStart)))) tokenStart++;
+      int tokenEnd = elementEnd;
+      while ((tokenEnd > tokenStart) && (isWhitespace(value.charAt(tokenEnd - 1)))) tokenEnd--;
+      if (regionEquals(value, tokenStart, tokenEnd, token)) return true;
+      elementStart = elementEnd + 1;
+    }
+    return false;
+  }
+
+  /**
+   * Add the given field to the <code>Vary</code> header of the response, unless it (or <code>*</code>) is already
+   * listed, ie, by the same filter on an earlier dispatch of the request, or another filter.
+   * 
+   * @param response The response.
+   * @param field The name of the request header the response varies by.
+   */
+  public static void addVary(final HttpServletResponse response, final String field) {
+    for (String vary : response.getHeaders("Vary")) {
+      if ((containsToken(vary, field)) || (containsToken(vary, "*"))) return;
+    }
+    response.addHeader("Vary", field);
+    return;
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.jdt.annotation.*;
+
+
+/**
+ * <p>
+ * A lock-free histogram of durations, using power-of-two buckets.
+ * </p>
+ * 
+ * <p>
+ * Bucket <code>b</code> counts durations in the range <code>[2<sup>b</sup>, 2<sup>b+1</sup>)</code> nanoseconds (with
+ * bucket zero also counting zero), so {@linkplain #getPercentile(double) percentiles} are accurate to within a factor
+ * of two. Each bucket is a {@link LongAdder}, so recording from many threads doesn't contend.
+ * </p>
+ */
+@NonNullByDefault
+public class LatencyHistogram {
+  /**
+   * The number of buckets.
+   */
+  public static final int BUCKET_COUNT = 64;
+  /**
+   * The count of durations in each bucket.
+   */
+  protected final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+  /**
+   * The sum of all recorded durations.
+   */
+  protected final LongAdder sum = new LongAdder();
+
+  /**
+   * Construct a <code>LatencyHistogram</code>.
+   */
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets[i] = new LongAdder();
+    }
+    return;
+  }
+
+  /**
+   * Get the bucket for the given duration.
+   * 
+   * @param nanos The duration, in nanoseconds.
+   * @return The index of the bucket.
+   */
+  protected static int bucket(final long nanos) {
+    return 63 - Long.numberOfLeadingZeros(nanos | 1);
+  }
+
+  /**
+   * Record a duration.
+   * 
+   * @param nanos The duration, in nanoseconds. Negative values (ie, due to clock adjustment) are recorded as zero.
+   */
+  public void record(final long nanos) {
+    final long duration = Math.max(nanos, 0);
+    buckets[bucket(duration)].increment();
+    sum.add(duration);
+    return;
+  }
+
+  /**
+   * Get the number of durations recorded.
+   * 
+   * @return The count.
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Get the mean of the durations recorded.
+   * 
+   * @return The mean duration, in nanoseconds, or zero if none have been recorded.
+   */
+  public double getMean() {
+    final long count = getCount();
+    return (count > 0) ? (double)sum.sum() / count : 0;
+  }
+
+  /**
+   * Get the count of durations in each bucket.
+   * 
+   * @return A snapshot of the bucket counts.
+   */
+  public long[] getBuckets() {
+    final long[] counts = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return counts;
+  }
+
+  /**
+   * Estimate a percentile of the durations recorded.
+   * 
+   * @param percentile The percentile, from <code>0</code> to <code>100</code>.
+   * @return The upper bound of the bucket containing the percentile, in nanoseconds, or zero if no durations have been
+   * recorded.
+   */
+  public long getPercentile(final double percentile) {
+    final long[] counts = getBuckets();
+    long count = 0;
+    for (long bucketCount : counts) {
+      count += bucketCount;
+    }
+    if (count == 0) return 0;
+    final long rank = Math.max(1, (long)Math.ceil(count * (percentile / 100)));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) return (i < 62) ? (2L << i) - 1 : Long.MAX_VALUE;
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Discard all recorded durations.
+   */
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    sum.reset();
+    return;
+  }
+
+}
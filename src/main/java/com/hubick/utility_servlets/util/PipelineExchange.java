@@ -0,0 +1,229 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * The request and response being processed by the {@linkplain PipelineStage stages} of a fused pipeline. Stages
+ * granting roles {@linkplain #setRequest(HttpServletRequest) replace} the request (which, using the
+ * <code>UserRoleRequestWrapper</code> helpers, results in the outermost wrapper answering for the roles of all of
+ * them), and stages modifying the response
+ * all share a single {@linkplain #getResponseWrapper() response wrapper}, which is only created if needed. Stages
+ * needing to make modifications the shared wrapper can't (ie, rewriting the content) may
+ * {@linkplain #decorateResponse(Function) decorate} it with their own.
+ */
+@NonNullByDefault
+public class PipelineExchange {
+  /**
+   * The request to pass down the filter chain.
+   */
+  protected HttpServletRequest request;
+  /**
+   * The original response.
+   */
+  protected final HttpServletResponse response;
+  /**
+   * The shared response wrapper, or <code>null</code> if no stage has needed one.
+   */
+  protected @Nullable PipelineResponseWrapper responseWrapper = null;
+  /**
+   * The outermost {@linkplain #decorateResponse(Function) decoration} of the {@link #responseWrapper}, or
+   * <code>null</code> if it hasn't been decorated.
+   */
+  protected @Nullable HttpServletResponse decoratedResponse = null;
+  /**
+   * The {@linkplain #addCompletion(Completion) completions} to run, in the order they were added.
+   */
+  protected final List<Completion> completions = new ArrayList<Completion>(1);
+
+  /**
+   * Construct a <code>PipelineExchange</code>.
+   * 
+   * @param request The request.
+   * @param response The response.
+   */
+  public PipelineExchange(final HttpServletRequest request, final HttpServletResponse response) {
+    this.request = request;
+    this.response = response;
+    return;
+  }
+
+  /**
+   * Get the request to pass down the filter chain.
+   * 
+   * @return The (possibly wrapped) request.
+   */
+  public HttpServletRequest getRequest() {
+    return request;
+  }
+
+  /**
+   * Replace the request to pass down the filter chain.
+   * 
+   * @param request The (possibly wrapped) request.
+   */
+  public void setRequest(final HttpServletRequest request) {
+    this.request = request;
+    return;
+  }
+
+  /**
+   * Get the response to pass down the filter chain.
+   * 
+   * @return The outermost {@linkplain #decorateResponse(Function) decoration} if there is one, else the
+   * {@linkplain #getResponseWrapper() response wrapper} if one has been created, else the original response.
+   */
+  public HttpServletResponse getResponse() {
+    final HttpServletResponse decoratedResponse = this.decoratedResponse;
+    if (decoratedResponse != null) return decoratedResponse;
+    final PipelineResponseWrapper responseWrapper = this.responseWrapper;
+    return (responseWrapper != null) ? responseWrapper : response;
+  }
+
+  /**
+   * Get the shared response wrapper, creating it if necessary.
+   * 
+   * @return The response wrapper.
+   */
+  public PipelineResponseWrapper getResponseWrapper() {
+    PipelineResponseWrapper responseWrapper = this.responseWrapper;
+    if (responseWrapper == null) {
+      responseWrapper = new PipelineResponseWrapper(response);
+      this.responseWrapper = responseWrapper;
+    }
+    return responseWrapper;
+  }
+
+  /**
+   * Decorate the response passed down the filter chain with a further wrapper, around the shared
+   * {@linkplain #getResponseWrapper() response wrapper} (which is created if necessary, so it's never bypassed) and any
+   * earlier decorations.
+   * 
+   * @param <R> The type of the decoration.
+   * @param decorator The function creating the decoration, given the response it should wrap.
+   * @return The decoration.
+   */
+  public <R extends HttpServletResponse> R decorateResponse(final Function<HttpServletResponse,R> decorator) {
+    getResponseWrapper();
+    final R decoratedResponse = decorator.apply(getResponse());
+    this.decoratedResponse = decoratedResponse;
+    return decoratedResponse;
+  }
+
+  /**
+   * Add a completion to be run once the filter chain has returned. Completions are run in the reverse of the order
+   * they were added (ie, those of the outermost {@linkplain #decorateResponse(Function) decorations} first), before the
+   * shared response wrapper is {@linkplain PipelineResponseWrapper#complete() completed}.
+   * 
+   * @param completion The completion to run.
+   */
+  public void addCompletion(final Completion completion) {
+    completions.add(completion);
+    return;
+  }
+
+  /**
+   * Complete processing of the exchange, once the filter chain has returned, or, if the request was put into
+   * {@linkplain ServletRequest#isAsyncStarted() asynchronous mode}, {@linkplain #deferIfAsync(ServletRequest, Completion)
+   * defer} it until the asynchronous processing completes, since the content hasn't all been written yet.
+   * 
+   * @throws IOException If there was a problem writing the response.
+   * @see #addCompletion(Completion)
+   * @see PipelineResponseWrapper#complete()
+   */
+  public void complete() throws IOException {
+    if (deferIfAsync(request, this::runCompletions)) return;
+    runCompletions();
+    return;
+  }
+
+  /**
+   * Run the {@link #completions}, then complete the shared response wrapper.
+   * 
+   * @throws IOException If there was a problem writing the response.
+   */
+  protected void runCompletions() throws IOException {
+    for (int i = completions.size() - 1; i >= 0; i--) {
+      completions.get(i).complete();
+    }
+    final PipelineResponseWrapper responseWrapper = this.responseWrapper;
+    if (responseWrapper != null) responseWrapper.complete();
+    return;
+  }
+
+  /**
+   * If the request was put into {@linkplain ServletRequest#isAsyncStarted() asynchronous mode} by the filter chain,
+   * defer the given completion until the asynchronous processing completes.
+   * 
+   * @param request The request.
+   * @param completion The completion to run.
+   * @return <code>true</code> if the completion was deferred, or <code>false</code> if the caller should run it now.
+   */
+  public static boolean deferIfAsync(final ServletRequest request, final Completion completion) {
+    if (!request.isAsyncStarted()) return false;
+    try {
+      request.getAsyncContext().addListener(new AsyncListener() {
+
+        @Override
+        public void onComplete(final AsyncEvent event) throws IOException {
+          completion.complete();
+          return;
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+          return;
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+          return;
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+          final AsyncContext asyncContext = event.getAsyncContext();
+          if (asyncContext != null) asyncContext.addListener(this); // Listeners are cleared when async is restarted.
+          return;
+        }
+
+      });
+    } catch (IllegalStateException ise) {
+      return false; // Already completed, so the container will finish the response once we return.
+    }
+    return true;
+  }
+
+  /**
+   * Processing to be run upon completion of the exchange.
+   * 
+   * @see PipelineExchange#addCompletion(Completion)
+   */
+  @FunctionalInterface
+  public static interface Completion {
+
+    /**
+     * Complete processing, once the filter chain has returned (and any asynchronous processing it started has
+     * completed).
+     * 
+     * @throws IOException If there was a problem writing the response.
+     */
+    public void complete() throws IOException;
+
+  } // Completion
+
+}
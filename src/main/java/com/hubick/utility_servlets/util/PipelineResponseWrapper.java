@@ -0,0 +1,328 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+
+/**
+ * <p>
+ * The single response wrapper shared by all the {@linkplain PipelineStage stages} of a fused pipeline, combining the
+ * response modifications the individual filters would otherwise each need their own wrapper for:
+ * </p>
+ * 
+ * <ul>
+ * <li>{@linkplain #setTypeRewriter(UnaryOperator) Rewriting} the content type.</li>
+ * <li>Running {@linkplain #addCommitHook(Runnable, boolean) hooks} at the moment the response is about to be committed
+ * (when the first byte of content is written, or the response is flushed, or an error or redirect is sent), and once
+ * more upon {@linkplain #complete() completion} if it still hasn't been committed by then.</li>
+ * </ul>
+ * 
+ * <p>
+ * The output stream and writer are only wrapped if there are commit hooks.
+ * </p>
+ */
+@NonNullByDefault
+public class PipelineResponseWrapper extends HttpServletResponseWrapper {
+  /**
+   * The function rewriting content types, or <code>null</code> if they aren't rewritten.
+   */
+  protected @Nullable UnaryOperator<@Nullable String> typeRewriter = null;
+  /**
+   * The hooks to run before the response is committed.
+   */
+  protected final List<Runnable> commitHooks = new ArrayList<Runnable>(2);
+  /**
+   * Whether each of the {@link #commitHooks} may be run more than once.
+   */
+  protected final List<Boolean> commitHooksRepeatable = new ArrayList<Boolean>(2);
+  /**
+   * Have the {@link #commitHooks} been run?
+   */
+  protected boolean commitHooksRun = false;
+  /**
+   * The wrapped {@link #getOutputStream() output stream}, if it has been requested.
+   */
+  protected @Nullable ServletOutputStream outputStream = null;
+  /**
+   * The wrapped {@link #getWriter() writer}, if it has been requested.
+   */
+  protected @Nullable PrintWriter writer = null;
+
+  /**
+   * Construct a <code>PipelineResponseWrapper</code>.
+   * 
+   * @param response The response being wrapped.
+   */
+  public PipelineResponseWrapper(final HttpServletResponse response) {
+    super(response);
+    return;
+  }
+
+  /**
+   * Rewrite the content type of the response using the given function, from now on.
+   * 
+   * @param typeRewriter The function to rewrite content types (which may also be applied to <code>null</code>).
+   */
+  public void setTypeRewriter(final UnaryOperator<@Nullable String> typeRewriter) {
+    this.typeRewriter = typeRewriter;
+    return;
+  }
+
+  /**
+   * Add a hook to be run (at most once) immediately before the response is committed, and also upon
+   * {@linkplain #complete() completion} if the response still isn't committed by then.
+   * 
+   * @param hook The hook to run.
+   * @param repeatable Should the hook be run upon completion even if it has already been run (ie, because the response
+   * was {@linkplain #reset() reset})?
+   */
+  public void addCommitHook(final Runnable hook, final boolean repeatable) {
+    commitHooks.add(hook);
+    commitHooksRepeatable.add(Boolean.valueOf(repeatable));
+    return;
+  }
+
+  /**
+   * Run the {@link #commitHooks}, if they haven't been already, and the response isn't yet committed.
+   */
+  protected void beforeCommit() {
+    if (commitHooksRun) return;
+    commitHooksRun = true;
+    if (isCommitted()) return;
+    for (Runnable hook : commitHooks) {
+      hook.run();
+    }
+    return;
+  }
+
+  /**
+   * Complete the response, once the filter chain has returned, by running any {@link #commitHooks} which haven't been,
+   * or are repeatable, if the response isn't yet committed.
+   */
+  public void complete() {
+    if (isCommitted()) return;
+    for (int i = 0; i < commitHooks.size(); i++) {
+      if ((!commitHooksRun) || (commitHooksRepeatable.get(i).booleanValue())) commitHooks.get(i).run();
+    }
+    commitHooksRun = true;
+    return;
+  }
+
+  /**
+   * Apply the {@link #typeRewriter} (if any) to the given value.
+   * 
+   * @param type The content type.
+   * @return The rewritten type.
+   */
+  protected @Nullable String rewriteType(final @Nullable String type) {
+    final UnaryOperator<@Nullable String> typeRewriter = this.typeRewriter;
+    return (typeRewriter != null) ? typeRewriter.apply(type) : type;
+  }
+
+  @Override
+  public void setHeader(final String name, @Nullable String value) {
+    if ("Content-Type".equalsIgnoreCase(name)) value = rewriteType(value);
+    super.setHeader(name, value);
+    return;
+  }
+
+  @Override
+  public void addHeader(final String name, @Nullable String value) {
+    if ("Content-Type".equalsIgnoreCase(name)) value = rewriteType(value);
+    super.addHeader(name, value);
+    return;
+  }
+
+  @Override
+  public void setContentType(final @Nullable String type) {
+    super.setContentType(rewriteType(type));
+    return;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (commitHooks.isEmpty()) return super.getOutputStream();
+    ServletOutputStream outputStream = this.outputStream;
+    if (outputStream == null) {
+      outputStream = new CommitServletOutputStream(super.getOutputStream());
+      this.outputStream = outputStream;
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (commitHooks.isEmpty()) return super.getWriter();
+    PrintWriter writer = this.writer;
+    if (writer == null) {
+      writer = new PrintWriter(new CommitWriter(super.getWriter()));
+      this.writer = writer;
+    }
+    return writer;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    beforeCommit();
+    super.flushBuffer();
+    return;
+  }
+
+  @Override
+  public void sendError(final int sc, final String msg) throws IOException {
+    beforeCommit();
+    super.sendError(sc, msg);
+    return;
+  }
+
+  @Override
+  public void sendError(final int sc) throws IOException {
+    beforeCommit();
+    super.sendError(sc);
+    return;
+  }
+
+  @Override
+  public void sendRedirect(final String location) throws IOException {
+    beforeCommit();
+    super.sendRedirect(location);
+    return;
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    commitHooksRun = false;
+    return;
+  }
+
+  /**
+   * A {@link ServletOutputStream} which calls {@link PipelineResponseWrapper#beforeCommit()} prior to any output.
+   */
+  protected class CommitServletOutputStream extends ServletOutputStream {
+    /**
+     * The stream being wrapped.
+     */
+    protected final ServletOutputStream outputStream;
+
+    /**
+     * Construct a <code>CommitServletOutputStream</code>.
+     * 
+     * @param outputStream The stream being wrapped.
+     */
+    public CommitServletOutputStream(final ServletOutputStream outputStream) {
+      this.outputStream = outputStream;
+      return;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      beforeCommit();
+      outputStream.write(b);
+      return;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      beforeCommit();
+      outputStream.write(b, off, len);
+      return;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      beforeCommit();
+      outputStream.flush();
+      return;
+    }
+
+    @Override
+    public void close() throws IOException {
+      beforeCommit();
+      outputStream.close();
+      return;
+    }
+
+    @Override
+    public boolean isReady() {
+      return outputStream.isReady();
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      outputStream.setWriteListener(writeListener);
+      return;
+    }
+
+  } // CommitServletOutputStream
+
+  /**
+   * A {@link Writer} which calls {@link PipelineResponseWrapper#beforeCommit()} prior to any output.
+   */
+  protected class CommitWriter extends Writer {
+    /**
+     * The writer being wrapped.
+     */
+    protected final Writer writer;
+
+    /**
+     * Construct a <code>CommitWriter</code>.
+     * 
+     * @param writer The writer being wrapped.
+     */
+    public CommitWriter(final Writer writer) {
+      this.writer = writer;
+      return;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+      beforeCommit();
+      writer.write(c);
+      return;
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+      beforeCommit();
+      writer.write(cbuf, off, len);
+      return;
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+      beforeCommit();
+      writer.write(str, off, len);
+      return;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      beforeCommit();
+      writer.flush();
+      return;
+    }
+
+    @Override
+    public void close() throws IOException {
+      beforeCommit();
+      writer.close();
+      return;
+    }
+
+  } // CommitWriter
+
+}
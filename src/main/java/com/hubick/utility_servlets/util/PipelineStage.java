@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+
+import org.eclipse.jdt.annotation.*;
+
+import javax.servlet.*;
+
+
+/**
+ * A {@link Filter} which can also be run as a stage of a fused pipeline (ie, the <code>UtilityPipelineFilter</code>),
+ * applying itself to a shared {@link PipelineExchange} rather than wrapping the request/response and invoking the rest
+ * of the filter chain itself.
+ */
+@NonNullByDefault
+public interface PipelineStage {
+  /**
+   * Apply this stage to the given <code>exchange</code>, exactly as
+   * {@link Filter#doFilter(ServletRequest, ServletResponse, FilterChain) doFilter} would, prior to the rest of the
+   * filter chain.
+   * 
+   * @param exchange The exchange being processed.
+   * @return <code>true</code> to continue processing, or <code>false</code> if this stage has completed the response
+   * (ie, by sending a redirect), and the rest of the pipeline and filter chain should be skipped.
+   * @throws ServletException If there was a problem processing the request.
+   * @throws IOException If there was a problem sending the response.
+   */
+  public boolean apply(PipelineExchange exchange) throws ServletException, IOException;
+
+}
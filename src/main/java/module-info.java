@@ -2,8 +2,11 @@ module com.hubick.utility_servlets {
   requires transitive org.eclipse.jdt.annotation;
   requires transitive java.servlet;
   requires transitive jakarta.activation;
+  requires java.management;
 
   exports com.hubick.utility_servlets;
+  exports com.hubick.utility_servlets.resource;
   exports com.hubick.utility_servlets.role;
   exports com.hubick.utility_servlets.session;
+  exports com.hubick.utility_servlets.util;
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests for {@link CIDRTrie}, covering IPv4 and IPv6 blocks, the longest match among nested blocks (inserted in either
+ * order), and {@linkplain CIDRTrie#inherit(java.util.function.BinaryOperator) inheritance} of enclosing values.
+ */
+public class CIDRTrieTest {
+
+  /**
+   * Create a trie from the given blocks, each mapped to its own text.
+   * 
+   * @param cidrs The blocks.
+   * @return The trie.
+   */
+  protected static CIDRTrie<String> trie(final String... cidrs) {
+    final CIDRTrie<String> trie = new CIDRTrie<String>();
+    for (String cidr : cidrs) {
+      trie.put(cidr, cidr);
+    }
+    return trie;
+  }
+
+  @Test
+  public void testIPv4() {
+    final CIDRTrie<String> trie = trie("10.0.0.0/8", "192.168.1.0/24", "203.0.113.7");
+    assertEquals("10.0.0.0/8", trie.get("10.0.0.1"));
+    assertEquals("10.0.0.0/8", trie.get("10.255.255.255"));
+    assertNull(trie.get("11.0.0.0"));
+    assertNull(trie.get("9.255.255.255"));
+    assertEquals("192.168.1.0/24", trie.get("192.168.1.200"));
+    assertNull(trie.get("192.168.2.1"));
+    assertEquals("203.0.113.7", trie.get("203.0.113.7"));
+    assertNull(trie.get("203.0.113.8"));
+    assertEquals(3, trie.size());
+    return;
+  }
+
+  @Test
+  public void testIPv6() {
+    final CIDRTrie<String> trie = trie("fd00::/8", "2001:db8::/32", "2001:db8:1::/48", "::1");
+    assertEquals("fd00::/8", trie.get("fd12:3456::1"));
+    assertNull(trie.get("fe80::1"));
+    assertEquals("2001:db8::/32", trie.get("2001:db8:2::1"));
+    assertEquals("2001:db8:1::/48", trie.get("2001:db8:1:ffff::1"));
+    assertEquals("2001:db8:1::/48", trie.get("[2001:DB8:1::1]"));
+    assertEquals("2001:db8:1::/48", trie.get("2001:db8:1::1%eth0"));
+    assertEquals("::1", trie.get("::1"));
+    assertEquals("::1", trie.get("0:0:0:0:0:0:0:1"));
+    assertNull(trie.get("::2"));
+    return;
+  }
+
+  @Test
+  public void testIPv4MappedIPv6() {
+    final CIDRTrie<String> trie = trie("10.0.0.0/8");
+    assertEquals("10.0.0.0/8", trie.get("::ffff:10.1.2.3"));
+    assertEquals("10.0.0.0/8", trie.get("::ffff:a01:203"));
+    assertNull(trie.get("::10.1.2.3"));
+    return;
+  }
+
+  @Test
+  public void testNestedBlocks() {
+    final String[] blocks = { "0.0.0.0/0", "10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24", "10.1.2.3/32", "10.2.0.0/15" };
+    final List<String> order = new ArrayList<String>(Arrays.asList(blocks));
+    for (int i = 0; i < 2; i++) { // Insert from outermost to innermost, then the reverse.
+      final CIDRTrie<String> trie = trie(order.toArray(new String[order.size()]));
+      assertEquals(blocks.length, trie.size());
+      assertEquals("10.1.2.3/32", trie.get("10.1.2.3"));
+      assertEquals("10.1.2.0/24", trie.get("10.1.2.4"));
+      assertEquals("10.1.0.0/16", trie.get("10.1.3.1"));
+      assertEquals("10.2.0.0/15", trie.get("10.3.0.1"));
+      assertEquals("10.0.0.0/8", trie.get("10.4.0.1"));
+      assertEquals("0.0.0.0/0", trie.get("8.8.8.8"));
+      assertNull(trie.get("2001:db8::1"));
+      Collections.reverse(order);
+    }
+    return;
+  }
+
+  @Test
+  public void testReplaceAndDivergingBlocks() {
+    final CIDRTrie<String> trie = trie("10.1.0.0/16", "10.2.0.0/16");
+    assertNull(trie.get("10.3.0.1")); // The valueless node joining the two blocks doesn't match.
+    trie.put("10.1.0.0/16", "replaced");
+    assertEquals("replaced", trie.get("10.1.0.1"));
+    assertEquals(2, trie.size());
+    trie.put("10.0.0.0/14", "joined"); // Exactly the valueless node joining them.
+    assertEquals("joined", trie.get("10.3.0.1"));
+    assertEquals(3, trie.size());
+    return;
+  }
+
+  @Test
+  public void testInherit() {
+    final CIDRTrie<String> trie = trie("10.0.0.0/8", "10.1.0.0/16", "fd00::/8");
+    trie.inherit((enclosing, contained) -> enclosing + '+' + contained);
+    assertEquals("10.0.0.0/8+10.1.0.0/16", trie.get("10.1.0.1"));
+    assertEquals("10.0.0.0/8", trie.get("10.2.0.1"));
+    assertEquals("fd00::/8", trie.get("fd00::1"));
+    return;
+  }
+
+  @Test
+  public void testInvalid() {
+    final CIDRTrie<String> trie = trie("10.0.0.0/8");
+    assertNull(trie.get("10.0.0"));
+    assertNull(trie.get("10.0.0.256"));
+    assertNull(trie.get("not an address"));
+    assertNull(trie.get(""));
+    assertThrows(IllegalArgumentException.class, () -> trie.put("10.0.0.0/33", "x"));
+    assertThrows(IllegalArgumentException.class, () -> trie.put("fd00::/129", "x"));
+    assertThrows(IllegalArgumentException.class, () -> trie.put("10.0.0.0/x", "x"));
+    assertThrows(IllegalArgumentException.class, () -> trie.put("10.0.0.300/8", "x"));
+    return;
+  }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests for {@link HostResolverCache}, using a stub {@link HostResolver} whose answers can be changed, and an
+ * {@link Executor} which only runs the scheduled resolutions when asked, so each step of a lookup can be observed.
+ */
+public class HostResolverCacheTest {
+
+  /**
+   * A {@link HostResolver} answering from a map, and counting how often it's asked.
+   */
+  protected static final class StubResolver implements HostResolver {
+    /**
+     * The host names to answer with, keyed by address. An address mapped to <code>null</code> has no host name, and
+     * an absent one fails.
+     */
+    final Map<String,@Nullable String> hostNames = new HashMap<String,@Nullable String>();
+    /**
+     * The number of resolutions performed.
+     */
+    int calls = 0;
+
+    @Override
+    public @Nullable String resolve(final String address) throws Exception {
+      calls++;
+      if (!hostNames.containsKey(address)) throw new UnknownHostStubException(address);
+      return hostNames.get(address);
+    }
+
+  } // StubResolver
+
+  /**
+   * Thrown by the {@link StubResolver} for an address it has no answer for.
+   */
+  protected static final class UnknownHostStubException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct an <code>UnknownHostStubException</code>.
+     * 
+     * @param address The address which couldn't be resolved.
+     */
+    UnknownHostStubException(final String address) {
+      super(address);
+      return;
+    }
+
+  } // UnknownHostStubException
+
+  /**
+   * An {@link Executor} queueing tasks until they're {@linkplain #runAll() run}.
+   */
+  protected static final class QueuedExecutor implements Executor {
+    /**
+     * The tasks waiting to be run.
+     */
+    final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+    @Override
+    public void execute(final Runnable command) {
+      tasks.add(command);
+      return;
+    }
+
+    /**
+     * Run every queued task.
+     * 
+     * @return The number of tasks run.
+     */
+    int runAll() {
+      int count = 0;
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+        count++;
+      }
+      return count;
+    }
+
+  } // QueuedExecutor
+
+  /**
+   * Wait long enough for an entry cached for <code>millis</code> to expire.
+   * 
+   * @param millis The duration entries are cached for.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  protected static void expire(final long millis) throws InterruptedException {
+    Thread.sleep(millis + 5);
+    return;
+  }
+
+  @Test
+  public void testResolvesInBackground() {
+    final StubResolver resolver = new StubResolver();
+    resolver.hostNames.put("192.0.2.1", "one.example.com");
+    final QueuedExecutor executor = new QueuedExecutor();
+    final HostResolverCache cache = new HostResolverCache(resolver, executor, 1, 1, TimeUnit.HOURS, 10);
+    assertNull(cache.lookup("192.0.2.1"));
+    assertNull(cache.lookup("192.0.2.1")); // Still pending, and not scheduled again.
+    assertEquals(1, executor.runAll());
+    assertEquals("one.example.com", cache.lookup("192.0.2.1"));
+    assertEquals("one.example.com", cache.lookup("192.0.2.1")); // Unexpired, so not refreshed.
+    assertEquals(0, executor.runAll());
+    assertEquals(1, resolver.calls);
+    assertEquals(1, cache.size());
+    return;
+  }
+
+  @Test
+  public void testNoHostName() {
+    final StubResolver resolver = new StubResolver();
+    resolver.hostNames.put("192.0.2.2", null);
+    final QueuedExecutor executor = new QueuedExecutor();
+    final HostResolverCache cache = new HostResolverCache(resolver, executor, 1, 1, TimeUnit.HOURS, 10);
+    assertNull(cache.lookup("192.0.2.2"));
+    assertNull(cache.lookup("192.0.2.3"));
+    assertEquals(2, executor.runAll());
+    assertEquals("192.0.2.2", cache.lookup("192.0.2.2"));
+    assertEquals("192.0.2.3", cache.lookup("192.0.2.3")); // The resolver failed.
+    assertEquals(0, executor.runAll());
+    return;
+  }
+
+  @Test
+  public void testRefreshesExpired() throws InterruptedException {
+    final StubResolver resolver = new StubResolver();
+    resolver.hostNames.put("192.0.2.4", "old.example.com");
+    final QueuedExecutor executor = new QueuedExecutor();
+    final HostResolverCache cache = new HostResolverCache(resolver, executor, 20, 20, TimeUnit.MILLISECONDS, 10);
+    cache.lookup("192.0.2.4");
+    executor.runAll();
+    resolver.hostNames.put("192.0.2.4", "new.example.com");
+    assertEquals("old.example.com", cache.lookup("192.0.2.4"));
+    assertEquals(0, executor.runAll());
+    expire(20);
+    assertEquals("old.example.com", cache.lookup("192.0.2.4")); // Stale, while refreshing.
+    assertEquals("old.example.com", cache.lookup("192.0.2.4")); // Not scheduled again.
+    assertEquals(1, executor.runAll());
+    assertEquals("new.example.com", cache.lookup("192.0.2.4"));
+    assertEquals(0, executor.runAll());
+    assertEquals(2, resolver.calls);
+    return;
+  }
+
+  @Test
+  public void testNegativeTTL() throws InterruptedException {
+    final StubResolver resolver = new StubResolver();
+    resolver.hostNames.put("192.0.2.5", "five.example.com");
+    final QueuedExecutor executor = new QueuedExecutor();
+    final HostResolverCache cache = new HostResolverCache(resolver, executor, TimeUnit.HOURS.toMillis(1), 20, TimeUnit.MILLISECONDS, 10);
+    cache.lookup("192.0.2.5");
+    cache.lookup("192.0.2.6"); // Fails.
+    assertEquals(2, executor.runAll());
+    expire(20);
+    assertEquals("five.example.com", cache.lookup("192.0.2.5"));
+    assertEquals("192.0.2.6", cache.lookup("192.0.2.6"));
+    assertEquals(1, executor.runAll()); // Only the failure expired.
+    resolver.hostNames.put("192.0.2.6", "six.example.com");
+    assertEquals("192.0.2.6", cache.lookup("192.0.2.6")); // The failure was cached again.
+    expire(20);
+    cache.lookup("192.0.2.6");
+    executor.runAll();
+    assertEquals("six.example.com", cache.lookup("192.0.2.6"));
+    return;
+  }
+
+  @Test
+  public void testRejectedExecution() {
+    final StubResolver resolver = new StubResolver();
+    final HostResolverCache cache = new HostResolverCache(resolver, (command) -> {
+      throw new RejectedExecutionException();
+    }, 1, 1, TimeUnit.HOURS, 10);
+    assertNull(cache.lookup("192.0.2.7"));
+    assertEquals(0, cache.size()); // Not left pending forever.
+    assertEquals(0, resolver.calls);
+    return;
+  }
+
+  @Test
+  public void testClear() {
+    final StubResolver resolver = new StubResolver();
+    resolver.hostNames.put("192.0.2.8", "eight.example.com");
+    final QueuedExecutor executor = new QueuedExecutor();
+    final HostResolverCache cache = new HostResolverCache(resolver, executor, 1, 1, TimeUnit.HOURS, 10);
+    cache.lookup("192.0.2.8");
+    executor.runAll();
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.lookup("192.0.2.8"));
+    assertEquals(1, executor.runAll());
+    assertEquals(2, resolver.calls);
+    return;
+  }
+
+}
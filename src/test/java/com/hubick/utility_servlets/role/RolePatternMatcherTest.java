@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.role;
+
+import java.util.*;
+import java.util.regex.*;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests for {@link RolePatternMatcher}. Every value is matched against the compiled patterns, and the result compared
+ * with evaluating each pattern individually using {@link Matcher#matches()}, so each of the matcher's shortcuts
+ * (literal lookup, automaton decided affixes, and prefiltered expressions) must agree with the regular expression.
+ */
+public class RolePatternMatcherTest {
+  /**
+   * Patterns covering each way the matcher can evaluate them.
+   */
+  protected static final String[] PATTERNS = {
+    "exact", // Plain literal.
+    "exact\\.value", // Escaped literal.
+    "Mozilla/.*", // Prefix.
+    ".*Mobile", // Suffix.
+    ".*Android.*", // Contains.
+    ".*iPhone.*", // Contains, overlapping others in a value.
+    ".*Phone.*", // Contains, a suffix of another literal.
+    "Opera.*Mini.*", // Required literal, with more after.
+    ".*Windows NT [0-9]+\\.[0-9].*", // Required literal, with a character class.
+    "(?:ab)+c", // Group only, so no required literal.
+    "foo|bar", // Top level alternation.
+    "a.b", // Metacharacter, too short a literal to prefilter.
+    "x?yz", // Optional first character.
+    ".*\\.*", // Escaped dot repeated, not a trailing wildcard.
+  };
+  /**
+   * Values to match against the {@link #PATTERNS}.
+   */
+  protected static final String[] VALUES = {
+    "",
+    "exact",
+    "exactXvalue",
+    "exact.value",
+    "Mozilla/5.0 (Linux; Android 14) Mobile",
+    "Mozilla/5.0 (iPhone; CPU iPhone OS 17_0 like Mac OS X) Mobile",
+    "Mozilla/5.0 (Windows NT 10.0; Win64; x64)",
+    "Opera/9.80 (J2ME/MIDP; Opera Mini/9.80)",
+    "Opera Mini",
+    "ababc",
+    "abc",
+    "c",
+    "foo",
+    "bar",
+    "foobar",
+    "a.b",
+    "axb",
+    "yz",
+    "xyz",
+    "xxyz",
+    "...",
+    "Mozilla/\nAndroid", // A line terminator, which '.' won't match.
+    "Android Mobile",
+  };
+
+  /**
+   * Get the roles a value should be granted, by evaluating each pattern individually.
+   * 
+   * @param mappings The patterns, mapped to role names.
+   * @param value The value to match.
+   * @return The expected roles.
+   */
+  protected static RoleSet expectedRoles(final Map<Pattern,String> mappings, final String value) {
+    final RoleSet roles = new RoleSet();
+    for (Map.Entry<Pattern,String> mapping : mappings.entrySet()) {
+      if (mapping.getKey().matcher(value).matches()) roles.add(RoleRegistry.intern(mapping.getValue()));
+    }
+    return roles;
+  }
+
+  /**
+   * Assert every value gets the same roles from the compiled <code>mappings</code> as from the regular expressions.
+   * 
+   * @param mappings The patterns, mapped to role names.
+   * @param values The values to match.
+   */
+  protected static void assertEquivalent(final Map<Pattern,String> mappings, final String[] values) {
+    final RolePatternMatcher matcher = new RolePatternMatcher(mappings);
+    for (String value : values) {
+      assertEquals(expectedRoles(mappings, value), matcher.match(value), "Value '" + value + '\'');
+    }
+    return;
+  }
+
+  @Test
+  public void testMatchesEquivalentToRegex() {
+    final Map<Pattern,String> mappings = new LinkedHashMap<Pattern,String>();
+    for (int i = 0; i < PATTERNS.length; i++) {
+      mappings.put(Pattern.compile(PATTERNS[i]), "RolePatternMatcherTest-" + i);
+    }
+    assertEquivalent(mappings, VALUES);
+    return;
+  }
+
+  @Test
+  public void testSharedRoles() {
+    final Map<Pattern,String> mappings = new LinkedHashMap<Pattern,String>();
+    mappings.put(Pattern.compile(".*Android.*"), "RolePatternMatcherTest-mobile");
+    mappings.put(Pattern.compile(".*iPhone.*"), "RolePatternMatcherTest-mobile");
+    mappings.put(Pattern.compile("Mozilla/.*"), "RolePatternMatcherTest-mozilla");
+    assertEquivalent(mappings, VALUES);
+    return;
+  }
+
+  @Test
+  public void testFlaggedPatternsEvaluated() {
+    final Map<Pattern,String> mappings = new LinkedHashMap<Pattern,String>();
+    mappings.put(Pattern.compile(".*android.*", Pattern.CASE_INSENSITIVE), "RolePatternMatcherTest-insensitive");
+    mappings.put(Pattern.compile("EXACT", Pattern.CASE_INSENSITIVE), "RolePatternMatcherTest-exact");
+    mappings.put(Pattern.compile(".*Android.*", Pattern.DOTALL), "RolePatternMatcherTest-dotall");
+    assertEquivalent(mappings, VALUES);
+    return;
+  }
+
+  @Test
+  public void testManyScannedPatterns() {
+    final Map<Pattern,String> mappings = new LinkedHashMap<Pattern,String>();
+    for (int i = 0; i < 100; i++) { // More literals than fit in a single word bitmask.
+      mappings.put(Pattern.compile(".*token" + i + ".*"), "RolePatternMatcherTest-token" + (i % 7));
+    }
+    final String[] values = { "", "token", "token0", "xtoken63y", "token64", "token99token5", "token100", "tok en1" };
+    assertEquivalent(mappings, values);
+    return;
+  }
+
+  @Test
+  public void testNoRolesImmutable() {
+    final RolePatternMatcher matcher = new RolePatternMatcher(Collections.singletonMap(Pattern.compile("exact"), "RolePatternMatcherTest-exact"));
+    final RoleSet roles = matcher.match("other");
+    assertSame(RolePatternMatcher.NO_ROLES, roles);
+    assertTrue(roles.isEmpty());
+    assertThrows(UnsupportedOperationException.class, () -> roles.add(0));
+    assertThrows(UnsupportedOperationException.class, () -> roles.addAll(RoleSet.of(Collections.singleton("RolePatternMatcherTest-exact"))));
+    return;
+  }
+
+}
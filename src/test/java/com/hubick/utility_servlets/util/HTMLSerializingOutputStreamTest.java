@@ -0,0 +1,163 @@
+/*
+ * Copyright 2026 by Chris Hubick. All Rights Reserved.
+ * 
+ * This work is licensed under the terms of the "GNU AFFERO GENERAL PUBLIC LICENSE" version 3, as published by the Free
+ * Software Foundation <http://www.gnu.org/licenses/>, a copy of which you should have received in the file LICENSE.txt.
+ */
+
+package com.hubick.utility_servlets.util;
+
+import java.io.*;
+import java.nio.charset.*;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests for {@link HTMLSerializingOutputStream}. Each input is written whole, a byte at a time, and in every other
+ * chunk size up to its length, to ensure markup is recognized however it's split across writes.
+ */
+public class HTMLSerializingOutputStreamTest {
+
+  /**
+   * Rewrite the given <code>input</code>, writing it in chunks of the given size.
+   * 
+   * @param input The content to rewrite.
+   * @param chunkSize The number of bytes per write.
+   * @param bufferSize The size of the buffer of the stream.
+   * @return The rewritten content.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected static String serialize(final String input, final int chunkSize, final int bufferSize) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final HTMLSerializingOutputStream serializingOutputStream = new HTMLSerializingOutputStream(out, bufferSize);
+    final byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+    for (int off = 0; off < bytes.length; off += chunkSize) {
+      serializingOutputStream.write(bytes, off, Math.min(chunkSize, bytes.length - off));
+    }
+    serializingOutputStream.finish();
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Assert the given <code>input</code> is rewritten to the <code>expected</code> content, however it's split across
+   * writes.
+   * 
+   * @param expected The expected content.
+   * @param input The content to rewrite.
+   * @throws IOException If there was a problem writing the content.
+   */
+  protected static void assertSerialized(final String expected, final String input) throws IOException {
+    final int length = input.getBytes(StandardCharsets.UTF_8).length;
+    for (int chunkSize = 1; chunkSize <= Math.max(length, 1); chunkSize++) {
+      assertEquals(expected, serialize(input, chunkSize, 8192), "Chunk size " + chunkSize);
+    }
+    assertEquals(expected, serialize(input, Math.max(length, 1), 16), "Minimal buffer");
+    return;
+  }
+
+  @Test
+  public void testPlainContentUnchanged() throws IOException {
+    assertSerialized("", "");
+    assertSerialized("Hello, world!", "Hello, world!");
+    assertSerialized("<p class=\"a\">Café &amp; &#x2014; ☃</p>", "<p class=\"a\">Café &amp; &#x2014; ☃</p>");
+    assertSerialized("<!DOCTYPE html><html><body></body></html>", "<!DOCTYPE html><html><body></body></html>");
+    assertSerialized("a < b, c > d", "a < b, c > d");
+    return;
+  }
+
+  @Test
+  public void testProcessingInstructionsRemoved() throws IOException {
+    assertSerialized("<html></html>", "<?xml version=\"1.0\" encoding=\"UTF-8\"?><html></html>");
+    assertSerialized("<p>a</p>", "<p><?pi data?>a</p>");
+    return;
+  }
+
+  @Test
+  public void testSelfClosedElementsExpanded() throws IOException {
+    assertSerialized("<div></div>", "<div/>");
+    assertSerialized("<div class=\"x\" ></div>", "<div class=\"x\" />");
+    assertSerialized("<script src=\"a.js\"></script><p>b</p>", "<script src=\"a.js\"/><p>b</p>");
+    assertSerialized("<textarea name='t'></textarea>", "<textarea name='t'/>");
+    return;
+  }
+
+  @Test
+  public void testVoidElementsUnchanged() throws IOException {
+    assertSerialized("<br/>", "<br/>");
+    assertSerialized("<img src=\"a.png\" alt=\"\"/>", "<img src=\"a.png\" alt=\"\"/>");
+    assertSerialized("<BR/><Meta charset=\"UTF-8\"/>", "<BR/><Meta charset=\"UTF-8\"/>");
+    return;
+  }
+
+  @Test
+  public void testSlashesWithinAttributes() throws IOException {
+    assertSerialized("<a href=\"/x/y/\">z</a>", "<a href=\"/x/y/\">z</a>");
+    assertSerialized("<a href='/x/'></a>", "<a href='/x/'/>");
+    assertSerialized("<a title=\"a/>b\"></a>", "<a title=\"a/>b\"/>");
+    return;
+  }
+
+  @Test
+  public void testCDATAUnwrapped() throws IOException {
+    assertSerialized("<p>a &lt;b&gt; &amp; c</p>", "<p><![CDATA[a <b> & c]]></p>");
+    assertSerialized("<p>]] ]&gt;</p>", "<p><![CDATA[]] ]>]]></p>");
+    return;
+  }
+
+  @Test
+  public void testCDATAInRawTextMarkersRemoved() throws IOException {
+    assertSerialized("<script>if (a < b && c) {}</script>", "<script><![CDATA[if (a < b && c) {}]]></script>");
+    assertSerialized("<style>p > a {}</style>", "<style><![CDATA[p > a {}]]></style>");
+    assertSerialized("<script>var a = \"<div/>\";</script>", "<script>var a = \"<div/>\";</script>");
+    return;
+  }
+
+  @Test
+  public void testCommentsUnchanged() throws IOException {
+    assertSerialized("<!-- <div/> <![CDATA[x]]> -->", "<!-- <div/> <![CDATA[x]]> -->");
+    assertSerialized("<!-- a -- b --->c", "<!-- a -- b --->c");
+    return;
+  }
+
+  @Test
+  public void testForeignContentUnchanged() throws IOException {
+    assertSerialized("<svg><path d=\"M0 0\"/><g/></svg><div></div>", "<svg><path d=\"M0 0\"/><g/></svg><div/>");
+    assertSerialized("<math><mi/><mrow><mo/></mrow></math>", "<math><mi/><mrow><mo/></mrow></math>");
+    assertSerialized("<svg><svg/><g/></svg><i></i>", "<svg><svg/><g/></svg><i/>");
+    return;
+  }
+
+  @Test
+  public void testIncompleteMarkupWrittenOnFinish() throws IOException {
+    assertSerialized("<div", "<div");
+    assertSerialized("<div /", "<div /");
+    assertSerialized("<", "<");
+    assertSerialized("<![CDA", "<![CDA");
+    return;
+  }
+
+  @Test
+  public void testDiscard() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final HTMLSerializingOutputStream serializingOutputStream = new HTMLSerializingOutputStream(out, 8192);
+    serializingOutputStream.write("<p><![CDATA[abc".getBytes(StandardCharsets.US_ASCII));
+    serializingOutputStream.discard();
+    serializingOutputStream.write("<div/>".getBytes(StandardCharsets.US_ASCII));
+    serializingOutputStream.finish();
+    assertEquals("<div></div>", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    return;
+  }
+
+  @Test
+  public void testIsSupported() {
+    assertTrue(HTMLSerializingOutputStream.isSupported(StandardCharsets.UTF_8));
+    assertTrue(HTMLSerializingOutputStream.isSupported(StandardCharsets.ISO_8859_1));
+    assertTrue(HTMLSerializingOutputStream.isSupported(StandardCharsets.US_ASCII));
+    assertFalse(HTMLSerializingOutputStream.isSupported(StandardCharsets.UTF_16));
+    return;
+  }
+
+}